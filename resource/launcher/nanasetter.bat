@@ -0,0 +1,25 @@
+@echo off
+rem
+rem ななせったー起動スクリプト
+rem
+rem 同じディレクトリに AppCDS アーカイブ (nanasetter.jsa) が存在する場合は自動的に使用します。
+rem 環境変数 NANASETTER_CDS に off を指定するとアーカイブを使用せずに起動します。
+rem
+
+setlocal
+
+set "DIR=%~dp0"
+set "JAR=%DIR%${project.build.finalName}-jar-with-dependencies.jar"
+set "ARCHIVE=%DIR%nanasetter.jsa"
+
+set "JAVA_CMD=java"
+if defined JAVA_HOME set "JAVA_CMD=%JAVA_HOME%\bin\java"
+
+if /I "%NANASETTER_CDS%"=="off" goto nocds
+if not exist "%ARCHIVE%" goto nocds
+
+"%JAVA_CMD%" ${cds.vmOptions} -Xshare:auto "-XX:SharedArchiveFile=%ARCHIVE%" -jar "%JAR%" %*
+goto :eof
+
+:nocds
+"%JAVA_CMD%" -jar "%JAR%" %*
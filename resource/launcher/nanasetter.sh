@@ -0,0 +1,27 @@
+#!/bin/sh
+#
+# ななせったー起動スクリプト
+#
+# 同じディレクトリに AppCDS アーカイブ (nanasetter.jsa) が存在する場合は自動的に使用します。
+# 環境変数 NANASETTER_CDS に off を指定するとアーカイブを使用せずに起動します。
+# 引数はそのまま ななせったー に渡されます (例: --startup-benchmark=startup.json)。
+#
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+JAR="$DIR/${project.build.finalName}-jar-with-dependencies.jar"
+ARCHIVE="$DIR/nanasetter.jsa"
+
+JAVA_CMD=java
+
+if [ -n "$JAVA_HOME" ]; then
+    JAVA_CMD="$JAVA_HOME/bin/java"
+fi
+
+if [ -f "$ARCHIVE" ] && [ "$NANASETTER_CDS" != "off" ]; then
+    # アーカイブが実行中の JVM と一致しない場合、-Xshare:auto によって無視される
+    set -- ${cds.vmOptions} -Xshare:auto "-XX:SharedArchiveFile=$ARCHIVE" -jar "$JAR" "$@"
+else
+    set -- -jar "$JAR" "$@"
+fi
+
+exec "$JAVA_CMD" "$@"
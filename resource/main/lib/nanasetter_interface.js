@@ -22,3 +22,40 @@
  * SOFTWARE.
  */
 
+
+/**
+ * 表示が変わった行の相対時刻を書き換えます。Java 側から変化した行のみがまとめて渡されます。
+ *
+ * @param updates {id, label} を要素とする配列。
+ */
+function nanasetter_updateRelativeTimes(updates) {
+    for (var i = 0; i < updates.length; i++) {
+        var elements = document.querySelectorAll('[data-relative-time="' + updates[i].id + '"]');
+
+        for (var j = 0; j < elements.length; j++)
+            elements[j].textContent = updates[i].label;
+    }
+}
+
+
+/**
+ * ストリームから受信したイベントを、document に対する nanasetter-stream イベントとして通知します。
+ *
+ * @param accountId イベントを受信したアカウントのユーザ ID の文字列。
+ * @param event     ツイートまたは削除通知のオブジェクト。
+ */
+function nanasetter_onStreamEvent(accountId, event) {
+    var customEvent = document.createEvent('CustomEvent');
+    customEvent.initCustomEvent('nanasetter-stream', false, false, {accountId: accountId, event: event});
+    document.dispatchEvent(customEvent);
+}
+
+/**
+ * Java 側で HTML に変換されたツイートをカラムの先頭に挿入します。
+ *
+ * @param accountId ツイートを受信したアカウントのユーザ ID の文字列。
+ * @param html      ツイートの HTML。
+ */
+function nanasetter_appendStatuses(accountId, html) {
+    $('.panel-column').prepend($(html).attr('data-account-id', accountId));
+}
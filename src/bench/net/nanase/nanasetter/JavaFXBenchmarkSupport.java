@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter;
+
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/17.
+ */
+
+/**
+ * ベンチマークから JavaFX アプリケーションスレッド上の処理を実行するための機能を提供します。
+ * WebEngine および JSObject は JavaFX アプリケーションスレッド以外からアクセスできないため、
+ * 計測対象の処理はこのクラスを経由してまとめて実行してください。
+ */
+public class JavaFXBenchmarkSupport {
+    private static volatile boolean jfxIsSetup;
+
+    private JavaFXBenchmarkSupport() {
+    }
+
+    /**
+     * JavaFX 環境を初期化します。既に初期化されている場合は何もしません。
+     *
+     * @throws InterruptedException 初期化の待機中に割り込みが発生しました。
+     */
+    public static synchronized void setupJavaFX() throws InterruptedException {
+        if (jfxIsSetup)
+            return;
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        SwingUtilities.invokeLater(() -> {
+            // initializes JavaFX environment
+            new JFXPanel();
+            latch.countDown();
+        });
+
+        latch.await();
+        Platform.setImplicitExit(false);
+        jfxIsSetup = true;
+    }
+
+    /**
+     * 指定された処理を JavaFX アプリケーションスレッド上で実行し、その結果を返します。
+     *
+     * @param supplier 実行される処理。
+     * @param <T>      結果の型。
+     * @return 処理の結果。
+     * @throws Exception 処理中に例外が発生しました。
+     */
+    public static <T> T runAndWait(Supplier<T> supplier) throws Exception {
+        FutureTask<T> task = new FutureTask<>(supplier::get);
+        Platform.runLater(task);
+
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception)
+                throw (Exception) ex.getCause();
+
+            throw ex;
+        }
+    }
+}
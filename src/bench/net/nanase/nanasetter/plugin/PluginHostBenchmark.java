@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.plugin;
+
+import net.nanase.nanasetter.twitter.TwitterList;
+import net.nanase.nanasetter.utils.Version;
+import net.nanase.nanasetter.window.dialog.Dialog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/14.
+ */
+
+/**
+ * イベントごとにポーターオブジェクトを取得する場合のオーバーヘッドを計測します。
+ * {@code newPorter} は変更前の毎回生成する取得方法、{@code cachedPorter} は PluginHost にキャッシュされた取得方法です。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PluginHostBenchmark {
+    private TwitterList twitterList;
+    private PluginHost pluginHost;
+
+    @Setup
+    public void setUp() {
+        // ログの出力先を持たないロガーとし、コンソールへの書き込みを計測から除外する
+        Logger.getLogger("nanasetter").setUseParentHandlers(false);
+
+        Plugin plugin = new Plugin("benchmark", "nanase", null, new Version(0, 1), PluginPermission.FULL);
+
+        this.twitterList = new TwitterList();
+        this.pluginHost = new PluginHost(plugin, this.twitterList, new Dialog(null));
+    }
+
+    @Benchmark
+    public Porter newPorter() throws UnsatisfiedPermissionException {
+        return new ReadStreamingPorter(this.twitterList, this.pluginHost);
+    }
+
+    @Benchmark
+    public Porter cachedPorter() throws UnsatisfiedPermissionException {
+        return this.pluginHost.getReadStreaming();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Porter cachedPorterContended() throws UnsatisfiedPermissionException {
+        return this.pluginHost.getReadStreaming();
+    }
+}
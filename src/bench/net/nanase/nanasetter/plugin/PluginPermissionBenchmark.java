@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.plugin;
+
+import javafx.scene.web.WebEngine;
+import net.nanase.nanasetter.JavaFXBenchmarkSupport;
+import netscape.javascript.JSObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/25.
+ */
+
+/**
+ * PluginPermission の解析を計測します。{@code parse} は WebView 上の JSObject からの解析、
+ * {@code parseFromMap} はスナップショット取得後の解析のみを計測します。
+ * JSObject へのアクセスは JavaFX アプリケーションスレッド上で {@link #BATCH} 回ずつまとめて実行されます。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PluginPermissionBenchmark {
+    private static final int BATCH = 100;
+
+    private Map<String, ?> map;
+
+    @Setup
+    public void setUp() {
+        this.map = Collections.singletonMap("permission", Arrays.asList("rest", "write", "streaming", "extend"));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int parse(WebViewState state) throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH; i++)
+                count += PluginPermission.parse(state.jsObject).size();
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    public EnumSet<PluginPermission> parseFromMap() {
+        return PluginPermission.parseFromMap(this.map);
+    }
+
+    // parseFromMap のみを実行する場合に JavaFX を初期化しないよう、WebView に関する状態を分離する
+    @State(Scope.Benchmark)
+    public static class WebViewState {
+        private JSObject jsObject;
+
+        @Setup
+        public void setUp() throws Exception {
+            JavaFXBenchmarkSupport.setupJavaFX();
+
+            this.jsObject = JavaFXBenchmarkSupport.runAndWait(() -> (JSObject) new WebEngine().executeScript(
+                    "({ name: 'benchmark', permission: ['rest', 'write', 'streaming', 'extend'] })"));
+        }
+    }
+}
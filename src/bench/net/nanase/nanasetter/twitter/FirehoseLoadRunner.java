@@ -0,0 +1,383 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.plugin.PluginServices;
+import net.nanase.nanasetter.plugin.StreamPipelineFactory;
+import net.nanase.nanasetter.utils.JSONParser;
+import twitter4j.StatusDeletionNotice;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/25.
+ */
+
+/**
+ * <p>{@link SyntheticFirehose} で生成したイベントを指定された割合で {@link StreamPipeline} に流し込み、
+ * 持続できるスループット、イベント生成から HTML への変換が配信されるまでの遅延のパーセンタイル、ヒープの増加量を計測します。
+ * <p>生成スレッドはストリームの受信に相当し、JSON 文字列を待ち行列に追加します。受信スレッドは twitter4j のストリームと同様に
+ * JSON をオブジェクトに変換し、StreamPipeline に渡します。待ち行列が一杯になったイベントは処理が追いついていないものとして破棄されます。
+ * <p>StreamPipeline はアプリケーションと同じく {@link StreamPipelineFactory} によって作成され、
+ * ミュートのフィルタ、会話の索引、トレンドの集計、URL の学習および HTML への変換が登録されます。
+ * WebView への反映は含まれません。ネットワークは使用しません。
+ * <pre>
+ * mvn -P benchmark test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.nanase.nanasetter.twitter.FirehoseLoadRunner -Dexec.args="--rate=5000 --duration=30"
+ * </pre>
+ * 引数: {@code --rate=イベント毎秒} (既定値 2000)、{@code --duration=秒} (既定値 30)、
+ * {@code --warmup=秒} (既定値 5)、{@code --seed=シード値}、{@code --filter-ratio=除外されるユーザの割合} (既定値 0.05)。
+ * ウォームアップ中に生成されたイベントは処理されますが、スループットと遅延の集計には含まれません。
+ */
+public class FirehoseLoadRunner {
+    private static final int MAX_LATENCY_SAMPLES = 10_000_000;
+    private static final long ACCOUNT_ID = 1L;
+
+    private final int rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final long seed;
+    private final double filterRatio;
+
+    private final BlockingQueue<Event> queue;
+    private final long[] latencies;
+    private final Queue<Long> pendingNanos;
+    private final AtomicLong renderedCount;
+
+    private volatile boolean generating;
+    private volatile long measureStartNanos;
+    private long generatedCount;
+    private long droppedCount;
+    private long measuredGeneratedCount;
+    private long measuredDroppedCount;
+    private long processedCount;
+    private long passedCount;
+    private long lastProcessedNanos;
+    private long lastRenderedNanos;
+    private int latencyCount;
+    private long currentEventNanos;
+
+    private FirehoseLoadRunner(int rate, int durationSeconds, int warmupSeconds, long seed, double filterRatio) {
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.seed = seed;
+        this.filterRatio = filterRatio;
+
+        // 5 秒分のイベントを超えて遅れた場合は追いついていないものとする
+        this.queue = new ArrayBlockingQueue<>(Math.max(1024, rate * 5));
+        this.latencies = new long[(int) Math.min(MAX_LATENCY_SAMPLES, (long) rate * durationSeconds + 1024)];
+        this.pendingNanos = new ConcurrentLinkedQueue<>();
+        this.renderedCount = new AtomicLong();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = 2000;
+        int duration = 30;
+        int warmup = 5;
+        long seed = 1;
+        double filterRatio = 0.05;
+
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+
+            if (pair.length != 2)
+                throw new IllegalArgumentException(arg);
+
+            switch (pair[0]) {
+                case "--rate":
+                    rate = Integer.parseInt(pair[1]);
+                    break;
+
+                case "--duration":
+                    duration = Integer.parseInt(pair[1]);
+                    break;
+
+                case "--warmup":
+                    warmup = Integer.parseInt(pair[1]);
+                    break;
+
+                case "--seed":
+                    seed = Long.parseLong(pair[1]);
+                    break;
+
+                case "--filter-ratio":
+                    filterRatio = Double.parseDouble(pair[1]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException(arg);
+            }
+        }
+
+        new FirehoseLoadRunner(rate, duration, warmup, seed, filterRatio).run();
+    }
+
+    private void run() throws InterruptedException, IOException {
+        Logger logger = Logger.getLogger("nanasetter.firehose");
+        logger.setUseParentHandlers(false);
+
+        Path urlCache = Files.createTempFile("nanasetter-firehose", ".tsv");
+        BlockMuteCache blockMuteCache = new BlockMuteCache();
+        StatusRenderer statusRenderer = new StatusRenderer(logger);
+        URLExpander urlExpander = new URLExpander(urlCache, url -> {
+            throw new IOException("network is not used");
+        }, logger, 1 << 16, 1);
+
+        // ツイートの多さに関わらず一部のユーザをミュートする
+        long filteredUsers = (long) (SyntheticFirehose.USERS * this.filterRatio);
+
+        for (long userId = 1; userId <= SyntheticFirehose.USERS; userId++) {
+            if (Math.floorMod(userId * 2654435761L, SyntheticFirehose.USERS) < filteredUsers)
+                blockMuteCache.add(ACCOUNT_ID, BlockMuteCache.Kind.MUTE, userId);
+        }
+
+        PluginServices services = new PluginServices();
+        services.setBlockMuteCache(blockMuteCache);
+        services.setConversationIndex(new ConversationIndex(20000));
+        services.setTrendTracker(new TrendTracker());
+        services.setURLExpander(urlExpander);
+        services.setStatusRenderer(statusRenderer);
+
+        StreamPipeline pipeline = new StreamPipelineFactory(services, StreamPipelineFactory.DEFAULT_STATUS_TEMPLATE,
+                logger).create(ACCOUNT_ID, json -> {
+        }, this::onRendered);
+
+        // すべてのフィルタを通過したツイートの生成時刻を、HTML が配信される順序と同じ順序で記録する
+        pipeline.addFilter(status -> {
+            this.pendingNanos.add(this.currentEventNanos);
+            this.passedCount++;
+            return true;
+        });
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        Thread generator = new Thread(this::generate, "firehose-generator");
+        Thread receiver = new Thread(() -> this.receive(pipeline), "firehose-receiver");
+
+        this.measureStartNanos = Long.MAX_VALUE;
+        this.generating = true;
+        receiver.start();
+        generator.start();
+
+        generator.join();
+        receiver.join();
+
+        // 変換の待ちが残っている場合は、すべて配信されるまで待つ
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+
+        while (this.renderedCount.get() < this.passedCount && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        long elapsed = Math.max(this.lastProcessedNanos, this.lastRenderedNanos) - this.measureStartNanos;
+
+        long heapAfterRun = memory.getHeapMemoryUsage().getUsed();
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        double seconds = elapsed / 1e9;
+        long[] samples = Arrays.copyOf(this.latencies, this.latencyCount);
+        Arrays.sort(samples);
+
+        System.out.println(String.format(Locale.ROOT, "target rate        : %d events/s for %d s (warmup: %d s)",
+                this.rate, this.durationSeconds, this.warmupSeconds));
+        System.out.println(String.format(Locale.ROOT, "generated          : %d (dropped: %d)",
+                this.measuredGeneratedCount, this.measuredDroppedCount));
+        System.out.println(String.format(Locale.ROOT, "processed          : %d in %.2f s", this.processedCount, seconds));
+        System.out.println(String.format(Locale.ROOT, "sustained rate     : %.1f events/s", this.processedCount / seconds));
+        System.out.println(String.format(Locale.ROOT, "pipeline total     : %d statuses, %d deletes, %d filtered (including warmup)",
+                pipeline.getDeliveredCount(), pipeline.getDeletedCount(), pipeline.getFilteredCount()));
+        System.out.println(String.format(Locale.ROOT, "rendered           : %d of %d",
+                this.renderedCount.get(), this.passedCount));
+        System.out.println(String.format(Locale.ROOT, "latency (ms)       : p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f",
+                percentile(samples, 0.50), percentile(samples, 0.90), percentile(samples, 0.99),
+                percentile(samples, 0.999), percentile(samples, 1.0)));
+        System.out.println(String.format(Locale.ROOT, "heap (MiB)         : before %.1f, end of run %.1f, after GC %.1f (growth %.1f)",
+                toMiB(heapBefore), toMiB(heapAfterRun), toMiB(heapAfter), toMiB(heapAfter - heapBefore)));
+
+        if (this.measuredDroppedCount > 0)
+            System.out.println("the pipeline fell behind the target rate.");
+
+        statusRenderer.close();
+        urlExpander.close();
+        Files.deleteIfExists(urlCache);
+    }
+
+    private void generate() {
+        SyntheticFirehose firehose = new SyntheticFirehose(this.seed);
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(this.warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(this.durationSeconds);
+        boolean measuring = false;
+        long now;
+
+        while ((now = System.nanoTime()) < end) {
+            if (!measuring && now >= measureStart) {
+                measuring = true;
+                this.measureStartNanos = now;
+                this.measuredGeneratedCount = -this.generatedCount;
+                this.measuredDroppedCount = -this.droppedCount;
+            }
+
+            long expected = (now - start) * this.rate / TimeUnit.SECONDS.toNanos(1);
+
+            while (this.generatedCount < expected) {
+                this.generatedCount++;
+
+                if (!this.queue.offer(new Event(System.nanoTime(), firehose.next())))
+                    this.droppedCount++;
+            }
+
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+        }
+
+        this.measuredGeneratedCount += this.generatedCount;
+        this.measuredDroppedCount += this.droppedCount;
+        this.generating = false;
+    }
+
+    private void receive(StreamPipeline pipeline) {
+        try {
+            while (this.generating || !this.queue.isEmpty()) {
+                Event event = this.queue.poll(10, TimeUnit.MILLISECONDS);
+
+                if (event == null)
+                    continue;
+
+                this.currentEventNanos = event.createdNanos;
+                dispatch(pipeline, event.json);
+
+                if (event.createdNanos >= this.measureStartNanos) {
+                    this.processedCount++;
+                    this.lastProcessedNanos = System.nanoTime();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // twitter4j のストリームと同様に、JSON の種類に応じてイベントを振り分ける
+    private static void dispatch(StreamPipeline pipeline, String json) {
+        if (json.startsWith("{\"delete\"")) {
+            Map<?, ?> delete = (Map<?, ?>) ((Map<?, ?>) JSONParser.parse(json)).get("delete");
+            Map<?, ?> status = (Map<?, ?>) delete.get("status");
+
+            pipeline.onDeletionNotice(new DeletionNotice(
+                    ((Number) status.get("id")).longValue(),
+                    ((Number) status.get("user_id")).longValue()));
+            return;
+        }
+
+        try {
+            pipeline.onStatus(TwitterObjectFactory.createStatus(json));
+        } catch (TwitterException ex) {
+            pipeline.onException(ex);
+        }
+    }
+
+    private void onRendered(String html) {
+        // HTML はツイートを受信した順序で 1 件ずつ配信される
+        long createdNanos = this.pendingNanos.remove();
+        long now = System.nanoTime();
+
+        if (createdNanos >= this.measureStartNanos) {
+            this.lastRenderedNanos = now;
+
+            if (this.latencyCount < this.latencies.length)
+                this.latencies[this.latencyCount++] = now - createdNanos;
+        }
+
+        this.renderedCount.incrementAndGet();
+    }
+
+    private static double percentile(long[] sortedSamples, double p) {
+        if (sortedSamples.length == 0)
+            return Double.NaN;
+
+        int index = (int) Math.ceil(p * sortedSamples.length) - 1;
+        return sortedSamples[Math.max(0, Math.min(sortedSamples.length - 1, index))] / 1e6;
+    }
+
+    private static double toMiB(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static class Event {
+        private final long createdNanos;
+        private final String json;
+
+        private Event(long createdNanos, String json) {
+            this.createdNanos = createdNanos;
+            this.json = json;
+        }
+    }
+
+    private static class DeletionNotice implements StatusDeletionNotice {
+        private static final long serialVersionUID = 1L;
+
+        private final long statusId;
+        private final long userId;
+
+        private DeletionNotice(long statusId, long userId) {
+            this.statusId = statusId;
+            this.userId = userId;
+        }
+
+        @Override
+        public long getStatusId() {
+            return this.statusId;
+        }
+
+        @Override
+        public long getUserId() {
+            return this.userId;
+        }
+
+        @Override
+        public int compareTo(StatusDeletionNotice o) {
+            return Long.compare(this.statusId, o.getStatusId());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import javafx.scene.web.WebEngine;
+import net.nanase.nanasetter.JavaFXBenchmarkSupport;
+import netscape.javascript.JSObject;
+import org.openjdk.jmh.annotations.*;
+import twitter4j.HashtagEntity;
+import twitter4j.Status;
+import twitter4j.TwitterObjectFactory;
+import twitter4j.URLEntity;
+import twitter4j.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/20.
+ */
+
+/**
+ * StatusSerializer によるツイートの変換と、文字列連結による変換、および JSObject へのメンバ単位の設定を比較します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatusSerializerBenchmark {
+    private static final int BATCH = 100;
+
+    private static final String STATUS_JSON = "{\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"," +
+            "\"id\":501999999999999999,\"id_str\":\"501999999999999999\"," +
+            "\"text\":\"ななせったーのテストです #nanasetter @nanase http://t.co/abcdefghij\"," +
+            "\"source\":\"<a href=\\\"http://example.com/\\\" rel=\\\"nofollow\\\">Nanasetter</a>\"," +
+            "\"truncated\":false,\"favorited\":false,\"retweeted\":false,\"favorite_count\":3," +
+            "\"retweet_count\":1,\"lang\":\"ja\"," +
+            "\"user\":{\"id\":12345,\"id_str\":\"12345\",\"name\":\"ななせ\",\"screen_name\":\"nanase\"," +
+            "\"description\":\"Java で Twitter クライアントを作っています\",\"location\":\"Japan\"," +
+            "\"profile_image_url_https\":\"https://pbs.twimg.com/profile_images/1/a_normal.png\"," +
+            "\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\",\"followers_count\":10,\"friends_count\":20," +
+            "\"statuses_count\":30,\"favourites_count\":40,\"protected\":false,\"verified\":false}," +
+            "\"entities\":{\"hashtags\":[{\"text\":\"nanasetter\",\"indices\":[13,24]}]," +
+            "\"symbols\":[],\"urls\":[{\"url\":\"http://t.co/abcdefghij\",\"expanded_url\":\"http://example.com/\"," +
+            "\"display_url\":\"example.com\",\"indices\":[33,55]}]," +
+            "\"user_mentions\":[{\"id\":12345,\"id_str\":\"12345\",\"screen_name\":\"nanase\",\"name\":\"ななせ\"," +
+            "\"indices\":[25,32]}]}}";
+
+    private Status status;
+
+    private StatusSerializer uncachedSerializer;
+
+    private StatusSerializer cachedSerializer;
+
+    private JSObject window;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.status = TwitterObjectFactory.createStatus(STATUS_JSON);
+        this.uncachedSerializer = new StatusSerializer(0);
+        this.cachedSerializer = new StatusSerializer();
+
+        JavaFXBenchmarkSupport.setupJavaFX();
+        this.window = JavaFXBenchmarkSupport.runAndWait(() -> (JSObject) new WebEngine().executeScript("window"));
+    }
+
+    @Benchmark
+    public String serialize() {
+        return this.uncachedSerializer.serialize(this.status);
+    }
+
+    @Benchmark
+    public String serializeCached() {
+        return this.cachedSerializer.serialize(this.status);
+    }
+
+    @Benchmark
+    public String concatenate() {
+        return concatenateStatus(this.status);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int setMemberPerField() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH; i++) {
+                JSObject object = (JSObject) this.window.eval("({ user: {}, entities: { hashtags: [], urls: [] } })");
+                setMembers(object, this.status);
+                count++;
+            }
+
+            return count;
+        });
+    }
+
+    // 書式化と連結による素朴な変換
+    private static String concatenateStatus(Status status) {
+        User user = status.getUser();
+        String json = "{" +
+                String.format("\"id_str\":\"%d\",", status.getId()) +
+                String.format("\"created_at\":%d,", status.getCreatedAt().getTime()) +
+                "\"text\":\"" + escape(status.getText()) + "\"," +
+                "\"source\":\"" + escape(status.getSource()) + "\"," +
+                String.format("\"favorite_count\":%d,", status.getFavoriteCount()) +
+                String.format("\"retweet_count\":%d,", status.getRetweetCount()) +
+                "\"user\":{" +
+                String.format("\"id_str\":\"%d\",", user.getId()) +
+                "\"name\":\"" + escape(user.getName()) + "\"," +
+                "\"screen_name\":\"" + escape(user.getScreenName()) + "\"," +
+                "\"description\":\"" + escape(user.getDescription()) + "\"," +
+                "\"profile_image_url_https\":\"" + escape(user.getProfileImageURLHttps()) + "\"" +
+                "},\"entities\":{\"hashtags\":[";
+
+        for (HashtagEntity e : status.getHashtagEntities())
+            json += String.format("{\"text\":\"%s\",\"indices\":[%d,%d]},", escape(e.getText()), e.getStart(), e.getEnd());
+
+        json += "],\"urls\":[";
+
+        for (URLEntity e : status.getURLEntities())
+            json += String.format("{\"url\":\"%s\",\"expanded_url\":\"%s\",\"indices\":[%d,%d]},",
+                    escape(e.getURL()), escape(e.getExpandedURL()), e.getStart(), e.getEnd());
+
+        return json + "]}}";
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // JSObject にメンバを一つずつ設定する変換
+    private static void setMembers(JSObject object, Status status) {
+        User user = status.getUser();
+        JSObject userObject = (JSObject) object.getMember("user");
+        JSObject entities = (JSObject) object.getMember("entities");
+
+        object.setMember("id_str", Long.toString(status.getId()));
+        object.setMember("created_at", (double) status.getCreatedAt().getTime());
+        object.setMember("text", status.getText());
+        object.setMember("source", status.getSource());
+        object.setMember("favorite_count", status.getFavoriteCount());
+        object.setMember("retweet_count", status.getRetweetCount());
+
+        userObject.setMember("id_str", Long.toString(user.getId()));
+        userObject.setMember("name", user.getName());
+        userObject.setMember("screen_name", user.getScreenName());
+        userObject.setMember("description", user.getDescription());
+        userObject.setMember("profile_image_url_https", user.getProfileImageURLHttps());
+
+        JSObject hashtags = (JSObject) entities.getMember("hashtags");
+        HashtagEntity[] hashtagEntities = status.getHashtagEntities();
+
+        for (int i = 0; i < hashtagEntities.length; i++)
+            hashtags.setSlot(i, hashtagEntities[i].getText());
+
+        JSObject urls = (JSObject) entities.getMember("urls");
+        URLEntity[] urlEntities = status.getURLEntities();
+
+        for (int i = 0; i < urlEntities.length; i++)
+            urls.setSlot(i, urlEntities[i].getExpandedURL());
+    }
+}
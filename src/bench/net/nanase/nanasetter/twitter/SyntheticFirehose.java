@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/25.
+ */
+
+/**
+ * <p>ストリーミング API と同じ形式の JSON で、合成されたイベントを生成します。
+ * <p>ツイートは日本語と英語の本文を持ち、一定の割合でハッシュタグ、メンション、URL、画像を含みます。
+ * また一定の割合でリツイートと、直前に生成したツイートに対する削除通知を生成します。
+ * 同じシード値からは同じイベントの列が生成されます。このクラスはスレッドセーフではありません。
+ */
+public class SyntheticFirehose {
+    private static final String[] JAPANESE_TEXTS = {
+            "おはようございます。今日もいい天気ですね",
+            "新しいプラグインを書いてみました",
+            "ななせったーのタイムラインが速くなった気がする",
+            "お昼ごはん何にしようかな",
+            "ストリーミングの受信テスト中です",
+            "眠い…",
+            "今日の作業はここまで。おやすみなさい",
+    };
+
+    private static final String[] ENGLISH_TEXTS = {
+            "Good morning, everyone",
+            "Just released a new version of my plugin",
+            "Testing the streaming pipeline at full speed",
+            "Anyone up for lunch?",
+            "This is a fairly long English sentence to make the text length distribution a bit more realistic",
+            "brb",
+    };
+
+    private static final String[] HASHTAGS = {"nanasetter", "java", "javafx", "拡張機能", "test"};
+
+    static final int USERS = 1000;
+
+    private static final int RECENT_IDS = 1024;
+
+    private final Random random;
+    private final SimpleDateFormat dateFormat;
+    private final long[] recentIds;
+    private final long[] recentUserIds;
+
+    private long nextId = 500000000000000000L;
+    private int recentCount;
+
+    private final double retweetRatio;
+    private final double mediaRatio;
+    private final double deleteRatio;
+
+    /**
+     * シード値を指定し、既定の割合でイベントを生成する SyntheticFirehose クラスのインスタンスを初期化します。
+     *
+     * @param seed 乱数のシード値。
+     */
+    public SyntheticFirehose(long seed) {
+        this(seed, 0.15, 0.10, 0.02);
+    }
+
+    /**
+     * シード値と各イベントの割合を指定して新しい SyntheticFirehose クラスのインスタンスを初期化します。
+     *
+     * @param seed         乱数のシード値。
+     * @param retweetRatio ツイートのうちリツイートの割合。
+     * @param mediaRatio   ツイートのうち画像を含むものの割合。
+     * @param deleteRatio  イベントのうち削除通知の割合。
+     */
+    public SyntheticFirehose(long seed, double retweetRatio, double mediaRatio, double deleteRatio) {
+        this.random = new Random(seed);
+        this.dateFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH);
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.recentIds = new long[RECENT_IDS];
+        this.recentUserIds = new long[RECENT_IDS];
+        this.retweetRatio = retweetRatio;
+        this.mediaRatio = mediaRatio;
+        this.deleteRatio = deleteRatio;
+    }
+
+    /**
+     * 次のイベントを生成します。
+     *
+     * @return ツイートまたは削除通知を表す JSON 文字列。
+     */
+    public String next() {
+        if (this.recentCount > 0 && this.random.nextDouble() < this.deleteRatio)
+            return this.nextDelete();
+
+        StringBuilder sb = new StringBuilder(2048);
+        long userId = this.nextUserId();
+
+        if (this.random.nextDouble() < this.retweetRatio) {
+            StringBuilder retweeted = new StringBuilder(1024);
+            long retweetedUserId = this.nextUserId();
+            String retweetedText = this.writeStatus(retweeted, retweetedUserId, null, null);
+
+            this.writeStatus(sb, userId, "RT @user" + retweetedUserId + ": " + retweetedText, retweeted);
+        } else {
+            this.writeStatus(sb, userId, null, null);
+        }
+
+        return sb.toString();
+    }
+
+    private String nextDelete() {
+        int index = this.random.nextInt(Math.min(this.recentCount, RECENT_IDS));
+
+        return "{\"delete\":{\"status\":{\"id\":" + this.recentIds[index] + ",\"id_str\":\"" + this.recentIds[index] +
+                "\",\"user_id\":" + this.recentUserIds[index] + ",\"user_id_str\":\"" + this.recentUserIds[index] + "\"}}}";
+    }
+
+    private long nextUserId() {
+        // 一部のユーザが多くのツイートを行う偏りを持たせる
+        double r = this.random.nextDouble();
+        return 1 + (long) (r * r * USERS);
+    }
+
+    private String writeStatus(StringBuilder sb, long userId, String retweetText, StringBuilder retweeted) {
+        long id = this.nextId++;
+        int recent = this.recentCount++ % RECENT_IDS;
+        this.recentIds[recent] = id;
+        this.recentUserIds[recent] = userId;
+
+        StringBuilder text = new StringBuilder(160);
+        StringBuilder hashtags = new StringBuilder();
+        StringBuilder mentions = new StringBuilder();
+        StringBuilder urls = new StringBuilder();
+        StringBuilder media = new StringBuilder();
+        boolean japanese = this.random.nextDouble() < 0.6;
+
+        if (retweetText != null) {
+            text.append(retweetText);
+        } else {
+            if (this.random.nextDouble() < 0.2) {
+                long mentionId = this.nextUserId();
+                int start = text.length();
+                text.append("@user").append(mentionId).append(' ');
+                mentions.append("{\"id\":").append(mentionId).append(",\"id_str\":\"").append(mentionId)
+                        .append("\",\"screen_name\":\"user").append(mentionId).append("\",\"name\":\"User ")
+                        .append(mentionId).append("\",\"indices\":[").append(start).append(',')
+                        .append(text.length() - 1).append("]}");
+            }
+
+            String[] texts = japanese ? JAPANESE_TEXTS : ENGLISH_TEXTS;
+            text.append(texts[this.random.nextInt(texts.length)]);
+
+            if (this.random.nextDouble() < 0.25) {
+                String tag = HASHTAGS[this.random.nextInt(HASHTAGS.length)];
+                text.append(' ');
+                int start = text.length();
+                text.append('#').append(tag);
+                hashtags.append("{\"text\":\"").append(tag).append("\",\"indices\":[").append(start).append(',')
+                        .append(text.length()).append("]}");
+            }
+
+            if (this.random.nextDouble() < 0.2) {
+                String code = Long.toString(id % 1000000, 36);
+                text.append(' ');
+                int start = text.length();
+                text.append("http://t.co/").append(code);
+                urls.append("{\"url\":\"http://t.co/").append(code).append("\",\"expanded_url\":\"http://example.com/")
+                        .append(code).append("\",\"display_url\":\"example.com/").append(code)
+                        .append("\",\"indices\":[").append(start).append(',').append(text.length()).append("]}");
+            }
+
+            if (this.random.nextDouble() < this.mediaRatio) {
+                String code = Long.toString(id, 36);
+                text.append(' ');
+                int start = text.length();
+                text.append("http://t.co/m").append(code);
+                media.append("{\"id\":").append(id).append(",\"id_str\":\"").append(id)
+                        .append("\",\"media_url\":\"http://pbs.twimg.com/media/").append(code)
+                        .append(".jpg\",\"media_url_https\":\"https://pbs.twimg.com/media/").append(code)
+                        .append(".jpg\",\"url\":\"http://t.co/m").append(code)
+                        .append("\",\"display_url\":\"pic.twitter.com/").append(code)
+                        .append("\",\"expanded_url\":\"http://twitter.com/user").append(userId).append("/status/")
+                        .append(id).append("/photo/1\",\"type\":\"photo\",\"sizes\":{")
+                        .append("\"thumb\":{\"w\":150,\"h\":150,\"resize\":\"crop\"},")
+                        .append("\"small\":{\"w\":340,\"h\":255,\"resize\":\"fit\"},")
+                        .append("\"medium\":{\"w\":600,\"h\":450,\"resize\":\"fit\"},")
+                        .append("\"large\":{\"w\":1024,\"h\":768,\"resize\":\"fit\"}},")
+                        .append("\"indices\":[").append(start).append(',').append(text.length()).append("]}");
+            }
+        }
+
+        sb.append("{\"created_at\":\"").append(this.dateFormat.format(new Date())).append('"')
+                .append(",\"id\":").append(id).append(",\"id_str\":\"").append(id).append('"')
+                .append(",\"text\":");
+        StatusSerializer.writeString(sb, text.toString());
+        sb.append(",\"source\":\"<a href=\\\"http://example.com/\\\" rel=\\\"nofollow\\\">nanasetter</a>\"")
+                .append(",\"truncated\":false,\"in_reply_to_status_id\":null")
+                .append(",\"favorited\":false,\"retweeted\":false")
+                .append(",\"favorite_count\":").append(this.random.nextInt(10))
+                .append(",\"retweet_count\":").append(this.random.nextInt(10))
+                .append(",\"lang\":\"").append(japanese ? "ja" : "en").append('"')
+                .append(",\"user\":{\"id\":").append(userId).append(",\"id_str\":\"").append(userId)
+                .append("\",\"name\":\"").append(japanese ? "ユーザ " : "User ").append(userId)
+                .append("\",\"screen_name\":\"user").append(userId)
+                .append("\",\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"")
+                .append(",\"profile_image_url\":\"http://pbs.twimg.com/profile_images/").append(userId)
+                .append("/normal.png\",\"followers_count\":").append(userId * 7)
+                .append(",\"friends_count\":").append(userId * 3)
+                .append(",\"statuses_count\":").append(userId * 11)
+                .append(",\"favourites_count\":").append(userId)
+                .append(",\"protected\":false,\"verified\":false}")
+                .append(",\"entities\":{\"hashtags\":[").append(hashtags)
+                .append("],\"symbols\":[],\"urls\":[").append(urls)
+                .append("],\"user_mentions\":[").append(mentions).append(']');
+
+        if (media.length() > 0)
+            sb.append(",\"media\":[").append(media).append(']');
+
+        sb.append('}');
+
+        if (retweeted != null)
+            sb.append(",\"retweeted_status\":").append(retweeted);
+
+        sb.append('}');
+
+        return text.toString();
+    }
+}
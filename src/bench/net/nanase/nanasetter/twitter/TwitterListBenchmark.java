@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.openjdk.jmh.annotations.*;
+import twitter4j.Twitter;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/25.
+ */
+
+/**
+ * アカウント数ごとの TwitterList の追加と検索を計測します。
+ * {@code add} は空のリストにすべてのアカウントを追加する処理 1 回あたりの時間、
+ * {@code getTwitter} は末尾のアカウントと存在しないアカウントの検索時間です。
+ * twitter4j の Twitter オブジェクトは Id の取得時に通信を行うため、Id のみを返すプロキシで代用します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TwitterListBenchmark {
+    @Param({"1", "10", "100"})
+    public int accounts;
+
+    private Twitter[] twitters;
+    private TwitterList twitterList;
+
+    @Setup
+    public void setUp() {
+        this.twitters = new Twitter[this.accounts];
+        this.twitterList = new TwitterList();
+
+        for (int i = 0; i < this.accounts; i++) {
+            this.twitters[i] = createTwitter(i + 1);
+            this.twitterList.add(this.twitters[i]);
+        }
+    }
+
+    @Benchmark
+    public TwitterList add() {
+        TwitterList list = new TwitterList();
+
+        for (Twitter twitter : this.twitters)
+            list.add(twitter);
+
+        return list;
+    }
+
+    @Benchmark
+    public Optional<Twitter> getTwitter() {
+        return this.twitterList.getTwitter(this.accounts);
+    }
+
+    @Benchmark
+    public Optional<Twitter> getTwitterMissing() {
+        return this.twitterList.getTwitter(-1);
+    }
+
+    private static Twitter createTwitter(long id) {
+        return (Twitter) Proxy.newProxyInstance(Twitter.class.getClassLoader(), new Class<?>[]{Twitter.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+
+                        case "equals":
+                            return proxy == args[0];
+
+                        case "hashCode":
+                            return Long.hashCode(id);
+
+                        case "toString":
+                            return "Twitter(" + id + ")";
+
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
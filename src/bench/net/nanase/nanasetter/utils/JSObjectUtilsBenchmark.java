@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import javafx.scene.web.WebEngine;
+import net.nanase.nanasetter.JavaFXBenchmarkSupport;
+import netscape.javascript.JSException;
+import netscape.javascript.JSObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/17.
+ */
+
+/**
+ * JSObjectUtils のメンバアクセスについて、eval による存在確認を行う従来の方法と
+ * getMember の 1 回の呼び出しで取得する方法、および JSON による一括取得を比較します。
+ * JSObject へのアクセスは JavaFX アプリケーションスレッド上で {@link #BATCH} 回ずつまとめて実行されます。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSObjectUtilsBenchmark {
+    private static final int BATCH = 100;
+
+    private static final String[] INFO_MEMBERS = {"name", "author", "version", "siteAddress", "permission"};
+
+    private JSObject jsObject;
+
+    @Setup
+    public void setUp() throws Exception {
+        JavaFXBenchmarkSupport.setupJavaFX();
+
+        this.jsObject = JavaFXBenchmarkSupport.runAndWait(() -> (JSObject) new WebEngine().executeScript(
+                "({ name: 'benchmark', author: 'nanase', version: '0.1', permission: ['rest', 'write'] })"));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int evalHasMember() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH; i++)
+                if (evalHasMember(this.jsObject, "name"))
+                    count++;
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int hasMember() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH; i++)
+                if (JSObjectUtils.hasMember(this.jsObject, "name"))
+                    count++;
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int evalGetPluginInfo() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH / INFO_MEMBERS.length; i++)
+                for (String name : INFO_MEMBERS)
+                    if (evalGetMember(this.jsObject, name, Object.class).isPresent())
+                        count++;
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int getPluginInfo() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH / INFO_MEMBERS.length; i++)
+                for (String name : INFO_MEMBERS)
+                    if (JSObjectUtils.getMember(this.jsObject, name, Object.class).isPresent())
+                        count++;
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int snapshotPluginInfo() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH / INFO_MEMBERS.length; i++) {
+                Map<String, Object> info = JSObjectUtils.snapshotObject(this.jsObject);
+
+                for (String name : INFO_MEMBERS)
+                    if (SnapshotUtils.getMember(info, name, Object.class).isPresent())
+                        count++;
+            }
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int getTypeString() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH; i++)
+                count += JSObjectUtils.getTypeString(this.jsObject, "permission").length();
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long getArray() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            long count = 0;
+
+            for (int i = 0; i < BATCH; i++)
+                count += JSObjectUtils.getArray(this.jsObject, "permission", String.class).count();
+
+            return count;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int getMembersList() throws Exception {
+        return JavaFXBenchmarkSupport.runAndWait(() -> {
+            int count = 0;
+
+            for (int i = 0; i < BATCH; i++)
+                count += (int) JSObjectUtils.getMembersList(this.jsObject).count();
+
+            return count;
+        });
+    }
+
+    // 変更前の JSObjectUtils.hasMember と同等の実装
+    private static boolean evalHasMember(JSObject object, String name) {
+        try {
+            return (boolean) object.eval("typeof this." + name + " !== 'undefined'");
+        } catch (JSException e) {
+            return false;
+        }
+    }
+
+    // 変更前の JSObjectUtils.getMember と同等の実装
+    private static <T> Optional<T> evalGetMember(JSObject object, String name, Class<T> tClass) {
+        if (!evalHasMember(object, name))
+            return Optional.empty();
+
+        Object obj = object.getMember(name);
+
+        if (tClass.isInstance(obj))
+            return Optional.of(tClass.cast(obj));
+
+        return Optional.empty();
+    }
+}
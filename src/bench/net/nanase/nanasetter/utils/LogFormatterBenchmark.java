@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/25.
+ */
+
+/**
+ * LogFormatter によるログレコード 1 件の書式化を計測します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogFormatterBenchmark {
+    private LogFormatter formatter;
+    private LogRecord record;
+    private LogRecord recordWithThrown;
+
+    @Setup
+    public void setUp() {
+        this.formatter = LogFormatter.getInstance();
+
+        this.record = new LogRecord(Level.INFO, "プラグイン 'benchmark' が読み込まれました(バージョン: 0.1).");
+        this.record.setLoggerName("nanasetter.benchmark");
+
+        this.recordWithThrown = new LogRecord(Level.WARNING, "ファイル 'benchmark.js' を初期化中にエラーが発生しました.");
+        this.recordWithThrown.setLoggerName("nanasetter");
+        this.recordWithThrown.setThrown(new IllegalStateException("benchmark"));
+    }
+
+    @Benchmark
+    public String format() {
+        return this.formatter.format(this.record);
+    }
+
+    @Benchmark
+    public String formatWithThrown() {
+        return this.formatter.format(this.recordWithThrown);
+    }
+}
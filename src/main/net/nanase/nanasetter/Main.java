@@ -25,32 +25,100 @@
 package net.nanase.nanasetter;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import net.nanase.nanasetter.utils.StartupTimer;
 import net.nanase.nanasetter.window.main.MainController;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Project: Nanasetter
  * Created by nanase on 14/05/11.
  */
+
+/**
+ * <p>ななせったーのエントリポイントです。
+ * <p>コマンドライン引数に {@code --startup-benchmark[=ファイル名]} を指定すると、起動処理の完了後に
+ * 各段階の所要時間を JSON 形式でファイル (既定では {@value #DEFAULT_STARTUP_BENCHMARK_FILE}) に書き込み、終了します。
+ */
 public class Main extends Application {
+    private static final String STARTUP_BENCHMARK_OPTION = "startup-benchmark";
+
+    private static final String DEFAULT_STARTUP_BENCHMARK_FILE = "startup-timing.json";
+
+    private MainController controller;
+
     public static void main(String[] args) {
+        StartupTimer.getInstance().begin("launch");
         launch(args);
     }
 
     @Override
     public void start(Stage stage) throws IOException {
+        StartupTimer timer = StartupTimer.getInstance();
+        timer.end("launch");
+        timer.setOnComplete(this::onStartupCompleted);
+
+        timer.begin("fxml");
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/window/main.fxml"));
         Parent root = loader.load();
         stage.setScene(new Scene(root));
+        timer.end("fxml");
 
-        MainController controller = loader.getController();
-        controller.setup();
+        this.controller = loader.getController();
+        this.controller.setup();
 
+        timer.begin("show");
         stage.show();
+        timer.end("show");
+    }
+
+    @Override
+    public void stop() {
+        // ウィンドウが閉じられた場合と Platform.exit() による終了の両方で呼び出される
+        if (this.controller != null)
+            this.controller.close();
+    }
+
+    private void onStartupCompleted(StartupTimer timer) {
+        Logger.getLogger("nanasetter").info(String.format("起動しました: %s", timer));
+
+        Path output = this.getStartupBenchmarkFile();
+
+        if (output == null)
+            return;
+
+        try {
+            timer.writeTo(output);
+        } catch (IOException ex) {
+            Logger.getLogger("nanasetter").log(Level.WARNING,
+                    String.format("ファイル '%s' に起動時間を書き込めません.", output), ex);
+        }
+
+        Platform.exit();
+    }
+
+    private Path getStartupBenchmarkFile() {
+        Parameters parameters = this.getParameters();
+        String file = parameters.getNamed().get(STARTUP_BENCHMARK_OPTION);
+
+        if (file != null)
+            return Paths.get(file.isEmpty() ? DEFAULT_STARTUP_BENCHMARK_FILE : file);
+
+        List<String> raw = parameters.getRaw();
+
+        if (raw.contains("--" + STARTUP_BENCHMARK_OPTION))
+            return Paths.get(DEFAULT_STARTUP_BENCHMARK_FILE);
+
+        return null;
     }
 }
@@ -24,15 +24,24 @@
 
 package net.nanase.nanasetter.plugin;
 
+import net.nanase.nanasetter.twitter.DirectMessageStore;
+import net.nanase.nanasetter.twitter.DirectMessageSync;
 import net.nanase.nanasetter.twitter.TwitterList;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
 /**
  * Project: Nanasetter
  * Created by nanase on 14/05/27.
  */
 
 /**
- * ダイレクトメッセージの読み込み、送信、削除などの機能を提供するクラスです。
+ * <p>ダイレクトメッセージの読み込み、送信、削除などの機能を提供するクラスです。
+ * <p>ダイレクトメッセージは {@link #sync(Object, Object)} によって差分のみが取得され、ローカルに保存されます。
+ * 保存されたメッセージは相手のユーザ ID ごとに索引付けされ、API を呼び出さずに参照できます。
+ * メッセージは JSON 文字列として返され、各 ID は文字列で表されます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
@@ -50,6 +59,76 @@ public class AccessDirectMessagePorter extends Porter {
         super(twitterList, pluginHost);
     }
 
+    /**
+     * 新しいダイレクトメッセージを取得して保存します。このメソッドは取得の完了を待たずに直ちに戻ります。
+     * 取得が完了したとき {@code callback(error, count)} が呼び出されます。count は新しく保存されたメッセージの数です。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param callback  取得が完了したときに呼び出される関数。null を指定できます。
+     */
+    public void sync(Object accountId, Object callback) {
+        DirectMessageSync directMessageSync = this.getDirectMessageSync();
+        long id = toId(accountId);
+
+        this.supplyAsync(() -> directMessageSync.sync(id, DirectMessageSync.createSource(this.getTwitter(id))),
+                "ダイレクトメッセージを同期できませんでした: %s", callback);
+    }
+
+    /**
+     * 保存されたダイレクトメッセージの相手のユーザ ID を、最後のメッセージが新しい順に取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return ユーザ ID の文字列を要素とする JSON 配列。
+     */
+    public String getPartners(Object accountId) {
+        List<Long> partners;
+
+        try {
+            partners = this.getDirectMessageSync().getStore().getPartners(toId(accountId));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        StringBuilder sb = new StringBuilder(partners.size() * 24 + 2).append('[');
+
+        for (int i = 0; i < partners.size(); i++)
+            sb.append(i == 0 ? "\"" : ",\"").append(partners.get(i)).append('"');
+
+        return sb.append(']').toString();
+    }
+
+    /**
+     * 保存された相手との会話を新しい順に取得します。
+     * 続きを取得するには、取得した最も古いメッセージの ID から 1 を引いた値を maxId に指定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param partnerId 相手のユーザ ID。
+     * @param maxId     取得するメッセージ ID の上限 (この値を含む)。null または 0 の場合は最新のメッセージから取得します。
+     * @param count     取得する最大の件数。
+     * @return メッセージを要素とする JSON 配列。
+     */
+    public String getConversation(Object accountId, Object partnerId, Object maxId, int count) {
+        List<DirectMessageStore.Message> messages;
+
+        try {
+            messages = this.getDirectMessageSync().getStore().getConversation(
+                    toId(accountId), toId(partnerId), maxId == null ? 0L : toId(maxId), count);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        StringBuilder sb = new StringBuilder(messages.size() * 160 + 2).append('[');
+
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+
+            messages.get(i).writeJSON(sb);
+        }
+
+        return sb.append(']').toString();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -57,4 +136,13 @@ public class AccessDirectMessagePorter extends Porter {
     protected PluginPermission getPermission() {
         return PluginPermission.ACCESS_DIRECT_MESSAGE;
     }
+
+    private DirectMessageSync getDirectMessageSync() {
+        DirectMessageSync directMessageSync = this.pluginHost.getServices().getDirectMessageSync();
+
+        if (directMessageSync == null)
+            throw new IllegalStateException("ダイレクトメッセージの同期が利用できません.");
+
+        return directMessageSync;
+    }
 }
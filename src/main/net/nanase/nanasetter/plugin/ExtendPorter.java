@@ -24,7 +24,13 @@
 
 package net.nanase.nanasetter.plugin;
 
+import net.nanase.nanasetter.twitter.StatusSerializer;
+import net.nanase.nanasetter.twitter.TrendTracker;
 import net.nanase.nanasetter.twitter.TwitterList;
+import net.nanase.nanasetter.twitter.URLExpander;
+
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Project: Nanasetter
@@ -32,7 +38,10 @@ import net.nanase.nanasetter.twitter.TwitterList;
  */
 
 /**
- * レートリミットの取得、ユーザ提案の取得などの機能を提供するクラスです。
+ * <p>レートリミットの取得、ユーザ提案の取得などの機能を提供するクラスです。
+ * <p>受信したツイートに含まれるハッシュタグ、URL およびメンションは {@link TrendTracker} によってアカウントごとに集計され、
+ * {@link #getTrends(Object, String, int)} で直近に多く出現した項目を取得できます。
+ * <p>短縮 URL は {@link URLExpander} によって展開され、その結果はキャッシュされます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
@@ -50,6 +59,58 @@ public class ExtendPorter extends Porter {
         super(twitterList, pluginHost);
     }
 
+    /**
+     * 直近に受信したツイートで多く出現した項目を、出現数の降順で取得します。出現数は概算された値です。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param category  "hashtag"、"url" または "mention"。
+     * @param count     取得する最大の件数。
+     * @return {@code key} と {@code count} を持つオブジェクトを要素とする JSON 配列。
+     * mention の key はユーザ ID の文字列です。
+     */
+    public String getTrends(Object accountId, String category, int count) {
+        if (category == null)
+            throw new IllegalArgumentException();
+
+        List<TrendTracker.Trend> trends = this.getTrendTracker().getTop(toId(accountId),
+                TrendTracker.Category.valueOf(category.toUpperCase(Locale.ROOT)), count);
+        StringBuilder sb = new StringBuilder(trends.size() * 48 + 2).append('[');
+
+        for (int i = 0; i < trends.size(); i++) {
+            sb.append(i == 0 ? "{\"key\":" : ",{\"key\":");
+            StatusSerializer.writeString(sb, trends.get(i).getKey());
+            sb.append(",\"count\":").append(trends.get(i).getCount()).append('}');
+        }
+
+        return sb.append(']').toString();
+    }
+
+    /**
+     * キャッシュから展開された URL を取得します。ネットワークへの接続は行いません。
+     *
+     * @param url 展開する URL。
+     * @return 展開された URL。キャッシュにない場合は null。
+     */
+    public String getExpandedURL(String url) {
+        return this.getURLExpander().getCached(url);
+    }
+
+    /**
+     * URL を展開します。このメソッドは展開の完了を待たずに直ちに戻ります。
+     * 展開が完了したとき {@code callback(error, expandedUrl)} が呼び出されます。
+     * キャッシュにある URL の場合、callback は直ちに呼び出されます。
+     *
+     * @param url      展開する URL。
+     * @param callback 展開が完了したときに呼び出される関数。
+     */
+    public void expandURL(String url, Object callback) {
+        if (url == null || callback == null)
+            throw new IllegalArgumentException();
+
+        this.getURLExpander().expand(url).whenComplete((expanded, ex) ->
+                invokeCallback(callback, toErrorMessage(ex), expanded));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -57,4 +118,22 @@ public class ExtendPorter extends Porter {
     protected PluginPermission getPermission() {
         return PluginPermission.EXTEND;
     }
+
+    private TrendTracker getTrendTracker() {
+        TrendTracker trendTracker = this.pluginHost.getServices().getTrendTracker();
+
+        if (trendTracker == null)
+            throw new IllegalStateException("ツイートの集計が利用できません.");
+
+        return trendTracker;
+    }
+
+    private URLExpander getURLExpander() {
+        URLExpander urlExpander = this.pluginHost.getServices().getURLExpander();
+
+        if (urlExpander == null)
+            throw new IllegalStateException("URL の展開が利用できません.");
+
+        return urlExpander;
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.plugin;
+
+import javax.script.Invocable;
+import javax.script.ScriptException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/16.
+ */
+
+/**
+ * ヘッドレスランタイム上で評価されたプラグインを表します。
+ * プラグインに対する呼び出しはワーカースレッド上で、呼び出された順に一つずつ実行されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class HeadlessPlugin implements Executor {
+    private static final int MAX_TASKS_PER_TURN = 64;
+
+    private final Invocable invocable;
+
+    private final Object pluginObject;
+
+    private final Map<String, Object> info;
+
+    private final Executor workers;
+
+    private final Logger logger;
+
+    private final Queue<Runnable> tasks;
+
+    private final AtomicBoolean scheduled;
+
+    HeadlessPlugin(Invocable invocable, Object pluginObject, Map<?, ?> info, Executor workers, Logger logger) {
+        this.invocable = invocable;
+        this.pluginObject = pluginObject;
+        this.workers = workers;
+        this.logger = logger;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+
+        if (info == null) {
+            this.info = null;
+        } else {
+            Map<String, Object> copy = new HashMap<>();
+            info.forEach((k, v) -> copy.put(String.valueOf(k), v));
+            this.info = Collections.unmodifiableMap(copy);
+        }
+    }
+
+    /**
+     * プラグインに定義された info オブジェクトの内容を取得します。
+     *
+     * @return info オブジェクトの内容を格納した Map。info が定義されていない場合は null。
+     */
+    public Map<String, Object> getInfo() {
+        return this.info;
+    }
+
+    /**
+     * プラグインに指定された名前の関数が定義されているかの真偽値を取得します。
+     * このメソッドは呼び出し元のスレッドで実行されるため、{@link #invoke} を呼び出す前にのみ使用してください。
+     *
+     * @param name 関数名。
+     * @return 関数が定義されているとき true、それ以外のとき false。
+     */
+    public boolean hasFunction(String name) {
+        if (name == null)
+            return false;
+
+        try {
+            return Boolean.TRUE.equals(this.invocable.invokeFunction("__nanasetter_hasFunction", this.pluginObject, name));
+        } catch (ScriptException | NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * プラグインの関数をワーカースレッド上で呼び出します。
+     *
+     * @param name 関数名。
+     * @param args 関数に渡される引数。
+     * @return 関数の戻り値を受け取る {@code CompletableFuture<Object>} オブジェクト。
+     */
+    public CompletableFuture<Object> invoke(String name, Object... args) {
+        if (name == null)
+            throw new IllegalArgumentException();
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+
+        this.execute(() -> {
+            try {
+                future.complete(this.invocable.invokeMethod(this.pluginObject, name, args));
+            } catch (ScriptException | NoSuchMethodException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * 処理をワーカースレッド上で、プラグインに対する他の呼び出しと逐次的に実行します。
+     * プラグインから渡されたコールバック関数はこのメソッドを通して呼び出されます。
+     *
+     * @param command 実行される処理。
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (command == null)
+            throw new IllegalArgumentException();
+
+        this.tasks.add(command);
+        this.schedule();
+    }
+
+    private void schedule() {
+        if (!this.tasks.isEmpty() && this.scheduled.compareAndSet(false, true))
+            this.workers.execute(this::drain);
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+
+            // 他のプラグインがワーカーを得られるよう、一度に実行するタスク数を制限する
+            for (int i = 0; i < MAX_TASKS_PER_TURN && (task = this.tasks.poll()) != null; i++)
+                task.run();
+        } catch (Throwable ex) {
+            this.logger.warning(String.format("ヘッドレスプラグインの実行中にエラーが発生しました: %s", ex.getMessage()));
+        } finally {
+            this.scheduled.set(false);
+            this.schedule();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.plugin;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/16.
+ */
+
+/**
+ * <p>DOM を必要としないプラグインを、WebView とは別の JavaScript エンジン (Nashorn) 上で実行するランタイムです。
+ * <p>プラグインはそれぞれ独立したエンジンを持ち、共有されたワーカースレッドのプール上で実行されます。
+ * 一つのプラグインに対する呼び出しは常に逐次的に実行されるため、プラグイン側で同期を考慮する必要はありません。
+ * <p>ヘッドレスランタイムで実行されるプラグインは、plugin.js と同じディレクトリのマニフェスト {@code plugin.json} に
+ * {@code "dom": false} を宣言する必要があります。スクリプトはどちらか一方のランタイムでのみ評価されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class HeadlessPluginRuntime {
+    private static final String ENGINE_NAME = "nashorn";
+
+    private static final String BOOTSTRAP_SCRIPT =
+            "function __nanasetter_hasFunction(plugin, name) {" +
+                    "  return plugin !== null && typeof plugin === 'object' && typeof plugin[name] === 'function';" +
+                    "}" +
+                    "function __nanasetter_getInfo(plugin) {" +
+                    "  if (plugin === null || typeof plugin !== 'object' ||" +
+                    "      plugin.info === null || typeof plugin.info !== 'object') return null;" +
+                    "  var map = new java.util.HashMap();" +
+                    "  Object.keys(plugin.info).forEach(function (key) {" +
+                    "    var value = plugin.info[key];" +
+                    "    map.put(key, Array.isArray(value) ? Java.to(value, 'java.util.List') : value);" +
+                    "  });" +
+                    "  return map;" +
+                    "}";
+
+    private final ScriptEngineManager engineManager;
+
+    private final ExecutorService workers;
+
+    private final Logger logger;
+
+    /**
+     * ワーカースレッド数とロガーを指定して新しい HeadlessPluginRuntime クラスのインスタンスを初期化します。
+     *
+     * @param threads ワーカースレッドの数。
+     * @param logger  ランタイムのログを出力する Logger オブジェクト。
+     */
+    public HeadlessPluginRuntime(int threads, Logger logger) {
+        if (threads < 1)
+            throw new IllegalArgumentException();
+
+        if (logger == null)
+            throw new IllegalArgumentException();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.engineManager = new ScriptEngineManager();
+        this.logger = logger;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "nanasetter-plugin-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 実行環境でヘッドレスランタイムが利用可能かの真偽値を取得します。
+     *
+     * @return JavaScript エンジンが利用可能なとき true、それ以外のとき false。
+     */
+    public boolean isAvailable() {
+        return this.engineManager.getEngineFactories().stream()
+                .anyMatch(f -> f.getNames().contains(ENGINE_NAME));
+    }
+
+    /**
+     * プラグインのスクリプトファイルを新しいエンジン上で評価し、HeadlessPlugin オブジェクトを生成します。
+     *
+     * @param pluginFile プラグインのスクリプトファイル。
+     * @return 評価されたプラグインを表す HeadlessPlugin オブジェクト。
+     * @throws IOException     スクリプトファイルが読み込めない場合に発生します。
+     * @throws ScriptException スクリプトの評価中にエラーが発生した場合に発生します。
+     */
+    public HeadlessPlugin load(Path pluginFile) throws IOException, ScriptException {
+        if (pluginFile == null)
+            throw new IllegalArgumentException();
+
+        ScriptEngine engine = this.engineManager.getEngineByName(ENGINE_NAME);
+
+        if (engine == null)
+            throw new IllegalStateException("JavaScript エンジンが利用できません.");
+
+        engine.eval(BOOTSTRAP_SCRIPT);
+
+        Object pluginObject;
+
+        try (BufferedReader reader = Files.newBufferedReader(pluginFile, StandardCharsets.UTF_8)) {
+            pluginObject = engine.eval(reader);
+        }
+
+        Invocable invocable = (Invocable) engine;
+        Map<?, ?> info;
+
+        try {
+            info = (Map<?, ?>) invocable.invokeFunction("__nanasetter_getInfo", pluginObject);
+        } catch (NoSuchMethodException ex) {
+            throw new ScriptException(ex);
+        }
+
+        return new HeadlessPlugin(invocable, pluginObject, info, this.workers, this.logger);
+    }
+
+    /**
+     * ワーカースレッドを停止します。実行中の呼び出しは完了まで継続されます。
+     */
+    public void shutdown() {
+        this.workers.shutdown();
+    }
+}
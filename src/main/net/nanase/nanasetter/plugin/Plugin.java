@@ -25,12 +25,14 @@
 package net.nanase.nanasetter.plugin;
 
 import net.nanase.nanasetter.utils.JSObjectUtils;
+import net.nanase.nanasetter.utils.SnapshotUtils;
 import net.nanase.nanasetter.utils.Version;
 import netscape.javascript.JSObject;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.EnumSet;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.regex.Pattern;
 
@@ -62,11 +64,11 @@ public class Plugin {
 
     private final EnumSet<PluginPermission> permission;
 
-    private Plugin(String name,
-                   String author,
-                   URL siteAddress,
-                   Version version,
-                   EnumSet<PluginPermission> permission) {
+    Plugin(String name,
+           String author,
+           URL siteAddress,
+           Version version,
+           EnumSet<PluginPermission> permission) {
         this.name = name;
         this.author = author;
         this.siteAddress = siteAddress;
@@ -76,6 +78,7 @@ public class Plugin {
 
     /**
      * 指定された JSObject オブジェクトから Plugin クラスのインスタンスを生成します。
+     * JSObject の内容は {@link JSObjectUtils#snapshotObject} により一度に取得されます。
      *
      * @param jsObject 読み込まれる JSObject オブジェクト。
      * @return Plugin オブジェクト。
@@ -84,27 +87,44 @@ public class Plugin {
      * @throws IllegalArgumentException 指定された JSObject オブジェクトに不正な値が格納されていた場合に発生します。
      */
     public static Plugin create(JSObject jsObject) throws NoSuchElementException, IllegalArgumentException {
+        return createFromMap(JSObjectUtils.snapshotObject(jsObject));
+    }
+
+    /**
+     * 指定された Map オブジェクトから Plugin クラスのインスタンスを生成します。
+     * ヘッドレスランタイムなど、JSObject 以外の形式でプラグインの情報が与えられる場合に使用されます。
+     *
+     * @param map 読み込まれる Map オブジェクト。
+     * @return Plugin オブジェクト。
+     * @throws NoSuchElementException   指定された Map オブジェクトに、必要なプロパティが格納されていない、
+     *                                  または読み取れない場合に発生します。
+     * @throws IllegalArgumentException 指定された Map オブジェクトに不正な値が格納されていた場合に発生します。
+     */
+    public static Plugin createFromMap(Map<String, ?> map) throws NoSuchElementException, IllegalArgumentException {
+        if (map == null)
+            throw new IllegalArgumentException();
+
         String name;
         String author;
         URL siteAddress;
         Version version;
         EnumSet<PluginPermission> permissionFlag;
 
-        name = JSObjectUtils.getMember(jsObject, "name", String.class).get();
-        author = JSObjectUtils.getMember(jsObject, "author", String.class).get();
-        version = Version.parse(JSObjectUtils.getMember(jsObject, "version", String.class).get());
+        name = SnapshotUtils.getMember(map, "name", String.class).get();
+        author = SnapshotUtils.getMember(map, "author", String.class).get();
+        version = Version.parse(SnapshotUtils.getMember(map, "version", String.class).get());
 
         if (!checkNameString(name))
             throw new IllegalArgumentException(String.format("'%s' は無効なプラグイン名です。", name));
 
         try {
-            String siteAddressString = JSObjectUtils.getMember(jsObject, "siteAddress", String.class).orElse(null);
+            String siteAddressString = SnapshotUtils.getMember(map, "siteAddress", String.class).orElse(null);
             siteAddress = (siteAddressString == null) ? null : new URL(siteAddressString);
         } catch (MalformedURLException ex) {
             throw new IllegalArgumentException("サイトアドレスの生成に失敗しました.", ex);
         }
 
-        permissionFlag = PluginPermission.parse(jsObject);
+        permissionFlag = PluginPermission.parseFromMap(map);
 
         return new Plugin(name, author, siteAddress, version, permissionFlag);
     }
@@ -26,8 +26,11 @@ package net.nanase.nanasetter.plugin;
 
 import net.nanase.nanasetter.twitter.TwitterList;
 import net.nanase.nanasetter.utils.LoggerWrapper;
+import net.nanase.nanasetter.utils.RateLimitFilter;
 import net.nanase.nanasetter.window.dialog.Dialog;
 
+import java.util.concurrent.Executor;
+import java.util.logging.Filter;
 import java.util.logging.Logger;
 
 /**
@@ -36,7 +39,10 @@ import java.util.logging.Logger;
  */
 
 /**
- * プラグインがななせったーにアクセスするための機能を提供します。
+ * <p>プラグインがななせったーにアクセスするための機能を提供します。
+ * <p>各ポーターオブジェクトは初回の取得時に生成され、以降は同じオブジェクトが返されます。
+ * <p>プラグインのロガーには {@link RateLimitFilter} が設定され、1 つのプラグインが大量のログを出力しても
+ * 他のログの出力が妨げられないように制限されます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
@@ -46,6 +52,16 @@ public class PluginHost {
     private final LoggerWrapper logger;
     private final TwitterList twitterList;
     private final Dialog dialog;
+    private final PluginServices services;
+    private final Executor callbackExecutor;
+
+    private final PorterHolder<ReadRESTPorter> readREST;
+    private final PorterHolder<WritePorter> write;
+    private final PorterHolder<ReadStreamingPorter> readStreaming;
+    private final PorterHolder<ExtendPorter> extend;
+    private final PorterHolder<ConfigurePorter> configure;
+    private final PorterHolder<AccessDirectMessagePorter> accessDirectMessage;
+    private final PorterHolder<RiskPorter> risk;
 
     /**
      * プラグインなどのパラメータを元に、新しい PluginHost クラスのインスタンスを初期化します。
@@ -55,6 +71,33 @@ public class PluginHost {
      * @param dialog      Dialog オブジェクト。
      */
     public PluginHost(Plugin plugin, TwitterList twitterList, Dialog dialog) {
+        this(plugin, twitterList, dialog, new PluginServices());
+    }
+
+    /**
+     * プラグインなどのパラメータと共有される機能を元に、新しい PluginHost クラスのインスタンスを初期化します。
+     *
+     * @param plugin      プラグイン。
+     * @param twitterList Twitter オブジェクトが格納された TwitterList オブジェクト。
+     * @param dialog      Dialog オブジェクト。
+     * @param services    すべてのプラグインで共有される機能を保持する PluginServices オブジェクト。
+     */
+    public PluginHost(Plugin plugin, TwitterList twitterList, Dialog dialog, PluginServices services) {
+        this(plugin, twitterList, dialog, services, Runnable::run);
+    }
+
+    /**
+     * プラグインなどのパラメータと、スクリプトのコールバック関数を実行する Executor を元に、
+     * 新しい PluginHost クラスのインスタンスを初期化します。
+     *
+     * @param plugin           プラグイン。
+     * @param twitterList      Twitter オブジェクトが格納された TwitterList オブジェクト。
+     * @param dialog           Dialog オブジェクト。
+     * @param services         すべてのプラグインで共有される機能を保持する PluginServices オブジェクト。
+     * @param callbackExecutor ヘッドレスランタイムの関数をコールバックとして呼び出す Executor オブジェクト。
+     */
+    public PluginHost(Plugin plugin, TwitterList twitterList, Dialog dialog, PluginServices services,
+                      Executor callbackExecutor) {
         if (plugin == null)
             throw new IllegalArgumentException();
 
@@ -64,10 +107,26 @@ public class PluginHost {
         if (dialog == null)
             throw new IllegalArgumentException();
 
+        if (services == null)
+            throw new IllegalArgumentException();
+
+        if (callbackExecutor == null)
+            throw new IllegalArgumentException();
+
         this.plugin = plugin;
-        this.logger = new LoggerWrapper(Logger.getLogger("nanasetter." + plugin.getName()));
+        this.logger = new LoggerWrapper(createPluginLogger(plugin));
         this.twitterList = twitterList;
-        this.dialog = dialog;
+        this.dialog = dialog.withCallbackExecutor(callbackExecutor);
+        this.services = services;
+        this.callbackExecutor = callbackExecutor;
+
+        this.readREST = new PorterHolder<>(() -> new ReadRESTPorter(twitterList, this));
+        this.write = new PorterHolder<>(() -> new WritePorter(twitterList, this));
+        this.readStreaming = new PorterHolder<>(() -> new ReadStreamingPorter(twitterList, this));
+        this.extend = new PorterHolder<>(() -> new ExtendPorter(twitterList, this));
+        this.configure = new PorterHolder<>(() -> new ConfigurePorter(twitterList, this));
+        this.accessDirectMessage = new PorterHolder<>(() -> new AccessDirectMessagePorter(twitterList, this));
+        this.risk = new PorterHolder<>(() -> new RiskPorter(twitterList, this));
     }
 
     /**
@@ -77,7 +136,7 @@ public class PluginHost {
      * @throws UnsatisfiedPermissionException プラグインで指定されていないパーミッションが要求されました。
      */
     public ReadRESTPorter getReadREST() throws UnsatisfiedPermissionException {
-        return new ReadRESTPorter(this.twitterList, this);
+        return this.readREST.get();
     }
 
     /**
@@ -87,7 +146,7 @@ public class PluginHost {
      * @throws UnsatisfiedPermissionException プラグインで指定されていないパーミッションが要求されました。
      */
     public WritePorter getWrite() throws UnsatisfiedPermissionException {
-        return new WritePorter(this.twitterList, this);
+        return this.write.get();
     }
 
     /**
@@ -97,7 +156,7 @@ public class PluginHost {
      * @throws UnsatisfiedPermissionException プラグインで指定されていないパーミッションが要求されました。
      */
     public ReadStreamingPorter getReadStreaming() throws UnsatisfiedPermissionException {
-        return new ReadStreamingPorter(this.twitterList, this);
+        return this.readStreaming.get();
     }
 
     /**
@@ -107,7 +166,7 @@ public class PluginHost {
      * @throws UnsatisfiedPermissionException プラグインで指定されていないパーミッションが要求されました。
      */
     public ExtendPorter getExtend() throws UnsatisfiedPermissionException {
-        return new ExtendPorter(this.twitterList, this);
+        return this.extend.get();
     }
 
     /**
@@ -117,7 +176,7 @@ public class PluginHost {
      * @throws UnsatisfiedPermissionException プラグインで指定されていないパーミッションが要求されました。
      */
     public ConfigurePorter getConfigure() throws UnsatisfiedPermissionException {
-        return new ConfigurePorter(this.twitterList, this);
+        return this.configure.get();
     }
 
     /**
@@ -127,7 +186,7 @@ public class PluginHost {
      * @throws UnsatisfiedPermissionException プラグインで指定されていないパーミッションが要求されました。
      */
     public AccessDirectMessagePorter getAccessDirectMessage() throws UnsatisfiedPermissionException {
-        return new AccessDirectMessagePorter(this.twitterList, this);
+        return this.accessDirectMessage.get();
     }
 
     /**
@@ -137,7 +196,7 @@ public class PluginHost {
      * @throws UnsatisfiedPermissionException プラグインで指定されていないパーミッションが要求されました。
      */
     public RiskPorter getRisk() throws UnsatisfiedPermissionException {
-        return new RiskPorter(this.twitterList, this);
+        return this.risk.get();
     }
 
     /**
@@ -149,6 +208,24 @@ public class PluginHost {
         return this.dialog;
     }
 
+    /**
+     * すべてのプラグインで共有される機能を取得します。
+     *
+     * @return PluginServices オブジェクト。
+     */
+    PluginServices getServices() {
+        return this.services;
+    }
+
+    /**
+     * ヘッドレスランタイムの関数をコールバックとして呼び出す Executor を取得します。
+     *
+     * @return Executor オブジェクト。
+     */
+    Executor getCallbackExecutor() {
+        return this.callbackExecutor;
+    }
+
     /**
      * Plugin オブジェクトを取得します。
      *
@@ -175,4 +252,65 @@ public class PluginHost {
     public TwitterList getTwitterList() {
         return this.twitterList;
     }
+
+    /**
+     * プラグインの読み込みを解除するときに呼び出され、プラグインのロガーに設定したフィルタを停止します。
+     */
+    public void close() {
+        Logger logger = Logger.getLogger("nanasetter." + this.plugin.getName());
+
+        synchronized (logger) {
+            Filter filter = logger.getFilter();
+
+            if (filter instanceof RateLimitFilter) {
+                ((RateLimitFilter) filter).close();
+                logger.setFilter(null);
+            }
+        }
+    }
+
+    private static Logger createPluginLogger(Plugin plugin) {
+        Logger logger = Logger.getLogger("nanasetter." + plugin.getName());
+
+        synchronized (logger) {
+            if (logger.getFilter() == null)
+                logger.setFilter(new RateLimitFilter(logger));
+        }
+
+        return logger;
+    }
+
+    @FunctionalInterface
+    private interface PorterFactory<T extends Porter> {
+        T create() throws UnsatisfiedPermissionException;
+    }
+
+    /**
+     * ポーターオブジェクトを初回の取得時に一度だけ生成して保持します。
+     *
+     * @param <T> ポーターの型。
+     */
+    private static final class PorterHolder<T extends Porter> {
+        private final PorterFactory<T> factory;
+        private volatile T porter;
+
+        PorterHolder(PorterFactory<T> factory) {
+            this.factory = factory;
+        }
+
+        T get() throws UnsatisfiedPermissionException {
+            T porter = this.porter;
+
+            if (porter == null) {
+                synchronized (this) {
+                    porter = this.porter;
+
+                    if (porter == null)
+                        this.porter = porter = this.factory.create();
+                }
+            }
+
+            return porter;
+        }
+    }
 }
@@ -26,17 +26,21 @@ package net.nanase.nanasetter.plugin;
 
 import javafx.scene.web.WebEngine;
 import net.nanase.nanasetter.twitter.TwitterList;
+import net.nanase.nanasetter.utils.JSONParser;
 import net.nanase.nanasetter.utils.JSObjectUtils;
 import net.nanase.nanasetter.window.dialog.Dialog;
 import netscape.javascript.JSException;
 import netscape.javascript.JSObject;
 
+import javax.script.ScriptException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
@@ -46,13 +50,22 @@ import java.util.stream.Stream;
  */
 
 public class PluginLoader {
+    private static final String MANIFEST_FILE_NAME = "plugin.json";
+
     private final List<PluginHost> pluginHosts;
 
     private final Logger logger;
 
-    public PluginLoader(Dialog dialog, Logger logger) {
+    private final HeadlessPluginRuntime headlessRuntime;
+
+    private final PluginServices services;
+
+    public PluginLoader(Dialog dialog, Logger logger, PluginServices services) {
         this.pluginHosts = new ArrayList<>();
         this.logger = logger;
+        this.services = services;
+        this.headlessRuntime = new HeadlessPluginRuntime(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2), logger);
     }
 
     public Logger getLogger() {
@@ -63,6 +76,15 @@ public class PluginLoader {
         return this.pluginHosts;
     }
 
+    public HeadlessPluginRuntime getHeadlessRuntime() {
+        return this.headlessRuntime;
+    }
+
+    public void shutdown() {
+        this.pluginHosts.forEach(PluginHost::close);
+        this.headlessRuntime.shutdown();
+    }
+
     public void loadPlugin(String directory, WebEngine webEngine, Dialog dialog, TwitterList twitterList) {
         Path path = Paths.get(directory);
 
@@ -73,42 +95,121 @@ public class PluginLoader {
                     .map(p -> p.resolve("plugin.js"))
                     .filter(Files::exists)
                     .forEach(f -> {
-                        JSObject jsPlugin = loadPlugin(f, webEngine);
+                        if (this.isHeadless(f))
+                            this.loadHeadlessPlugin(f, dialog, twitterList);
+                        else
+                            this.loadWebPlugin(f, webEngine, dialog, twitterList);
+                    });
+        } catch (IOException ex) {
+            this.logger.warning(ex.getMessage());
+        }
 
-                        if (jsPlugin == null)
-                            return;
+        this.logger.info("プラグインのロードが完了しました.");
+    }
+
+    private void loadWebPlugin(Path f, WebEngine webEngine, Dialog dialog, TwitterList twitterList) {
+        JSObject jsPlugin = loadPlugin(f, webEngine);
 
-                        if (!JSObjectUtils.hasMember(jsPlugin, "initialize")) {
-                            this.logger.warning(String.format("ファイル '%s' が読み込まれましたが、必要なメソッドが定義されていません.", f.toString()));
-                            return;
-                        }
+        if (jsPlugin == null)
+            return;
 
-                        try {
-                            JSObject info = JSObjectUtils.getMember(jsPlugin, "info", JSObject.class).orElse(null);
-                            Plugin plugin = Plugin.create(info);
+        if (!JSObjectUtils.hasMember(jsPlugin, "initialize")) {
+            this.logger.warning(String.format("ファイル '%s' が読み込まれましたが、必要なメソッドが定義されていません.", f.toString()));
+            return;
+        }
 
-                            if (this.existsPluginByName(plugin.getName())) {
-                                this.logger.warning(String.format("プラグイン '%s'(バージョン: %s) が読み込まれましたが、既に読み込まれています.",
-                                        plugin.getName(), plugin.getVersion()));
-                                return;
-                            }
+        try {
+            JSObject info = JSObjectUtils.getMember(jsPlugin, "info", JSObject.class).orElse(null);
+            Plugin plugin = Plugin.create(info);
 
-                            PluginHost host = new PluginHost(plugin, twitterList, dialog);
+            if (this.existsPluginByName(plugin.getName())) {
+                this.logger.warning(String.format("プラグイン '%s'(バージョン: %s) が読み込まれましたが、既に読み込まれています.",
+                        plugin.getName(), plugin.getVersion()));
+                return;
+            }
 
-                            this.pluginHosts.add(host);
-                            this.logger.info(String.format("プラグイン '%s' が読み込まれました(バージョン: %s).", plugin.getName(), plugin.getVersion()));
+            PluginHost host = new PluginHost(plugin, twitterList, dialog, this.services);
 
-                            jsPlugin.call("initialize", new Object[]{host});
-                        } catch (Exception ex) {
-                            this.logger.warning(String.format("ファイル '%s' を初期化中にエラーが発生しました.", f.toString()));
-                            this.logger.warning(ex.getMessage());
-                        }
-                    });
-        } catch (IOException ex) {
+            this.pluginHosts.add(host);
+            this.logger.info(String.format("プラグイン '%s' が読み込まれました(バージョン: %s).", plugin.getName(), plugin.getVersion()));
+
+            jsPlugin.call("initialize", new Object[]{host});
+        } catch (Exception ex) {
+            this.logger.warning(String.format("ファイル '%s' を初期化中にエラーが発生しました.", f.toString()));
             this.logger.warning(ex.getMessage());
         }
+    }
 
-        this.logger.info("プラグインのロードが完了しました.");
+    private void loadHeadlessPlugin(Path f, Dialog dialog, TwitterList twitterList) {
+        HeadlessPlugin headlessPlugin;
+
+        try {
+            headlessPlugin = this.headlessRuntime.load(f);
+        } catch (IOException | ScriptException | RuntimeException ex) {
+            this.logger.warning(String.format("ファイル '%s' をヘッドレスランタイムで読み込み中にエラーが発生しました.", f.toString()));
+            this.logger.warning(ex.getMessage());
+            return;
+        }
+
+        if (!headlessPlugin.hasFunction("initialize")) {
+            this.logger.warning(String.format("ファイル '%s' が読み込まれましたが、必要なメソッドが定義されていません.", f.toString()));
+            return;
+        }
+
+        try {
+            Plugin plugin = Plugin.createFromMap(headlessPlugin.getInfo());
+
+            if (this.existsPluginByName(plugin.getName())) {
+                this.logger.warning(String.format("プラグイン '%s'(バージョン: %s) が読み込まれましたが、既に読み込まれています.",
+                        plugin.getName(), plugin.getVersion()));
+                return;
+            }
+
+            PluginHost host = new PluginHost(plugin, twitterList, dialog, this.services, headlessPlugin);
+
+            this.pluginHosts.add(host);
+            this.logger.info(String.format("プラグイン '%s' がヘッドレスランタイムで読み込まれました(バージョン: %s).",
+                    plugin.getName(), plugin.getVersion()));
+
+            headlessPlugin.invoke("initialize", host).whenComplete((r, ex) -> {
+                if (ex != null) {
+                    this.logger.warning(String.format("ファイル '%s' を初期化中にエラーが発生しました.", f.toString()));
+                    this.logger.warning(ex.getMessage());
+                }
+            });
+        } catch (Exception ex) {
+            this.logger.warning(String.format("ファイル '%s' を初期化中にエラーが発生しました.", f.toString()));
+            this.logger.warning(ex.getMessage());
+        }
+    }
+
+    // プラグインのディレクトリにマニフェスト plugin.json があり、"dom": false が宣言されている場合のみヘッドレスランタイムを使う
+    private boolean isHeadless(Path pluginFile) {
+        Path manifestFile = pluginFile.resolveSibling(MANIFEST_FILE_NAME);
+
+        if (!Files.exists(manifestFile))
+            return false;
+
+        Object manifest;
+
+        try {
+            manifest = JSONParser.parse(new String(Files.readAllBytes(manifestFile), StandardCharsets.UTF_8));
+        } catch (IOException | IllegalArgumentException ex) {
+            this.logger.warning(String.format("マニフェスト '%s' は読み込めません.", manifestFile.toString()));
+            this.logger.warning(ex.getMessage());
+            return false;
+        }
+
+        if (!(manifest instanceof Map) || !Boolean.FALSE.equals(((Map<?, ?>) manifest).get("dom")))
+            return false;
+
+        if (!this.headlessRuntime.isAvailable()) {
+            this.logger.warning(String.format("ファイル '%s' はヘッドレスランタイムを要求していますが、JavaScript エンジンが利用できません.",
+                    pluginFile.toString()));
+            return false;
+        }
+
+        return true;
     }
 
     private boolean existsPluginByName(String pluginName) {
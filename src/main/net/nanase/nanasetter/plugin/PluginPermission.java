@@ -25,10 +25,12 @@
 package net.nanase.nanasetter.plugin;
 
 import net.nanase.nanasetter.utils.JSObjectUtils;
+import net.nanase.nanasetter.utils.SnapshotUtils;
 import netscape.javascript.JSObject;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -85,7 +87,7 @@ public enum PluginPermission {
 
     /**
      * リスク権限。
-     * ブロック、フォローとフォロー解除などが可能です。
+     * ブロック、フォローとフォロー解除、ローカルファイルのアップロードなどが可能です。
      */
     RISK("risk"),;
 
@@ -108,6 +110,7 @@ public enum PluginPermission {
 
     /**
      * 文字列の配列を格納した JSObject を解析し、PluginPermission のセットを生成します。
+     * JSObject の内容は {@link JSObjectUtils#snapshotObject} により一度に取得されます。
      *
      * @param jsObject 文字列の配列 permission を格納した JSObject。
      * @return 生成された {@code EnumSet<PluginPermission>}。
@@ -116,7 +119,21 @@ public enum PluginPermission {
         if (jsObject == null)
             throw new IllegalArgumentException();
 
-        String set = JSObjectUtils.getMember(jsObject, "permission", String.class).orElse(null);
+        return parseFromMap(JSObjectUtils.snapshotObject(jsObject));
+    }
+
+    /**
+     * メンバ permission を格納した Map を解析し、PluginPermission のセットを生成します。
+     * permission には "full" または "none" の文字列、もしくは文字列の {@code List} を指定できます。
+     *
+     * @param map メンバ permission を格納した Map。
+     * @return 生成された {@code EnumSet<PluginPermission>}。
+     */
+    public static EnumSet<PluginPermission> parseFromMap(Map<String, ?> map) {
+        if (map == null)
+            throw new IllegalArgumentException();
+
+        String set = SnapshotUtils.getMember(map, "permission", String.class).orElse(null);
 
         if (set != null) {
             switch (set.toLowerCase()) {
@@ -128,7 +145,7 @@ public enum PluginPermission {
                     throw new IllegalArgumentException();
             }
         } else {
-            List<PluginPermission> permission = JSObjectUtils.getArray(jsObject, "permission", String.class)
+            List<PluginPermission> permission = SnapshotUtils.getArray(map, "permission", String.class)
                     .map(PluginPermission::searchMember).collect(Collectors.toList());
 
             return permission.isEmpty() ? EnumSet.noneOf(PluginPermission.class) : EnumSet.copyOf(permission);
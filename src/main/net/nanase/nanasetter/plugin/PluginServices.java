@@ -0,0 +1,336 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.plugin;
+
+import net.nanase.nanasetter.twitter.BlockMuteCache;
+import net.nanase.nanasetter.twitter.BulkOperationEngine;
+import net.nanase.nanasetter.twitter.ConversationIndex;
+import net.nanase.nanasetter.twitter.DirectMessageSync;
+import net.nanase.nanasetter.twitter.ImageCache;
+import net.nanase.nanasetter.twitter.MediaUploader;
+import net.nanase.nanasetter.twitter.RelativeTimeUpdater;
+import net.nanase.nanasetter.twitter.StatusRenderer;
+import net.nanase.nanasetter.twitter.TrendTracker;
+import net.nanase.nanasetter.twitter.URLExpander;
+import net.nanase.nanasetter.twitter.WriteQueue;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/27.
+ */
+
+/**
+ * <p>すべてのプラグインで共有される機能をまとめて保持します。
+ * <p>各機能はアプリケーションの起動時に設定され、ポーターオブジェクトから参照されます。
+ * 設定されていない機能を利用するポーターのメソッドは IllegalStateException をスローします。
+ * <p>ネットワークやファイルへのアクセスを伴う非同期の処理は、スレッド数と待ち行列の長さが制限された
+ * {@link #getIOExecutor()} で実行されます。
+ * <p>{@link #close()} はアプリケーションの終了時に呼び出され、設定されているすべての機能を停止します。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class PluginServices implements AutoCloseable {
+    private static final int IO_THREADS = 4;
+    private static final int IO_QUEUE_CAPACITY = 256;
+
+    private final ExecutorService ioExecutor;
+    private volatile WriteQueue writeQueue;
+    private volatile MediaUploader mediaUploader;
+    private volatile DirectMessageSync directMessageSync;
+    private volatile BulkOperationEngine bulkOperationEngine;
+    private volatile BlockMuteCache blockMuteCache;
+    private volatile ConversationIndex conversationIndex;
+    private volatile TrendTracker trendTracker;
+    private volatile URLExpander urlExpander;
+    private volatile StatusRenderer statusRenderer;
+    private volatile RelativeTimeUpdater relativeTimeUpdater;
+    private volatile ImageCache imageCache;
+
+    /**
+     * 新しい PluginServices クラスのインスタンスを初期化します。
+     */
+    public PluginServices() {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        ThreadPoolExecutor ioExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(IO_QUEUE_CAPACITY), r -> {
+            Thread thread = new Thread(r, "nanasetter-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // 使用されていない間はスレッドを保持しない
+        ioExecutor.allowCoreThreadTimeOut(true);
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * ネットワークやファイルへのアクセスを伴う非同期の処理を実行する ExecutorService オブジェクトを取得します。
+     * 待ち行列が一杯の場合、処理の追加は RejectedExecutionException によって拒否されます。
+     *
+     * @return ExecutorService オブジェクト。
+     */
+    public ExecutorService getIOExecutor() {
+        return this.ioExecutor;
+    }
+
+    /**
+     * 書き込みキューを取得します。
+     *
+     * @return WriteQueue オブジェクト。設定されていない場合は null。
+     */
+    public WriteQueue getWriteQueue() {
+        return this.writeQueue;
+    }
+
+    /**
+     * 書き込みキューを設定します。
+     *
+     * @param writeQueue WriteQueue オブジェクト。
+     */
+    public void setWriteQueue(WriteQueue writeQueue) {
+        this.writeQueue = writeQueue;
+    }
+
+    /**
+     * メディアのアップロードを行うオブジェクトを取得します。
+     *
+     * @return MediaUploader オブジェクト。設定されていない場合は null。
+     */
+    public MediaUploader getMediaUploader() {
+        return this.mediaUploader;
+    }
+
+    /**
+     * メディアのアップロードを行うオブジェクトを設定します。
+     *
+     * @param mediaUploader MediaUploader オブジェクト。
+     */
+    public void setMediaUploader(MediaUploader mediaUploader) {
+        this.mediaUploader = mediaUploader;
+    }
+
+    /**
+     * ダイレクトメッセージの同期を行うオブジェクトを取得します。
+     *
+     * @return DirectMessageSync オブジェクト。設定されていない場合は null。
+     */
+    public DirectMessageSync getDirectMessageSync() {
+        return this.directMessageSync;
+    }
+
+    /**
+     * ダイレクトメッセージの同期を行うオブジェクトを設定します。
+     *
+     * @param directMessageSync DirectMessageSync オブジェクト。
+     */
+    public void setDirectMessageSync(DirectMessageSync directMessageSync) {
+        this.directMessageSync = directMessageSync;
+    }
+
+    /**
+     * 一括操作を実行するオブジェクトを取得します。
+     *
+     * @return BulkOperationEngine オブジェクト。設定されていない場合は null。
+     */
+    public BulkOperationEngine getBulkOperationEngine() {
+        return this.bulkOperationEngine;
+    }
+
+    /**
+     * 一括操作を実行するオブジェクトを設定します。
+     *
+     * @param bulkOperationEngine BulkOperationEngine オブジェクト。
+     */
+    public void setBulkOperationEngine(BulkOperationEngine bulkOperationEngine) {
+        this.bulkOperationEngine = bulkOperationEngine;
+    }
+
+    /**
+     * ブロックおよびミュートしているユーザのキャッシュを取得します。
+     *
+     * @return BlockMuteCache オブジェクト。設定されていない場合は null。
+     */
+    public BlockMuteCache getBlockMuteCache() {
+        return this.blockMuteCache;
+    }
+
+    /**
+     * ブロックおよびミュートしているユーザのキャッシュを設定します。
+     *
+     * @param blockMuteCache BlockMuteCache オブジェクト。
+     */
+    public void setBlockMuteCache(BlockMuteCache blockMuteCache) {
+        this.blockMuteCache = blockMuteCache;
+    }
+
+    /**
+     * 受信したツイートのリプライ関係の索引を取得します。
+     *
+     * @return ConversationIndex オブジェクト。設定されていない場合は null。
+     */
+    public ConversationIndex getConversationIndex() {
+        return this.conversationIndex;
+    }
+
+    /**
+     * 受信したツイートのリプライ関係の索引を設定します。
+     *
+     * @param conversationIndex ConversationIndex オブジェクト。
+     */
+    public void setConversationIndex(ConversationIndex conversationIndex) {
+        this.conversationIndex = conversationIndex;
+    }
+
+    /**
+     * 受信したツイートの項目を集計するオブジェクトを取得します。
+     *
+     * @return TrendTracker オブジェクト。設定されていない場合は null。
+     */
+    public TrendTracker getTrendTracker() {
+        return this.trendTracker;
+    }
+
+    /**
+     * 受信したツイートの項目を集計するオブジェクトを設定します。
+     *
+     * @param trendTracker TrendTracker オブジェクト。
+     */
+    public void setTrendTracker(TrendTracker trendTracker) {
+        this.trendTracker = trendTracker;
+    }
+
+    /**
+     * 短縮 URL を展開するオブジェクトを取得します。
+     *
+     * @return URLExpander オブジェクト。設定されていない場合は null。
+     */
+    public URLExpander getURLExpander() {
+        return this.urlExpander;
+    }
+
+    /**
+     * 短縮 URL を展開するオブジェクトを設定します。
+     *
+     * @param urlExpander URLExpander オブジェクト。
+     */
+    public void setURLExpander(URLExpander urlExpander) {
+        this.urlExpander = urlExpander;
+    }
+
+    /**
+     * ツイートやユーザを HTML に変換するオブジェクトを取得します。
+     *
+     * @return StatusRenderer オブジェクト。設定されていない場合は null。
+     */
+    public StatusRenderer getStatusRenderer() {
+        return this.statusRenderer;
+    }
+
+    /**
+     * ツイートやユーザを HTML に変換するオブジェクトを設定します。
+     *
+     * @param statusRenderer StatusRenderer オブジェクト。
+     */
+    public void setStatusRenderer(StatusRenderer statusRenderer) {
+        this.statusRenderer = statusRenderer;
+    }
+
+    /**
+     * 相対時刻の表示を更新するオブジェクトを取得します。
+     *
+     * @return RelativeTimeUpdater オブジェクト。設定されていない場合は null。
+     */
+    public RelativeTimeUpdater getRelativeTimeUpdater() {
+        return this.relativeTimeUpdater;
+    }
+
+    /**
+     * 相対時刻の表示を更新するオブジェクトを設定します。
+     *
+     * @param relativeTimeUpdater RelativeTimeUpdater オブジェクト。
+     */
+    public void setRelativeTimeUpdater(RelativeTimeUpdater relativeTimeUpdater) {
+        this.relativeTimeUpdater = relativeTimeUpdater;
+    }
+
+    /**
+     * 画像のキャッシュを取得します。
+     *
+     * @return ImageCache オブジェクト。設定されていない場合は null。
+     */
+    public ImageCache getImageCache() {
+        return this.imageCache;
+    }
+
+    /**
+     * 画像のキャッシュを設定します。
+     *
+     * @param imageCache ImageCache オブジェクト。
+     */
+    public void setImageCache(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    /**
+     * I/O の処理と設定されているすべての機能を停止します。書き込みキューに残された要求はジャーナルに記録され、次回の起動時に復元されます。
+     *
+     * @throws IOException 書き込みキューのジャーナルを閉じることができませんでした。
+     */
+    @Override
+    public void close() throws IOException {
+        this.ioExecutor.shutdownNow();
+
+        if (this.bulkOperationEngine != null)
+            this.bulkOperationEngine.close();
+
+        if (this.mediaUploader != null)
+            this.mediaUploader.close();
+
+        if (this.urlExpander != null)
+            this.urlExpander.close();
+
+        if (this.statusRenderer != null)
+            this.statusRenderer.close();
+
+        if (this.relativeTimeUpdater != null)
+            this.relativeTimeUpdater.close();
+
+        if (this.imageCache != null)
+            this.imageCache.close();
+
+        // 送信中の要求の完了を待つため最後に閉じる
+        if (this.writeQueue != null)
+            this.writeQueue.close();
+    }
+}
@@ -24,7 +24,20 @@
 
 package net.nanase.nanasetter.plugin;
 
+import javafx.application.Platform;
 import net.nanase.nanasetter.twitter.TwitterList;
+import net.nanase.nanasetter.utils.JSObjectUtils;
+import net.nanase.nanasetter.utils.ScriptObjectUtils;
+import netscape.javascript.JSObject;
+import twitter4j.Twitter;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Project: Nanasetter
@@ -69,7 +82,7 @@ public abstract class Porter {
         this.twitterList = twitterList;
         this.pluginHost = pluginHost;
 
-        this.pluginHost.getLogger().info(String.format("Created: %s porter.", this.getPermission().name()));
+        this.pluginHost.getLogger().infof("Created: %s porter.", this.getPermission().name());
     }
 
     /**
@@ -78,4 +91,148 @@ public abstract class Porter {
      * @return プラグインパーミッション。
      */
     protected abstract PluginPermission getPermission();
+
+    /**
+     * プラグインから渡された 1 引数のコールバックを呼び出します。
+     * 関数が実行されるスレッドは {@link #invokeCallback(Object, Object, Object)} と同じです。
+     *
+     * @param callback JSObject の関数、ヘッドレスランタイムの関数または Consumer オブジェクト。null の場合は何もしません。
+     * @param argument 引数。
+     * @param <T>      引数の型。
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> void invokeCallback(Object callback, T argument) {
+        if (callback == null)
+            return;
+
+        if (callback instanceof JSObject)
+            Platform.runLater(() -> ((JSObject) callback).call("call", new Object[]{null, argument}));
+        else if (callback instanceof Consumer)
+            ((Consumer<T>) callback).accept(argument);
+        else if (ScriptObjectUtils.isFunction(callback))
+            this.pluginHost.getCallbackExecutor().execute(() -> ScriptObjectUtils.call(callback, argument));
+        else
+            this.pluginHost.getLogger().warningf("サポートされていないコールバックの型です: %s", callback.getClass().getName());
+    }
+
+    /**
+     * プラグインから渡された 2 引数のコールバックを呼び出します。
+     * JSObject の関数は JavaFX アプリケーションスレッドで、ヘッドレスランタイムの関数はプラグインのワーカー上で、
+     * BiConsumer は呼び出し元のスレッドで実行されます。それ以外の型が渡された場合は警告をログに出力します。
+     *
+     * @param callback JSObject の関数、ヘッドレスランタイムの関数または BiConsumer オブジェクト。null の場合は何もしません。
+     * @param first    第 1 引数。
+     * @param second   第 2 引数。
+     * @param <T>      第 1 引数の型。
+     * @param <U>      第 2 引数の型。
+     */
+    @SuppressWarnings("unchecked")
+    protected <T, U> void invokeCallback(Object callback, T first, U second) {
+        if (callback == null)
+            return;
+
+        if (callback instanceof JSObject)
+            Platform.runLater(() -> ((JSObject) callback).call("call", new Object[]{null, first, second}));
+        else if (callback instanceof BiConsumer)
+            ((BiConsumer<T, U>) callback).accept(first, second);
+        else if (ScriptObjectUtils.isFunction(callback))
+            this.pluginHost.getCallbackExecutor().execute(() -> ScriptObjectUtils.call(callback, first, second));
+        else
+            this.pluginHost.getLogger().warningf("サポートされていないコールバックの型です: %s", callback.getClass().getName());
+    }
+
+    /**
+     * ネットワークやファイルへのアクセスを伴う処理を {@link PluginServices#getIOExecutor()} で実行し、
+     * 完了したとき {@code callback(error, result)} を呼び出します。
+     * 処理で発生した例外は警告としてログに出力され、そのメッセージが error としてコールバックに渡されます。
+     *
+     * @param task        実行する処理。
+     * @param errorFormat 処理に失敗したときにログに出力するメッセージの書式。%s は例外のメッセージに置き換えられます。
+     * @param callback    処理が完了したときに呼び出される関数。null を指定できます。
+     * @param <T>         処理の結果の型。
+     */
+    protected <T> void supplyAsync(Callable<T> task, String errorFormat, Object callback) {
+        CompletableFuture<T> result = CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception ex) {
+                this.pluginHost.getLogger().warningf(errorFormat, ex.getMessage());
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+        }, this.pluginHost.getServices().getIOExecutor());
+
+        if (callback != null)
+            result.whenComplete((value, ex) -> this.invokeCallback(callback, toErrorMessage(ex), value));
+    }
+
+    /**
+     * アカウントのユーザ ID に対応する Twitter オブジェクトを取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return Twitter オブジェクト。
+     * @throws IllegalArgumentException アカウントが見つかりません。
+     */
+    protected Twitter getTwitter(long accountId) {
+        return this.twitterList.getTwitter(accountId).orElseThrow(() ->
+                new IllegalArgumentException(String.format("アカウント %d が見つかりません.", accountId)));
+    }
+
+    /**
+     * 非同期の処理で発生した例外を、コールバックに渡すエラーメッセージに変換します。
+     * CompletionException に包まれた例外は、元の例外のメッセージとなります。
+     *
+     * @param ex 発生した例外。null を指定できます。
+     * @return エラーメッセージ。例外が null の場合は null。
+     */
+    protected static String toErrorMessage(Throwable ex) {
+        if (ex == null)
+            return null;
+
+        if (ex instanceof CompletionException && ex.getCause() != null)
+            ex = ex.getCause();
+
+        return String.valueOf(ex.getMessage());
+    }
+
+    /**
+     * プラグインから渡された ID を long 値に変換します。ID は数値または 10 進数の文字列で指定されます。
+     *
+     * @param id 数値または文字列。
+     * @return ID を表す long 値。
+     * @throws IllegalArgumentException ID として解釈できない値が指定されました。
+     */
+    protected static long toId(Object id) {
+        if (id instanceof Number)
+            return ((Number) id).longValue();
+
+        if (id instanceof String)
+            return Long.parseLong((String) id);
+
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * プラグインから渡された ID の配列を long 値の配列に変換します。
+     *
+     * @param ids JavaScript の配列 (WebView またはヘッドレスランタイム)、Collection オブジェクトまたは long 値の配列。
+     * @return ID を表す long 値の配列。
+     * @throws IllegalArgumentException ID の配列として解釈できない値が指定されました。
+     */
+    protected static long[] toIds(Object ids) {
+        Stream<?> stream;
+
+        if (ScriptObjectUtils.isScriptObject(ids))
+            ids = ScriptObjectUtils.snapshot(ids);
+
+        if (ids instanceof JSObject)
+            stream = JSObjectUtils.getArray((JSObject) ids, Object.class);
+        else if (ids instanceof Collection)
+            stream = ((Collection<?>) ids).stream();
+        else if (ids instanceof long[])
+            return ((long[]) ids).clone();
+        else
+            throw new IllegalArgumentException();
+
+        return stream.mapToLong(Porter::toId).toArray();
+    }
 }
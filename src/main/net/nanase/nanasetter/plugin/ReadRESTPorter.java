@@ -24,20 +24,30 @@
 
 package net.nanase.nanasetter.plugin;
 
+import net.nanase.nanasetter.twitter.SocialGraphCache;
 import net.nanase.nanasetter.twitter.TwitterList;
 
+import java.util.Locale;
+
 /**
  * Project: Nanasetter
  * Created by nanase on 14/05/24.
  */
 
 /**
- * タイムラインの読み取り、リストの読み取り、ツイートの表示などの機能を提供するクラスです。
+ * <p>タイムラインの読み取り、リストの読み取り、ツイートの表示などの機能を提供するクラスです。
+ * <p>フォローおよびフォロワーは {@link #syncGraph(Object, Object)} によって取得され、{@link SocialGraphCache} に保存されます。
+ * 以前の同期からの差分は {@link #setGraphListener(Object)} で設定した関数に {@code listener(accountId, json)} の形式で通知されます。
+ * json は {@code relation}、{@code added} および {@code removed} を持つ JSON 文字列で、各 ID は文字列で表されます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
  */
 public class ReadRESTPorter extends Porter {
+    private static final int GRAPH_SYNC_PAGES = 15;
+
+    private SocialGraphCache.Listener graphListener;
+
     /**
      * Twitter リストとプラグインホストを指定して新しい ReadREST クラスのインスタンスを初期化します。
      *
@@ -50,6 +60,82 @@ public class ReadRESTPorter extends Porter {
         super(twitterList, pluginHost);
     }
 
+    /**
+     * フォローおよびフォロワーを取得して保存します。このメソッドは取得の完了を待たずに直ちに戻ります。
+     * 1 回の呼び出しで取得するページ数は制限されており、続きのページが残っている場合は次の呼び出しで引き続き取得されます。
+     * 取得が完了したとき {@code callback(error, completed)} が呼び出されます。
+     * completed はフォローとフォロワーの両方ですべてのページの取得が完了したとき true です。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param callback  取得が完了したときに呼び出される関数。null を指定できます。
+     */
+    public void syncGraph(Object accountId, Object callback) {
+        SocialGraphCache graphCache = this.getGraphCache();
+        long id = toId(accountId);
+
+        this.supplyAsync(() -> {
+            SocialGraphCache.Source source = SocialGraphCache.createSource(this.getTwitter(id));
+            boolean friends = graphCache.sync(id, SocialGraphCache.Relation.FRIENDS, source, GRAPH_SYNC_PAGES);
+            boolean followers = graphCache.sync(id, SocialGraphCache.Relation.FOLLOWERS, source, GRAPH_SYNC_PAGES);
+            return friends && followers;
+        }, "フォロー関係を同期できませんでした: %s", callback);
+    }
+
+    /**
+     * フォローおよびフォロワーの差分が求められたときに呼び出される関数を設定します。
+     * 以前に設定された関数は置き換えられます。
+     *
+     * @param listener {@code listener(accountId, json)} の形式で呼び出される関数。null を指定すると通知を停止します。
+     */
+    public synchronized void setGraphListener(Object listener) {
+        SocialGraphCache graphCache = this.getGraphCache();
+
+        if (this.graphListener != null)
+            graphCache.removeListener(this.graphListener);
+
+        this.graphListener = listener == null ? null : (accountId, relation, diff) ->
+                invokeCallback(listener, String.valueOf(accountId), toDiffJSON(relation, diff));
+
+        if (this.graphListener != null)
+            graphCache.addListener(this.graphListener);
+    }
+
+    /**
+     * 保存されたフォローにユーザが含まれているかを判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param userId    判定するユーザ ID。
+     * @return アカウントがユーザをフォローしているとき true、それ以外のとき false。
+     */
+    public boolean isFriend(Object accountId, Object userId) {
+        return this.getGraphCache().contains(toId(accountId), SocialGraphCache.Relation.FRIENDS, toId(userId));
+    }
+
+    /**
+     * 保存されたフォロワーにユーザが含まれているかを判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param userId    判定するユーザ ID。
+     * @return ユーザがアカウントをフォローしているとき true、それ以外のとき false。
+     */
+    public boolean isFollower(Object accountId, Object userId) {
+        return this.getGraphCache().contains(toId(accountId), SocialGraphCache.Relation.FOLLOWERS, toId(userId));
+    }
+
+    /**
+     * 保存されたフォローまたはフォロワーのユーザ ID を昇順で取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param relation  "friends" または "followers"。
+     * @return ユーザ ID の文字列を要素とする JSON 配列。
+     */
+    public String getGraphIds(Object accountId, String relation) {
+        long[] ids = this.getGraphCache().getIds(toId(accountId), toRelation(relation));
+        StringBuilder sb = new StringBuilder(ids.length * 22 + 2).append('[');
+        appendIds(sb, ids);
+        return sb.append(']').toString();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -57,4 +143,36 @@ public class ReadRESTPorter extends Porter {
     protected PluginPermission getPermission() {
         return PluginPermission.READ_REST;
     }
+
+    private SocialGraphCache getGraphCache() {
+        SocialGraphCache graphCache = this.twitterList.getGraphCache();
+
+        if (graphCache == null)
+            throw new IllegalStateException("フォロー関係のキャッシュが利用できません.");
+
+        return graphCache;
+    }
+
+    private static SocialGraphCache.Relation toRelation(String relation) {
+        if (relation == null)
+            throw new IllegalArgumentException();
+
+        return SocialGraphCache.Relation.valueOf(relation.toUpperCase(Locale.ROOT));
+    }
+
+    private static String toDiffJSON(SocialGraphCache.Relation relation, SocialGraphCache.Diff diff) {
+        StringBuilder sb = new StringBuilder((diff.getAdded().length + diff.getRemoved().length) * 22 + 64);
+
+        sb.append("{\"relation\":\"").append(relation.name().toLowerCase(Locale.ROOT)).append("\",\"added\":[");
+        appendIds(sb, diff.getAdded());
+        sb.append("],\"removed\":[");
+        appendIds(sb, diff.getRemoved());
+
+        return sb.append("]}").toString();
+    }
+
+    private static void appendIds(StringBuilder sb, long[] ids) {
+        for (int i = 0; i < ids.length; i++)
+            sb.append(i == 0 ? "\"" : ",\"").append(ids[i]).append('"');
+    }
 }
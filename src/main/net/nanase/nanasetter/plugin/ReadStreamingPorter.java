@@ -24,7 +24,15 @@
 
 package net.nanase.nanasetter.plugin;
 
+import net.nanase.nanasetter.twitter.BlockMuteCache;
+import net.nanase.nanasetter.twitter.ConversationIndex;
+import net.nanase.nanasetter.twitter.RelativeTimeUpdater;
+import net.nanase.nanasetter.twitter.StatusRenderer;
+import net.nanase.nanasetter.twitter.StatusSerializer;
 import net.nanase.nanasetter.twitter.TwitterList;
+import twitter4j.Status;
+
+import java.util.List;
 
 /**
  * Project: Nanasetter
@@ -32,12 +40,23 @@ import net.nanase.nanasetter.twitter.TwitterList;
  */
 
 /**
- * ストリーム通知の受け取りなどの機能を提供するクラスです。
+ * <p>ストリーム通知の受け取りなどの機能を提供するクラスです。
+ * <p>ブロックおよびミュートしているユーザは {@link #sync(Object, Object)} によってキャッシュされ、
+ * 受信したツイートを表示するかの判定に API を呼び出さずに利用できます。
+ * <p>受信したツイートはリプライ関係が {@link ConversationIndex} に索引付けされ、
+ * {@link #getConversation(Object)} によって API を呼び出さずに会話を組み立てられます。
+ * <p>会話は {@link #renderConversation(Object, String, Object)} によってワーカースレッドで HTML に変換でき、
+ * テンプレートの記法は {@link net.nanase.nanasetter.twitter.HTMLTemplate} に従います。
+ * <p>{@link #watchRelativeTime(String, Object)} で登録した行の相対時刻は、表示が変わったときにのみ
+ * {@code data-relative-time} 属性にキーを持つ要素の内容として書き換えられます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
  */
 public class ReadStreamingPorter extends Porter {
+    private static final int SYNC_PAGES = 5;
+    private static final int RESOLVE_ROUNDS = 5;
+
     /**
      * Twitter リストとプラグインホストを指定して新しい ReadStreamingPorter クラスのインスタンスを初期化します。
      *
@@ -50,6 +69,134 @@ public class ReadStreamingPorter extends Porter {
         super(twitterList, pluginHost);
     }
 
+    /**
+     * ブロックおよびミュートしているユーザを取得してキャッシュを更新します。このメソッドは取得の完了を待たずに直ちに戻ります。
+     * 1 回の呼び出しで取得するページ数は制限されており、続きのページが残っている場合は次の呼び出しで引き続き取得されます。
+     * 取得が完了したとき {@code callback(error, completed)} が呼び出されます。
+     * completed はすべてのページの取得が完了し、キャッシュが置き換えられたとき true です。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param callback  取得が完了したときに呼び出される関数。null を指定できます。
+     */
+    public void sync(Object accountId, Object callback) {
+        BlockMuteCache blockMuteCache = this.getBlockMuteCache();
+        long id = toId(accountId);
+
+        this.supplyAsync(() -> {
+            BlockMuteCache.Source source = BlockMuteCache.createSource(this.getTwitter(id));
+            boolean blocks = blockMuteCache.sync(id, BlockMuteCache.Kind.BLOCK, source, SYNC_PAGES);
+            boolean mutes = blockMuteCache.sync(id, BlockMuteCache.Kind.MUTE, source, SYNC_PAGES);
+            return blocks && mutes;
+        }, "ブロックおよびミュートしているユーザを同期できませんでした: %s", callback);
+    }
+
+    /**
+     * ユーザがブロックされているかをキャッシュから判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param userId    判定するユーザ ID。
+     * @return ブロックされているとき true、それ以外のとき false。
+     */
+    public boolean isBlocked(Object accountId, Object userId) {
+        return this.getBlockMuteCache().contains(toId(accountId), BlockMuteCache.Kind.BLOCK, toId(userId));
+    }
+
+    /**
+     * ユーザがミュートされているかをキャッシュから判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param userId    判定するユーザ ID。
+     * @return ミュートされているとき true、それ以外のとき false。
+     */
+    public boolean isMuted(Object accountId, Object userId) {
+        return this.getBlockMuteCache().contains(toId(accountId), BlockMuteCache.Kind.MUTE, toId(userId));
+    }
+
+    /**
+     * ユーザがブロックまたはミュートされているかをキャッシュから判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param userId    判定するユーザ ID。
+     * @return ブロックまたはミュートされているとき true、それ以外のとき false。
+     */
+    public boolean isFiltered(Object accountId, Object userId) {
+        return this.getBlockMuteCache().isFiltered(toId(accountId), toId(userId));
+    }
+
+    /**
+     * 受信したツイートから会話を組み立てます。会話は最も古い祖先から指定されたツイートまでのリプライ先の列と、
+     * それに続く指定されたツイートへのリプライからなります。
+     *
+     * @param statusId ツイートの ID。
+     * @return ツイートを要素とする JSON 配列。ツイートが受信されていない場合は空の配列。
+     */
+    public String getConversation(Object statusId) {
+        return toJSON(this.getConversationIndex().getConversation(toId(statusId)));
+    }
+
+    /**
+     * 会話で欠けている祖先をまとめて取得したのち、会話を組み立てます。このメソッドは取得の完了を待たずに直ちに戻ります。
+     * 取得が完了したとき {@code callback(error, json)} が呼び出されます。json は {@link #getConversation(Object)} と同じ形式です。
+     *
+     * @param accountId 取得に用いるアカウントのユーザ ID。
+     * @param statusId  ツイートの ID。
+     * @param callback  取得が完了したときに呼び出される関数。
+     */
+    public void resolveConversation(Object accountId, Object statusId, Object callback) {
+        ConversationIndex conversationIndex = this.getConversationIndex();
+        long account = toId(accountId);
+        long id = toId(statusId);
+
+        this.supplyAsync(() -> {
+            conversationIndex.resolve(id, ConversationIndex.createFetcher(this.getTwitter(account)), RESOLVE_ROUNDS);
+            return toJSON(conversationIndex.getConversation(id));
+        }, "会話を取得できませんでした: %s", callback);
+    }
+
+    /**
+     * 受信したツイートから会話を組み立て、テンプレートを用いて HTML に変換します。このメソッドは変換の完了を待たずに直ちに戻ります。
+     * 変換が完了したとき {@code callback(error, html)} が呼び出されます。
+     *
+     * @param statusId ツイートの ID。
+     * @param template ツイートのテンプレート。
+     * @param callback 変換が完了したときに呼び出される関数。
+     * @throws IllegalArgumentException テンプレートが正しくありません。
+     */
+    public void renderConversation(Object statusId, String template, Object callback) {
+        StatusRenderer statusRenderer = this.pluginHost.getServices().getStatusRenderer();
+
+        if (statusRenderer == null)
+            throw new IllegalStateException("HTML への変換が利用できません.");
+
+        if (callback == null)
+            throw new IllegalArgumentException();
+
+        statusRenderer.render(statusRenderer.getStatusTemplate(template),
+                this.getConversationIndex().getConversation(toId(statusId)))
+                .whenComplete((html, ex) -> invokeCallback(callback, toErrorMessage(ex), html));
+    }
+
+    /**
+     * 行の相対時刻の表示を更新の対象に登録し、現在の表示を取得します。
+     * 以降、表示が変わるたびに {@code data-relative-time} 属性にキーを持つ要素の内容が書き換えられます。
+     *
+     * @param key       行を識別するキー。英数字、アンダースコアおよびハイフンからなる文字列。
+     * @param createdAt 作成日時 (エポックミリ秒)。
+     * @return 現在の相対時刻の表示。
+     */
+    public String watchRelativeTime(String key, Object createdAt) {
+        return this.getRelativeTimeUpdater().watch(key, toId(createdAt));
+    }
+
+    /**
+     * 行の相対時刻の表示を更新の対象から外します。行を削除したときに呼び出します。
+     *
+     * @param key 行を識別するキー。
+     */
+    public void unwatchRelativeTime(String key) {
+        this.getRelativeTimeUpdater().unwatch(key);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -57,4 +204,44 @@ public class ReadStreamingPorter extends Porter {
     protected PluginPermission getPermission() {
         return PluginPermission.READ_STREAMING;
     }
+
+    private BlockMuteCache getBlockMuteCache() {
+        BlockMuteCache blockMuteCache = this.pluginHost.getServices().getBlockMuteCache();
+
+        if (blockMuteCache == null)
+            throw new IllegalStateException("ブロックおよびミュートのキャッシュが利用できません.");
+
+        return blockMuteCache;
+    }
+
+    private ConversationIndex getConversationIndex() {
+        ConversationIndex conversationIndex = this.pluginHost.getServices().getConversationIndex();
+
+        if (conversationIndex == null)
+            throw new IllegalStateException("会話の索引が利用できません.");
+
+        return conversationIndex;
+    }
+
+    private static String toJSON(List<Status> statuses) {
+        StringBuilder sb = new StringBuilder(statuses.size() * 1024 + 2).append('[');
+
+        for (int i = 0; i < statuses.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+
+            StatusSerializer.writeStatus(sb, statuses.get(i));
+        }
+
+        return sb.append(']').toString();
+    }
+
+    private RelativeTimeUpdater getRelativeTimeUpdater() {
+        RelativeTimeUpdater relativeTimeUpdater = this.pluginHost.getServices().getRelativeTimeUpdater();
+
+        if (relativeTimeUpdater == null)
+            throw new IllegalStateException("相対時刻の更新が利用できません.");
+
+        return relativeTimeUpdater;
+    }
 }
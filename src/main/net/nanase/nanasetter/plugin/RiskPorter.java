@@ -24,20 +24,37 @@
 
 package net.nanase.nanasetter.plugin;
 
+import net.nanase.nanasetter.twitter.BulkOperationEngine;
+import net.nanase.nanasetter.twitter.StatusSerializer;
 import net.nanase.nanasetter.twitter.TwitterList;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
 /**
  * Project: Nanasetter
  * Created by nanase on 14/05/27.
  */
 
 /**
- * ブロック、フォローとフォロー解除などの機能を提供するクラスです。
+ * <p>ブロック、フォローとフォロー解除などの機能を提供するクラスです。
+ * <p>多数のユーザに対する操作は {@link #startBulk(Object, String, Object, Object, Object, Object)} によって
+ * {@link BulkOperationEngine} のジョブとして実行されます。進捗は {@code progress(json)} の形式で、
+ * 結果は 100 ミリ秒に 1 回までの通知にまとめられ、ジョブの完了時に {@code callback(error, json)} が呼び出されます。
+ * json はジョブの概要を表す JSON 文字列で、progress では直前の通知以降の結果を {@code results} に含みます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
  */
 public class RiskPorter extends Porter {
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     /**
      * Twitter リストとプラグインホストを指定して新しい RiskPorter クラスのインスタンスを初期化します。
      *
@@ -50,6 +67,74 @@ public class RiskPorter extends Porter {
         super(twitterList, pluginHost);
     }
 
+    /**
+     * 一括操作を開始します。このメソッドは操作の完了を待たずに直ちに戻ります。
+     *
+     * @param accountId 操作を行うアカウントのユーザ ID。
+     * @param operation 操作の種類。follow、unfollow、block、unblock、report_spam、add_to_list、remove_from_list のいずれか。
+     * @param userIds   対象のユーザ ID の配列。
+     * @param listId    対象のリスト ID。リストを対象としない操作の場合は null を指定します。
+     * @param progress  進捗を受け取る関数。null を指定できます。
+     * @param callback  ジョブが完了したときに呼び出される関数。null を指定できます。
+     * @return ジョブ ID を表す文字列。
+     */
+    public String startBulk(Object accountId, String operation, Object userIds, Object listId,
+                            Object progress, Object callback) {
+        if (operation == null)
+            throw new IllegalArgumentException();
+
+        BulkOperationEngine.Operation type = BulkOperationEngine.Operation.valueOf(operation.toUpperCase(Locale.ROOT));
+        List<Long> ids = LongStream.of(toIds(userIds)).boxed().collect(Collectors.toList());
+
+        try {
+            BulkOperationEngine.Job job = this.getEngine().submit(toId(accountId), type, ids,
+                    listId == null ? 0L : toId(listId), new ProgressRelay(progress, callback));
+
+            return Long.toString(job.getId());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * 実行中の一括操作の進捗を受け取ります。再起動後に再開されたジョブの進捗を受け取る場合に使用します。
+     *
+     * @param jobId    ジョブ ID。
+     * @param progress 進捗を受け取る関数。null を指定できます。
+     * @param callback ジョブが完了したときに呼び出される関数。null を指定できます。
+     * @return ジョブが存在したとき true、それ以外のとき false。
+     */
+    public boolean watchBulk(Object jobId, Object progress, Object callback) {
+        BulkOperationEngine.Job job = this.getEngine().getJob(toId(jobId));
+
+        if (job == null)
+            return false;
+
+        job.addListener(new ProgressRelay(progress, callback));
+        return true;
+    }
+
+    /**
+     * 一括操作を取り消します。
+     *
+     * @param jobId ジョブ ID。
+     * @return ジョブが取り消されたとき true、ジョブが存在しないとき false。
+     */
+    public boolean cancelBulk(Object jobId) {
+        return this.getEngine().cancel(toId(jobId));
+    }
+
+    /**
+     * 実行中の一括操作の概要を取得します。
+     *
+     * @return ジョブの概要を要素とする JSON 配列。
+     */
+    public String getBulkJobs() {
+        return this.getEngine().getJobs().stream()
+                .map(job -> toSummary(job, null))
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -57,4 +142,82 @@ public class RiskPorter extends Porter {
     protected PluginPermission getPermission() {
         return PluginPermission.RISK;
     }
+
+    private BulkOperationEngine getEngine() {
+        BulkOperationEngine engine = this.pluginHost.getServices().getBulkOperationEngine();
+
+        if (engine == null)
+            throw new IllegalStateException("一括操作が利用できません.");
+
+        return engine;
+    }
+
+    private static String toSummary(BulkOperationEngine.Job job, List<String> results) {
+        StringBuilder sb = new StringBuilder(128);
+
+        sb.append("{\"job\":\"").append(job.getId())
+          .append("\",\"account\":\"").append(job.getAccountId())
+          .append("\",\"operation\":\"").append(job.getOperation().name().toLowerCase(Locale.ROOT))
+          .append("\",\"total\":").append(job.getTotal())
+          .append(",\"succeeded\":").append(job.getSucceeded())
+          .append(",\"failed\":").append(job.getFailed())
+          .append(",\"cancelled\":").append(job.isCancelled());
+
+        if (results != null)
+            sb.append(",\"results\":[").append(String.join(",", results)).append(']');
+
+        return sb.append('}').toString();
+    }
+
+    // 結果ごとにコールバックを呼び出すと UI スレッドが溢れるため、一定の間隔の間に得られた結果をまとめて 1 回の呼び出しで渡す
+    private final class ProgressRelay implements BulkOperationEngine.Listener {
+        private final Object progress;
+        private final Object callback;
+        private final List<String> results;
+        private long lastFlushNanos;
+
+        private ProgressRelay(Object progress, Object callback) {
+            this.progress = progress;
+            this.callback = callback;
+            this.results = new ArrayList<>();
+            this.lastFlushNanos = System.nanoTime() - PROGRESS_INTERVAL_NANOS;
+        }
+
+        @Override
+        public void onResult(BulkOperationEngine.Job job, long userId, String error) {
+            if (this.progress == null)
+                return;
+
+            StringBuilder sb = new StringBuilder(64).append("{\"id_str\":\"").append(userId).append("\",\"error\":");
+            StatusSerializer.writeString(sb, error);
+
+            // 通知の順序を保つため、呼び出しの予約までを排他的に行う
+            synchronized (this) {
+                this.results.add(sb.append('}').toString());
+                long now = System.nanoTime();
+
+                if (now - this.lastFlushNanos >= PROGRESS_INTERVAL_NANOS) {
+                    this.lastFlushNanos = now;
+                    this.flush(job);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onComplete(BulkOperationEngine.Job job) {
+            if (this.progress != null)
+                this.flush(job);
+
+            invokeCallback(this.callback, null, toSummary(job, null));
+        }
+
+        private void flush(BulkOperationEngine.Job job) {
+            if (this.results.isEmpty())
+                return;
+
+            List<String> drained = new ArrayList<>(this.results);
+            this.results.clear();
+            invokeCallback(this.progress, toSummary(job, drained));
+        }
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.plugin;
+
+import net.nanase.nanasetter.twitter.BlockMuteCache;
+import net.nanase.nanasetter.twitter.ConversationIndex;
+import net.nanase.nanasetter.twitter.RelativeTimeUpdater;
+import net.nanase.nanasetter.twitter.StatusRenderer;
+import net.nanase.nanasetter.twitter.StatusSerializer;
+import net.nanase.nanasetter.twitter.StreamPipeline;
+import net.nanase.nanasetter.twitter.TrendTracker;
+import net.nanase.nanasetter.twitter.URLExpander;
+import twitter4j.Status;
+
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/31.
+ */
+
+/**
+ * <p>アカウントのストリームから受信したイベントを処理する {@link StreamPipeline} を作成します。
+ * <p>作成される StreamPipeline には、{@link PluginServices} に設定されている機能のフィルタとオブザーバが登録されます。
+ * 設定されていない機能は登録されません。
+ * <p>{@link RelativeTimeUpdater} が設定されている場合、HTML に変換されるツイートは {@code status-<ID>} のキーで
+ * 相対時刻の更新に登録されます。既定のテンプレートはこのキーを {@code data-relative-time} 属性に持ちます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class StreamPipelineFactory {
+    /**
+     * ツイートを HTML に変換する既定のテンプレートです。
+     */
+    public static final String DEFAULT_STATUS_TEMPLATE =
+            "<div class=\"status\" data-status-id=\"{{id}}\">" +
+                    "<img class=\"status-icon\" src=\"{{user.cached_profile_image_url}}\">" +
+                    "<span class=\"status-user\">{{user.name}} @{{user.screen_name}}</span>" +
+                    "<span class=\"status-text\">{{html}}</span>" +
+                    "<span class=\"status-time\" data-relative-time=\"status-{{id}}\">{{relative_time}}</span>" +
+                    "</div>";
+
+    private final PluginServices services;
+    private final String statusTemplate;
+    private final Logger logger;
+
+    /**
+     * 共有される機能、テンプレートおよびロガーを指定して新しい StreamPipelineFactory クラスのインスタンスを初期化します。
+     *
+     * @param services       共有される機能を保持する PluginServices オブジェクト。
+     * @param statusTemplate ツイートを HTML に変換するテンプレート。
+     * @param logger         ロガー。
+     */
+    public StreamPipelineFactory(PluginServices services, String statusTemplate, Logger logger) {
+        if (services == null || statusTemplate == null || logger == null)
+            throw new IllegalArgumentException();
+
+        this.services = services;
+        this.statusTemplate = statusTemplate;
+        this.logger = logger;
+    }
+
+    /**
+     * アカウントの StreamPipeline を作成します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param eventSink シリアライズされたイベントの配信先。
+     * @param htmlSink  HTML に変換されたツイートの配信先。ツイートを受信した順序で呼び出されます。
+     * @return 新しい StreamPipeline オブジェクト。
+     */
+    public StreamPipeline create(long accountId, Consumer<String> eventSink, Consumer<String> htmlSink) {
+        if (eventSink == null || htmlSink == null)
+            throw new IllegalArgumentException();
+
+        StreamPipeline pipeline = new StreamPipeline(new StatusSerializer(), eventSink, this.logger);
+
+        BlockMuteCache blockMuteCache = this.services.getBlockMuteCache();
+        ConversationIndex conversationIndex = this.services.getConversationIndex();
+        TrendTracker trendTracker = this.services.getTrendTracker();
+        URLExpander urlExpander = this.services.getURLExpander();
+        StatusRenderer statusRenderer = this.services.getStatusRenderer();
+        RelativeTimeUpdater relativeTimeUpdater = this.services.getRelativeTimeUpdater();
+
+        if (blockMuteCache != null)
+            pipeline.addFilter(blockMuteCache.createFilter(accountId));
+
+        if (conversationIndex != null)
+            pipeline.addObserver(conversationIndex);
+
+        if (trendTracker != null)
+            pipeline.addObserver(trendTracker.createObserver(accountId));
+
+        if (urlExpander != null)
+            pipeline.addObserver(urlExpander.createObserver());
+
+        if (statusRenderer != null) {
+            if (relativeTimeUpdater != null)
+                pipeline.addObserver(status -> watchRelativeTime(relativeTimeUpdater, status));
+
+            pipeline.addObserver(statusRenderer.createObserver(statusRenderer.getStatusTemplate(this.statusTemplate),
+                    htmlSink));
+        }
+
+        return pipeline;
+    }
+
+    private static void watchRelativeTime(RelativeTimeUpdater relativeTimeUpdater, Status status) {
+        // テンプレートの {{id}} と {{relative_time}} と同様に、リツイートはリツイート元のツイートで登録する
+        Status shown = status.getRetweetedStatus() != null ? status.getRetweetedStatus() : status;
+
+        if (shown.getCreatedAt() != null)
+            relativeTimeUpdater.watch("status-" + shown.getId(), shown.getCreatedAt().getTime());
+    }
+}
@@ -24,7 +24,13 @@
 
 package net.nanase.nanasetter.plugin;
 
+import net.nanase.nanasetter.twitter.MediaUploader;
 import net.nanase.nanasetter.twitter.TwitterList;
+import net.nanase.nanasetter.twitter.WriteQueue;
+import net.nanase.nanasetter.twitter.WriteRequest;
+
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Project: Nanasetter
@@ -32,7 +38,13 @@ import net.nanase.nanasetter.twitter.TwitterList;
  */
 
 /**
- * ツイート送信と削除、リツイート、お気に入りなどの機能を提供するクラスです。
+ * <p>ツイート送信と削除、リツイート、お気に入りなどの機能を提供するクラスです。
+ * <p>ツイートの送信、返信、リツイートおよびお気に入りは {@link WriteQueue} を経由して非同期に送信されます。
+ * 各メソッドは送信を待たずにチケット ID を返し、送信が完了したとき {@code callback(error, id)} の形式でコールバックを呼び出します。
+ * 成功した場合、error は null、id は作成されたツイートの ID を表す文字列です。失敗した場合、error はエラーメッセージ、id は null です。
+ * <p>画像や動画は {@link #uploadMedia(Object, String, Object, Object)} でアップロードし、得られたメディア ID を
+ * {@link #tweetWithMedia(Object, String, Object, Object)} などに指定して添付します。
+ * <p>ID は JavaScript の数値の精度を超えるため、文字列で指定することを推奨します。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
@@ -50,6 +62,121 @@ public class WritePorter extends Porter {
         super(twitterList, pluginHost);
     }
 
+    /**
+     * ツイートを送信します。
+     *
+     * @param accountId 送信するアカウントのユーザ ID。
+     * @param text      ツイートの本文。
+     * @param callback  送信が完了したときに呼び出される関数。null を指定できます。
+     * @return チケット ID。
+     */
+    public long tweet(Object accountId, String text, Object callback) {
+        return this.submit(WriteRequest.tweet(toId(accountId), text), callback);
+    }
+
+    /**
+     * ツイートに返信します。
+     *
+     * @param accountId         送信するアカウントのユーザ ID。
+     * @param text              ツイートの本文。
+     * @param inReplyToStatusId 返信先のツイート ID。
+     * @param callback          送信が完了したときに呼び出される関数。null を指定できます。
+     * @return チケット ID。
+     */
+    public long reply(Object accountId, String text, Object inReplyToStatusId, Object callback) {
+        return this.submit(WriteRequest.reply(toId(accountId), text, toId(inReplyToStatusId)), callback);
+    }
+
+    /**
+     * メディアを添付したツイートを送信します。
+     *
+     * @param accountId 送信するアカウントのユーザ ID。
+     * @param text      ツイートの本文。
+     * @param mediaIds  添付するメディア ID の配列。
+     * @param callback  送信が完了したときに呼び出される関数。null を指定できます。
+     * @return チケット ID。
+     */
+    public long tweetWithMedia(Object accountId, String text, Object mediaIds, Object callback) {
+        return this.submit(WriteRequest.tweet(toId(accountId), text, toIds(mediaIds)), callback);
+    }
+
+    /**
+     * メディアを添付してツイートに返信します。
+     *
+     * @param accountId         送信するアカウントのユーザ ID。
+     * @param text              ツイートの本文。
+     * @param inReplyToStatusId 返信先のツイート ID。
+     * @param mediaIds          添付するメディア ID の配列。
+     * @param callback          送信が完了したときに呼び出される関数。null を指定できます。
+     * @return チケット ID。
+     */
+    public long replyWithMedia(Object accountId, String text, Object inReplyToStatusId, Object mediaIds,
+                               Object callback) {
+        return this.submit(WriteRequest.reply(toId(accountId), text, toId(inReplyToStatusId), toIds(mediaIds)),
+                callback);
+    }
+
+    /**
+     * <p>画像や動画をアップロードします。このメソッドはアップロードの完了を待たずに直ちに戻ります。
+     * <p>分割の送信が完了するたびに {@code progress(uploadedBytes, totalBytes)} が呼び出され、
+     * アップロードが完了したとき {@code callback(error, mediaId)} が呼び出されます。
+     * <p>任意のローカルファイルを読み取るため、このメソッドは WRITE パーミッションに加えて RISK パーミッションを必要とします。
+     *
+     * @param accountId アップロードするアカウントのユーザ ID。
+     * @param path      アップロードするファイルのパス。
+     * @param progress  進捗を受け取る関数。null を指定できます。
+     * @param callback  アップロードが完了したときに呼び出される関数。null を指定できます。
+     * @throws UnsatisfiedPermissionException プラグインで RISK パーミッションが指定されていません。
+     */
+    public void uploadMedia(Object accountId, String path, Object progress, Object callback)
+            throws UnsatisfiedPermissionException {
+        if (!this.pluginHost.getPlugin().getPermission().contains(PluginPermission.RISK))
+            throw new UnsatisfiedPermissionException(PluginPermission.RISK);
+
+        MediaUploader mediaUploader = this.pluginHost.getServices().getMediaUploader();
+
+        if (mediaUploader == null)
+            throw new IllegalStateException("メディアのアップロードが利用できません.");
+
+        if (path == null)
+            throw new IllegalArgumentException();
+
+        long id = toId(accountId);
+        CompletableFuture<Long> upload = CompletableFuture
+                .supplyAsync(() -> MediaUploader.createEndpoint(this.getTwitter(id)),
+                        this.pluginHost.getServices().getIOExecutor())
+                .thenCompose(endpoint -> mediaUploader.upload(endpoint, Paths.get(path), progress == null ? null :
+                        (uploaded, total) -> invokeCallback(progress, uploaded, total)));
+
+        if (callback != null)
+            upload.whenComplete((mediaId, ex) -> invokeCallback(callback, toErrorMessage(ex),
+                    ex == null ? Long.toString(mediaId) : null));
+    }
+
+    /**
+     * ツイートをリツイートします。
+     *
+     * @param accountId 送信するアカウントのユーザ ID。
+     * @param statusId  リツイートするツイート ID。
+     * @param callback  送信が完了したときに呼び出される関数。null を指定できます。
+     * @return チケット ID。
+     */
+    public long retweet(Object accountId, Object statusId, Object callback) {
+        return this.submit(WriteRequest.retweet(toId(accountId), toId(statusId)), callback);
+    }
+
+    /**
+     * ツイートをお気に入りに追加します。
+     *
+     * @param accountId 送信するアカウントのユーザ ID。
+     * @param statusId  お気に入りに追加するツイート ID。
+     * @param callback  送信が完了したときに呼び出される関数。null を指定できます。
+     * @return チケット ID。
+     */
+    public long favorite(Object accountId, Object statusId, Object callback) {
+        return this.submit(WriteRequest.favorite(toId(accountId), toId(statusId)), callback);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -57,4 +184,21 @@ public class WritePorter extends Porter {
     protected PluginPermission getPermission() {
         return PluginPermission.WRITE;
     }
+
+    private long submit(WriteRequest request, Object callback) {
+        WriteQueue writeQueue = this.pluginHost.getServices().getWriteQueue();
+
+        if (writeQueue == null)
+            throw new IllegalStateException("書き込みキューが利用できません.");
+
+        WriteQueue.Ticket ticket = writeQueue.submit(request);
+        this.pluginHost.getLogger().fine(() -> String.format("書き込み要求 %s をチケット %d として受け付けました.",
+                request, ticket.getId()));
+
+        if (callback != null)
+            ticket.getCompletion().whenComplete((id, ex) -> invokeCallback(callback, toErrorMessage(ex),
+                    ex == null ? Long.toString(id) : null));
+
+        return ticket.getId();
+    }
 }
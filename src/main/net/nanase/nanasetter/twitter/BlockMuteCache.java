@@ -0,0 +1,343 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.JSONParser;
+import net.nanase.nanasetter.utils.LongHashSet;
+import twitter4j.HttpClientFactory;
+import twitter4j.HttpParameter;
+import twitter4j.IDs;
+import twitter4j.Status;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/28.
+ */
+
+/**
+ * <p>アカウントごとのブロックおよびミュートしているユーザ ID を {@link LongHashSet} に保持します。
+ * <p>ユーザ ID はカーソルを用いた REST API によって取得されます。1 回の同期で取得するページ数を制限できるため、
+ * 大きなリストはレート制限の範囲内で複数回の同期に分けて取得されます。すべてのページの取得が完了した時点で、
+ * 新しい集合が以前の集合と置き換えられます。それまでは以前の集合が参照されます。
+ * <p>参照はロックを伴わず、ストリームの受信スレッドから O(1) で行えます。
+ * {@link #add(long, Kind, long)} などによる更新は集合を複製して置き換えるため、頻繁な更新には向きません。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class BlockMuteCache {
+    private static final long START_CURSOR = -1L;
+
+    private final Map<Long, Map<Kind, Entry>> accounts;
+
+    /**
+     * 保持するリストの種類を表します。
+     */
+    public enum Kind {
+        /**
+         * ブロックしているユーザ。
+         */
+        BLOCK,
+
+        /**
+         * ミュートしているユーザ。
+         */
+        MUTE
+    }
+
+    /**
+     * カーソルで区切られたユーザ ID の 1 ページを表します。
+     */
+    public static final class Page {
+        private final long[] ids;
+        private final long nextCursor;
+
+        /**
+         * ユーザ ID と次のカーソルを指定して新しい Page クラスのインスタンスを初期化します。
+         *
+         * @param ids        ユーザ ID の配列。
+         * @param nextCursor 次のページのカーソル。最後のページの場合は 0。
+         */
+        public Page(long[] ids, long nextCursor) {
+            if (ids == null)
+                throw new IllegalArgumentException();
+
+            this.ids = ids;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    /**
+     * ユーザ ID のページを取得する処理を表します。
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * カーソルを指定してユーザ ID のページを取得します。
+         *
+         * @param kind   リストの種類。
+         * @param cursor カーソル。最初のページの場合は -1。
+         * @return 取得したページ。
+         * @throws TwitterException 取得に失敗しました。
+         */
+        Page fetch(Kind kind, long cursor) throws TwitterException;
+    }
+
+    private static final class Entry {
+        private volatile LongHashSet active = new LongHashSet();
+        private LongHashSet staging;
+        private long cursor = START_CURSOR;
+        private boolean synced;
+    }
+
+    /**
+     * 新しい BlockMuteCache クラスのインスタンスを初期化します。
+     */
+    public BlockMuteCache() {
+        this.accounts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Twitter オブジェクトからユーザ ID を取得する Source オブジェクトを作成します。
+     * ブロックは blocks/ids、ミュートは mutes/users/ids から取得されます。
+     *
+     * @param twitter Twitter オブジェクト。
+     * @return Source オブジェクト。
+     */
+    public static Source createSource(Twitter twitter) {
+        if (twitter == null)
+            throw new IllegalArgumentException();
+
+        return (kind, cursor) -> {
+            if (kind == Kind.BLOCK) {
+                IDs ids = twitter.getBlocksIDs(cursor);
+                return new Page(ids.getIDs(), ids.getNextCursor());
+            }
+
+            // twitter4j 4.0.1 はミュートの API を持たないため、直接 mutes/users/ids を呼び出す
+            String response = HttpClientFactory.getInstance(twitter.getConfiguration().getHttpClientConfiguration())
+                    .get(twitter.getConfiguration().getRestBaseURL() + "mutes/users/ids.json",
+                            new HttpParameter[]{new HttpParameter("cursor", cursor)}, twitter.getAuthorization(), null)
+                    .asString();
+
+            try {
+                Map<?, ?> map = (Map<?, ?>) JSONParser.parse(response);
+                List<?> list = (List<?>) map.get("ids");
+                long[] ids = new long[list.size()];
+
+                for (int i = 0; i < ids.length; i++)
+                    ids[i] = ((Number) list.get(i)).longValue();
+
+                return new Page(ids, ((Number) map.get("next_cursor")).longValue());
+            } catch (RuntimeException ex) {
+                throw new TwitterException("ミュートしているユーザの応答を解析できませんでした.", ex);
+            }
+        };
+    }
+
+    /**
+     * ユーザ ID を取得して集合を更新します。前回の同期が途中で終わっている場合は、その続きから取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param kind      リストの種類。
+     * @param source    ユーザ ID を取得する Source オブジェクト。
+     * @param maxPages  この呼び出しで取得する最大のページ数。
+     * @return すべてのページの取得が完了し、集合が置き換えられたとき true、続きのページが残っているとき false。
+     * @throws TwitterException ユーザ ID の取得に失敗しました。取得済みのページは次回の同期で引き継がれます。
+     */
+    public boolean sync(long accountId, Kind kind, Source source, int maxPages) throws TwitterException {
+        if (kind == null || source == null || maxPages < 1)
+            throw new IllegalArgumentException();
+
+        Entry entry = this.getEntry(accountId, kind);
+
+        synchronized (entry) {
+            if (entry.staging == null)
+                entry.staging = new LongHashSet(entry.active.size());
+
+            for (int i = 0; i < maxPages; i++) {
+                Page page = source.fetch(kind, entry.cursor);
+
+                for (long id : page.ids)
+                    entry.staging.add(id);
+
+                entry.cursor = page.nextCursor;
+
+                if (entry.cursor == 0L) {
+                    entry.active = entry.staging;
+                    entry.staging = null;
+                    entry.cursor = START_CURSOR;
+                    entry.synced = true;
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * ユーザがリストに含まれているかを判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param kind      リストの種類。
+     * @param userId    判定するユーザ ID。
+     * @return 含まれているとき true、それ以外のとき false。
+     */
+    public boolean contains(long accountId, Kind kind, long userId) {
+        Map<Kind, Entry> entries = this.accounts.get(accountId);
+
+        if (entries == null)
+            return false;
+
+        Entry entry = entries.get(kind);
+        return entry != null && entry.active.contains(userId);
+    }
+
+    /**
+     * ユーザがブロックまたはミュートされているかを判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param userId    判定するユーザ ID。
+     * @return ブロックまたはミュートされているとき true、それ以外のとき false。
+     */
+    public boolean isFiltered(long accountId, long userId) {
+        return this.contains(accountId, Kind.BLOCK, userId) || this.contains(accountId, Kind.MUTE, userId);
+    }
+
+    /**
+     * ユーザをリストに追加します。ブロックやミュートを行った直後に、同期を待たずに反映する場合に使用します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param kind      リストの種類。
+     * @param userId    追加するユーザ ID。
+     */
+    public void add(long accountId, Kind kind, long userId) {
+        Entry entry = this.getEntry(accountId, kind);
+
+        synchronized (entry) {
+            LongHashSet set = entry.active.clone();
+
+            if (set.add(userId))
+                entry.active = set;
+
+            if (entry.staging != null)
+                entry.staging.add(userId);
+        }
+    }
+
+    /**
+     * ユーザをリストから削除します。ブロックやミュートを解除した直後に、同期を待たずに反映する場合に使用します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param kind      リストの種類。
+     * @param userId    削除するユーザ ID。
+     */
+    public void remove(long accountId, Kind kind, long userId) {
+        Entry entry = this.getEntry(accountId, kind);
+
+        synchronized (entry) {
+            LongHashSet set = entry.active.clone();
+
+            if (set.remove(userId))
+                entry.active = set;
+
+            if (entry.staging != null)
+                entry.staging.remove(userId);
+        }
+    }
+
+    /**
+     * リストに含まれるユーザの数を取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param kind      リストの種類。
+     * @return ユーザの数。
+     */
+    public int size(long accountId, Kind kind) {
+        return this.getEntry(accountId, kind).active.size();
+    }
+
+    /**
+     * リストの同期が一度でも完了したかを判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param kind      リストの種類。
+     * @return 同期が完了したことがあるとき true、それ以外のとき false。
+     */
+    public boolean isSynced(long accountId, Kind kind) {
+        Entry entry = this.getEntry(accountId, kind);
+
+        synchronized (entry) {
+            return entry.synced;
+        }
+    }
+
+    /**
+     * 投稿者、リツイート元の投稿者またはリプライ先のユーザがブロックまたはミュートされているツイートを除外するフィルタを作成します。
+     * 作成されたフィルタは {@link StreamPipeline#addFilter(Predicate)} に追加できます。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return ツイートを通過させるとき true を返す Predicate オブジェクト。
+     */
+    public Predicate<Status> createFilter(long accountId) {
+        return status -> {
+            if (this.isFiltered(accountId, status.getUser().getId()))
+                return false;
+
+            Status retweeted = status.getRetweetedStatus();
+
+            if (retweeted != null && this.isFiltered(accountId, retweeted.getUser().getId()))
+                return false;
+
+            long inReplyTo = status.getInReplyToUserId();
+            return inReplyTo <= 0 || !this.isFiltered(accountId, inReplyTo);
+        };
+    }
+
+    private Entry getEntry(long accountId, Kind kind) {
+        if (kind == null)
+            throw new IllegalArgumentException();
+
+        return this.accounts
+                .computeIfAbsent(accountId, id -> {
+                    Map<Kind, Entry> entries = new EnumMap<>(Kind.class);
+
+                    for (Kind k : Kind.values())
+                        entries.put(k, new Entry());
+
+                    return entries;
+                })
+                .get(kind);
+    }
+}
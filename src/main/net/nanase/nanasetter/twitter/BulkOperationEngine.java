@@ -0,0 +1,919 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.JSONParser;
+import twitter4j.RateLimitStatus;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/27.
+ */
+
+/**
+ * <p>多数のユーザに対するブロックやフォロー解除などの操作を、レート制限の範囲内で並列に実行します。
+ * <p>操作はジョブとして受け付けられ、対象のユーザ ID の集合とともにディスクに記録されます。各ユーザに対する結果は進捗ファイルに追記され、
+ * アプリケーションが異常終了した場合でも、新しいインスタンスの生成時に未完了のジョブが復元され、残りのユーザから再開されます。
+ * 完了または取り消されたジョブのファイルは削除されます。
+ * <p>実行の頻度はアカウントとエンドポイントの組ごとにトークンバケットで制限されます。
+ * レート制限の超過を示す応答を受け取った場合、そのエンドポイントはリセット時刻まで停止されます。
+ * 一時的な失敗は一定の回数まで再試行され、それ以外の失敗はそのユーザの結果として通知されます。
+ * <p>{@link #setBlockMuteCache(BlockMuteCache)} が設定されている場合、成功したブロック、ブロック解除およびスパム報告は
+ * 次の同期を待たずに BlockMuteCache に反映されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class BulkOperationEngine implements AutoCloseable {
+    private static final String JOB_EXTENSION = ".job";
+    private static final String PROGRESS_EXTENSION = ".progress";
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RATE_LIMIT_PAUSE_MILLIS = 15L * 60L * 1000L;
+
+    private final Path directory;
+    private final Executor executor;
+    private final Logger logger;
+    private final int concurrency;
+    private final ScheduledThreadPoolExecutor workers;
+    private final Map<Long, Job> jobs;
+    private final Map<String, Budget> budgets;
+    private final Map<Operation, double[]> budgetSettings;
+
+    private volatile BlockMuteCache blockMuteCache;
+    private long lastJobId;
+    private boolean closed;
+
+    /**
+     * 一括操作の種類を表します。
+     */
+    public enum Operation {
+        /**
+         * フォロー。
+         */
+        FOLLOW("friendships/create", 5, 1.0 / 90.0),
+
+        /**
+         * フォロー解除。
+         */
+        UNFOLLOW("friendships/destroy", 15, 0.25),
+
+        /**
+         * ブロック。
+         */
+        BLOCK("blocks/create", 15, 0.25),
+
+        /**
+         * ブロック解除。
+         */
+        UNBLOCK("blocks/destroy", 15, 0.25),
+
+        /**
+         * スパム報告とブロック。
+         */
+        REPORT_SPAM("users/report_spam", 5, 1.0 / 60.0),
+
+        /**
+         * リストへのメンバーの追加。
+         */
+        ADD_TO_LIST("lists/members/create", 15, 0.25),
+
+        /**
+         * リストからのメンバーの削除。
+         */
+        REMOVE_FROM_LIST("lists/members/destroy", 15, 0.25);
+
+        private final String endpoint;
+        private final int burst;
+        private final double perSecond;
+
+        Operation(String endpoint, int burst, double perSecond) {
+            this.endpoint = endpoint;
+            this.burst = burst;
+            this.perSecond = perSecond;
+        }
+
+        /**
+         * この操作が呼び出すエンドポイントを取得します。
+         *
+         * @return エンドポイントのパス。
+         */
+        public String getEndpoint() {
+            return this.endpoint;
+        }
+
+        /**
+         * この操作がリスト ID を必要とするかの真偽値を取得します。
+         *
+         * @return リスト ID を必要とするとき true、それ以外のとき false。
+         */
+        public boolean requiresList() {
+            return this == ADD_TO_LIST || this == REMOVE_FROM_LIST;
+        }
+    }
+
+    /**
+     * 1 人のユーザに対する操作を実行する処理を表します。
+     */
+    @FunctionalInterface
+    public interface Executor {
+        /**
+         * 操作を実行します。
+         *
+         * @param accountId 操作を行うアカウントのユーザ ID。
+         * @param operation 操作の種類。
+         * @param userId    対象のユーザ ID。
+         * @param listId    対象のリスト ID。リストを対象としない操作の場合は 0。
+         * @throws TwitterException 操作に失敗しました。
+         */
+        void execute(long accountId, Operation operation, long userId, long listId) throws TwitterException;
+    }
+
+    /**
+     * ジョブの進捗を受け取るリスナです。各メソッドはジョブを実行するスレッドから呼び出されます。
+     */
+    public interface Listener {
+        /**
+         * 1 人のユーザに対する操作が完了したときに呼び出されます。
+         *
+         * @param job    ジョブ。
+         * @param userId 対象のユーザ ID。
+         * @param error  失敗した場合はエラーメッセージ、成功した場合は null。
+         */
+        void onResult(Job job, long userId, String error);
+
+        /**
+         * ジョブが完了または取り消されたときに呼び出されます。
+         *
+         * @param job ジョブ。
+         */
+        void onComplete(Job job);
+    }
+
+    /**
+     * 受け付けられた一括操作を表します。
+     */
+    public static final class Job {
+        private final long id;
+        private final long accountId;
+        private final Operation operation;
+        private final long listId;
+        private final long[] userIds;
+        private final List<Listener> listeners;
+        private final CompletableFuture<Job> completion;
+
+        private final ArrayDeque<Integer> pending;
+        private final int[] attempts;
+        private FileChannel progress;
+        private int inFlight;
+        private boolean dispatchScheduled;
+        private volatile int succeeded;
+        private volatile int failed;
+        private volatile boolean cancelled;
+
+        private Job(long id, long accountId, Operation operation, long listId, long[] userIds, BitSet done) {
+            this.id = id;
+            this.accountId = accountId;
+            this.operation = operation;
+            this.listId = listId;
+            this.userIds = userIds;
+            this.listeners = new CopyOnWriteArrayList<>();
+            this.completion = new CompletableFuture<>();
+            this.pending = new ArrayDeque<>(userIds.length);
+            this.attempts = new int[userIds.length];
+
+            for (int i = 0; i < userIds.length; i++)
+                if (!done.get(i))
+                    this.pending.add(i);
+        }
+
+        /**
+         * ジョブ ID を取得します。
+         *
+         * @return ジョブ ID。
+         */
+        public long getId() {
+            return this.id;
+        }
+
+        /**
+         * 操作を行うアカウントのユーザ ID を取得します。
+         *
+         * @return ユーザ ID。
+         */
+        public long getAccountId() {
+            return this.accountId;
+        }
+
+        /**
+         * 操作の種類を取得します。
+         *
+         * @return 操作の種類。
+         */
+        public Operation getOperation() {
+            return this.operation;
+        }
+
+        /**
+         * 対象のリスト ID を取得します。
+         *
+         * @return リスト ID。リストを対象としない操作の場合は 0。
+         */
+        public long getListId() {
+            return this.listId;
+        }
+
+        /**
+         * 対象のユーザの数を取得します。
+         *
+         * @return ユーザの数。
+         */
+        public int getTotal() {
+            return this.userIds.length;
+        }
+
+        /**
+         * 操作に成功したユーザの数を取得します。再開されたジョブでは以前の実行の結果を含みます。
+         *
+         * @return ユーザの数。
+         */
+        public int getSucceeded() {
+            return this.succeeded;
+        }
+
+        /**
+         * 操作に失敗したユーザの数を取得します。再開されたジョブでは以前の実行の結果を含みます。
+         *
+         * @return ユーザの数。
+         */
+        public int getFailed() {
+            return this.failed;
+        }
+
+        /**
+         * ジョブが取り消されたかの真偽値を取得します。
+         *
+         * @return 取り消されたとき true、それ以外のとき false。
+         */
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * ジョブの完了を表す CompletableFuture オブジェクトを取得します。
+         *
+         * @return CompletableFuture オブジェクト。
+         */
+        public CompletableFuture<Job> getCompletion() {
+            return this.completion;
+        }
+
+        /**
+         * 進捗を受け取るリスナを追加します。
+         *
+         * @param listener Listener オブジェクト。
+         */
+        public void addListener(Listener listener) {
+            if (listener == null)
+                throw new IllegalArgumentException();
+
+            this.listeners.add(listener);
+        }
+
+        /**
+         * 進捗を受け取るリスナを削除します。
+         *
+         * @param listener Listener オブジェクト。
+         */
+        public void removeListener(Listener listener) {
+            this.listeners.remove(listener);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(job: %d, account: %d, %d/%d)", this.operation, this.id, this.accountId,
+                    this.succeeded + this.failed, this.userIds.length);
+        }
+    }
+
+    private static final class Budget {
+        private final int burst;
+        private final double perSecond;
+        private double tokens;
+        private long lastRefillNanos;
+        private long pausedUntilNanos;
+
+        private Budget(int burst, double perSecond) {
+            this.burst = burst;
+            this.perSecond = perSecond;
+            this.tokens = burst;
+            this.lastRefillNanos = System.nanoTime();
+            this.pausedUntilNanos = this.lastRefillNanos;
+        }
+
+        private long acquire() {
+            long now = System.nanoTime();
+
+            if (now - this.pausedUntilNanos < 0)
+                return this.pausedUntilNanos - now;
+
+            this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefillNanos) * this.perSecond / 1e9);
+            this.lastRefillNanos = now;
+
+            if (this.tokens >= 1.0) {
+                this.tokens -= 1.0;
+                return 0L;
+            }
+
+            return (long) Math.ceil((1.0 - this.tokens) * 1e9 / this.perSecond);
+        }
+
+        // リセット時刻に 1 件だけ再開し、以降は通常の頻度に戻す
+        private void pause(long millis) {
+            this.pausedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            this.lastRefillNanos = this.pausedUntilNanos;
+            this.tokens = 1.0;
+        }
+    }
+
+    /**
+     * 保存先のディレクトリ、操作の実行処理およびロガーを指定して新しい BulkOperationEngine クラスのインスタンスを初期化します。
+     * ディレクトリに未完了のジョブが記録されている場合は、それらを復元して実行を再開します。
+     *
+     * @param directory ジョブを記録するディレクトリ。
+     * @param executor  操作を実行する Executor オブジェクト。
+     * @param logger    ジョブの状態を出力する Logger オブジェクト。
+     * @throws IOException ディレクトリの作成または読み込みに失敗しました。
+     */
+    public BulkOperationEngine(Path directory, Executor executor, Logger logger) throws IOException {
+        this(directory, executor, logger, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * 保存先のディレクトリ、操作の実行処理、ロガーおよび並列数を指定して新しい BulkOperationEngine クラスのインスタンスを初期化します。
+     * ディレクトリに未完了のジョブが記録されている場合は、それらを復元して実行を再開します。
+     *
+     * @param directory   ジョブを記録するディレクトリ。
+     * @param executor    操作を実行する Executor オブジェクト。
+     * @param logger      ジョブの状態を出力する Logger オブジェクト。
+     * @param concurrency 1 つのジョブで同時に実行する操作の数。
+     * @throws IOException ディレクトリの作成または読み込みに失敗しました。
+     */
+    public BulkOperationEngine(Path directory, Executor executor, Logger logger, int concurrency) throws IOException {
+        if (directory == null || executor == null || logger == null || concurrency < 1)
+            throw new IllegalArgumentException();
+
+        this.directory = directory;
+        this.executor = executor;
+        this.logger = logger;
+        this.concurrency = concurrency;
+        this.jobs = new LinkedHashMap<>();
+        this.budgets = new HashMap<>();
+        this.budgetSettings = new EnumMap<>(Operation.class);
+
+        this.workers = new ScheduledThreadPoolExecutor(concurrency, r -> {
+            Thread thread = new Thread(r, "nanasetter-bulk-operation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        Files.createDirectories(directory);
+        this.restoreJobs();
+    }
+
+    /**
+     * TwitterList に格納されたアカウントを用いて操作を実行する Executor オブジェクトを作成します。
+     *
+     * @param twitterList Twitter オブジェクトが格納された TwitterList オブジェクト。
+     * @return Executor オブジェクト。
+     */
+    public static Executor createExecutor(TwitterList twitterList) {
+        if (twitterList == null)
+            throw new IllegalArgumentException();
+
+        return (accountId, operation, userId, listId) -> {
+            Twitter twitter = twitterList.getTwitter(accountId)
+                    .orElseThrow(() -> new TwitterException(String.format("アカウント %d が見つかりません.", accountId)));
+
+            switch (operation) {
+                case FOLLOW:
+                    twitter.createFriendship(userId);
+                    break;
+
+                case UNFOLLOW:
+                    twitter.destroyFriendship(userId);
+                    break;
+
+                case BLOCK:
+                    twitter.createBlock(userId);
+                    break;
+
+                case UNBLOCK:
+                    twitter.destroyBlock(userId);
+                    break;
+
+                case REPORT_SPAM:
+                    twitter.reportSpam(userId);
+                    break;
+
+                case ADD_TO_LIST:
+                    twitter.createUserListMember(listId, userId);
+                    break;
+
+                case REMOVE_FROM_LIST:
+                    twitter.destroyUserListMember(listId, userId);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException();
+            }
+        };
+    }
+
+    /**
+     * 成功したブロック、ブロック解除およびスパム報告を反映する BlockMuteCache を設定します。
+     *
+     * @param blockMuteCache BlockMuteCache オブジェクト。null の場合は反映されません。
+     */
+    public void setBlockMuteCache(BlockMuteCache blockMuteCache) {
+        this.blockMuteCache = blockMuteCache;
+    }
+
+    /**
+     * 操作の実行頻度の上限を設定します。設定はこれ以降に初めて使用されるアカウントとエンドポイントの組に適用されます。
+     *
+     * @param operation 操作の種類。
+     * @param burst     連続して実行できる操作の数。
+     * @param perSecond 1 秒あたりに実行できる操作の数。
+     */
+    public synchronized void setBudget(Operation operation, int burst, double perSecond) {
+        if (operation == null || burst < 1 || perSecond <= 0.0)
+            throw new IllegalArgumentException();
+
+        this.budgetSettings.put(operation, new double[]{burst, perSecond});
+    }
+
+    /**
+     * 一括操作を開始します。このメソッドは操作の完了を待たずに直ちに戻ります。重複したユーザ ID は 1 つにまとめられます。
+     *
+     * @param accountId 操作を行うアカウントのユーザ ID。
+     * @param operation 操作の種類。
+     * @param userIds   対象のユーザ ID。
+     * @param listId    対象のリスト ID。リストを対象としない操作の場合は無視されます。
+     * @param listener  進捗を受け取るリスナ。null を指定できます。
+     * @return 開始されたジョブ。
+     * @throws IOException ジョブを記録できませんでした。
+     */
+    public Job submit(long accountId, Operation operation, Collection<Long> userIds, long listId, Listener listener)
+            throws IOException {
+        if (operation == null || userIds == null)
+            throw new IllegalArgumentException();
+
+        if (operation.requiresList() && listId <= 0)
+            throw new IllegalArgumentException("リスト ID が指定されていません.");
+
+        long[] ids = userIds.stream().mapToLong(Long::longValue).distinct().toArray();
+        Job job;
+
+        synchronized (this) {
+            if (this.closed)
+                throw new IllegalStateException();
+
+            long id = Math.max(System.currentTimeMillis(), this.lastJobId + 1);
+            this.lastJobId = id;
+
+            job = new Job(id, accountId, operation, operation.requiresList() ? listId : 0L, ids, new BitSet());
+
+            if (listener != null)
+                job.addListener(listener);
+
+            this.writeJob(job);
+            job.progress = this.openProgress(job);
+            this.jobs.put(job.id, job);
+            this.dispatch(job);
+        }
+
+        this.logger.info(String.format("一括操作 %s を開始しました.", job));
+        return job;
+    }
+
+    /**
+     * 指定された ID のジョブを取得します。
+     *
+     * @param jobId ジョブ ID。
+     * @return ジョブ。実行中のジョブが存在しない場合は null。
+     */
+    public synchronized Job getJob(long jobId) {
+        return this.jobs.get(jobId);
+    }
+
+    /**
+     * 実行中のジョブを取得します。
+     *
+     * @return ジョブのリスト。
+     */
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<>(this.jobs.values());
+    }
+
+    /**
+     * ジョブを取り消します。実行中の操作の完了後、ジョブは完了として通知されます。
+     *
+     * @param jobId ジョブ ID。
+     * @return ジョブが取り消されたとき true、ジョブが存在しないとき false。
+     */
+    public boolean cancel(long jobId) {
+        synchronized (this) {
+            Job job = this.jobs.get(jobId);
+
+            if (job == null)
+                return false;
+
+            job.cancelled = true;
+            job.pending.clear();
+            this.dispatch(job);
+        }
+
+        this.logger.info(String.format("一括操作 (ジョブ: %d) を取り消しました.", jobId));
+        return true;
+    }
+
+    /**
+     * ジョブの実行を停止します。未完了のジョブは記録されたまま残され、次回の起動時に再開されます。
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+        }
+
+        this.workers.shutdown();
+
+        try {
+            this.workers.awaitTermination(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            for (Job job : this.jobs.values())
+                closeQuietly(job.progress);
+        }
+    }
+
+    // ロックを保持した状態で呼び出す
+    private void dispatch(Job job) {
+        if (this.closed)
+            return;
+
+        while (job.inFlight < this.concurrency && !job.pending.isEmpty()) {
+            long wait = this.getBudget(job).acquire();
+
+            if (wait > 0L) {
+                if (!job.dispatchScheduled) {
+                    job.dispatchScheduled = true;
+                    this.workers.schedule(() -> {
+                        synchronized (this) {
+                            job.dispatchScheduled = false;
+                            this.dispatch(job);
+                        }
+                    }, wait, TimeUnit.NANOSECONDS);
+                }
+
+                return;
+            }
+
+            int index = job.pending.poll();
+            job.inFlight++;
+            this.workers.execute(() -> this.run(job, index));
+        }
+
+        if (job.inFlight == 0 && job.pending.isEmpty() && this.jobs.containsKey(job.id))
+            this.finish(job);
+    }
+
+    private void run(Job job, int index) {
+        long userId = job.userIds[index];
+        String error = null;
+        boolean retry = false;
+
+        try {
+            this.executor.execute(job.accountId, job.operation, userId, job.listId);
+        } catch (TwitterException ex) {
+            if (ex.exceededRateLimitation()) {
+                this.pauseBudget(job, ex);
+                retry = true;
+            } else if (WriteQueue.isTransient(ex) && ++job.attempts[index] < MAX_ATTEMPTS) {
+                retry = true;
+            } else {
+                error = ex.getMessage();
+            }
+        } catch (RuntimeException ex) {
+            error = String.valueOf(ex.getMessage());
+        }
+
+        synchronized (this) {
+            job.inFlight--;
+
+            if (retry && !job.cancelled)
+                job.pending.addFirst(index);
+            else if (!retry)
+                this.record(job, index, error);
+        }
+
+        if (!retry && error == null)
+            this.updateBlockMuteCache(job, userId);
+
+        if (!retry)
+            for (Listener listener : job.listeners)
+                listener.onResult(job, userId, error);
+
+        synchronized (this) {
+            this.dispatch(job);
+        }
+    }
+
+    private void updateBlockMuteCache(Job job, long userId) {
+        BlockMuteCache cache = this.blockMuteCache;
+
+        if (cache == null)
+            return;
+
+        switch (job.operation) {
+            case BLOCK:
+            case REPORT_SPAM:
+                cache.add(job.accountId, BlockMuteCache.Kind.BLOCK, userId);
+                break;
+
+            case UNBLOCK:
+                cache.remove(job.accountId, BlockMuteCache.Kind.BLOCK, userId);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void pauseBudget(Job job, TwitterException ex) {
+        RateLimitStatus status = ex.getRateLimitStatus();
+        long millis = status != null
+                ? Math.max(1, status.getSecondsUntilReset()) * 1000L : DEFAULT_RATE_LIMIT_PAUSE_MILLIS;
+
+        synchronized (this) {
+            this.getBudget(job).pause(millis);
+        }
+
+        this.logger.warning(String.format("%s のレート制限を超えたため、%d 秒間停止します.",
+                job.operation.getEndpoint(), millis / 1000L));
+    }
+
+    private void record(Job job, int index, String error) {
+        if (error == null)
+            job.succeeded++;
+        else
+            job.failed++;
+
+        StringBuilder sb = new StringBuilder(48).append("{\"i\":").append(index);
+
+        if (error != null) {
+            sb.append(",\"error\":");
+            StatusSerializer.writeString(sb, error);
+        }
+
+        try {
+            // 追記はページキャッシュに残るため、プロセスが異常終了しても失われない
+            writeFully(job.progress, sb.append("}\n").toString());
+        } catch (IOException ex) {
+            this.logger.log(Level.WARNING, String.format("一括操作 (ジョブ: %d) の進捗を記録できませんでした.", job.id), ex);
+        }
+    }
+
+    private void finish(Job job) {
+        this.jobs.remove(job.id);
+        closeQuietly(job.progress);
+
+        try {
+            Files.deleteIfExists(this.getProgressPath(job.id));
+            Files.deleteIfExists(this.getJobPath(job.id));
+        } catch (IOException ex) {
+            this.logger.log(Level.WARNING, String.format("一括操作 (ジョブ: %d) のファイルを削除できませんでした.", job.id), ex);
+        }
+
+        // リスナはロックの外で呼び出す
+        this.workers.execute(() -> {
+            this.logger.info(String.format("一括操作 %s が%sしました (成功: %d, 失敗: %d).",
+                    job, job.cancelled ? "中止" : "完了", job.succeeded, job.failed));
+
+            for (Listener listener : job.listeners)
+                listener.onComplete(job);
+
+            job.completion.complete(job);
+        });
+    }
+
+    private Budget getBudget(Job job) {
+        return this.budgets.computeIfAbsent(job.accountId + ":" + job.operation.getEndpoint(), key -> {
+            double[] setting = this.budgetSettings.get(job.operation);
+
+            return setting == null
+                    ? new Budget(job.operation.burst, job.operation.perSecond)
+                    : new Budget((int) setting[0], setting[1]);
+        });
+    }
+
+    private void restoreJobs() throws IOException {
+        List<Path> jobFiles = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + JOB_EXTENSION)) {
+            stream.forEach(jobFiles::add);
+        }
+
+        jobFiles.sort(null);
+
+        for (Path jobFile : jobFiles) {
+            Job job;
+
+            try {
+                job = this.readJob(jobFile);
+            } catch (IOException | RuntimeException ex) {
+                this.logger.warning(String.format("ファイル '%s' のジョブを復元できませんでした: %s", jobFile, ex.getMessage()));
+                continue;
+            }
+
+            synchronized (this) {
+                this.lastJobId = Math.max(this.lastJobId, job.id);
+                job.progress = this.openProgress(job);
+                this.jobs.put(job.id, job);
+                this.dispatch(job);
+            }
+
+            this.logger.info(String.format("一括操作 %s を再開しました.", job));
+        }
+    }
+
+    private Job readJob(Path jobFile) throws IOException {
+        Map<?, ?> header = (Map<?, ?>) JSONParser.parse(
+                new String(Files.readAllBytes(jobFile), StandardCharsets.UTF_8).trim());
+        List<?> users = (List<?>) header.get("users");
+        long[] userIds = new long[users.size()];
+
+        for (int i = 0; i < userIds.length; i++)
+            userIds[i] = ((Number) users.get(i)).longValue();
+
+        long id = ((Number) header.get("id")).longValue();
+        BitSet done = new BitSet(userIds.length);
+        int succeeded = 0;
+        int failed = 0;
+        Path progressFile = this.getProgressPath(id);
+
+        if (Files.exists(progressFile)) {
+            for (String line : Files.readAllLines(progressFile, StandardCharsets.UTF_8)) {
+                try {
+                    Map<?, ?> record = (Map<?, ?>) JSONParser.parse(line);
+                    int index = ((Number) record.get("i")).intValue();
+
+                    if (index < 0 || index >= userIds.length || done.get(index))
+                        continue;
+
+                    done.set(index);
+
+                    if (record.containsKey("error"))
+                        failed++;
+                    else
+                        succeeded++;
+                } catch (RuntimeException ex) {
+                    // 異常終了により途切れた末尾の行は未完了として扱う
+                }
+            }
+        }
+
+        Job job = new Job(id, ((Number) header.get("account")).longValue(),
+                Operation.valueOf((String) header.get("operation")), ((Number) header.get("list")).longValue(),
+                userIds, done);
+        job.succeeded = succeeded;
+        job.failed = failed;
+        return job;
+    }
+
+    private void writeJob(Job job) throws IOException {
+        StringBuilder sb = new StringBuilder(job.userIds.length * 12 + 96);
+        sb.append("{\"id\":").append(job.id)
+          .append(",\"account\":").append(job.accountId)
+          .append(",\"operation\":\"").append(job.operation.name())
+          .append("\",\"list\":").append(job.listId)
+          .append(",\"users\":[");
+
+        for (int i = 0; i < job.userIds.length; i++)
+            sb.append(i == 0 ? "" : ",").append(job.userIds[i]);
+
+        sb.append("]}\n");
+
+        Path path = this.getJobPath(job.id);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, sb.toString());
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private FileChannel openProgress(Job job) {
+        try {
+            return FileChannel.open(this.getProgressPath(job.id),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            this.logger.log(Level.WARNING, String.format("一括操作 (ジョブ: %d) の進捗ファイルを開けませんでした.", job.id), ex);
+            return null;
+        }
+    }
+
+    private Path getJobPath(long jobId) {
+        return this.directory.resolve(jobId + JOB_EXTENSION);
+    }
+
+    private Path getProgressPath(long jobId) {
+        return this.directory.resolve(jobId + PROGRESS_EXTENSION);
+    }
+
+    private static void writeFully(FileChannel channel, String record) throws IOException {
+        if (channel == null)
+            throw new IOException("進捗ファイルが開かれていません.");
+
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null)
+            return;
+
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            //
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.LongHashSet;
+import twitter4j.HttpClientFactory;
+import twitter4j.HttpParameter;
+import twitter4j.JSONArray;
+import twitter4j.JSONException;
+import twitter4j.Status;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/29.
+ */
+
+/**
+ * <p>受信したツイートのリプライ関係をメモリ上に索引付けし、会話を組み立てます。
+ * <p>各ツイートはリプライ先と、リプライとして受信したツイートの ID を保持します。
+ * {@link StreamPipeline#addObserver(Consumer)} に追加すると、配信されるツイートが順次登録されます。
+ * リツイートはリツイート元のツイートとして登録されます。
+ * <p>索引に存在しない祖先は {@link #resolve(long, Fetcher, int)} によって取得されます。
+ * 取得は会話の先端で欠けているツイートをまとめて 1 回の statuses/lookup で取得することを繰り返し、
+ * 1 つずつリプライ先をたどる場合と比べて API の呼び出し回数を抑えます。
+ * <p>保持するツイートの数は制限され、最も長く参照されていないツイートから破棄されます。
+ * リプライを受信したツイートは参照されたものとして扱われます。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class ConversationIndex implements Consumer<Status> {
+    private static final int LOOKUP_SIZE = 100;
+    private static final long[] NO_CHILDREN = new long[0];
+
+    private final Map<Long, Node> nodes;
+
+    /**
+     * 欠けているツイートを取得する処理を表します。
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+        /**
+         * ツイートをまとめて取得します。存在しないツイートや参照できないツイートは結果に含まれません。
+         *
+         * @param statusIds 取得するツイートの ID。最大 100 件。
+         * @return 取得したツイート。
+         * @throws TwitterException 取得に失敗しました。
+         */
+        List<Status> lookup(long[] statusIds) throws TwitterException;
+    }
+
+    private static final class Node {
+        private Status status;
+        private long[] children = NO_CHILDREN;
+        private int childCount;
+        private boolean unavailable;
+
+        private void addChild(long id) {
+            for (int i = 0; i < this.childCount; i++)
+                if (this.children[i] == id)
+                    return;
+
+            if (this.childCount == this.children.length)
+                this.children = Arrays.copyOf(this.children, Math.max(4, this.childCount * 2));
+
+            this.children[this.childCount++] = id;
+        }
+    }
+
+    /**
+     * 保持するツイートの最大数を指定して新しい ConversationIndex クラスのインスタンスを初期化します。
+     *
+     * @param capacity 保持するツイートの最大数。
+     */
+    public ConversationIndex(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException();
+
+        this.nodes = new LinkedHashMap<Long, Node>(Math.min(capacity, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Twitter オブジェクトの statuses/lookup を用いる Fetcher オブジェクトを作成します。
+     *
+     * @param twitter Twitter オブジェクト。
+     * @return Fetcher オブジェクト。
+     */
+    public static Fetcher createFetcher(Twitter twitter) {
+        if (twitter == null)
+            throw new IllegalArgumentException();
+
+        // twitter4j 4.0.1 は statuses/lookup を持たないため、直接呼び出して要素ごとに Status へ変換する
+        return statusIds -> {
+            StringBuilder ids = new StringBuilder(statusIds.length * 20);
+
+            for (long id : statusIds)
+                ids.append(ids.length() == 0 ? "" : ",").append(id);
+
+            JSONArray array = HttpClientFactory.getInstance(twitter.getConfiguration().getHttpClientConfiguration())
+                    .get(twitter.getConfiguration().getRestBaseURL() + "statuses/lookup.json",
+                            new HttpParameter[]{new HttpParameter("id", ids.toString())}, twitter.getAuthorization(), null)
+                    .asJSONArray();
+
+            List<Status> statuses = new ArrayList<>(array.length());
+
+            try {
+                for (int i = 0; i < array.length(); i++)
+                    statuses.add(TwitterObjectFactory.createStatus(array.getJSONObject(i).toString()));
+            } catch (JSONException ex) {
+                throw new TwitterException(ex);
+            }
+
+            return statuses;
+        };
+    }
+
+    /**
+     * ツイートを索引に登録します。{@link #add(Status)} と同じです。
+     *
+     * @param status 登録するツイート。
+     */
+    @Override
+    public void accept(Status status) {
+        this.add(status);
+    }
+
+    /**
+     * ツイートを索引に登録します。リツイートの場合はリツイート元のツイートが登録されます。
+     *
+     * @param status 登録するツイート。
+     */
+    public synchronized void add(Status status) {
+        if (status == null)
+            throw new IllegalArgumentException();
+
+        if (status.getRetweetedStatus() != null)
+            status = status.getRetweetedStatus();
+
+        Node node = this.nodes.computeIfAbsent(status.getId(), id -> new Node());
+        node.status = status;
+        node.unavailable = false;
+
+        long parentId = status.getInReplyToStatusId();
+
+        if (parentId > 0)
+            this.nodes.computeIfAbsent(parentId, id -> new Node()).addChild(status.getId());
+    }
+
+    /**
+     * 索引に登録されたツイートを取得します。
+     *
+     * @param statusId ツイートの ID。
+     * @return 登録されているとき Status オブジェクト、それ以外のとき null。
+     */
+    public synchronized Status getStatus(long statusId) {
+        Node node = this.nodes.get(statusId);
+        return node == null ? null : node.status;
+    }
+
+    /**
+     * 索引に登録されたツイートの数を取得します。
+     *
+     * @return ツイートの数。
+     */
+    public synchronized int size() {
+        int count = 0;
+
+        for (Node node : this.nodes.values())
+            if (node.status != null)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * 索引に登録された情報から会話を組み立てます。
+     * 会話は最も古い祖先から指定されたツイートまでのリプライ先の列と、それに続く指定されたツイートへのリプライからなります。
+     * リプライは深さ優先の順序で、同じツイートへのリプライは ID の昇順に並べられます。
+     *
+     * @param statusId ツイートの ID。
+     * @return 会話を構成するツイートのリスト。ツイートが登録されていない場合は空のリスト。
+     */
+    public synchronized List<Status> getConversation(long statusId) {
+        Node node = this.nodes.get(statusId);
+
+        if (node == null || node.status == null)
+            return Collections.emptyList();
+
+        List<Status> ancestors = new ArrayList<>();
+        LongHashSet visited = new LongHashSet();
+        visited.add(statusId);
+
+        for (long parentId = node.status.getInReplyToStatusId(); parentId > 0 && visited.add(parentId); ) {
+            Node parent = this.nodes.get(parentId);
+
+            if (parent == null || parent.status == null)
+                break;
+
+            ancestors.add(parent.status);
+            parentId = parent.status.getInReplyToStatusId();
+        }
+
+        Collections.reverse(ancestors);
+        List<Status> conversation = new ArrayList<>(ancestors);
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            conversation.add(current.status);
+
+            long[] children = Arrays.copyOf(current.children, current.childCount);
+            Arrays.sort(children);
+
+            for (int i = children.length - 1; i >= 0; i--) {
+                Node child = this.nodes.get(children[i]);
+
+                if (child != null && child.status != null && visited.add(children[i]))
+                    stack.push(child);
+            }
+        }
+
+        return conversation;
+    }
+
+    /**
+     * 会話の祖先のうち、索引に登録されていない最も新しいツイートの ID を取得します。
+     *
+     * @param statusId ツイートの ID。
+     * @return 欠けている祖先の ID。祖先がすべて登録されているか、取得できないことが分かっている場合は -1。
+     */
+    public synchronized long getMissingAncestor(long statusId) {
+        LongHashSet visited = new LongHashSet();
+        long id = statusId;
+
+        while (visited.add(id)) {
+            Node node = this.nodes.get(id);
+
+            if (node == null || node.status == null)
+                return node != null && node.unavailable ? -1L : id;
+
+            id = node.status.getInReplyToStatusId();
+
+            if (id <= 0)
+                return -1L;
+        }
+
+        return -1L;
+    }
+
+    /**
+     * 指定されたツイートの会話で欠けている祖先を取得して索引に登録します。
+     * 1 回の取得では、各ツイートの欠けている最も新しい祖先がまとめて取得されます。
+     * 取得したツイートのリプライ先も欠けている場合は、次の取得で続けて取得されます。
+     *
+     * @param statusId  ツイートの ID。
+     * @param fetcher   ツイートを取得する Fetcher オブジェクト。
+     * @param maxRounds 取得を繰り返す最大の回数。
+     * @return 取得したツイートの数。
+     * @throws TwitterException ツイートの取得に失敗しました。
+     */
+    public int resolve(long statusId, Fetcher fetcher, int maxRounds) throws TwitterException {
+        return this.resolve(new long[]{statusId}, fetcher, maxRounds);
+    }
+
+    /**
+     * 複数のツイートの会話で欠けている祖先を取得して索引に登録します。
+     * 1 回の取得では、各ツイートの欠けている最も新しい祖先がまとめて取得されます。
+     * 取得したツイートのリプライ先も欠けている場合は、次の取得で続けて取得されます。
+     *
+     * @param statusIds ツイートの ID。
+     * @param fetcher   ツイートを取得する Fetcher オブジェクト。
+     * @param maxRounds 取得を繰り返す最大の回数。
+     * @return 取得したツイートの数。
+     * @throws TwitterException ツイートの取得に失敗しました。
+     */
+    public int resolve(long[] statusIds, Fetcher fetcher, int maxRounds) throws TwitterException {
+        if (statusIds == null || fetcher == null || maxRounds < 1)
+            throw new IllegalArgumentException();
+
+        int fetched = 0;
+
+        for (int round = 0; round < maxRounds; round++) {
+            LongHashSet missing = new LongHashSet();
+
+            for (long statusId : statusIds) {
+                long id = this.getMissingAncestor(statusId);
+
+                if (id > 0)
+                    missing.add(id);
+            }
+
+            if (missing.isEmpty())
+                break;
+
+            long[] ids = missing.toSortedArray();
+
+            for (int from = 0; from < ids.length; from += LOOKUP_SIZE) {
+                long[] chunk = Arrays.copyOfRange(ids, from, Math.min(from + LOOKUP_SIZE, ids.length));
+                List<Status> statuses = fetcher.lookup(chunk);
+
+                synchronized (this) {
+                    for (Status status : statuses) {
+                        this.add(status);
+                        fetched++;
+                    }
+
+                    // 結果に含まれないツイートは削除されたか参照できないため、再び取得しない
+                    for (long id : chunk) {
+                        Node node = this.nodes.computeIfAbsent(id, key -> new Node());
+
+                        if (node.status == null)
+                            node.unavailable = true;
+                    }
+                }
+            }
+        }
+
+        return fetched;
+    }
+}
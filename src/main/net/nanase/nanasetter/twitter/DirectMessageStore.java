@@ -0,0 +1,509 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.JSONParser;
+import twitter4j.DirectMessage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/27.
+ */
+
+/**
+ * <p>ダイレクトメッセージをアカウントごとにディスクへ保存し、相手のユーザ ID ごとに索引付けして保持します。
+ * <p>各アカウントのメッセージは {@code <ディレクトリ>/<ユーザ ID>/messages.jsonl} に追記され、
+ * 同期の位置は {@code cursor.json} に置き換えによって記録されます。アカウントのデータは初めて参照されたときに読み込まれます。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class DirectMessageStore {
+    private static final String MESSAGES_FILE = "messages.jsonl";
+    private static final String CURSOR_FILE = "cursor.json";
+
+    private final Path directory;
+    private final Logger logger;
+    private final Map<Long, Account> accounts;
+
+    /**
+     * <p>受信または送信したメッセージの同期位置を表します。このクラスは不変です。
+     * <p>1 回の同期で範囲のすべてを取得できなかった場合、取得を再開するメッセージ ID と、
+     * 取得済みの最大のメッセージ ID が記録されます。範囲のすべてを取得した時点で後者が新しい同期位置になります。
+     */
+    public static final class Cursor {
+        /**
+         * 同期されていないことを表す Cursor オブジェクトです。
+         */
+        public static final Cursor EMPTY = new Cursor(0L, 0L, 0L);
+
+        private final long sinceId;
+        private final long maxId;
+        private final long newestId;
+
+        /**
+         * パラメータを指定して新しい Cursor クラスのインスタンスを初期化します。
+         *
+         * @param sinceId  同期済みの最大のメッセージ ID。
+         * @param maxId    取得を再開するメッセージ ID。取得が途中でない場合は 0。
+         * @param newestId 途中の取得で得られた最大のメッセージ ID。取得が途中でない場合は 0。
+         */
+        public Cursor(long sinceId, long maxId, long newestId) {
+            this.sinceId = sinceId;
+            this.maxId = maxId;
+            this.newestId = newestId;
+        }
+
+        /**
+         * 同期済みの最大のメッセージ ID を取得します。
+         *
+         * @return メッセージ ID。同期されていない場合は 0。
+         */
+        public long getSinceId() {
+            return this.sinceId;
+        }
+
+        /**
+         * 取得を再開するメッセージ ID を取得します。
+         *
+         * @return メッセージ ID。取得が途中でない場合は 0。
+         */
+        public long getMaxId() {
+            return this.maxId;
+        }
+
+        /**
+         * 途中の取得で得られた最大のメッセージ ID を取得します。
+         *
+         * @return メッセージ ID。取得が途中でない場合は 0。
+         */
+        public long getNewestId() {
+            return this.newestId;
+        }
+
+        /**
+         * 取得が途中であるかの真偽値を取得します。
+         *
+         * @return 取得が途中である場合は true、それ以外の場合は false。
+         */
+        public boolean isPending() {
+            return this.maxId > 0L;
+        }
+
+        private void writeJSON(StringBuilder sb, String key) {
+            sb.append('"').append(key).append("\":\"").append(this.sinceId).append('"');
+
+            if (this.isPending())
+                sb.append(",\"").append(key).append("Max\":\"").append(this.maxId)
+                  .append("\",\"").append(key).append("Newest\":\"").append(this.newestId).append('"');
+        }
+
+        private static Cursor fromMap(Map<?, ?> map, String key) {
+            long sinceId = Long.parseLong((String) map.get(key));
+
+            if (!map.containsKey(key + "Max"))
+                return new Cursor(sinceId, 0L, 0L);
+
+            return new Cursor(sinceId, Long.parseLong((String) map.get(key + "Max")),
+                    Long.parseLong((String) map.get(key + "Newest")));
+        }
+    }
+
+    /**
+     * 保存されたダイレクトメッセージ 1 件を表します。このクラスは不変です。
+     */
+    public static final class Message {
+        private final long id;
+        private final long senderId;
+        private final long recipientId;
+        private final String text;
+        private final long createdAt;
+
+        /**
+         * パラメータを指定して新しい Message クラスのインスタンスを初期化します。
+         *
+         * @param id          メッセージ ID。
+         * @param senderId    送信者のユーザ ID。
+         * @param recipientId 受信者のユーザ ID。
+         * @param text        本文。
+         * @param createdAt   送信日時 (エポックミリ秒)。
+         */
+        public Message(long id, long senderId, long recipientId, String text, long createdAt) {
+            if (text == null)
+                throw new IllegalArgumentException();
+
+            this.id = id;
+            this.senderId = senderId;
+            this.recipientId = recipientId;
+            this.text = text;
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * twitter4j の DirectMessage オブジェクトから Message オブジェクトを作成します。
+         *
+         * @param message DirectMessage オブジェクト。
+         * @return 作成された Message オブジェクト。
+         */
+        public static Message from(DirectMessage message) {
+            return new Message(message.getId(), message.getSenderId(), message.getRecipientId(), message.getText(),
+                    message.getCreatedAt() == null ? 0L : message.getCreatedAt().getTime());
+        }
+
+        /**
+         * メッセージ ID を取得します。
+         *
+         * @return メッセージ ID。
+         */
+        public long getId() {
+            return this.id;
+        }
+
+        /**
+         * 送信者のユーザ ID を取得します。
+         *
+         * @return ユーザ ID。
+         */
+        public long getSenderId() {
+            return this.senderId;
+        }
+
+        /**
+         * 受信者のユーザ ID を取得します。
+         *
+         * @return ユーザ ID。
+         */
+        public long getRecipientId() {
+            return this.recipientId;
+        }
+
+        /**
+         * 本文を取得します。
+         *
+         * @return 本文。
+         */
+        public String getText() {
+            return this.text;
+        }
+
+        /**
+         * 送信日時を取得します。
+         *
+         * @return 送信日時 (エポックミリ秒)。
+         */
+        public long getCreatedAt() {
+            return this.createdAt;
+        }
+
+        /**
+         * 指定されたアカウントから見た会話の相手のユーザ ID を取得します。
+         *
+         * @param accountId アカウントのユーザ ID。
+         * @return 相手のユーザ ID。
+         */
+        public long getPartnerId(long accountId) {
+            return this.senderId == accountId ? this.recipientId : this.senderId;
+        }
+
+        /**
+         * このメッセージを JSON として書き込みます。ID は文字列として書き込まれます。
+         *
+         * @param sb 書き込み先の StringBuilder。
+         */
+        public void writeJSON(StringBuilder sb) {
+            sb.append("{\"id_str\":\"").append(this.id)
+              .append("\",\"sender_id_str\":\"").append(this.senderId)
+              .append("\",\"recipient_id_str\":\"").append(this.recipientId)
+              .append("\",\"created_at\":").append(this.createdAt)
+              .append(",\"text\":");
+            StatusSerializer.writeString(sb, this.text);
+            sb.append('}');
+        }
+
+        private static Message fromMap(Map<?, ?> map) {
+            return new Message(
+                    Long.parseLong((String) map.get("id_str")),
+                    Long.parseLong((String) map.get("sender_id_str")),
+                    Long.parseLong((String) map.get("recipient_id_str")),
+                    (String) map.get("text"),
+                    ((Number) map.get("created_at")).longValue());
+        }
+    }
+
+    private static final class Account {
+        private final Map<Long, NavigableMap<Long, Message>> conversations = new HashMap<>();
+        private Cursor receivedCursor = Cursor.EMPTY;
+        private Cursor sentCursor = Cursor.EMPTY;
+        private int messageCount;
+    }
+
+    /**
+     * 保存先のディレクトリとロガーを指定して新しい DirectMessageStore クラスのインスタンスを初期化します。
+     *
+     * @param directory 保存先のディレクトリ。
+     * @param logger    読み込みの警告を出力する Logger オブジェクト。
+     */
+    public DirectMessageStore(Path directory, Logger logger) {
+        if (directory == null || logger == null)
+            throw new IllegalArgumentException();
+
+        this.directory = directory;
+        this.logger = logger;
+        this.accounts = new HashMap<>();
+    }
+
+    /**
+     * 受信したメッセージの同期位置を取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return 同期位置を表す Cursor オブジェクト。
+     * @throws IOException 保存されたデータを読み込めませんでした。
+     */
+    public synchronized Cursor getReceivedCursor(long accountId) throws IOException {
+        return this.getAccount(accountId).receivedCursor;
+    }
+
+    /**
+     * 送信したメッセージの同期位置を取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return 同期位置を表す Cursor オブジェクト。
+     * @throws IOException 保存されたデータを読み込めませんでした。
+     */
+    public synchronized Cursor getSentCursor(long accountId) throws IOException {
+        return this.getAccount(accountId).sentCursor;
+    }
+
+    /**
+     * メッセージを追加して保存します。既に保存されているメッセージは無視されます。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param messages  追加するメッセージ。
+     * @return 新しく追加されたメッセージの数。
+     * @throws IOException メッセージを保存できませんでした。
+     */
+    public synchronized int addAll(long accountId, Collection<Message> messages) throws IOException {
+        if (messages == null)
+            throw new IllegalArgumentException();
+
+        Account account = this.getAccount(accountId);
+        List<Message> added = new ArrayList<>();
+
+        for (Message message : messages)
+            if (put(account, accountId, message))
+                added.add(message);
+
+        if (added.isEmpty())
+            return 0;
+
+        Path accountDirectory = this.getAccountDirectory(accountId);
+        Files.createDirectories(accountDirectory);
+
+        StringBuilder sb = new StringBuilder();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(accountDirectory.resolve(MESSAGES_FILE),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Message message : added) {
+                sb.setLength(0);
+                message.writeJSON(sb);
+                writer.write(sb.append('\n').toString());
+            }
+        }
+
+        return added.size();
+    }
+
+    /**
+     * 同期位置を設定して保存します。同期位置はメッセージを保存した後に設定してください。
+     *
+     * @param accountId      アカウントのユーザ ID。
+     * @param receivedCursor 受信したメッセージの同期位置。
+     * @param sentCursor     送信したメッセージの同期位置。
+     * @throws IOException 同期位置を保存できませんでした。
+     */
+    public synchronized void setCursor(long accountId, Cursor receivedCursor, Cursor sentCursor) throws IOException {
+        if (receivedCursor == null || sentCursor == null)
+            throw new IllegalArgumentException();
+
+        Account account = this.getAccount(accountId);
+        Path accountDirectory = this.getAccountDirectory(accountId);
+        Path temporary = accountDirectory.resolve(CURSOR_FILE + ".tmp");
+
+        StringBuilder sb = new StringBuilder("{");
+        receivedCursor.writeJSON(sb, "received");
+        sb.append(',');
+        sentCursor.writeJSON(sb, "sent");
+
+        Files.createDirectories(accountDirectory);
+        Files.write(temporary, sb.append("}\n").toString().getBytes(StandardCharsets.UTF_8));
+
+        try {
+            Files.move(temporary, accountDirectory.resolve(CURSOR_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, accountDirectory.resolve(CURSOR_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        account.receivedCursor = receivedCursor;
+        account.sentCursor = sentCursor;
+    }
+
+    /**
+     * 会話の相手のユーザ ID を、最後のメッセージが新しい順に取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return 相手のユーザ ID のリスト。
+     * @throws IOException 保存されたデータを読み込めませんでした。
+     */
+    public synchronized List<Long> getPartners(long accountId) throws IOException {
+        Map<Long, NavigableMap<Long, Message>> conversations = this.getAccount(accountId).conversations;
+        List<Long> partners = new ArrayList<>(conversations.keySet());
+
+        partners.sort((a, b) -> Long.compare(conversations.get(b).lastKey(), conversations.get(a).lastKey()));
+        return partners;
+    }
+
+    /**
+     * 相手との会話のメッセージを新しい順に取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param partnerId 相手のユーザ ID。
+     * @param maxId     取得するメッセージ ID の上限 (この値を含む)。0 以下の場合は最新のメッセージから取得します。
+     * @param count     取得する最大の件数。
+     * @return メッセージのリスト。
+     * @throws IOException 保存されたデータを読み込めませんでした。
+     */
+    public synchronized List<Message> getConversation(long accountId, long partnerId, long maxId, int count)
+            throws IOException {
+        if (count < 0)
+            throw new IllegalArgumentException();
+
+        NavigableMap<Long, Message> conversation = this.getAccount(accountId).conversations.get(partnerId);
+
+        if (conversation == null)
+            return Collections.emptyList();
+
+        NavigableMap<Long, Message> range = maxId > 0 ? conversation.headMap(maxId, true) : conversation;
+        List<Message> messages = new ArrayList<>(Math.min(count, range.size()));
+
+        for (Message message : range.descendingMap().values()) {
+            if (messages.size() >= count)
+                break;
+
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    /**
+     * 保存されたメッセージの数を取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return メッセージの数。
+     * @throws IOException 保存されたデータを読み込めませんでした。
+     */
+    public synchronized int getMessageCount(long accountId) throws IOException {
+        return this.getAccount(accountId).messageCount;
+    }
+
+    private Account getAccount(long accountId) throws IOException {
+        Account account = this.accounts.get(accountId);
+
+        if (account == null) {
+            account = this.load(accountId);
+            this.accounts.put(accountId, account);
+        }
+
+        return account;
+    }
+
+    private Account load(long accountId) throws IOException {
+        Account account = new Account();
+        Path accountDirectory = this.getAccountDirectory(accountId);
+        Path messages = accountDirectory.resolve(MESSAGES_FILE);
+        Path cursor = accountDirectory.resolve(CURSOR_FILE);
+
+        if (Files.exists(messages)) {
+            for (String line : Files.readAllLines(messages, StandardCharsets.UTF_8)) {
+                if (line.isEmpty())
+                    continue;
+
+                try {
+                    put(account, accountId, Message.fromMap((Map<?, ?>) JSONParser.parse(line)));
+                } catch (RuntimeException ex) {
+                    this.logger.warning(String.format("ファイル '%s' の不正な行を無視しました: %s", messages, line));
+                }
+            }
+        }
+
+        if (Files.exists(cursor)) {
+            try {
+                Map<?, ?> map = (Map<?, ?>) JSONParser.parse(new String(Files.readAllBytes(cursor), StandardCharsets.UTF_8).trim());
+                account.receivedCursor = Cursor.fromMap(map, "received");
+                account.sentCursor = Cursor.fromMap(map, "sent");
+            } catch (RuntimeException ex) {
+                // 同期位置が失われた場合は全件を取得し直し、重複は無視される
+                this.logger.warning(String.format("ファイル '%s' を読み込めませんでした.", cursor));
+            }
+        }
+
+        return account;
+    }
+
+    private static boolean put(Account account, long accountId, Message message) {
+        NavigableMap<Long, Message> conversation = account.conversations
+                .computeIfAbsent(message.getPartnerId(accountId), id -> new TreeMap<>());
+
+        if (conversation.putIfAbsent(message.getId(), message) != null)
+            return false;
+
+        account.messageCount++;
+        return true;
+    }
+
+    private Path getAccountDirectory(long accountId) {
+        return this.directory.resolve(Long.toString(accountId));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.DirectMessage;
+import twitter4j.Paging;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/27.
+ */
+
+/**
+ * <p>ダイレクトメッセージを差分で取得し、{@link DirectMessageStore} に保存します。
+ * <p>受信と送信のそれぞれについて、前回の同期で取得した最大のメッセージ ID より新しいメッセージのみを取得します。
+ * 取得は新しい順に行われ、1 回の同期で取得するページ数は制限されます。同期位置はすべてのページを取得できた場合のみ進められるため、
+ * レート制限などで途中で失敗した場合も取得済みのメッセージは保存され、次回の同期で残りが取得されます。
+ * ページ数の上限に達した場合は到達したメッセージ ID が記録され、次回の同期はその続きから再開されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class DirectMessageSync {
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_PAGES = 4;
+
+    private final DirectMessageStore store;
+    private final Logger logger;
+
+    /**
+     * ダイレクトメッセージを取得する処理を表します。
+     */
+    public interface Source {
+        /**
+         * 受信したメッセージを取得します。
+         *
+         * @param paging 取得範囲。
+         * @return メッセージのリスト。
+         * @throws TwitterException 取得に失敗しました。
+         */
+        List<DirectMessage> getReceived(Paging paging) throws TwitterException;
+
+        /**
+         * 送信したメッセージを取得します。
+         *
+         * @param paging 取得範囲。
+         * @return メッセージのリスト。
+         * @throws TwitterException 取得に失敗しました。
+         */
+        List<DirectMessage> getSent(Paging paging) throws TwitterException;
+    }
+
+    @FunctionalInterface
+    private interface Fetcher {
+        List<DirectMessage> fetch(Paging paging) throws TwitterException;
+    }
+
+    /**
+     * 保存先とロガーを指定して新しい DirectMessageSync クラスのインスタンスを初期化します。
+     *
+     * @param store  メッセージの保存先となる DirectMessageStore オブジェクト。
+     * @param logger 同期の結果を出力する Logger オブジェクト。
+     */
+    public DirectMessageSync(DirectMessageStore store, Logger logger) {
+        if (store == null || logger == null)
+            throw new IllegalArgumentException();
+
+        this.store = store;
+        this.logger = logger;
+    }
+
+    /**
+     * Twitter オブジェクトからメッセージを取得する Source オブジェクトを作成します。
+     *
+     * @param twitter Twitter オブジェクト。
+     * @return Source オブジェクト。
+     */
+    public static Source createSource(Twitter twitter) {
+        if (twitter == null)
+            throw new IllegalArgumentException();
+
+        return new Source() {
+            @Override
+            public List<DirectMessage> getReceived(Paging paging) throws TwitterException {
+                return twitter.getDirectMessages(paging);
+            }
+
+            @Override
+            public List<DirectMessage> getSent(Paging paging) throws TwitterException {
+                return twitter.getSentDirectMessages(paging);
+            }
+        };
+    }
+
+    /**
+     * 保存先を取得します。
+     *
+     * @return DirectMessageStore オブジェクト。
+     */
+    public DirectMessageStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * 指定されたアカウントの新しいメッセージを取得して保存します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param source    メッセージを取得する Source オブジェクト。
+     * @return 新しく保存されたメッセージの数。
+     * @throws TwitterException メッセージの取得に失敗しました。取得済みのメッセージは保存されます。
+     * @throws IOException      メッセージを保存できませんでした。
+     */
+    public int sync(long accountId, Source source) throws TwitterException, IOException {
+        if (source == null)
+            throw new IllegalArgumentException();
+
+        // 同じアカウントの同期が並行して行われると同期位置が巻き戻る可能性がある
+        synchronized (this.store) {
+            int[] added = new int[1];
+            DirectMessageStore.Cursor receivedCursor = this.fetch(accountId, source::getReceived,
+                    this.store.getReceivedCursor(accountId), added);
+            DirectMessageStore.Cursor sentCursor = this.fetch(accountId, source::getSent,
+                    this.store.getSentCursor(accountId), added);
+
+            this.store.setCursor(accountId, receivedCursor, sentCursor);
+
+            if (added[0] > 0)
+                this.logger.fine(String.format("アカウント %d のダイレクトメッセージ %d 件を同期しました.", accountId, added[0]));
+
+            return added[0];
+        }
+    }
+
+    // 新しい順にページを辿り、すべて取得できた場合は新しい同期位置を、上限に達した場合は再開する位置を返す
+    private DirectMessageStore.Cursor fetch(long accountId, Fetcher fetcher, DirectMessageStore.Cursor cursor,
+                                            int[] added) throws TwitterException, IOException {
+        long sinceId = cursor.getSinceId();
+        long newest = Math.max(sinceId, cursor.getNewestId());
+        long maxId = cursor.getMaxId();
+
+        for (int page = 0; page < MAX_PAGES; page++) {
+            Paging paging = new Paging().count(PAGE_SIZE);
+
+            if (sinceId > 0)
+                paging.setSinceId(sinceId);
+
+            if (maxId > 0)
+                paging.setMaxId(maxId);
+
+            List<DirectMessage> messages = fetcher.fetch(paging);
+
+            if (messages.isEmpty())
+                return new DirectMessageStore.Cursor(newest, 0L, 0L);
+
+            List<DirectMessageStore.Message> converted = new ArrayList<>(messages.size());
+            long oldest = Long.MAX_VALUE;
+
+            for (DirectMessage message : messages) {
+                converted.add(DirectMessageStore.Message.from(message));
+                newest = Math.max(newest, message.getId());
+                oldest = Math.min(oldest, message.getId());
+            }
+
+            added[0] += this.store.addAll(accountId, converted);
+
+            if (oldest <= sinceId + 1 || messages.size() < PAGE_SIZE)
+                return new DirectMessageStore.Cursor(newest, 0L, 0L);
+
+            maxId = oldest - 1;
+        }
+
+        // 同期位置を newest まで進めると sinceId との間のメッセージが失われるため、続きから再開する
+        return new DirectMessageStore.Cursor(sinceId, maxId, newest);
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.HashtagEntity;
+import twitter4j.MediaEntity;
+import twitter4j.Status;
+import twitter4j.SymbolEntity;
+import twitter4j.TweetEntity;
+import twitter4j.URLEntity;
+import twitter4j.User;
+import twitter4j.UserMentionEntity;
+
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/30.
+ */
+
+/**
+ * <p>ツイートやユーザを HTML に変換する、コンパイル済みのテンプレートです。このクラスは不変でスレッドセーフです。
+ * <p>テンプレートは次の記法を持ちます。
+ * <ul>
+ * <li>{@code {{name}}} - 値を HTML エスケープして埋め込みます。</li>
+ * <li>{@code {{#name}}...{{/name}}} - 条件が真のときのみ内側を出力します。</li>
+ * <li>{@code {{^name}}...{{/name}}} - 条件が偽のときのみ内側を出力します。</li>
+ * </ul>
+ * <p>名前はコンパイル時に解決され、未知の名前や閉じられていない条件は IllegalArgumentException となります。
+ * ツイートの {@code html} は、エスケープされた本文にエンティティのリンクを 1 回の走査で埋め込んだ HTML です。
+ * {@code cached_} で始まる画像の URL は {@link ImageCache} を経由して読み込まれる URL です。
+ * ツイートの {@code relative_time} は変換した時点での相対時刻で、{@link RelativeTimeUpdater} と同じ表示となります。
+ * リツイートの場合、ツイートの値はリツイート元のツイートのものとなり、リツイートしたユーザは {@code retweeter.*} で参照できます。
+ *
+ * @param <T> 変換する対象の型。
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public final class HTMLTemplate<T> {
+    private static final Map<String, BiConsumer<StringBuilder, Status>> STATUS_VALUES;
+    private static final Map<String, Predicate<Status>> STATUS_SECTIONS;
+    private static final Map<String, BiConsumer<StringBuilder, User>> USER_VALUES;
+    private static final Map<String, Predicate<User>> USER_SECTIONS;
+
+    private static final Comparator<TweetEntity> ENTITY_ORDER = Comparator.comparingInt(TweetEntity::getStart);
+
+    static {
+        USER_VALUES = new HashMap<>();
+        USER_VALUES.put("id", (sb, user) -> sb.append(user.getId()));
+        USER_VALUES.put("name", (sb, user) -> escape(sb, user.getName()));
+        USER_VALUES.put("screen_name", (sb, user) -> escape(sb, user.getScreenName()));
+        USER_VALUES.put("description", (sb, user) -> escape(sb, user.getDescription()));
+        USER_VALUES.put("location", (sb, user) -> escape(sb, user.getLocation()));
+        USER_VALUES.put("url", (sb, user) -> escape(sb, user.getURLEntity() != null &&
+                                                         user.getURLEntity().getExpandedURL() != null ?
+                user.getURLEntity().getExpandedURL() : user.getURL()));
+        USER_VALUES.put("profile_image_url", (sb, user) -> escape(sb, user.getProfileImageURLHttps()));
+        USER_VALUES.put("cached_profile_image_url", (sb, user) ->
+                escape(sb, ImageCache.toCacheURL(user.getProfileImageURLHttps())));
+        USER_VALUES.put("followers_count", (sb, user) -> sb.append(user.getFollowersCount()));
+        USER_VALUES.put("friends_count", (sb, user) -> sb.append(user.getFriendsCount()));
+        USER_VALUES.put("statuses_count", (sb, user) -> sb.append(user.getStatusesCount()));
+
+        USER_SECTIONS = new HashMap<>();
+        USER_SECTIONS.put("protected", User::isProtected);
+        USER_SECTIONS.put("verified", User::isVerified);
+        USER_SECTIONS.put("description", user -> user.getDescription() != null && !user.getDescription().isEmpty());
+
+        STATUS_VALUES = new HashMap<>();
+        STATUS_VALUES.put("id", (sb, status) -> sb.append(shown(status).getId()));
+        STATUS_VALUES.put("text", (sb, status) -> escape(sb, shown(status).getText()));
+        STATUS_VALUES.put("html", (sb, status) -> writeLinkedText(sb, shown(status)));
+        STATUS_VALUES.put("created_at", (sb, status) -> sb.append(
+                shown(status).getCreatedAt() == null ? 0L : shown(status).getCreatedAt().getTime()));
+        STATUS_VALUES.put("relative_time", (sb, status) -> sb.append(RelativeTimeUpdater.getLabel(
+                shown(status).getCreatedAt() == null ? 0L : shown(status).getCreatedAt().getTime(),
+                System.currentTimeMillis(), ZoneId.systemDefault())));
+        STATUS_VALUES.put("source", (sb, status) -> escape(sb, stripTags(shown(status).getSource())));
+        STATUS_VALUES.put("retweet_count", (sb, status) -> sb.append(shown(status).getRetweetCount()));
+        STATUS_VALUES.put("favorite_count", (sb, status) -> sb.append(shown(status).getFavoriteCount()));
+        STATUS_VALUES.put("in_reply_to_status_id", (sb, status) -> sb.append(shown(status).getInReplyToStatusId()));
+        STATUS_VALUES.put("in_reply_to_screen_name", (sb, status) ->
+                escape(sb, shown(status).getInReplyToScreenName()));
+        STATUS_VALUES.put("media_thumbnail_url", (sb, status) -> escape(sb, getThumbnailURL(shown(status))));
+        STATUS_VALUES.put("cached_media_thumbnail_url", (sb, status) ->
+                escape(sb, ImageCache.toCacheURL(getThumbnailURL(shown(status)))));
+
+        for (Map.Entry<String, BiConsumer<StringBuilder, User>> entry : USER_VALUES.entrySet()) {
+            BiConsumer<StringBuilder, User> value = entry.getValue();
+            STATUS_VALUES.put("user." + entry.getKey(), (sb, status) -> value.accept(sb, shown(status).getUser()));
+            STATUS_VALUES.put("retweeter." + entry.getKey(), (sb, status) -> {
+                if (status.getRetweetedStatus() != null)
+                    value.accept(sb, status.getUser());
+            });
+        }
+
+        STATUS_SECTIONS = new HashMap<>();
+        STATUS_SECTIONS.put("retweet", status -> status.getRetweetedStatus() != null);
+        STATUS_SECTIONS.put("reply", status -> shown(status).getInReplyToStatusId() > 0);
+        STATUS_SECTIONS.put("favorited", status -> shown(status).isFavorited());
+        STATUS_SECTIONS.put("retweeted", status -> shown(status).isRetweeted());
+        STATUS_SECTIONS.put("sensitive", status -> shown(status).isPossiblySensitive());
+        STATUS_SECTIONS.put("media", status -> shown(status).getMediaEntities().length > 0);
+
+        for (Map.Entry<String, Predicate<User>> entry : USER_SECTIONS.entrySet()) {
+            Predicate<User> section = entry.getValue();
+            STATUS_SECTIONS.put("user." + entry.getKey(), status -> section.test(shown(status).getUser()));
+        }
+    }
+
+    private final List<Node<T>> nodes;
+
+    @FunctionalInterface
+    private interface Node<T> {
+        void render(StringBuilder sb, T target);
+    }
+
+    private HTMLTemplate(List<Node<T>> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * ツイートのテンプレートをコンパイルします。
+     *
+     * @param source テンプレートの文字列。
+     * @return コンパイルされたテンプレート。
+     * @throws IllegalArgumentException テンプレートが正しくありません。
+     */
+    public static HTMLTemplate<Status> compileStatus(String source) {
+        return compile(source, STATUS_VALUES, STATUS_SECTIONS);
+    }
+
+    /**
+     * ユーザのテンプレートをコンパイルします。
+     *
+     * @param source テンプレートの文字列。
+     * @return コンパイルされたテンプレート。
+     * @throws IllegalArgumentException テンプレートが正しくありません。
+     */
+    public static HTMLTemplate<User> compileUser(String source) {
+        return compile(source, USER_VALUES, USER_SECTIONS);
+    }
+
+    /**
+     * 対象を HTML に変換して、指定された StringBuilder に書き込みます。
+     *
+     * @param sb     書き込み先の StringBuilder。
+     * @param target 変換する対象。
+     */
+    public void render(StringBuilder sb, T target) {
+        if (sb == null || target == null)
+            throw new IllegalArgumentException();
+
+        for (Node<T> node : this.nodes)
+            node.render(sb, target);
+    }
+
+    /**
+     * 対象を HTML に変換します。
+     *
+     * @param target 変換する対象。
+     * @return HTML 文字列。
+     */
+    public String render(T target) {
+        StringBuilder sb = new StringBuilder(512);
+        this.render(sb, target);
+        return sb.toString();
+    }
+
+    /**
+     * 本文をエスケープし、エンティティをリンクに置き換えて指定された StringBuilder に書き込みます。
+     * エンティティの位置はコードポイント単位として扱われ、改行は {@code <br>} に置き換えられます。
+     *
+     * @param sb     書き込み先の StringBuilder。
+     * @param status 変換されるツイート。
+     */
+    public static void writeLinkedText(StringBuilder sb, Status status) {
+        String text = status.getText();
+
+        if (text == null)
+            return;
+
+        List<TweetEntity> entities = new ArrayList<>();
+        Collections.addAll(entities, status.getHashtagEntities());
+        Collections.addAll(entities, status.getSymbolEntities());
+        Collections.addAll(entities, status.getUserMentionEntities());
+        Collections.addAll(entities, status.getURLEntities());
+        Collections.addAll(entities, status.getMediaEntities());
+
+        TweetEntity[] sorted = entities.toArray(new TweetEntity[entities.size()]);
+        Arrays.sort(sorted, ENTITY_ORDER);
+
+        int length = text.codePointCount(0, text.length());
+        int next = 0;
+        int codePoint = 0;
+        int i = 0;
+
+        while (i < text.length()) {
+            while (next < sorted.length && sorted[next].getStart() < codePoint)
+                next++;
+
+            // 本文の長さを超えるエンティティは無視して、通常の文字として扱う
+            if (next < sorted.length && sorted[next].getStart() == codePoint &&
+                sorted[next].getEnd() > codePoint && sorted[next].getEnd() <= length) {
+                TweetEntity entity = sorted[next++];
+                int end = text.offsetByCodePoints(i, entity.getEnd() - codePoint);
+
+                writeEntity(sb, entity, text.substring(i, end));
+                codePoint = entity.getEnd();
+                i = end;
+                continue;
+            }
+
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            codePoint++;
+
+            if (c == '\n')
+                sb.append("<br>");
+            else
+                escape(sb, c);
+        }
+    }
+
+    /**
+     * 文字列を HTML エスケープして、指定された StringBuilder に書き込みます。
+     *
+     * @param sb    書き込み先の StringBuilder。
+     * @param value エスケープされる文字列。null の場合は何も書き込まれません。
+     */
+    public static void escape(StringBuilder sb, String value) {
+        if (value == null)
+            return;
+
+        for (int i = 0; i < value.length(); i++)
+            escape(sb, value.charAt(i));
+    }
+
+    private static void escape(StringBuilder sb, int c) {
+        switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+
+            case '<':
+                sb.append("&lt;");
+                break;
+
+            case '>':
+                sb.append("&gt;");
+                break;
+
+            case '"':
+                sb.append("&quot;");
+                break;
+
+            case '\'':
+                sb.append("&#39;");
+                break;
+
+            default:
+                sb.appendCodePoint(c);
+                break;
+        }
+    }
+
+    private static void writeEntity(StringBuilder sb, TweetEntity entity, String original) {
+        String href;
+        String cssClass;
+        String label = original;
+
+        if (entity instanceof MediaEntity) {
+            href = ((MediaEntity) entity).getExpandedURL();
+            cssClass = "media";
+            label = ((MediaEntity) entity).getDisplayURL();
+        } else if (entity instanceof URLEntity) {
+            href = ((URLEntity) entity).getExpandedURL();
+            cssClass = "url";
+            label = ((URLEntity) entity).getDisplayURL();
+        } else if (entity instanceof HashtagEntity) {
+            href = "https://twitter.com/hashtag/" + entity.getText();
+            cssClass = "hashtag";
+        } else if (entity instanceof SymbolEntity) {
+            href = "https://twitter.com/search?q=%24" + entity.getText();
+            cssClass = "symbol";
+        } else if (entity instanceof UserMentionEntity) {
+            href = "https://twitter.com/" + ((UserMentionEntity) entity).getScreenName();
+            cssClass = "mention";
+        } else {
+            escape(sb, original);
+            return;
+        }
+
+        if (href == null)
+            href = entity instanceof URLEntity ? ((URLEntity) entity).getURL() : "";
+
+        sb.append("<a href=\"");
+        escape(sb, href);
+        sb.append("\" class=\"").append(cssClass).append('"');
+
+        if (entity instanceof UserMentionEntity)
+            sb.append(" data-user-id=\"").append(((UserMentionEntity) entity).getId()).append('"');
+
+        sb.append('>');
+        escape(sb, label != null ? label : original);
+        sb.append("</a>");
+    }
+
+    private static Status shown(Status status) {
+        return status.getRetweetedStatus() != null ? status.getRetweetedStatus() : status;
+    }
+
+    private static String getThumbnailURL(Status status) {
+        MediaEntity[] media = status.getMediaEntities();
+
+        if (media.length == 0 || media[0].getMediaURLHttps() == null)
+            return null;
+
+        return media[0].getMediaURLHttps() + ":thumb";
+    }
+
+    private static String stripTags(String html) {
+        if (html == null || html.indexOf('<') < 0)
+            return html;
+
+        return html.replaceAll("<[^>]*>", "");
+    }
+
+    private static <T> HTMLTemplate<T> compile(String source, Map<String, BiConsumer<StringBuilder, T>> values,
+                                               Map<String, Predicate<T>> sections) {
+        if (source == null)
+            throw new IllegalArgumentException();
+
+        Deque<List<Node<T>>> stack = new ArrayDeque<>();
+        Deque<String> names = new ArrayDeque<>();
+        Deque<Function<List<Node<T>>, Node<T>>> builders = new ArrayDeque<>();
+        List<Node<T>> current = new ArrayList<>();
+        int position = 0;
+
+        while (position < source.length()) {
+            int open = source.indexOf("{{", position);
+
+            if (open < 0) {
+                addLiteral(current, source.substring(position));
+                break;
+            }
+
+            int close = source.indexOf("}}", open + 2);
+
+            if (close < 0)
+                throw new IllegalArgumentException(String.format("閉じられていないタグがあります: %d 文字目", open));
+
+            addLiteral(current, source.substring(position, open));
+            String tag = source.substring(open + 2, close).trim();
+            position = close + 2;
+
+            if (tag.startsWith("#") || tag.startsWith("^")) {
+                String name = tag.substring(1).trim();
+                Predicate<T> condition = sections.get(name);
+
+                if (condition == null)
+                    throw new IllegalArgumentException(String.format("未知の条件です: %s", name));
+
+                boolean expected = tag.charAt(0) == '#';
+                stack.push(current);
+                names.push(name);
+                builders.push(children -> {
+                    List<Node<T>> body = Collections.unmodifiableList(children);
+                    return (sb, target) -> {
+                        if (condition.test(target) == expected)
+                            for (Node<T> node : body)
+                                node.render(sb, target);
+                    };
+                });
+                current = new ArrayList<>();
+            } else if (tag.startsWith("/")) {
+                String name = tag.substring(1).trim();
+
+                if (names.isEmpty() || !names.peek().equals(name))
+                    throw new IllegalArgumentException(String.format("対応しない条件の終わりです: %s", name));
+
+                names.pop();
+                Node<T> section = builders.pop().apply(current);
+                current = stack.pop();
+                current.add(section);
+            } else {
+                BiConsumer<StringBuilder, T> value = values.get(tag);
+
+                if (value == null)
+                    throw new IllegalArgumentException(String.format("未知の値です: %s", tag));
+
+                current.add(value::accept);
+            }
+        }
+
+        if (!names.isEmpty())
+            throw new IllegalArgumentException(String.format("閉じられていない条件があります: %s", names.peek()));
+
+        return new HTMLTemplate<>(Collections.unmodifiableList(current));
+    }
+
+    private static <T> void addLiteral(List<Node<T>> nodes, String literal) {
+        if (!literal.isEmpty())
+            nodes.add((sb, target) -> sb.append(literal));
+    }
+}
@@ -0,0 +1,760 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/31.
+ */
+
+/**
+ * <p>プロフィール画像やメディアのサムネイルをディスクに保存し、カスタム URL スキームによってページに提供します。
+ * <p>画像は内容の SHA-256 ハッシュを名前とするファイルとして保存され、同じ内容の画像は 1 つのファイルを共有します。
+ * 元の URL とハッシュの対応は {@code index.tsv} に追記され、次回の起動時に読み込まれます。
+ * 保存されている画像の合計のバイト数が上限を超えた場合は、最も長く参照されていない URL から破棄されます。
+ * <p>キャッシュにない画像は固定数のスレッドで取得され、縦横の長い方が上限を超える場合は縮小してから保存されます。
+ * 縮小する画像は上限の 2 倍程度まで間引いて読み込まれるため、元の大きさで復号されることはありません。
+ * 取得中の URL と同じ URL の要求は、新たな接続を行わずに実行中の取得の結果を共有します。
+ * <p>{@link #install(ImageCache)} でキャッシュを登録すると、{@link #toCacheURL(String)} で変換した URL を WebView から読み込めるようになります。
+ * {@link URL#setURLStreamHandlerFactory} はプロセスごとに 1 度しか呼び出せないため、ファクトリは最初の登録の際にのみ設定され、
+ * 以降の登録では読み込み先のキャッシュのみが置き換えられます。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class ImageCache implements AutoCloseable {
+    /**
+     * ページに提供される URL のスキームです。
+     */
+    public static final String SCHEME = "nanasetter-image";
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+    private static final int DEFAULT_MAX_DIMENSION = 400;
+    private static final int DEFAULT_THREADS = 4;
+    private static final int MAX_DOWNLOAD_BYTES = 16 * 1024 * 1024;
+    private static final int TIMEOUT_MILLIS = 10000;
+    private static final String INDEX_FILE = "index.tsv";
+
+    private static ImageCache installed;
+    private static boolean factoryInstalled;
+
+    private final Path directory;
+    private final Path indexPath;
+    private final Fetcher fetcher;
+    private final Logger logger;
+    private final long maxBytes;
+    private final int maxDimension;
+
+    private final Map<String, String> entries;
+    private final Map<String, Blob> blobs;
+    private final Map<String, CompletableFuture<Path>> inFlight;
+    private final ExecutorService workers;
+    private final BufferedWriter journal;
+
+    private long totalBytes;
+
+    /**
+     * 1 つの画像を取得する処理を表します。
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+        /**
+         * 画像を取得します。
+         *
+         * @param url 画像の URL。
+         * @return 画像のバイト列。
+         * @throws IOException 画像を取得できませんでした。
+         */
+        byte[] fetch(String url) throws IOException;
+    }
+
+    private static final class Blob {
+        private final long size;
+        private int references;
+
+        private Blob(long size) {
+            this.size = size;
+        }
+    }
+
+    /**
+     * 保存先のディレクトリとロガーを指定して新しい ImageCache クラスのインスタンスを初期化します。
+     * 画像は HTTP で取得され、合計 64 MiB まで、縦横 400 ピクセルまでに縮小して保存されます。
+     *
+     * @param directory 保存先のディレクトリ。
+     * @param logger    ロガー。
+     * @throws IOException キャッシュを読み込めませんでした。
+     */
+    public ImageCache(Path directory, Logger logger) throws IOException {
+        this(directory, ImageCache::fetchByHttp, logger, DEFAULT_MAX_BYTES, DEFAULT_MAX_DIMENSION, DEFAULT_THREADS);
+    }
+
+    /**
+     * パラメータを指定して新しい ImageCache クラスのインスタンスを初期化します。
+     *
+     * @param directory    保存先のディレクトリ。
+     * @param fetcher      画像を取得する Fetcher オブジェクト。
+     * @param logger       ロガー。
+     * @param maxBytes     保存する画像の合計の最大のバイト数。
+     * @param maxDimension 保存する画像の縦横の最大のピクセル数。
+     * @param threads      並行して取得する最大の数。
+     * @throws IOException キャッシュを読み込めませんでした。
+     */
+    public ImageCache(Path directory, Fetcher fetcher, Logger logger, long maxBytes, int maxDimension, int threads)
+            throws IOException {
+        if (directory == null || fetcher == null || logger == null || maxBytes < 1 || maxDimension < 1 ||
+            threads < 1)
+            throw new IllegalArgumentException();
+
+        this.directory = directory;
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.fetcher = fetcher;
+        this.logger = logger;
+        this.maxBytes = maxBytes;
+        this.maxDimension = maxDimension;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.blobs = new HashMap<>();
+        this.inFlight = new ConcurrentHashMap<>();
+
+        Files.createDirectories(directory);
+
+        int lines = this.load();
+        this.evict();
+
+        if (lines > this.entries.size() * 2)
+            this.rewrite();
+
+        this.journal = Files.newBufferedWriter(this.indexPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "nanasetter-image-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 画像の URL を、キャッシュを経由して読み込む {@value #SCHEME} スキームの URL に変換します。
+     *
+     * @param url 画像の URL。
+     * @return 変換された URL。url が null または空の場合は url。
+     */
+    public static String toCacheURL(String url) {
+        if (url == null || url.isEmpty())
+            return url;
+
+        try {
+            return SCHEME + ":" + URLEncoder.encode(url, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * {@value #SCHEME} スキームの URL を読み込む URLStreamHandler オブジェクトを作成します。
+     *
+     * @return URLStreamHandler オブジェクト。
+     */
+    public URLStreamHandler createURLStreamHandler() {
+        return new Handler(() -> this);
+    }
+
+    /**
+     * {@value #SCHEME} スキームに対してのみ URLStreamHandler オブジェクトを返す URLStreamHandlerFactory オブジェクトを作成します。
+     *
+     * @return URLStreamHandlerFactory オブジェクト。
+     */
+    public URLStreamHandlerFactory createURLStreamHandlerFactory() {
+        URLStreamHandler handler = this.createURLStreamHandler();
+        return protocol -> SCHEME.equals(protocol) ? handler : null;
+    }
+
+    /**
+     * {@value #SCHEME} スキームの URL の読み込み先としてキャッシュを登録します。
+     * 最初の呼び出しでのみ {@link URL#setURLStreamHandlerFactory} にファクトリを設定し、以降の呼び出しでは読み込み先のみを置き換えます。
+     * 登録されたキャッシュが閉じられると、登録は解除されます。
+     *
+     * @param cache 登録する ImageCache オブジェクト。
+     * @return 登録できたとき true、他のファクトリが既に設定されていたとき false。
+     */
+    public static synchronized boolean install(ImageCache cache) {
+        if (cache == null)
+            throw new IllegalArgumentException();
+
+        if (!factoryInstalled) {
+            try {
+                URL.setURLStreamHandlerFactory(protocol -> SCHEME.equals(protocol)
+                        ? new Handler(ImageCache::getInstalled) : null);
+            } catch (Error ex) {
+                // 他のライブラリがファクトリを設定している場合は Error がスローされる
+                return false;
+            }
+
+            factoryInstalled = true;
+        }
+
+        installed = cache;
+        return true;
+    }
+
+    private static synchronized ImageCache getInstalled() {
+        return installed;
+    }
+
+    private static synchronized void uninstall(ImageCache cache) {
+        if (installed == cache)
+            installed = null;
+    }
+
+    /**
+     * キャッシュから画像のファイルを取得します。ネットワークへの接続は行いません。
+     *
+     * @param url 画像の URL。
+     * @return 画像のファイル。キャッシュにない場合は null。
+     */
+    public Path getCached(String url) {
+        if (url == null)
+            throw new IllegalArgumentException();
+
+        synchronized (this.entries) {
+            String hash = this.entries.get(url);
+            return hash == null ? null : this.directory.resolve(hash);
+        }
+    }
+
+    /**
+     * キャッシュから画像を読み込みます。ネットワークへの接続は行いません。
+     *
+     * @param url 画像の URL。
+     * @return 画像のバイト列。キャッシュにない場合は null。
+     * @throws IOException 画像のファイルを読み込めませんでした。
+     */
+    public byte[] read(String url) throws IOException {
+        if (url == null)
+            throw new IllegalArgumentException();
+
+        // 読み込み中のファイルが破棄されないよう、ロックを保持したまま読み込む
+        synchronized (this.entries) {
+            String hash = this.entries.get(url);
+            return hash == null ? null : Files.readAllBytes(this.directory.resolve(hash));
+        }
+    }
+
+    /**
+     * 画像をキャッシュに読み込みます。キャッシュにない場合は非同期に取得し、必要に応じて縮小してから保存します。
+     * 取得に失敗した場合、結果はキャッシュされません。
+     *
+     * @param url 画像の URL。http または https のみ指定できます。
+     * @return 画像のファイルを返す CompletableFuture オブジェクト。
+     */
+    public CompletableFuture<Path> load(String url) {
+        Path cached = this.getCached(url);
+
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        CompletableFuture<Path> created = new CompletableFuture<>();
+
+        // ページから任意のファイルを読み込まれないよう、ネットワーク上の画像に限る
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            created.completeExceptionally(new IOException(String.format("URL '%s' には対応していません.", url)));
+            return created;
+        }
+
+        CompletableFuture<Path> existing = this.inFlight.putIfAbsent(url, created);
+
+        if (existing != null)
+            return existing;
+
+        // 登録と確認の間に取得が完了していた場合は、その結果を返す
+        cached = this.getCached(url);
+
+        if (cached != null) {
+            this.inFlight.remove(url, created);
+            created.complete(cached);
+            return created;
+        }
+
+        try {
+            this.workers.execute(() -> {
+                Path path;
+
+                try {
+                    path = this.put(url, this.downscale(this.fetcher.fetch(url)));
+                } catch (IOException | RuntimeException ex) {
+                    this.inFlight.remove(url, created);
+                    created.completeExceptionally(ex);
+                    return;
+                }
+
+                this.inFlight.remove(url, created);
+                created.complete(path);
+            });
+        } catch (RuntimeException ex) {
+            this.inFlight.remove(url, created);
+            created.completeExceptionally(ex);
+        }
+
+        return created;
+    }
+
+    /**
+     * キャッシュに保持されている URL の件数を取得します。
+     *
+     * @return 件数。
+     */
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * キャッシュに保存されている画像の合計のバイト数を取得します。
+     *
+     * @return バイト数。
+     */
+    public long getTotalBytes() {
+        synchronized (this.entries) {
+            return this.totalBytes;
+        }
+    }
+
+    /**
+     * 取得を停止し、参照された順序を保存してキャッシュのファイルを閉じます。
+     */
+    @Override
+    public void close() {
+        uninstall(this);
+        this.workers.shutdownNow();
+
+        synchronized (this.entries) {
+            try {
+                this.journal.close();
+                this.rewrite();
+            } catch (IOException ex) {
+                this.logger.warning(String.format("画像のキャッシュを閉じられませんでした: %s", ex.getMessage()));
+            }
+        }
+    }
+
+    private Path put(String url, byte[] data) throws IOException {
+        if (data.length > this.maxBytes)
+            throw new IOException(String.format("画像 '%s' はキャッシュの容量を超えています.", url));
+
+        String hash = toHash(data);
+        Path path = this.directory.resolve(hash);
+        Path temporary = Files.createTempFile(this.directory, hash, ".tmp");
+
+        try {
+            Files.write(temporary, data);
+
+            synchronized (this.entries) {
+                Blob blob = this.blobs.get(hash);
+
+                if (blob == null) {
+                    move(temporary, path);
+                    blob = new Blob(data.length);
+                    this.blobs.put(hash, blob);
+                    this.totalBytes += blob.size;
+                }
+
+                String previous = this.entries.put(url, hash);
+
+                if (!hash.equals(previous)) {
+                    blob.references++;
+
+                    if (previous != null)
+                        this.release(previous);
+
+                    this.journal.write(url);
+                    this.journal.write('\t');
+                    this.journal.write(hash);
+                    this.journal.write('\n');
+                    this.journal.flush();
+                }
+
+                this.evict();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        return path;
+    }
+
+    // 最も長く参照されていない URL から破棄する。破棄された URL はファイルが失われた時点で読み込み時に無視される
+    private void evict() {
+        Iterator<Map.Entry<String, String>> iterator = this.entries.entrySet().iterator();
+
+        while (this.totalBytes > this.maxBytes && this.entries.size() > 1) {
+            String hash = iterator.next().getValue();
+            iterator.remove();
+            this.release(hash);
+        }
+    }
+
+    private void release(String hash) {
+        Blob blob = this.blobs.get(hash);
+
+        if (--blob.references > 0)
+            return;
+
+        this.blobs.remove(hash);
+        this.totalBytes -= blob.size;
+
+        try {
+            Files.deleteIfExists(this.directory.resolve(hash));
+        } catch (IOException ex) {
+            this.logger.warning(String.format("画像のキャッシュ '%s' を削除できませんでした: %s", hash, ex.getMessage()));
+        }
+    }
+
+    private byte[] downscale(byte[] data) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            // 復号できない形式はそのまま保存する
+            if (!readers.hasNext())
+                return data;
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, true, true);
+
+                int longer = Math.max(reader.getWidth(0), reader.getHeight(0));
+
+                // 縮小が不要な画像はアニメーションなどを保つため元のまま保存する
+                if (longer <= this.maxDimension)
+                    return data;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, longer / (this.maxDimension * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                BufferedImage scaled = this.scale(reader.read(0, param));
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+                if (!ImageIO.write(scaled, scaled.getColorModel().hasAlpha() ? "png" : "jpeg", output))
+                    return data;
+
+                return output.toByteArray();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage image) {
+        double ratio = Math.min(1.0, (double) this.maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        BufferedImage scaled = new BufferedImage(width, height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return scaled;
+    }
+
+    private int load() throws IOException {
+        Map<String, String> loaded = new LinkedHashMap<>();
+        int lines = 0;
+
+        if (Files.exists(this.indexPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(this.indexPath, StandardCharsets.UTF_8)) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    lines++;
+
+                    if (tab <= 0 || !isHash(line.substring(tab + 1)))
+                        continue;
+
+                    // 後に記録されたものほど最近参照されたものとして扱う
+                    loaded.remove(line.substring(0, tab));
+                    loaded.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+
+        for (Map.Entry<String, String> entry : loaded.entrySet()) {
+            Blob blob = this.blobs.get(entry.getValue());
+
+            if (blob == null) {
+                Path path = this.directory.resolve(entry.getValue());
+
+                if (!Files.isRegularFile(path))
+                    continue;
+
+                blob = new Blob(Files.size(path));
+                this.blobs.put(entry.getValue(), blob);
+                this.totalBytes += blob.size;
+            }
+
+            blob.references++;
+            this.entries.put(entry.getKey(), entry.getValue());
+        }
+
+        // どの URL からも参照されていないファイルと、書き込み途中で残されたファイルを削除する
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+
+                if (name.endsWith(".tmp") || (isHash(name) && !this.blobs.containsKey(name)))
+                    Files.deleteIfExists(path);
+            }
+        }
+
+        return lines;
+    }
+
+    private void rewrite() throws IOException {
+        Path temporary = this.indexPath.resolveSibling(INDEX_FILE + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : this.entries.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue());
+                writer.write('\n');
+            }
+        }
+
+        move(temporary, this.indexPath);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String toHash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest)
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static boolean isHash(String name) {
+        if (name.length() != 64)
+            return false;
+
+        for (int i = 0; i < name.length(); i++)
+            if (Character.digit(name.charAt(i), 16) < 0 || Character.isUpperCase(name.charAt(i)))
+                return false;
+
+        return true;
+    }
+
+    private static byte[] fetchByHttp(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+
+        try {
+            int status = connection.getResponseCode();
+
+            if (status != HttpURLConnection.HTTP_OK)
+                throw new IOException(String.format("画像 '%s' を取得できませんでした: %d", url, status));
+
+            try (InputStream input = connection.getInputStream()) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+
+                while ((read = input.read(buffer)) >= 0) {
+                    if (output.size() + read > MAX_DOWNLOAD_BYTES)
+                        throw new IOException(String.format("画像 '%s' が大きすぎます.", url));
+
+                    output.write(buffer, 0, read);
+                }
+
+                return output.toByteArray();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static final class Handler extends URLStreamHandler {
+        private final Supplier<ImageCache> cache;
+
+        private Handler(Supplier<ImageCache> cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        protected void parseURL(URL u, String spec, int start, int limit) {
+            // 元の URL は符号化された 1 つの文字列として扱う
+            this.setURL(u, SCHEME, null, -1, null, null, spec.substring(start, limit), null, null);
+        }
+
+        @Override
+        protected URLConnection openConnection(URL u) throws IOException {
+            ImageCache cache = this.cache.get();
+
+            if (cache == null)
+                throw new IOException("画像のキャッシュが登録されていません.");
+
+            return cache.new Connection(u);
+        }
+    }
+
+    private final class Connection extends URLConnection {
+        private byte[] data;
+
+        private Connection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (this.connected)
+                return;
+
+            String source = URLDecoder.decode(this.url.getPath(), "UTF-8");
+            byte[] data = ImageCache.this.read(source);
+
+            // WebView の読み込みはバックグラウンドのスレッドで行われるため、ここでは取得の完了を待つ
+            if (data == null) {
+                try {
+                    ImageCache.this.load(source).get(TIMEOUT_MILLIS * 2L, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException ex) {
+                    throw new IOException(ex.getCause());
+                } catch (TimeoutException ex) {
+                    throw new IOException(String.format("画像 '%s' を時間内に取得できませんでした.", source), ex);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+
+                data = ImageCache.this.read(source);
+            }
+
+            if (data == null)
+                throw new FileNotFoundException(source);
+
+            this.data = data;
+            this.connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            this.connect();
+            return new ByteArrayInputStream(this.data);
+        }
+
+        @Override
+        public String getContentType() {
+            try {
+                this.connect();
+                return URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(this.data));
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            try {
+                this.connect();
+                return this.data.length;
+            } catch (IOException ex) {
+                return -1L;
+            }
+        }
+    }
+}
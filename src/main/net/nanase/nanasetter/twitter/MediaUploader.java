@@ -0,0 +1,625 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.JSONParser;
+import twitter4j.HttpClient;
+import twitter4j.HttpClientFactory;
+import twitter4j.HttpParameter;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/26.
+ */
+
+/**
+ * <p>画像や動画を分割して並列にアップロードし、ツイートに添付できるメディア ID を取得します。
+ * <p>アップロードは media/upload の INIT、APPEND、FINALIZE の各コマンドによって行われます。
+ * ファイルは分割された範囲ごとにメモリマップされて送信されるため、ファイル全体がヒープに読み込まれることはありません。
+ * 各分割は複数のスレッドで並列に送信され、一時的な失敗は分割ごとに間隔を空けて再試行されます。
+ * <p>JPEG および PNG 画像は、アップロードの前に画像処理用のワーカースレッドで長辺が上限を超えないように縮小され、
+ * 大きさの上限を超える場合は JPEG に再エンコードされます。GIF および動画はそのまま送信されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class MediaUploader implements AutoCloseable {
+    /**
+     * メディアをアップロードする既定の URL です。
+     */
+    public static final String UPLOAD_URL = "https://upload.twitter.com/1.1/media/upload.json";
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int DEFAULT_UPLOAD_THREADS = 4;
+    private static final int DEFAULT_MAX_DIMENSION = 2048;
+    private static final long MAX_IMAGE_BYTES = 5L * 1024L * 1024L;
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final int MAX_CHUNK_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000L;
+
+    private final Logger logger;
+    private final int chunkSize;
+    private final int maxDimension;
+    private final long initialBackoffMillis;
+    private final ExecutorService imageWorkers;
+    private final ScheduledThreadPoolExecutor uploadWorkers;
+
+    /**
+     * media/upload を呼び出す処理を表します。
+     */
+    public interface Endpoint {
+        /**
+         * パラメータを指定して POST 要求を送信します。
+         *
+         * @param params 要求のパラメータ。
+         * @return 応答の本文。
+         * @throws TwitterException 要求に失敗しました。
+         */
+        String post(HttpParameter... params) throws TwitterException;
+
+        /**
+         * パラメータを指定して GET 要求を送信します。
+         *
+         * @param params 要求のパラメータ。
+         * @return 応答の本文。
+         * @throws TwitterException 要求に失敗しました。
+         */
+        String get(HttpParameter... params) throws TwitterException;
+    }
+
+    /**
+     * アップロードの進捗を受け取るリスナです。
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * 分割の送信が完了したときに呼び出されます。このメソッドはアップロードを行うスレッドから呼び出されます。
+         *
+         * @param uploadedBytes 送信が完了したバイト数。
+         * @param totalBytes    送信するバイト数の合計。
+         */
+        void onProgress(long uploadedBytes, long totalBytes);
+    }
+
+    private static final class Media {
+        private final Path path;
+        private final String mediaType;
+        private final boolean temporary;
+
+        private Media(Path path, String mediaType, boolean temporary) {
+            this.path = path;
+            this.mediaType = mediaType;
+            this.temporary = temporary;
+        }
+    }
+
+    /**
+     * ロガーを指定して新しい MediaUploader クラスのインスタンスを初期化します。
+     * 分割の大きさは 1 MiB、並列数は 4、画像の長辺の上限は 2048 ピクセルです。
+     *
+     * @param logger 再試行などを出力する Logger オブジェクト。
+     */
+    public MediaUploader(Logger logger) {
+        this(logger, DEFAULT_CHUNK_SIZE, DEFAULT_UPLOAD_THREADS, DEFAULT_MAX_DIMENSION, INITIAL_BACKOFF_MILLIS);
+    }
+
+    /**
+     * ロガー、分割の大きさ、並列数、画像の長辺の上限および再試行の間隔を指定して新しい MediaUploader クラスのインスタンスを初期化します。
+     *
+     * @param logger               再試行などを出力する Logger オブジェクト。
+     * @param chunkSize            分割の大きさ (バイト)。
+     * @param uploadThreads        分割を並列に送信するスレッドの数。
+     * @param maxDimension         画像の長辺の上限 (ピクセル)。
+     * @param initialBackoffMillis 最初の再試行までの時間 (ミリ秒)。
+     */
+    public MediaUploader(Logger logger, int chunkSize, int uploadThreads, int maxDimension, long initialBackoffMillis) {
+        if (logger == null)
+            throw new IllegalArgumentException();
+
+        if (chunkSize < 1 || uploadThreads < 1 || maxDimension < 1 || initialBackoffMillis < 1)
+            throw new IllegalArgumentException();
+
+        this.logger = logger;
+        this.chunkSize = chunkSize;
+        this.maxDimension = maxDimension;
+        this.initialBackoffMillis = initialBackoffMillis;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.imageWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "nanasetter-media-image-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.uploadWorkers = new ScheduledThreadPoolExecutor(uploadThreads, r -> {
+            Thread thread = new Thread(r, "nanasetter-media-upload-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Twitter オブジェクトの認証情報を用いて {@link #UPLOAD_URL} を呼び出す Endpoint オブジェクトを作成します。
+     *
+     * @param twitter Twitter オブジェクト。
+     * @return Endpoint オブジェクト。
+     */
+    public static Endpoint createEndpoint(Twitter twitter) {
+        return createEndpoint(twitter, UPLOAD_URL);
+    }
+
+    /**
+     * Twitter オブジェクトの認証情報を用いて指定された URL を呼び出す Endpoint オブジェクトを作成します。
+     *
+     * @param twitter Twitter オブジェクト。
+     * @param url     media/upload の URL。
+     * @return Endpoint オブジェクト。
+     */
+    public static Endpoint createEndpoint(Twitter twitter, String url) {
+        if (twitter == null || url == null)
+            throw new IllegalArgumentException();
+
+        HttpClient client = HttpClientFactory.getInstance(twitter.getConfiguration().getHttpClientConfiguration());
+
+        return new Endpoint() {
+            @Override
+            public String post(HttpParameter... params) throws TwitterException {
+                return client.post(url, params, twitter.getAuthorization(), null).asString();
+            }
+
+            @Override
+            public String get(HttpParameter... params) throws TwitterException {
+                return client.get(url, params, twitter.getAuthorization(), null).asString();
+            }
+        };
+    }
+
+    /**
+     * ファイルをアップロードします。このメソッドはアップロードの完了を待たずに直ちに戻ります。
+     *
+     * @param endpoint media/upload を呼び出す Endpoint オブジェクト。
+     * @param file     アップロードするファイル。
+     * @param listener 進捗を受け取る ProgressListener オブジェクト。null を指定できます。
+     * @return メディア ID で完了する CompletableFuture オブジェクト。
+     */
+    public CompletableFuture<Long> upload(Endpoint endpoint, Path file, ProgressListener listener) {
+        if (endpoint == null || file == null)
+            throw new IllegalArgumentException();
+
+        CompletableFuture<Long> result = CompletableFuture
+                .supplyAsync(() -> this.prepare(file), this.imageWorkers)
+                .thenCompose(media -> this.upload(endpoint, media, listener)
+                        .whenComplete((id, ex) -> {
+                            if (media.temporary)
+                                deleteQuietly(media.path);
+                        }));
+
+        result.whenComplete((id, ex) -> {
+            if (ex != null)
+                this.logger.log(Level.WARNING, String.format("ファイル '%s' をアップロードできませんでした: %s",
+                        file, unwrap(ex).getMessage()), unwrap(ex));
+        });
+
+        return result;
+    }
+
+    /**
+     * アップロードを行うスレッドを終了します。実行中のアップロードは中断されます。
+     */
+    @Override
+    public void close() {
+        this.imageWorkers.shutdownNow();
+        this.uploadWorkers.shutdownNow();
+    }
+
+    private CompletableFuture<Long> upload(Endpoint endpoint, Media media, ProgressListener listener) {
+        long totalBytes;
+
+        try {
+            totalBytes = Files.size(media.path);
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getMediaId(endpoint.post(
+                        new HttpParameter("command", "INIT"),
+                        new HttpParameter("total_bytes", totalBytes),
+                        new HttpParameter("media_type", media.mediaType),
+                        new HttpParameter("media_category", getMediaCategory(media.mediaType))));
+            } catch (TwitterException ex) {
+                throw new CompletionException(ex);
+            }
+        }, this.uploadWorkers).thenCompose(mediaId -> {
+            int chunkCount = (int) Math.max(1L, (totalBytes + this.chunkSize - 1) / this.chunkSize);
+            List<CompletableFuture<Void>> chunks = new ArrayList<>(chunkCount);
+            AtomicLong uploadedBytes = new AtomicLong();
+
+            for (int i = 0; i < chunkCount; i++) {
+                CompletableFuture<Void> chunk = new CompletableFuture<>();
+                int index = i;
+                chunks.add(chunk);
+                this.uploadWorkers.execute(() -> this.appendChunk(
+                        endpoint, media, mediaId, index, totalBytes, 1, uploadedBytes, listener, chunk));
+            }
+
+            return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[chunkCount]))
+                    .thenComposeAsync(v -> this.finalizeUpload(endpoint, mediaId), this.uploadWorkers);
+        });
+    }
+
+    private void appendChunk(Endpoint endpoint, Media media, long mediaId, int index, long totalBytes, int attempt,
+                             AtomicLong uploadedBytes, ProgressListener listener, CompletableFuture<Void> chunk) {
+        long position = (long) index * this.chunkSize;
+        long length = Math.min(this.chunkSize, totalBytes - position);
+
+        try (FileChannel channel = FileChannel.open(media.path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            endpoint.post(
+                    new HttpParameter("command", "APPEND"),
+                    new HttpParameter("media_id", mediaId),
+                    new HttpParameter("segment_index", index),
+                    new HttpParameter("media", media.path.getFileName().toString(), new ByteBufferInputStream(buffer)));
+        } catch (TwitterException ex) {
+            if (WriteQueue.isTransient(ex) && attempt < MAX_CHUNK_ATTEMPTS) {
+                long delay = (this.initialBackoffMillis << (attempt - 1));
+                delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+
+                this.logger.fine(String.format("メディア %d の分割 %d の送信に失敗しました. %d ミリ秒後に再試行します: %s",
+                        mediaId, index, delay, ex.getMessage()));
+                this.uploadWorkers.schedule(() -> this.appendChunk(endpoint, media, mediaId, index, totalBytes,
+                        attempt + 1, uploadedBytes, listener, chunk), delay, TimeUnit.MILLISECONDS);
+            } else {
+                chunk.completeExceptionally(ex);
+            }
+
+            return;
+        } catch (IOException | RuntimeException ex) {
+            chunk.completeExceptionally(ex);
+            return;
+        }
+
+        long uploaded = uploadedBytes.addAndGet(length);
+
+        if (listener != null)
+            listener.onProgress(uploaded, totalBytes);
+
+        chunk.complete(null);
+    }
+
+    private CompletableFuture<Long> finalizeUpload(Endpoint endpoint, long mediaId) {
+        Map<?, ?> response;
+
+        try {
+            response = parse(endpoint.post(
+                    new HttpParameter("command", "FINALIZE"),
+                    new HttpParameter("media_id", mediaId)));
+        } catch (TwitterException ex) {
+            throw new CompletionException(ex);
+        }
+
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        this.checkProcessing(endpoint, mediaId, response, result);
+        return result;
+    }
+
+    // 動画などはサーバ側の処理が完了するまで STATUS コマンドで状態を問い合わせる
+    private void checkProcessing(Endpoint endpoint, long mediaId, Map<?, ?> response, CompletableFuture<Long> result) {
+        Object processingInfo = response.get("processing_info");
+
+        if (!(processingInfo instanceof Map)) {
+            result.complete(mediaId);
+            return;
+        }
+
+        Map<?, ?> info = (Map<?, ?>) processingInfo;
+        Object state = info.get("state");
+
+        if ("succeeded".equals(state)) {
+            result.complete(mediaId);
+            return;
+        }
+
+        if ("failed".equals(state)) {
+            Object error = info.get("error");
+            result.completeExceptionally(new TwitterException(String.format("メディア %d の処理に失敗しました: %s",
+                    mediaId, error instanceof Map ? ((Map<?, ?>) error).get("message") : state)));
+            return;
+        }
+
+        long delaySeconds = info.get("check_after_secs") instanceof Number
+                ? ((Number) info.get("check_after_secs")).longValue() : 1L;
+
+        this.uploadWorkers.schedule(() -> {
+            try {
+                this.checkProcessing(endpoint, mediaId, parse(endpoint.get(
+                        new HttpParameter("command", "STATUS"),
+                        new HttpParameter("media_id", mediaId))), result);
+            } catch (TwitterException | RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        }, Math.max(1L, delaySeconds), TimeUnit.SECONDS);
+    }
+
+    private Media prepare(Path file) {
+        String mediaType = getMediaType(file);
+
+        if (!mediaType.equals("image/jpeg") && !mediaType.equals("image/png"))
+            return new Media(file, mediaType, false);
+
+        try {
+            long size = Files.size(file);
+            int[] dimension = readDimension(file);
+
+            if (dimension == null || (Math.max(dimension[0], dimension[1]) <= this.maxDimension && size <= MAX_IMAGE_BYTES))
+                return new Media(file, mediaType, false);
+
+            BufferedImage image = ImageIO.read(file.toFile());
+
+            if (image == null)
+                return new Media(file, mediaType, false);
+
+            BufferedImage scaled = this.scale(image, mediaType.equals("image/png"));
+            Path temporary;
+
+            if (mediaType.equals("image/png")) {
+                temporary = Files.createTempFile("nanasetter-media", ".png");
+                ImageIO.write(scaled, "png", temporary.toFile());
+
+                if (Files.size(temporary) <= MAX_IMAGE_BYTES)
+                    return new Media(temporary, mediaType, true);
+
+                deleteQuietly(temporary);
+                scaled = toRGB(scaled);
+            }
+
+            temporary = Files.createTempFile("nanasetter-media", ".jpg");
+            writeJPEG(scaled, temporary);
+
+            this.logger.fine(String.format("画像 '%s' を %dx%d から %dx%d に縮小しました.",
+                    file, image.getWidth(), image.getHeight(), scaled.getWidth(), scaled.getHeight()));
+
+            return new Media(temporary, "image/jpeg", true);
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private BufferedImage scale(BufferedImage image, boolean alpha) {
+        double ratio = Math.min(1.0, (double) this.maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        BufferedImage scaled = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return scaled;
+    }
+
+    private static BufferedImage toRGB(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+
+        try {
+            graphics.setColor(java.awt.Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return rgb;
+    }
+
+    private static void writeJPEG(BufferedImage image, Path path) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(path.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // 画像全体を復号せずに幅と高さを読み取る
+    private static int[] readDimension(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            if (input == null)
+                return null;
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if (!readers.hasNext())
+                return null;
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static String getMediaType(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg"))
+            return "image/jpeg";
+
+        if (name.endsWith(".png"))
+            return "image/png";
+
+        if (name.endsWith(".gif"))
+            return "image/gif";
+
+        if (name.endsWith(".webp"))
+            return "image/webp";
+
+        if (name.endsWith(".mp4"))
+            return "video/mp4";
+
+        try {
+            String probed = Files.probeContentType(file);
+            return probed != null ? probed : "application/octet-stream";
+        } catch (IOException ex) {
+            return "application/octet-stream";
+        }
+    }
+
+    private static String getMediaCategory(String mediaType) {
+        if (mediaType.startsWith("video/"))
+            return "tweet_video";
+
+        if (mediaType.equals("image/gif"))
+            return "tweet_gif";
+
+        return "tweet_image";
+    }
+
+    private static long getMediaId(String response) throws TwitterException {
+        Map<?, ?> map = parse(response);
+        Object id = map.get("media_id_string");
+
+        if (id instanceof String)
+            return Long.parseLong((String) id);
+
+        if (map.get("media_id") instanceof Number)
+            return ((Number) map.get("media_id")).longValue();
+
+        throw new TwitterException("応答にメディア ID が含まれていません.");
+    }
+
+    private static Map<?, ?> parse(String response) throws TwitterException {
+        try {
+            Object value = JSONParser.parse(response);
+
+            if (value instanceof Map)
+                return (Map<?, ?>) value;
+        } catch (IllegalArgumentException ex) {
+            throw new TwitterException("応答を解析できませんでした.", ex);
+        }
+
+        throw new TwitterException("応答を解析できませんでした.");
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            //
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+
+            if (!this.buffer.hasRemaining())
+                return -1;
+
+            int count = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/30.
+ */
+
+/**
+ * <p>表示されているツイートの「3分前」のような相対時刻を、表示が変わるときにのみ更新します。
+ * <p>各行は次に表示が変わる時刻とともにハッシュ化されたタイマーホイールに登録されます。
+ * ホイールは一定の間隔で 1 スロットずつ進み、期限を迎えた行のみ新しい表示を求めて次の変化の時刻に再登録されます。
+ * 1 回の刻みで表示が変わった行はまとめて 1 つの JSON 配列として配信先に渡されるため、
+ * 行の数によらず、ページへの書き込みは表示が変わった行に対してのみ行われます。
+ * <p>配信される JSON は {@code [{"id":"...","label":"..."}, ...]} の形式です。24 時間以上前の時刻は日付で表示され、それ以降は更新されません。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class RelativeTimeUpdater implements AutoCloseable {
+    private static final long SECOND = 1000L;
+    private static final long MINUTE = 60L * SECOND;
+    private static final long HOUR = 60L * MINUTE;
+    private static final long DAY = 24L * HOUR;
+
+    private static final int DEFAULT_WHEEL_SIZE = 256;
+    private static final long DEFAULT_TICK_MILLIS = SECOND;
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9_\\-]+");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("M月d日");
+
+    private final Consumer<String> sink;
+    private final Logger logger;
+    private final LongSupplier clock;
+    private final ZoneId zone;
+    private final long tickMillis;
+    private final long startMillis;
+    private final List<List<Entry>> wheel;
+    private final int mask;
+    private final Map<String, Entry> entries;
+    private final ScheduledThreadPoolExecutor executor;
+
+    private long currentTick;
+
+    private static final class Entry {
+        private final String key;
+        private final long createdAt;
+        private String label;
+        private long deadlineTick;
+        private boolean cancelled;
+
+        private Entry(String key, long createdAt) {
+            this.key = key;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * 配信先とロガーを指定して新しい RelativeTimeUpdater クラスのインスタンスを初期化し、1 秒ごとの更新を開始します。
+     *
+     * @param sink   表示が変わった行を表す JSON の配信先。更新スレッドから呼び出されます。
+     * @param logger ロガー。
+     */
+    public RelativeTimeUpdater(Consumer<String> sink, Logger logger) {
+        this(sink, logger, System::currentTimeMillis, ZoneId.systemDefault(), DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE,
+                true);
+    }
+
+    /**
+     * パラメータを指定して新しい RelativeTimeUpdater クラスのインスタンスを初期化します。
+     *
+     * @param sink       表示が変わった行を表す JSON の配信先。
+     * @param logger     ロガー。
+     * @param clock      現在時刻 (エポックミリ秒) を返す関数。
+     * @param zone       日付の表示に用いるタイムゾーン。
+     * @param tickMillis ホイールが 1 スロット進む間隔 (ミリ秒)。
+     * @param wheelSize  ホイールのスロットの数。2 のべき乗に切り上げられます。
+     * @param start      更新のスレッドを開始するとき true、{@link #tick()} を直接呼び出すとき false。
+     */
+    RelativeTimeUpdater(Consumer<String> sink, Logger logger, LongSupplier clock, ZoneId zone, long tickMillis,
+                        int wheelSize, boolean start) {
+        if (sink == null || logger == null || clock == null || zone == null || tickMillis < 1 || wheelSize < 1)
+            throw new IllegalArgumentException();
+
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+
+        this.sink = sink;
+        this.logger = logger;
+        this.clock = clock;
+        this.zone = zone;
+        this.tickMillis = tickMillis;
+        this.startMillis = clock.getAsLong();
+        this.wheel = new ArrayList<>(size);
+        this.mask = size - 1;
+        this.entries = new HashMap<>();
+
+        for (int i = 0; i < size; i++)
+            this.wheel.add(new ArrayList<>());
+
+        if (start) {
+            this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "nanasetter-relative-time");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * 経過時間に応じた相対時刻の表示を取得します。
+     *
+     * @param createdAt 作成日時 (エポックミリ秒)。
+     * @param now       現在時刻 (エポックミリ秒)。
+     * @param zone      日付の表示に用いるタイムゾーン。
+     * @return 相対時刻の表示。
+     */
+    public static String getLabel(long createdAt, long now, ZoneId zone) {
+        long age = Math.max(0L, now - createdAt);
+
+        if (age < MINUTE)
+            return (age / SECOND) + "秒前";
+
+        if (age < HOUR)
+            return (age / MINUTE) + "分前";
+
+        if (age < DAY)
+            return (age / HOUR) + "時間前";
+
+        return DATE_FORMAT.format(Instant.ofEpochMilli(createdAt).atZone(zone));
+    }
+
+    /**
+     * 相対時刻の表示が次に変わる時刻を取得します。
+     *
+     * @param createdAt 作成日時 (エポックミリ秒)。
+     * @param now       現在時刻 (エポックミリ秒)。
+     * @return 次に表示が変わる時刻 (エポックミリ秒)。これ以上変わらない場合は Long.MAX_VALUE。
+     */
+    public static long getNextChange(long createdAt, long now) {
+        long age = Math.max(0L, now - createdAt);
+        long unit = age < MINUTE ? SECOND : age < HOUR ? MINUTE : age < DAY ? HOUR : 0L;
+
+        return unit == 0L ? Long.MAX_VALUE : createdAt + (age / unit + 1) * unit;
+    }
+
+    /**
+     * 行を登録し、現在の表示を取得します。同じキーの行が登録されている場合は置き換えられます。
+     *
+     * @param key       行を識別するキー。英数字、アンダースコアおよびハイフンからなる文字列。
+     * @param createdAt 作成日時 (エポックミリ秒)。
+     * @return 現在の相対時刻の表示。
+     */
+    public synchronized String watch(String key, long createdAt) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches())
+            throw new IllegalArgumentException();
+
+        Entry previous = this.entries.remove(key);
+
+        if (previous != null)
+            previous.cancelled = true;
+
+        long now = this.clock.getAsLong();
+        Entry entry = new Entry(key, createdAt);
+        entry.label = getLabel(createdAt, now, this.zone);
+
+        if (this.schedule(entry, getNextChange(createdAt, now)))
+            this.entries.put(key, entry);
+
+        return entry.label;
+    }
+
+    /**
+     * 行の登録を解除します。
+     *
+     * @param key 行を識別するキー。
+     */
+    public synchronized void unwatch(String key) {
+        Entry entry = this.entries.remove(key);
+
+        if (entry != null)
+            entry.cancelled = true;
+    }
+
+    /**
+     * 登録されている行の数を取得します。
+     *
+     * @return 行の数。
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * ホイールを現在時刻まで進め、表示が変わった行を配信先に渡します。
+     * 通常は更新のスレッドから一定の間隔で呼び出されます。
+     */
+    public void tick() {
+        String json;
+
+        try {
+            json = this.advance();
+        } catch (RuntimeException ex) {
+            this.logger.log(Level.WARNING, "相対時刻を更新できませんでした.", ex);
+            return;
+        }
+
+        if (json != null)
+            this.sink.accept(json);
+    }
+
+    /**
+     * 更新を停止します。
+     */
+    @Override
+    public void close() {
+        if (this.executor != null)
+            this.executor.shutdownNow();
+    }
+
+    private synchronized String advance() {
+        long now = this.clock.getAsLong();
+        long targetTick = Math.floorDiv(now - this.startMillis, this.tickMillis);
+
+        if (targetTick <= this.currentTick)
+            return null;
+
+        List<Entry> fired = new ArrayList<>();
+
+        // 1 周以上遅れた場合はすべてのスロットを 1 度ずつ処理すれば足りる
+        long from = Math.max(this.currentTick + 1, targetTick - this.wheel.size() + 1);
+
+        for (long tick = from; tick <= targetTick; tick++) {
+            List<Entry> slot = this.wheel.get((int) (tick & this.mask));
+            int kept = 0;
+
+            for (Entry entry : slot) {
+                if (entry.cancelled)
+                    continue;
+
+                if (entry.deadlineTick <= targetTick)
+                    fired.add(entry);
+                else
+                    slot.set(kept++, entry);
+            }
+
+            slot.subList(kept, slot.size()).clear();
+        }
+
+        this.currentTick = targetTick;
+
+        StringBuilder sb = null;
+
+        for (Entry entry : fired) {
+            String label = getLabel(entry.createdAt, now, this.zone);
+
+            if (!label.equals(entry.label)) {
+                entry.label = label;
+                sb = sb == null ? new StringBuilder(fired.size() * 40).append('[') : sb.append(',');
+                sb.append("{\"id\":\"").append(entry.key).append("\",\"label\":");
+                StatusSerializer.writeString(sb, label);
+                sb.append('}');
+            }
+
+            if (!this.schedule(entry, getNextChange(entry.createdAt, now)))
+                this.entries.remove(entry.key);
+        }
+
+        return sb == null ? null : sb.append(']').toString();
+    }
+
+    private boolean schedule(Entry entry, long deadline) {
+        if (deadline == Long.MAX_VALUE)
+            return false;
+
+        // 期限以降の最初の刻みで処理し、表示が変わる前に発火しないようにする
+        long deadlineTick = Math.floorDiv(deadline - this.startMillis + this.tickMillis - 1, this.tickMillis);
+        entry.deadlineTick = Math.max(deadlineTick, this.currentTick + 1);
+        this.wheel.get((int) (entry.deadlineTick & this.mask)).add(entry);
+        return true;
+    }
+}
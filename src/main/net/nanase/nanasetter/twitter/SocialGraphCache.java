@@ -0,0 +1,591 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.MappedBufferUtils;
+import twitter4j.IDs;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/29.
+ */
+
+/**
+ * <p>アカウントごとのフォローおよびフォロワーのユーザ ID を、昇順に並べた配列としてディスクに保持します。
+ * <p>ユーザ ID は {@code <ディレクトリ>/<ユーザ ID>.<friends|followers>.<世代>.ids} にメモリマップされ、
+ * 参照は二分探索によってヒープにコピーすることなく行われます。ファイルは同期の完了時に世代を 1 つ進めた新しいファイルとして書き込まれ、
+ * 古い世代のファイルは削除されます。マップされているファイルを置き換えないため、ファイルが使用中の間は削除できない環境でも更新できます。
+ * 削除できなかった古い世代のファイルは、次の書き込みまたは読み込みの際に再び削除されます。
+ * <p>同期ではカーソルを用いてすべてのページを取得し、以前の配列との差分を線形時間のマージで求めます。
+ * 差分は追加されたユーザ ID と削除されたユーザ ID として {@link Listener} に通知されます。
+ * 保存された配列が存在しない最初の同期では通知は行われません。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class SocialGraphCache {
+    private static final int MAGIC = 0x4e534731;
+    private static final int HEADER_SIZE = 8;
+    private static final long START_CURSOR = -1L;
+    private static final int INITIAL_CAPACITY = 5000;
+    private static final LongBuffer EMPTY = LongBuffer.allocate(0);
+
+    private final Path directory;
+    private final Logger logger;
+    private final Map<Long, Map<Relation, Entry>> accounts;
+    private final List<Listener> listeners;
+
+    /**
+     * ユーザ ID の関係の種類を表します。
+     */
+    public enum Relation {
+        /**
+         * アカウントがフォローしているユーザ。
+         */
+        FRIENDS,
+
+        /**
+         * アカウントをフォローしているユーザ。
+         */
+        FOLLOWERS
+    }
+
+    /**
+     * カーソルで区切られたユーザ ID の 1 ページを表します。
+     */
+    public static final class Page {
+        private final long[] ids;
+        private final long nextCursor;
+
+        /**
+         * ユーザ ID と次のカーソルを指定して新しい Page クラスのインスタンスを初期化します。
+         *
+         * @param ids        ユーザ ID の配列。順序は問いません。
+         * @param nextCursor 次のページのカーソル。最後のページの場合は 0。
+         */
+        public Page(long[] ids, long nextCursor) {
+            if (ids == null)
+                throw new IllegalArgumentException();
+
+            this.ids = ids;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    /**
+     * 同期によって求められた差分を表します。このクラスは不変です。
+     */
+    public static final class Diff {
+        private final long[] added;
+        private final long[] removed;
+
+        private Diff(long[] added, long[] removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        /**
+         * 追加されたユーザ ID を昇順で取得します。返される配列は変更しないでください。
+         *
+         * @return ユーザ ID の配列。
+         */
+        public long[] getAdded() {
+            return this.added;
+        }
+
+        /**
+         * 削除されたユーザ ID を昇順で取得します。返される配列は変更しないでください。
+         *
+         * @return ユーザ ID の配列。
+         */
+        public long[] getRemoved() {
+            return this.removed;
+        }
+
+        /**
+         * 差分が空であるかを判定します。
+         *
+         * @return 追加も削除もないとき true、それ以外のとき false。
+         */
+        public boolean isEmpty() {
+            return this.added.length == 0 && this.removed.length == 0;
+        }
+    }
+
+    /**
+     * ユーザ ID のページを取得する処理を表します。
+     */
+    @FunctionalInterface
+    public interface Source {
+        /**
+         * カーソルを指定してユーザ ID のページを取得します。
+         *
+         * @param relation 関係の種類。
+         * @param cursor   カーソル。最初のページの場合は -1。
+         * @return 取得したページ。
+         * @throws TwitterException 取得に失敗しました。
+         */
+        Page fetch(Relation relation, long cursor) throws TwitterException;
+    }
+
+    /**
+     * 同期によって差分が求められたときに呼び出される処理を表します。
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * 差分が求められたときに、同期を行ったスレッドから呼び出されます。
+         *
+         * @param accountId アカウントのユーザ ID。
+         * @param relation  関係の種類。
+         * @param diff      差分。
+         */
+        void onChanged(long accountId, Relation relation, Diff diff);
+    }
+
+    private static final class Entry {
+        private volatile LongBuffer ids;
+        private boolean persisted;
+        private long generation;
+        private long[] staging;
+        private int stagingSize;
+        private long cursor = START_CURSOR;
+    }
+
+    /**
+     * 保存先のディレクトリとロガーを指定して新しい SocialGraphCache クラスのインスタンスを初期化します。
+     *
+     * @param directory 保存先のディレクトリ。
+     * @param logger    ロガー。
+     */
+    public SocialGraphCache(Path directory, Logger logger) {
+        if (directory == null || logger == null)
+            throw new IllegalArgumentException();
+
+        this.directory = directory;
+        this.logger = logger;
+        this.accounts = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Twitter オブジェクトからユーザ ID を取得する Source オブジェクトを作成します。
+     * フォローは friends/ids、フォロワーは followers/ids から 1 ページあたり最大 5000 件ずつ取得されます。
+     *
+     * @param twitter Twitter オブジェクト。
+     * @return Source オブジェクト。
+     */
+    public static Source createSource(Twitter twitter) {
+        if (twitter == null)
+            throw new IllegalArgumentException();
+
+        return (relation, cursor) -> {
+            IDs ids = relation == Relation.FRIENDS ? twitter.getFriendsIDs(cursor) : twitter.getFollowersIDs(cursor);
+            return new Page(ids.getIDs(), ids.getNextCursor());
+        };
+    }
+
+    /**
+     * 差分が求められたときに呼び出される Listener オブジェクトを追加します。
+     *
+     * @param listener Listener オブジェクト。
+     */
+    public void addListener(Listener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException();
+
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Listener オブジェクトを削除します。
+     *
+     * @param listener Listener オブジェクト。
+     */
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * ユーザ ID を取得して保存された配列を更新します。前回の同期が途中で終わっている場合は、その続きから取得します。
+     * すべてのページの取得が完了したとき、以前の配列との差分が Listener オブジェクトに通知されます。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param relation  関係の種類。
+     * @param source    ユーザ ID を取得する Source オブジェクト。
+     * @param maxPages  この呼び出しで取得する最大のページ数。
+     * @return すべてのページの取得が完了し、配列が置き換えられたとき true、続きのページが残っているとき false。
+     * @throws TwitterException ユーザ ID の取得に失敗しました。取得済みのページは次回の同期で引き継がれます。
+     * @throws IOException      配列を保存できませんでした。
+     */
+    public boolean sync(long accountId, Relation relation, Source source, int maxPages)
+            throws TwitterException, IOException {
+        if (relation == null || source == null || maxPages < 1)
+            throw new IllegalArgumentException();
+
+        Entry entry = this.getEntry(accountId, relation);
+        Diff diff;
+        boolean notify;
+
+        synchronized (entry) {
+            if (entry.staging == null) {
+                entry.staging = new long[Math.max(INITIAL_CAPACITY, entry.ids.limit())];
+                entry.stagingSize = 0;
+            }
+
+            int pages = 0;
+
+            do {
+                if (pages++ == maxPages)
+                    return false;
+
+                Page page = source.fetch(relation, entry.cursor);
+
+                if (entry.stagingSize + page.ids.length > entry.staging.length)
+                    entry.staging = Arrays.copyOf(entry.staging,
+                            Math.max(entry.staging.length * 2, entry.stagingSize + page.ids.length));
+
+                System.arraycopy(page.ids, 0, entry.staging, entry.stagingSize, page.ids.length);
+                entry.stagingSize += page.ids.length;
+                entry.cursor = page.nextCursor;
+            } while (entry.cursor != 0L);
+
+            long[] current = sortDistinct(entry.staging, entry.stagingSize);
+            entry.staging = null;
+            entry.stagingSize = 0;
+            entry.cursor = START_CURSOR;
+
+            diff = diff(entry.ids, current);
+            notify = entry.persisted && !diff.isEmpty();
+
+            if (!entry.persisted || !diff.isEmpty()) {
+                entry.ids = this.write(entry, accountId, relation, current);
+                entry.persisted = true;
+            }
+        }
+
+        if (notify)
+            for (Listener listener : this.listeners) {
+                try {
+                    listener.onChanged(accountId, relation, diff);
+                } catch (RuntimeException ex) {
+                    this.logger.warning(String.format("フォロー関係の差分を通知できませんでした: %s", ex.getMessage()));
+                }
+            }
+
+        return true;
+    }
+
+    /**
+     * ユーザが保存された配列に含まれているかを判定します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param relation  関係の種類。
+     * @param userId    判定するユーザ ID。
+     * @return 含まれているとき true、それ以外のとき false。
+     */
+    public boolean contains(long accountId, Relation relation, long userId) {
+        LongBuffer ids = this.getEntry(accountId, relation).ids;
+        int low = 0;
+        int high = ids.limit() - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = ids.get(middle);
+
+            if (value < userId)
+                low = middle + 1;
+            else if (value > userId)
+                high = middle - 1;
+            else
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * 保存されたユーザ ID の数を取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param relation  関係の種類。
+     * @return ユーザ ID の数。
+     */
+    public int size(long accountId, Relation relation) {
+        return this.getEntry(accountId, relation).ids.limit();
+    }
+
+    /**
+     * 保存されたユーザ ID を昇順で取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param relation  関係の種類。
+     * @return ユーザ ID の配列。
+     */
+    public long[] getIds(long accountId, Relation relation) {
+        LongBuffer ids = this.getEntry(accountId, relation).ids;
+        long[] result = new long[ids.limit()];
+        ids.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * 昇順に並べられた 2 つのユーザ ID の列の差分をマージによって求めます。
+     *
+     * @param previous 以前のユーザ ID。
+     * @param current  現在のユーザ ID。
+     * @return 差分。
+     */
+    static Diff diff(LongBuffer previous, long[] current) {
+        int previousSize = previous.limit();
+        int added = 0;
+        int removed = 0;
+        int i = 0;
+        int j = 0;
+
+        // 一度目の走査で件数を数え、差分の配列を必要な大きさだけ確保する
+        while (i < previousSize && j < current.length) {
+            long p = previous.get(i);
+
+            if (p == current[j]) {
+                i++;
+                j++;
+            } else if (p < current[j]) {
+                removed++;
+                i++;
+            } else {
+                added++;
+                j++;
+            }
+        }
+
+        long[] addedIds = new long[added + current.length - j];
+        long[] removedIds = new long[removed + previousSize - i];
+        added = removed = i = j = 0;
+
+        while (i < previousSize && j < current.length) {
+            long p = previous.get(i);
+
+            if (p == current[j]) {
+                i++;
+                j++;
+            } else if (p < current[j]) {
+                removedIds[removed++] = p;
+                i++;
+            } else {
+                addedIds[added++] = current[j++];
+            }
+        }
+
+        while (i < previousSize)
+            removedIds[removed++] = previous.get(i++);
+
+        while (j < current.length)
+            addedIds[added++] = current[j++];
+
+        return new Diff(addedIds, removedIds);
+    }
+
+    private static long[] sortDistinct(long[] values, int size) {
+        Arrays.sort(values, 0, size);
+
+        int distinct = 0;
+
+        for (int i = 0; i < size; i++)
+            if (distinct == 0 || values[distinct - 1] != values[i])
+                values[distinct++] = values[i];
+
+        return Arrays.copyOf(values, distinct);
+    }
+
+    private Entry getEntry(long accountId, Relation relation) {
+        if (relation == null)
+            throw new IllegalArgumentException();
+
+        Entry entry = this.accounts
+                .computeIfAbsent(accountId, id -> {
+                    Map<Relation, Entry> entries = new EnumMap<>(Relation.class);
+
+                    for (Relation r : Relation.values())
+                        entries.put(r, new Entry());
+
+                    return entries;
+                })
+                .get(relation);
+
+        if (entry.ids == null)
+            synchronized (entry) {
+                if (entry.ids == null)
+                    this.load(entry, accountId, relation);
+            }
+
+        return entry;
+    }
+
+    private Path getPath(long accountId, Relation relation, long generation) {
+        return this.directory.resolve(getPrefix(accountId, relation) + generation + ".ids");
+    }
+
+    private static String getPrefix(long accountId, Relation relation) {
+        return String.format("%d.%s.", accountId, relation.name().toLowerCase(Locale.ROOT));
+    }
+
+    private List<Long> findGenerations(long accountId, Relation relation) throws IOException {
+        List<Long> generations = new ArrayList<>();
+
+        if (!Files.isDirectory(this.directory))
+            return generations;
+
+        String prefix = getPrefix(accountId, relation);
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory, prefix + "*.ids")) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - 4)));
+                } catch (NumberFormatException ex) {
+                    // 世代を持たないファイルは無視する
+                }
+            }
+        }
+
+        return generations;
+    }
+
+    private void deleteOlderGenerations(long accountId, Relation relation, long generation) {
+        try {
+            for (long older : this.findGenerations(accountId, relation)) {
+                if (older >= generation)
+                    continue;
+
+                try {
+                    Files.delete(this.getPath(accountId, relation, older));
+                } catch (IOException ex) {
+                    // マップされたままのファイルは次の機会に削除する
+                    this.logger.fine(String.format("古いフォロー関係のファイルを削除できませんでした: %s", ex.getMessage()));
+                }
+            }
+        } catch (IOException ex) {
+            this.logger.fine(String.format("古いフォロー関係のファイルを列挙できませんでした: %s", ex.getMessage()));
+        }
+    }
+
+    private void load(Entry entry, long accountId, Relation relation) {
+        entry.ids = EMPTY;
+
+        try {
+            entry.generation = this.findGenerations(accountId, relation).stream()
+                    .mapToLong(Long::longValue).max().orElse(0L);
+        } catch (IOException ex) {
+            this.logger.warning(String.format("フォロー関係のファイルを読み込めませんでした: %s", ex.getMessage()));
+            return;
+        }
+
+        if (entry.generation == 0L)
+            return;
+
+        Path path = this.getPath(accountId, relation, entry.generation);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC ||
+                (long) buffer.getInt(4) * Long.BYTES + HEADER_SIZE != buffer.limit()) {
+                this.logger.warning(String.format("フォロー関係のファイルが壊れています: %s", path));
+                return;
+            }
+
+            buffer.position(HEADER_SIZE);
+            entry.ids = buffer.slice().asLongBuffer();
+            entry.persisted = true;
+            this.deleteOlderGenerations(accountId, relation, entry.generation);
+        } catch (IOException ex) {
+            this.logger.warning(String.format("フォロー関係のファイルを読み込めませんでした: %s", ex.getMessage()));
+        }
+    }
+
+    private LongBuffer write(Entry entry, long accountId, Relation relation, long[] ids) throws IOException {
+        Files.createDirectories(this.directory);
+        long generation = entry.generation + 1;
+        Path path = this.getPath(accountId, relation, generation);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long size = HEADER_SIZE + (long) ids.length * Long.BYTES;
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(ids.length);
+            buffer.asLongBuffer().put(ids);
+            buffer.force();
+
+            // 書き込み用のマップは他から参照されないため、移動の前に解放する
+            MappedBufferUtils.unmap(buffer);
+        }
+
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        LongBuffer mapped;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.position(HEADER_SIZE);
+            mapped = buffer.slice().asLongBuffer();
+        }
+
+        // 以前の世代は他のスレッドが参照している可能性があるため、マップを解放せずに削除のみを試みる
+        entry.generation = generation;
+        this.deleteOlderGenerations(accountId, relation, generation);
+        return mapped;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.Status;
+import twitter4j.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/30.
+ */
+
+/**
+ * <p>{@link HTMLTemplate} を用いて、ツイートやユーザをワーカースレッドで HTML に変換します。
+ * <p>テンプレートは文字列ごとに 1 度だけコンパイルされ、以降はコンパイル済みのものが再利用されます。
+ * 複数のツイートはスレッドの数に分割して並行に変換され、元の順序で連結されます。
+ * ページには完成した HTML のみが渡されるため、UI スレッドではマークアップの挿入のみが行われます。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class StatusRenderer implements AutoCloseable {
+    private static final int MAX_TEMPLATES = 64;
+
+    private final Logger logger;
+    private final int threads;
+    private final ExecutorService workers;
+    private final Map<String, HTMLTemplate<Status>> statusTemplates;
+    private final Map<String, HTMLTemplate<User>> userTemplates;
+
+    /**
+     * プロセッサの数のスレッドで変換する、新しい StatusRenderer クラスのインスタンスを初期化します。
+     *
+     * @param logger ロガー。
+     */
+    public StatusRenderer(Logger logger) {
+        this(logger, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * スレッドの数を指定して新しい StatusRenderer クラスのインスタンスを初期化します。
+     *
+     * @param logger  ロガー。
+     * @param threads 変換に用いるスレッドの数。
+     */
+    public StatusRenderer(Logger logger, int threads) {
+        if (logger == null || threads < 1)
+            throw new IllegalArgumentException();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.logger = logger;
+        this.threads = threads;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "nanasetter-render-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.statusTemplates = new ConcurrentHashMap<>();
+        this.userTemplates = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * ツイートのテンプレートを取得します。同じ文字列のテンプレートはコンパイル済みのものが返されます。
+     *
+     * @param source テンプレートの文字列。
+     * @return コンパイルされたテンプレート。
+     * @throws IllegalArgumentException テンプレートが正しくありません。
+     */
+    public HTMLTemplate<Status> getStatusTemplate(String source) {
+        return getTemplate(this.statusTemplates, source, HTMLTemplate::compileStatus);
+    }
+
+    /**
+     * ユーザのテンプレートを取得します。同じ文字列のテンプレートはコンパイル済みのものが返されます。
+     *
+     * @param source テンプレートの文字列。
+     * @return コンパイルされたテンプレート。
+     * @throws IllegalArgumentException テンプレートが正しくありません。
+     */
+    public HTMLTemplate<User> getUserTemplate(String source) {
+        return getTemplate(this.userTemplates, source, HTMLTemplate::compileUser);
+    }
+
+    /**
+     * 複数の対象をワーカースレッドで HTML に変換し、元の順序で連結します。
+     *
+     * @param template テンプレート。
+     * @param targets  変換する対象のリスト。
+     * @param <T>      変換する対象の型。
+     * @return 連結された HTML を返す CompletableFuture オブジェクト。
+     */
+    public <T> CompletableFuture<String> render(HTMLTemplate<T> template, List<? extends T> targets) {
+        if (template == null || targets == null)
+            throw new IllegalArgumentException();
+
+        int chunkSize = Math.max(1, (targets.size() + this.threads - 1) / this.threads);
+        List<CompletableFuture<StringBuilder>> parts = new ArrayList<>();
+
+        for (int from = 0; from < targets.size(); from += chunkSize) {
+            List<? extends T> chunk = targets.subList(from, Math.min(from + chunkSize, targets.size()));
+
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                StringBuilder sb = new StringBuilder(chunk.size() * 1024);
+
+                for (T target : chunk)
+                    template.render(sb, target);
+
+                return sb;
+            }, this.workers));
+        }
+
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[parts.size()])).thenApply(v -> {
+            StringBuilder sb = new StringBuilder(parts.stream().mapToInt(part -> part.join().length()).sum());
+
+            for (CompletableFuture<StringBuilder> part : parts)
+                sb.append(part.join());
+
+            return sb.toString();
+        });
+    }
+
+    /**
+     * 受け取ったツイートをワーカースレッドで HTML に変換し、受け取った順序で配信先に渡すオブザーバを作成します。
+     * 作成されたオブザーバは {@link StreamPipeline#addObserver(Consumer)} に追加できます。
+     *
+     * @param template テンプレート。
+     * @param sink     変換された HTML の配信先。
+     * @return ツイートを受け取る関数。
+     */
+    public Consumer<Status> createObserver(HTMLTemplate<Status> template, Consumer<String> sink) {
+        if (template == null || sink == null)
+            throw new IllegalArgumentException();
+
+        return new Consumer<Status>() {
+            private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+            @Override
+            public synchronized void accept(Status status) {
+                CompletableFuture<String> html = CompletableFuture.supplyAsync(() -> template.render(status),
+                        StatusRenderer.this.workers);
+
+                // 変換は並行に行い、配信は直前のツイートの配信が終わってから行う
+                this.tail = this.tail.thenCombine(html, (v, h) -> h).thenAccept(sink).exceptionally(ex -> {
+                    StatusRenderer.this.logger.log(Level.WARNING, "ツイートを HTML に変換できませんでした.", ex);
+                    return null;
+                });
+            }
+        };
+    }
+
+    /**
+     * 変換を停止します。
+     */
+    @Override
+    public void close() {
+        this.workers.shutdownNow();
+    }
+
+    private static <T> HTMLTemplate<T> getTemplate(Map<String, HTMLTemplate<T>> templates, String source,
+                                                   Function<String, HTMLTemplate<T>> compiler) {
+        if (source == null)
+            throw new IllegalArgumentException();
+
+        HTMLTemplate<T> template = templates.get(source);
+
+        if (template != null)
+            return template;
+
+        template = compiler.apply(source);
+
+        // テンプレートは通常プラグインごとに数個のため、上限を超えた場合は単純にすべて破棄する
+        if (templates.size() >= MAX_TEMPLATES)
+            templates.clear();
+
+        templates.put(source, template);
+        return template;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.*;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/20.
+ */
+
+/**
+ * <p>ツイート、ユーザおよびエンティティを、ページ上の JavaScript が読み取れる JSON に変換します。
+ * <p>JSON はスレッドごとに再利用される StringBuilder に直接書き込まれるため、文字列の連結や書式化による
+ * 中間オブジェクトは生成されません。複数のカラムに現れるツイートのために、変換結果をツイートの Id ごとにキャッシュします。
+ * <p>Id は JavaScript の数値で正確に表現できないため、文字列として出力されます。日時は UNIX 時間 (ミリ秒) で出力されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class StatusSerializer {
+    private static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> buffers =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_BUFFER_SIZE));
+
+    private final Map<Long, String> cache;
+
+    private final int cacheCapacity;
+
+    /**
+     * 既定のキャッシュ容量で新しい StatusSerializer クラスのインスタンスを初期化します。
+     */
+    public StatusSerializer() {
+        this(DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * キャッシュ容量を指定して新しい StatusSerializer クラスのインスタンスを初期化します。
+     *
+     * @param cacheCapacity キャッシュするツイートの最大数。0 の場合はキャッシュしません。
+     */
+    public StatusSerializer(int cacheCapacity) {
+        if (cacheCapacity < 0)
+            throw new IllegalArgumentException();
+
+        this.cacheCapacity = cacheCapacity;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return this.size() > StatusSerializer.this.cacheCapacity;
+            }
+        });
+    }
+
+    /**
+     * ツイートを JSON に変換します。同じ Id のツイートが既に変換されている場合はキャッシュされた結果を返します。
+     *
+     * @param status 変換される Status オブジェクト。
+     * @return JSON 文字列。
+     */
+    public String serialize(Status status) {
+        if (status == null)
+            throw new IllegalArgumentException();
+
+        if (this.cacheCapacity == 0)
+            return this.serializeUncached(status);
+
+        String json = this.cache.get(status.getId());
+
+        if (json == null) {
+            json = this.serializeUncached(status);
+            this.cache.put(status.getId(), json);
+        }
+
+        return json;
+    }
+
+    /**
+     * ユーザを JSON に変換します。
+     *
+     * @param user 変換される User オブジェクト。
+     * @return JSON 文字列。
+     */
+    public String serialize(User user) {
+        if (user == null)
+            throw new IllegalArgumentException();
+
+        StringBuilder sb = acquireBuffer();
+        writeUser(sb, user);
+        return releaseBuffer(sb);
+    }
+
+    /**
+     * 指定された Id のツイートのキャッシュを破棄します。
+     * お気に入り数やリツイート数が変化したツイートを再度変換する場合に使用します。
+     *
+     * @param statusId ツイートの Id。
+     */
+    public void invalidate(long statusId) {
+        this.cache.remove(statusId);
+    }
+
+    /**
+     * すべてのキャッシュを破棄します。
+     */
+    public void clear() {
+        this.cache.clear();
+    }
+
+    /**
+     * ツイートを JSON として指定された StringBuilder に書き込みます。
+     *
+     * @param sb     書き込み先の StringBuilder。
+     * @param status 変換される Status オブジェクト。
+     */
+    public static void writeStatus(StringBuilder sb, Status status) {
+        sb.append('{');
+        writeField(sb, "id_str", status.getId(), true);
+        writeField(sb, "created_at", status.getCreatedAt());
+        writeField(sb, "text", status.getText());
+        writeField(sb, "source", status.getSource());
+        writeField(sb, "truncated", status.isTruncated());
+
+        if (status.getInReplyToStatusId() > 0) {
+            writeField(sb, "in_reply_to_status_id_str", status.getInReplyToStatusId(), true);
+            writeField(sb, "in_reply_to_user_id_str", status.getInReplyToUserId(), true);
+            writeField(sb, "in_reply_to_screen_name", status.getInReplyToScreenName());
+        }
+
+        writeField(sb, "favorited", status.isFavorited());
+        writeField(sb, "retweeted", status.isRetweeted());
+        writeField(sb, "favorite_count", status.getFavoriteCount(), false);
+        writeField(sb, "retweet_count", status.getRetweetCount(), false);
+        writeField(sb, "possibly_sensitive", status.isPossiblySensitive());
+        writeField(sb, "lang", status.getLang());
+
+        if (status.getUser() != null) {
+            writeName(sb, "user");
+            writeUser(sb, status.getUser());
+            sb.append(',');
+        }
+
+        if (status.getRetweetedStatus() != null) {
+            writeName(sb, "retweeted_status");
+            writeStatus(sb, status.getRetweetedStatus());
+            sb.append(',');
+        }
+
+        writeName(sb, "entities");
+        writeEntities(sb, status);
+        sb.append('}');
+    }
+
+    /**
+     * ユーザを JSON として指定された StringBuilder に書き込みます。
+     *
+     * @param sb   書き込み先の StringBuilder。
+     * @param user 変換される User オブジェクト。
+     */
+    public static void writeUser(StringBuilder sb, User user) {
+        sb.append('{');
+        writeField(sb, "id_str", user.getId(), true);
+        writeField(sb, "created_at", user.getCreatedAt());
+        writeField(sb, "name", user.getName());
+        writeField(sb, "screen_name", user.getScreenName());
+        writeField(sb, "location", user.getLocation());
+        writeField(sb, "description", user.getDescription());
+        writeField(sb, "url", user.getURL());
+        writeField(sb, "profile_image_url_https", user.getProfileImageURLHttps());
+        writeField(sb, "protected", user.isProtected());
+        writeField(sb, "verified", user.isVerified());
+        writeField(sb, "followers_count", user.getFollowersCount(), false);
+        writeField(sb, "friends_count", user.getFriendsCount(), false);
+        writeField(sb, "statuses_count", user.getStatusesCount(), false);
+        writeField(sb, "favourites_count", user.getFavouritesCount(), false);
+        closeObject(sb);
+    }
+
+    /**
+     * ツイートのエンティティを JSON として指定された StringBuilder に書き込みます。
+     *
+     * @param sb       書き込み先の StringBuilder。
+     * @param entities 変換される EntitySupport オブジェクト。
+     */
+    public static void writeEntities(StringBuilder sb, EntitySupport entities) {
+        sb.append('{');
+
+        writeEntityArray(sb, "hashtags", entities.getHashtagEntities(), (b, e) ->
+                writeField(b, "text", e.getText()));
+
+        writeEntityArray(sb, "symbols", entities.getSymbolEntities(), (b, e) ->
+                writeField(b, "text", e.getText()));
+
+        writeEntityArray(sb, "urls", entities.getURLEntities(), StatusSerializer::writeURLFields);
+
+        writeEntityArray(sb, "user_mentions", entities.getUserMentionEntities(), (b, e) -> {
+            writeField(b, "id_str", e.getId(), true);
+            writeField(b, "screen_name", e.getScreenName());
+            writeField(b, "name", e.getName());
+        });
+
+        writeEntityArray(sb, "media", entities.getMediaEntities(), (b, e) -> {
+            writeField(b, "id_str", e.getId(), true);
+            writeField(b, "type", e.getType());
+            writeField(b, "media_url_https", e.getMediaURLHttps());
+            writeURLFields(b, e);
+        });
+
+        closeObject(sb);
+    }
+
+    /**
+     * 文字列を JSON の文字列リテラルとして指定された StringBuilder に書き込みます。
+     * JavaScript のソースに埋め込めるよう、U+2028 および U+2029 もエスケープされます。
+     *
+     * @param sb    書き込み先の StringBuilder。
+     * @param value 書き込まれる文字列。null の場合は null が書き込まれます。
+     */
+    public static void writeString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+
+        sb.append('"');
+
+        int length = value.length();
+        int start = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029')
+                continue;
+
+            // エスケープの不要な区間はまとめて書き込む
+            sb.append(value, start, i);
+            start = i + 1;
+
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    sb.append("\\u")
+                            .append(HEX_DIGITS[(c >> 12) & 0xf])
+                            .append(HEX_DIGITS[(c >> 8) & 0xf])
+                            .append(HEX_DIGITS[(c >> 4) & 0xf])
+                            .append(HEX_DIGITS[c & 0xf]);
+                    break;
+            }
+        }
+
+        sb.append(value, start, length).append('"');
+    }
+
+    private String serializeUncached(Status status) {
+        StringBuilder sb = acquireBuffer();
+        writeStatus(sb, status);
+        return releaseBuffer(sb);
+    }
+
+    private static StringBuilder acquireBuffer() {
+        StringBuilder sb = buffers.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static String releaseBuffer(StringBuilder sb) {
+        String json = sb.toString();
+
+        // 巨大なツイートで拡張されたバッファを保持し続けないようにする
+        if (sb.capacity() > MAX_RETAINED_BUFFER_SIZE)
+            buffers.set(new StringBuilder(INITIAL_BUFFER_SIZE));
+
+        return json;
+    }
+
+    private static void writeURLFields(StringBuilder sb, URLEntity e) {
+        writeField(sb, "url", e.getURL());
+        writeField(sb, "expanded_url", e.getExpandedURL());
+        writeField(sb, "display_url", e.getDisplayURL());
+    }
+
+    private static <T extends TweetEntity> void writeEntityArray(
+            StringBuilder sb,
+            String name,
+            T[] entities,
+            BiConsumer<StringBuilder, T> writer) {
+
+        writeName(sb, name);
+        sb.append('[');
+
+        if (entities != null) {
+            for (T e : entities) {
+                sb.append('{');
+                writer.accept(sb, e);
+                writeIndices(sb, e);
+                sb.append("},");
+            }
+        }
+
+        closeArray(sb);
+    }
+
+    private static void writeIndices(StringBuilder sb, TweetEntity e) {
+        writeName(sb, "indices");
+        sb.append('[').append(e.getStart()).append(',').append(e.getEnd()).append(']');
+    }
+
+    private static void writeName(StringBuilder sb, String name) {
+        sb.append('"').append(name).append("\":");
+    }
+
+    private static void writeField(StringBuilder sb, String name, String value) {
+        writeName(sb, name);
+        writeString(sb, value);
+        sb.append(',');
+    }
+
+    private static void writeField(StringBuilder sb, String name, long value, boolean asString) {
+        writeName(sb, name);
+
+        if (asString)
+            sb.append('"').append(value).append('"');
+        else
+            sb.append(value);
+
+        sb.append(',');
+    }
+
+    private static void writeField(StringBuilder sb, String name, boolean value) {
+        writeName(sb, name);
+        sb.append(value).append(',');
+    }
+
+    private static void writeField(StringBuilder sb, String name, Date value) {
+        writeName(sb, name);
+
+        if (value == null)
+            sb.append("null");
+        else
+            sb.append(value.getTime());
+
+        sb.append(',');
+    }
+
+    // 末尾の余分なカンマを取り除いて閉じる
+    private static void closeObject(StringBuilder sb) {
+        trimComma(sb);
+        sb.append('}');
+    }
+
+    private static void closeArray(StringBuilder sb) {
+        trimComma(sb);
+        sb.append("],");
+    }
+
+    private static void trimComma(StringBuilder sb) {
+        int last = sb.length() - 1;
+
+        if (last >= 0 && sb.charAt(last) == ',')
+            sb.setLength(last);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.Status;
+import twitter4j.StatusDeletionNotice;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/25.
+ */
+
+/**
+ * <p>ストリームから受信したイベントを絞り込み、JSON に変換して配信先に渡す経路です。
+ * <p>ツイートは登録されたフィルタをすべて通過した場合のみ、オブザーバに通知されたのち {@link StatusSerializer} によって
+ * JSON に変換され、配信先に渡されます。削除通知は変換結果のキャッシュを破棄したのち、
+ * {@code {"delete":{"id_str":"...","user_id_str":"..."}}} の形式で配信先に渡されます。
+ * <p>イベントはストリームの受信スレッドから呼び出されることを想定しています。フィルタとオブザーバは実行中に追加および削除できます。
+ * 各メソッドは twitter4j-stream の StatusListener と同じ名前と引数を持つため、リスナからそのまま委譲できます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class StreamPipeline {
+    private final StatusSerializer serializer;
+    private final Consumer<String> sink;
+    private final Logger logger;
+
+    private final List<Predicate<? super Status>> filters;
+    private final List<Consumer<? super Status>> observers;
+
+    private final LongAdder deliveredCount;
+    private final LongAdder filteredCount;
+    private final LongAdder deletedCount;
+
+    /**
+     * JSON への変換器と配信先を指定して新しい StreamPipeline クラスのインスタンスを初期化します。
+     *
+     * @param serializer ツイートを JSON に変換する StatusSerializer オブジェクト。
+     * @param sink       JSON に変換されたイベントの配信先。
+     * @param logger     ストリームの警告を出力する Logger オブジェクト。
+     */
+    public StreamPipeline(StatusSerializer serializer, Consumer<String> sink, Logger logger) {
+        if (serializer == null || sink == null || logger == null)
+            throw new IllegalArgumentException();
+
+        this.serializer = serializer;
+        this.sink = sink;
+        this.logger = logger;
+        this.filters = new CopyOnWriteArrayList<>();
+        this.observers = new CopyOnWriteArrayList<>();
+        this.deliveredCount = new LongAdder();
+        this.filteredCount = new LongAdder();
+        this.deletedCount = new LongAdder();
+    }
+
+    /**
+     * ツイートを配信するかを判定するフィルタを追加します。
+     *
+     * @param filter 配信するとき true を返す関数。
+     */
+    public void addFilter(Predicate<? super Status> filter) {
+        if (filter == null)
+            throw new IllegalArgumentException();
+
+        this.filters.add(filter);
+    }
+
+    /**
+     * フィルタを削除します。
+     *
+     * @param filter 削除するフィルタ。
+     */
+    public void removeFilter(Predicate<? super Status> filter) {
+        this.filters.remove(filter);
+    }
+
+    /**
+     * フィルタを通過したツイートの通知を受け取るオブザーバを追加します。
+     *
+     * @param observer ツイートを受け取る関数。
+     */
+    public void addObserver(Consumer<? super Status> observer) {
+        if (observer == null)
+            throw new IllegalArgumentException();
+
+        this.observers.add(observer);
+    }
+
+    /**
+     * オブザーバを削除します。
+     *
+     * @param observer 削除するオブザーバ。
+     */
+    public void removeObserver(Consumer<? super Status> observer) {
+        this.observers.remove(observer);
+    }
+
+    /**
+     * 配信されたツイートの数を取得します。
+     *
+     * @return ツイートの数。
+     */
+    public long getDeliveredCount() {
+        return this.deliveredCount.sum();
+    }
+
+    /**
+     * フィルタによって除外されたツイートの数を取得します。
+     *
+     * @return ツイートの数。
+     */
+    public long getFilteredCount() {
+        return this.filteredCount.sum();
+    }
+
+    /**
+     * 配信された削除通知の数を取得します。
+     *
+     * @return 削除通知の数。
+     */
+    public long getDeletedCount() {
+        return this.deletedCount.sum();
+    }
+
+    /**
+     * ツイートを受信したときに呼び出されます。
+     *
+     * @param status 受信したツイート。
+     */
+    public void onStatus(Status status) {
+        for (Predicate<? super Status> filter : this.filters) {
+            if (!filter.test(status)) {
+                this.filteredCount.increment();
+                return;
+            }
+        }
+
+        for (Consumer<? super Status> observer : this.observers)
+            observer.accept(status);
+
+        this.sink.accept(this.serializer.serialize(status));
+        this.deliveredCount.increment();
+    }
+
+    /**
+     * ツイートの削除通知を受信したときに呼び出されます。
+     *
+     * @param statusDeletionNotice 削除通知。
+     */
+    public void onDeletionNotice(StatusDeletionNotice statusDeletionNotice) {
+        this.serializer.invalidate(statusDeletionNotice.getStatusId());
+
+        this.sink.accept("{\"delete\":{\"id_str\":\"" + statusDeletionNotice.getStatusId() +
+                "\",\"user_id_str\":\"" + statusDeletionNotice.getUserId() + "\"}}");
+        this.deletedCount.increment();
+    }
+
+    /**
+     * ストリームの受信中に例外が発生したときに呼び出されます。
+     *
+     * @param ex 発生した例外。
+     */
+    public void onException(Exception ex) {
+        this.logger.log(Level.WARNING, "ストリームの受信中にエラーが発生しました.", ex);
+    }
+}
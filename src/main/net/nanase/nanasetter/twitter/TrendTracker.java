@@ -0,0 +1,471 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.HashtagEntity;
+import twitter4j.Status;
+import twitter4j.URLEntity;
+import twitter4j.UserMentionEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/30.
+ */
+
+/**
+ * <p>受信したツイートに含まれるハッシュタグ、URL およびメンションの出現数を、アカウントごとに直近の一定時間について集計します。
+ * <p>出現数は Count-Min Sketch によって固定の大きさのメモリで概算されます。集計期間は複数の区間に分けられ、
+ * 区間ごとのスケッチを期間の合計から差し引くことで古い出現が取り除かれます。
+ * 出現数の多い項目は固定の大きさの最小ヒープによって候補として保持され、上位の項目はツイートの数によらず取得できます。
+ * 概算された出現数は実際の出現数以上の値になることがあります。
+ * <p>{@link #createObserver(long)} で作成されるオブザーバを {@link StreamPipeline#addObserver(Consumer)} に追加すると、
+ * 配信されるツイートが順次集計されます。1 つのツイートに同じ項目が複数含まれる場合は 1 回として数えられます。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class TrendTracker {
+    private static final long DEFAULT_WINDOW_MILLIS = 60L * 60L * 1000L;
+    private static final int DEFAULT_BUCKETS = 12;
+    private static final int DEFAULT_DEPTH = 4;
+    private static final int DEFAULT_WIDTH = 512;
+    private static final int DEFAULT_CANDIDATES = 64;
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final int depth;
+    private final int width;
+    private final int candidates;
+    private final LongSupplier clock;
+    private final Map<Long, Map<Category, Counter>> accounts;
+
+    /**
+     * 集計する項目の種類を表します。
+     */
+    public enum Category {
+        /**
+         * 小文字に変換されたハッシュタグ。
+         */
+        HASHTAG,
+
+        /**
+         * 展開された URL。
+         */
+        URL,
+
+        /**
+         * メンションされたユーザの ID。
+         */
+        MENTION
+    }
+
+    /**
+     * 集計された項目と出現数を表します。このクラスは不変です。
+     */
+    public static final class Trend {
+        private final String key;
+        private final int count;
+
+        private Trend(String key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        /**
+         * 項目を取得します。
+         *
+         * @return 項目を表す文字列。
+         */
+        public String getKey() {
+            return this.key;
+        }
+
+        /**
+         * 概算された出現数を取得します。
+         *
+         * @return 出現数。
+         */
+        public int getCount() {
+            return this.count;
+        }
+    }
+
+    /**
+     * 直近 1 時間を 5 分ごとの区間に分けて集計する、新しい TrendTracker クラスのインスタンスを初期化します。
+     */
+    public TrendTracker() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_BUCKETS, DEFAULT_DEPTH, DEFAULT_WIDTH, DEFAULT_CANDIDATES,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * パラメータを指定して新しい TrendTracker クラスのインスタンスを初期化します。
+     *
+     * @param windowMillis 集計期間の長さ (ミリ秒)。
+     * @param buckets      集計期間を分割する区間の数。
+     * @param depth        スケッチの行の数。
+     * @param width        スケッチの列の数。
+     * @param candidates   上位の候補として保持する項目の数。
+     * @param clock        現在時刻 (エポックミリ秒) を返す関数。
+     */
+    TrendTracker(long windowMillis, int buckets, int depth, int width, int candidates, LongSupplier clock) {
+        if (buckets < 1 || windowMillis < buckets || depth < 1 || width < 1 || candidates < 1 || clock == null)
+            throw new IllegalArgumentException();
+
+        this.bucketMillis = windowMillis / buckets;
+        this.buckets = buckets;
+        this.depth = depth;
+        this.width = width;
+        this.candidates = candidates;
+        this.clock = clock;
+        this.accounts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 指定されたアカウントのタイムラインとしてツイートを集計するオブザーバを作成します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return ツイートを受け取る関数。
+     */
+    public Consumer<Status> createObserver(long accountId) {
+        return status -> this.add(accountId, status);
+    }
+
+    /**
+     * ツイートに含まれる項目を集計します。リツイートの場合はリツイート元のツイートの項目が集計されます。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param status    集計するツイート。
+     */
+    public void add(long accountId, Status status) {
+        if (status == null)
+            throw new IllegalArgumentException();
+
+        if (status.getRetweetedStatus() != null)
+            status = status.getRetweetedStatus();
+
+        Map<Category, Counter> counters = this.getCounters(accountId);
+        long now = this.clock.getAsLong();
+        Set<String> keys = new HashSet<>();
+
+        for (HashtagEntity entity : status.getHashtagEntities())
+            if (keys.add(entity.getText().toLowerCase(Locale.ROOT)))
+                counters.get(Category.HASHTAG).add(entity.getText().toLowerCase(Locale.ROOT), now);
+
+        keys.clear();
+
+        for (URLEntity entity : status.getURLEntities()) {
+            String url = entity.getExpandedURL() != null ? entity.getExpandedURL() : entity.getURL();
+
+            if (url != null && keys.add(url))
+                counters.get(Category.URL).add(url, now);
+        }
+
+        keys.clear();
+
+        for (UserMentionEntity entity : status.getUserMentionEntities())
+            if (keys.add(String.valueOf(entity.getId())))
+                counters.get(Category.MENTION).add(String.valueOf(entity.getId()), now);
+    }
+
+    /**
+     * 項目を 1 回出現したものとして集計します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param category  項目の種類。
+     * @param key       項目を表す文字列。
+     */
+    public void add(long accountId, Category category, String key) {
+        if (category == null || key == null)
+            throw new IllegalArgumentException();
+
+        this.getCounters(accountId).get(category).add(key, this.clock.getAsLong());
+    }
+
+    /**
+     * 項目の出現数を概算します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param category  項目の種類。
+     * @param key       項目を表す文字列。
+     * @return 概算された出現数。
+     */
+    public int estimate(long accountId, Category category, String key) {
+        if (category == null || key == null)
+            throw new IllegalArgumentException();
+
+        Map<Category, Counter> counters = this.accounts.get(accountId);
+        return counters == null ? 0 : counters.get(category).estimate(key, this.clock.getAsLong());
+    }
+
+    /**
+     * 出現数の多い項目を、出現数の降順で取得します。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @param category  項目の種類。
+     * @param count     取得する最大の件数。
+     * @return Trend オブジェクトのリスト。
+     */
+    public List<Trend> getTop(long accountId, Category category, int count) {
+        if (category == null || count < 0)
+            throw new IllegalArgumentException();
+
+        Map<Category, Counter> counters = this.accounts.get(accountId);
+        return counters == null ? Collections.emptyList() : counters.get(category).top(count, this.clock.getAsLong());
+    }
+
+    private Map<Category, Counter> getCounters(long accountId) {
+        return this.accounts.computeIfAbsent(accountId, id -> {
+            Map<Category, Counter> counters = new EnumMap<>(Category.class);
+
+            for (Category category : Category.values())
+                counters.put(category, new Counter());
+
+            return counters;
+        });
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    private final class Counter {
+        private final int[][] slots;
+        private final int[] total;
+        private final Candidates heap;
+        private long current;
+
+        private Counter() {
+            this.slots = new int[TrendTracker.this.buckets][TrendTracker.this.depth * TrendTracker.this.width];
+            this.total = new int[TrendTracker.this.depth * TrendTracker.this.width];
+            this.heap = new Candidates(TrendTracker.this.candidates);
+            this.current = Long.MIN_VALUE;
+        }
+
+        private synchronized void add(String key, long now) {
+            this.advance(now);
+
+            int[] slot = this.slots[(int) Math.floorMod(this.current, (long) TrendTracker.this.buckets)];
+            long hash = mix(key.hashCode());
+            int estimate = Integer.MAX_VALUE;
+
+            for (int row = 0; row < TrendTracker.this.depth; row++) {
+                int index = this.index(hash, row);
+                slot[index]++;
+                estimate = Math.min(estimate, ++this.total[index]);
+            }
+
+            this.heap.offer(key, estimate);
+        }
+
+        private synchronized int estimate(String key, long now) {
+            this.advance(now);
+            return this.estimate(key);
+        }
+
+        private synchronized List<Trend> top(int count, long now) {
+            this.advance(now);
+            return this.heap.top(count);
+        }
+
+        private int estimate(String key) {
+            long hash = mix(key.hashCode());
+            int estimate = Integer.MAX_VALUE;
+
+            for (int row = 0; row < TrendTracker.this.depth; row++)
+                estimate = Math.min(estimate, this.total[this.index(hash, row)]);
+
+            return estimate;
+        }
+
+        private int index(long hash, int row) {
+            // 行ごとに異なる値を加えて混ぜ直し、行の間で衝突が相関しないようにする
+            long mixed = mix(hash + (row + 1) * 0x9e3779b97f4a7c15L);
+            return row * TrendTracker.this.width + (int) ((mixed >>> 1) % TrendTracker.this.width);
+        }
+
+        private void advance(long now) {
+            long bucket = Math.floorDiv(now, TrendTracker.this.bucketMillis);
+
+            if (this.current == Long.MIN_VALUE) {
+                this.current = bucket;
+                return;
+            }
+
+            if (bucket <= this.current)
+                return;
+
+            long steps = Math.min(bucket - this.current, TrendTracker.this.buckets);
+
+            for (long i = 1; i <= steps; i++) {
+                int[] slot = this.slots[(int) Math.floorMod(this.current + i, (long) TrendTracker.this.buckets)];
+
+                for (int j = 0; j < slot.length; j++)
+                    this.total[j] -= slot[j];
+
+                Arrays.fill(slot, 0);
+            }
+
+            this.current = bucket;
+            this.heap.refresh(this::estimate);
+        }
+    }
+
+    private interface Estimator {
+        int estimate(String key);
+    }
+
+    // 出現数を優先度とする最小ヒープ。最も出現数の少ない候補が先頭に置かれ、新しい項目と入れ替えられる
+    private static final class Candidates {
+        private final String[] keys;
+        private final int[] counts;
+        private final Map<String, Integer> positions;
+        private int size;
+
+        private Candidates(int capacity) {
+            this.keys = new String[capacity];
+            this.counts = new int[capacity];
+            this.positions = new HashMap<>(capacity * 2);
+        }
+
+        private void offer(String key, int count) {
+            Integer position = this.positions.get(key);
+
+            if (position != null) {
+                this.counts[position] = count;
+                this.siftDown(position);
+            } else if (this.size < this.keys.length) {
+                this.set(this.size, key, count);
+                this.siftUp(this.size++);
+            } else if (count > this.counts[0]) {
+                this.positions.remove(this.keys[0]);
+                this.set(0, key, count);
+                this.siftDown(0);
+            }
+        }
+
+        private void refresh(Estimator estimator) {
+            int kept = 0;
+
+            for (int i = 0; i < this.size; i++) {
+                int count = estimator.estimate(this.keys[i]);
+
+                if (count > 0) {
+                    this.keys[kept] = this.keys[i];
+                    this.counts[kept++] = count;
+                }
+            }
+
+            Arrays.fill(this.keys, kept, this.size, null);
+            this.size = kept;
+            this.positions.clear();
+
+            for (int i = 0; i < this.size; i++)
+                this.positions.put(this.keys[i], i);
+
+            for (int i = this.size / 2 - 1; i >= 0; i--)
+                this.siftDown(i);
+        }
+
+        private List<Trend> top(int count) {
+            Integer[] order = new Integer[this.size];
+
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+
+            Arrays.sort(order, (a, b) -> this.counts[a] != this.counts[b] ?
+                    Integer.compare(this.counts[b], this.counts[a]) : this.keys[a].compareTo(this.keys[b]));
+
+            List<Trend> trends = new ArrayList<>(Math.min(count, order.length));
+
+            for (int i = 0; i < order.length && i < count; i++)
+                trends.add(new Trend(this.keys[order[i]], this.counts[order[i]]));
+
+            return trends;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+
+                if (this.counts[parent] <= this.counts[index])
+                    break;
+
+                this.swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = index * 2 + 1;
+                int right = left + 1;
+
+                if (left < this.size && this.counts[left] < this.counts[smallest])
+                    smallest = left;
+
+                if (right < this.size && this.counts[right] < this.counts[smallest])
+                    smallest = right;
+
+                if (smallest == index)
+                    return;
+
+                this.swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            String key = this.keys[a];
+            int count = this.counts[a];
+            this.set(a, this.keys[b], this.counts[b]);
+            this.set(b, key, count);
+        }
+
+        private void set(int index, String key, int count) {
+            this.keys[index] = key;
+            this.counts[index] = count;
+            this.positions.put(key, index);
+        }
+    }
+}
@@ -37,12 +37,15 @@ import java.util.Optional;
  */
 
 /**
- * 重複を許さない、順序つき Twitter オブジェクトのリストを提供します。
+ * <p>重複を許さない、順序つき Twitter オブジェクトのリストを提供します。
+ * <p>各アカウントのフォローおよびフォロワーは {@link #getGraphCache()} で取得される {@link SocialGraphCache} に保持されます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
  */
 public class TwitterList extends ArrayList<Twitter> {
+    private transient volatile SocialGraphCache graphCache;
+
     /**
      * Appends the specified element to the end of this list.
      *
@@ -125,4 +128,22 @@ public class TwitterList extends ArrayList<Twitter> {
 
         return Optional.empty();
     }
+
+    /**
+     * アカウントごとのフォローおよびフォロワーを保持するオブジェクトを取得します。
+     *
+     * @return SocialGraphCache オブジェクト。設定されていない場合は null。
+     */
+    public SocialGraphCache getGraphCache() {
+        return this.graphCache;
+    }
+
+    /**
+     * アカウントごとのフォローおよびフォロワーを保持するオブジェクトを設定します。
+     *
+     * @param graphCache SocialGraphCache オブジェクト。
+     */
+    public void setGraphCache(SocialGraphCache graphCache) {
+        this.graphCache = graphCache;
+    }
 }
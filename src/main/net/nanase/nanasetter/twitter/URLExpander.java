@@ -0,0 +1,398 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.Status;
+import twitter4j.URLEntity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/30.
+ */
+
+/**
+ * <p>短縮 URL を最終的な転送先の URL に展開し、その結果をディスクに保存して再利用します。
+ * <p>展開の結果は件数の上限をもつキャッシュに保持され、最も長く参照されていないものから破棄されます。
+ * キャッシュは {@code 短縮 URL<TAB>展開された URL} の形式の行としてファイルに追記され、
+ * 次回の起動時に読み込まれます。ファイルの行数が上限を大きく超えた場合は、読み込み時に保持されている内容で書き直されます。
+ * <p>{@link #createObserver()} で作成されるオブザーバを {@link StreamPipeline#addObserver(Consumer)} に追加すると、
+ * ツイートに含まれる t.co の展開先がキャッシュに登録されます。展開先が既知の短縮サービスでない場合は
+ * 展開済みとして扱われるため、多くのツイートはネットワークへの接続なしに表示できます。
+ * <p>キャッシュにない URL は固定数のスレッドで並行して展開されます。展開中の URL と同じ URL の要求は、
+ * 新たな接続を行わずに実行中の展開の結果を共有します。
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class URLExpander implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 50000;
+    private static final int DEFAULT_THREADS = 4;
+    private static final int MAX_REDIRECTS = 8;
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private static final Set<String> SHORTENER_HOSTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "t.co", "bit.ly", "j.mp", "goo.gl", "ow.ly", "tinyurl.com", "buff.ly", "dlvr.it", "ift.tt", "fb.me",
+            "amzn.to", "youtu.be", "htn.to", "p.tl", "is.gd", "tr.im", "wp.me", "nico.ms")));
+
+    private final Path cachePath;
+    private final Resolver resolver;
+    private final Logger logger;
+
+    private final Map<String, String> cache;
+    private final Map<String, CompletableFuture<String>> inFlight;
+    private final ExecutorService workers;
+    private final BufferedWriter journal;
+
+    /**
+     * 1 つの URL の転送先を取得する処理を表します。
+     */
+    @FunctionalInterface
+    public interface Resolver {
+        /**
+         * URL の最終的な転送先を取得します。
+         *
+         * @param url 展開する URL。
+         * @return 最終的な転送先の URL。
+         * @throws IOException 転送先を取得できませんでした。
+         */
+        String resolve(String url) throws IOException;
+    }
+
+    /**
+     * キャッシュの保存先とロガーを指定して新しい URLExpander クラスのインスタンスを初期化します。
+     * URL は HEAD 要求によって転送をたどって展開されます。
+     *
+     * @param cachePath キャッシュの保存先のファイル。
+     * @param logger    ロガー。
+     * @throws IOException キャッシュを読み込めませんでした。
+     */
+    public URLExpander(Path cachePath, Logger logger) throws IOException {
+        this(cachePath, URLExpander::resolveByHead, logger, DEFAULT_CAPACITY, DEFAULT_THREADS);
+    }
+
+    /**
+     * パラメータを指定して新しい URLExpander クラスのインスタンスを初期化します。
+     *
+     * @param cachePath キャッシュの保存先のファイル。
+     * @param resolver  URL の転送先を取得する Resolver オブジェクト。
+     * @param logger    ロガー。
+     * @param capacity  キャッシュに保持する最大の件数。
+     * @param threads   並行して展開する最大の数。
+     * @throws IOException キャッシュを読み込めませんでした。
+     */
+    public URLExpander(Path cachePath, Resolver resolver, Logger logger, int capacity, int threads)
+            throws IOException {
+        if (cachePath == null || resolver == null || logger == null || capacity < 1 || threads < 1)
+            throw new IllegalArgumentException();
+
+        this.cachePath = cachePath;
+        this.resolver = resolver;
+        this.logger = logger;
+        this.cache = new LinkedHashMap<String, String>(Math.min(capacity, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return this.size() > capacity;
+            }
+        };
+        this.inFlight = new ConcurrentHashMap<>();
+
+        if (cachePath.getParent() != null)
+            Files.createDirectories(cachePath.getParent());
+
+        if (this.load() > capacity * 2)
+            this.rewrite();
+
+        this.journal = Files.newBufferedWriter(cachePath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "nanasetter-url-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * ホストが既知の短縮サービスであるかを判定します。
+     *
+     * @param url 判定する URL。
+     * @return 短縮サービスの URL であるとき true、それ以外のとき false。
+     */
+    public static boolean isShortened(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host != null && SHORTENER_HOSTS.contains(host.toLowerCase(Locale.ROOT));
+        } catch (URISyntaxException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * ツイートに含まれる URL の展開先をキャッシュに登録するオブザーバを作成します。
+     *
+     * @return ツイートを受け取る関数。
+     */
+    public Consumer<Status> createObserver() {
+        return this::learn;
+    }
+
+    /**
+     * ツイートに含まれる t.co の URL と展開先の対応をキャッシュに登録します。
+     * 展開先が短縮サービスの URL である場合は登録されません。
+     *
+     * @param status ツイート。
+     */
+    public void learn(Status status) {
+        if (status == null)
+            throw new IllegalArgumentException();
+
+        if (status.getRetweetedStatus() != null)
+            this.learn(status.getRetweetedStatus());
+
+        for (URLEntity entity : status.getURLEntities())
+            if (entity.getURL() != null && entity.getExpandedURL() != null && !isShortened(entity.getExpandedURL()))
+                this.put(entity.getURL(), entity.getExpandedURL());
+    }
+
+    /**
+     * キャッシュから展開された URL を取得します。ネットワークへの接続は行いません。
+     *
+     * @param url 展開する URL。
+     * @return 展開された URL。キャッシュにない場合は null。
+     */
+    public String getCached(String url) {
+        if (url == null)
+            throw new IllegalArgumentException();
+
+        synchronized (this.cache) {
+            return this.cache.get(url);
+        }
+    }
+
+    /**
+     * URL を展開します。キャッシュにない場合は非同期に転送先を取得し、結果をキャッシュに登録します。
+     * 展開に失敗した場合、結果はキャッシュされません。
+     *
+     * @param url 展開する URL。
+     * @return 展開された URL を返す CompletableFuture オブジェクト。
+     */
+    public CompletableFuture<String> expand(String url) {
+        String cached = this.getCached(url);
+
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = this.inFlight.putIfAbsent(url, created);
+
+        if (existing != null)
+            return existing;
+
+        // 登録と確認の間に展開が完了していた場合は、その結果を返す
+        cached = this.getCached(url);
+
+        if (cached != null) {
+            this.inFlight.remove(url, created);
+            created.complete(cached);
+            return created;
+        }
+
+        try {
+            this.workers.execute(() -> {
+                String expanded;
+
+                try {
+                    expanded = this.resolver.resolve(url);
+                    this.put(url, expanded);
+                } catch (IOException | RuntimeException ex) {
+                    this.inFlight.remove(url, created);
+                    created.completeExceptionally(ex);
+                    return;
+                }
+
+                // 完了を通知された側が直ちに再要求したとき、完了済みの展開を共有しないように先に取り除く
+                this.inFlight.remove(url, created);
+                created.complete(expanded);
+            });
+        } catch (RuntimeException ex) {
+            this.inFlight.remove(url, created);
+            created.completeExceptionally(ex);
+        }
+
+        return created;
+    }
+
+    /**
+     * キャッシュに保持されている件数を取得します。
+     *
+     * @return 件数。
+     */
+    public int size() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    /**
+     * 展開を停止し、キャッシュのファイルを閉じます。
+     */
+    @Override
+    public void close() {
+        this.workers.shutdownNow();
+
+        synchronized (this.cache) {
+            try {
+                this.journal.close();
+            } catch (IOException ex) {
+                this.logger.warning(String.format("URL のキャッシュを閉じられませんでした: %s", ex.getMessage()));
+            }
+        }
+    }
+
+    private void put(String url, String expanded) {
+        if (url.indexOf('\t') >= 0 || url.indexOf('\n') >= 0 || expanded.indexOf('\t') >= 0 ||
+            expanded.indexOf('\n') >= 0)
+            return;
+
+        synchronized (this.cache) {
+            if (expanded.equals(this.cache.put(url, expanded)))
+                return;
+
+            try {
+                this.journal.write(url);
+                this.journal.write('\t');
+                this.journal.write(expanded);
+                this.journal.write('\n');
+                this.journal.flush();
+            } catch (IOException ex) {
+                this.logger.warning(String.format("URL のキャッシュに書き込めませんでした: %s", ex.getMessage()));
+            }
+        }
+    }
+
+    private int load() throws IOException {
+        if (!Files.exists(this.cachePath))
+            return 0;
+
+        int lines = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(this.cachePath, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                lines++;
+
+                if (tab > 0 && tab < line.length() - 1)
+                    this.cache.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+
+        return lines;
+    }
+
+    private void rewrite() throws IOException {
+        Path temporary = this.cachePath.resolveSibling(this.cachePath.getFileName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : this.cache.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue());
+                writer.write('\n');
+            }
+        }
+
+        try {
+            Files.move(temporary, this.cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, this.cachePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        this.logger.info(String.format("URL のキャッシュを %d 件に整理しました.", this.cache.size()));
+    }
+
+    private static String resolveByHead(String url) throws IOException {
+        String current = url;
+
+        for (int i = 0; i < MAX_REDIRECTS; i++) {
+            URL target = new URL(current);
+
+            if (!"http".equals(target.getProtocol()) && !"https".equals(target.getProtocol()))
+                return current;
+
+            HttpURLConnection connection = (HttpURLConnection) target.openConnection();
+            connection.setRequestMethod("HEAD");
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+
+            try {
+                int status = connection.getResponseCode();
+                String location = connection.getHeaderField("Location");
+
+                if (status < 300 || status >= 400 || location == null)
+                    return current;
+
+                current = new URL(target, location).toString();
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        return current;
+    }
+}
@@ -0,0 +1,670 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.JSONParser;
+import twitter4j.HttpClientFactory;
+import twitter4j.HttpParameter;
+import twitter4j.HttpResponse;
+import twitter4j.RateLimitStatus;
+import twitter4j.StatusUpdate;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/26.
+ */
+
+/**
+ * <p>ツイートの送信やリツイートなどの書き込み要求を、ディスク上のジャーナルに記録してから非同期に送信するキューです。
+ * <p>要求は受け付けた時点でジャーナルへの追記が予約され、書き込みの完了を待たずに直ちにチケットが返されます。
+ * ジャーナルは専用のスレッドによって書き込まれ、その間に予約されたレコードはまとめて 1 回の同期で記録されます。
+ * 送信が完了した要求はジャーナルに完了として記録され、
+ * 未完了の要求はアプリケーションの再起動後に新しいインスタンスが生成された時点で復元されます。
+ * 受け付けてから記録されるまでの間に異常終了した場合、その要求は復元されません。
+ * 送信後、完了を記録する前に終了した場合は再起動後に同じ要求がもう一度送信されます。
+ * <p>要求はアカウントごとに受け付けた順に 1 件ずつ送信されます。各アカウントの送信はトークンバケットによって頻度が制限され、
+ * ネットワークの障害、レート制限、サーバエラーなど一時的な失敗は指数的に間隔を空けて成功するまで再試行されます。
+ * それ以外の失敗はチケットに例外として通知され、キューから取り除かれます。
+ * <p>すべての要求が完了するとジャーナルは発行済みのチケット ID の最大値を表すレコードのみに切り詰められ、
+ * 再起動後もチケット ID は重複しません。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class WriteQueue implements AutoCloseable {
+    private static final int DEFAULT_BURST = 5;
+    private static final double DEFAULT_WRITES_PER_SECOND = 0.5;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 2000L;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 5L * 60L * 1000L;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000L;
+
+    private final Path journalPath;
+    private final Sender sender;
+    private final Logger logger;
+    private final int burst;
+    private final double writesPerSecond;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final FileChannel journal;
+    private final ExecutorService journalWriter;
+    private final List<String> journalRecords;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<Long, Lane> lanes;
+
+    private long nextTicketId;
+    private int pendingCount;
+    private boolean closed;
+    private boolean journalTruncate;
+    private boolean journalFlushScheduled;
+    private boolean journalClosed;
+
+    /**
+     * 書き込み要求を実際に送信する処理を表します。
+     */
+    @FunctionalInterface
+    public interface Sender {
+        /**
+         * 書き込み要求を送信します。
+         *
+         * @param request 書き込み要求。
+         * @return 作成されたツイート、またはお気に入りに追加されたツイートの ID。
+         * @throws TwitterException 送信に失敗しました。
+         */
+        long send(WriteRequest request) throws TwitterException;
+    }
+
+    /**
+     * キューに受け付けられた書き込み要求を表します。
+     */
+    public static final class Ticket {
+        private final long id;
+        private final WriteRequest request;
+        private final CompletableFuture<Long> completion;
+
+        private Ticket(long id, WriteRequest request) {
+            this.id = id;
+            this.request = request;
+            this.completion = new CompletableFuture<>();
+        }
+
+        /**
+         * チケット ID を取得します。チケット ID は再起動後も重複しません。
+         *
+         * @return チケット ID。
+         */
+        public long getId() {
+            return this.id;
+        }
+
+        /**
+         * 書き込み要求を取得します。
+         *
+         * @return WriteRequest オブジェクト。
+         */
+        public WriteRequest getRequest() {
+            return this.request;
+        }
+
+        /**
+         * 送信の完了を表す CompletableFuture オブジェクトを取得します。
+         * 送信に成功した場合は {@link Sender#send(WriteRequest)} の戻り値で、失敗した場合は例外で完了します。
+         *
+         * @return CompletableFuture オブジェクト。
+         */
+        public CompletableFuture<Long> getCompletion() {
+            return this.completion;
+        }
+    }
+
+    private static final class Lane {
+        private final ArrayDeque<Ticket> tickets;
+        private boolean scheduled;
+        private int failures;
+        private double tokens;
+        private long lastRefillNanos;
+
+        private Lane(int burst) {
+            this.tickets = new ArrayDeque<>();
+            this.tokens = burst;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        // トークンを 1 つ取得し、取得できない場合は次のトークンが補充されるまでのナノ秒を返す
+        private long acquire(int burst, double writesPerSecond) {
+            long now = System.nanoTime();
+            this.tokens = Math.min(burst, this.tokens + (now - this.lastRefillNanos) * writesPerSecond / 1e9);
+            this.lastRefillNanos = now;
+
+            if (this.tokens >= 1.0) {
+                this.tokens -= 1.0;
+                return 0L;
+            }
+
+            return (long) Math.ceil((1.0 - this.tokens) * 1e9 / writesPerSecond);
+        }
+    }
+
+    /**
+     * ジャーナルファイル、送信処理およびロガーを指定して新しい WriteQueue クラスのインスタンスを初期化します。
+     * 送信頻度は各アカウントで 2 秒に 1 件、連続して 5 件までに制限されます。
+     *
+     * @param journalPath ジャーナルファイルのパス。
+     * @param sender      書き込み要求を送信する Sender オブジェクト。
+     * @param logger      送信の失敗を出力する Logger オブジェクト。
+     * @throws IOException ジャーナルファイルの読み込みまたは作成に失敗しました。
+     */
+    public WriteQueue(Path journalPath, Sender sender, Logger logger) throws IOException {
+        this(journalPath, sender, logger, DEFAULT_BURST, DEFAULT_WRITES_PER_SECOND,
+                DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * ジャーナルファイル、送信処理、ロガー、送信頻度および再試行の間隔を指定して新しい WriteQueue クラスのインスタンスを初期化します。
+     * ジャーナルファイルに未完了の要求が記録されている場合は、それらを復元して送信を開始します。
+     *
+     * @param journalPath          ジャーナルファイルのパス。
+     * @param sender               書き込み要求を送信する Sender オブジェクト。
+     * @param logger               送信の失敗を出力する Logger オブジェクト。
+     * @param burst                各アカウントで連続して送信できる要求の数。
+     * @param writesPerSecond      各アカウントで 1 秒あたりに送信できる要求の数。
+     * @param initialBackoffMillis 最初の再試行までの時間 (ミリ秒)。
+     * @param maxBackoffMillis     再試行までの時間の上限 (ミリ秒)。
+     * @throws IOException ジャーナルファイルの読み込みまたは作成に失敗しました。
+     */
+    public WriteQueue(Path journalPath, Sender sender, Logger logger, int burst, double writesPerSecond,
+                      long initialBackoffMillis, long maxBackoffMillis) throws IOException {
+        if (journalPath == null || sender == null || logger == null)
+            throw new IllegalArgumentException();
+
+        if (burst < 1 || writesPerSecond <= 0.0 || initialBackoffMillis < 1 || maxBackoffMillis < initialBackoffMillis)
+            throw new IllegalArgumentException();
+
+        this.journalPath = journalPath.toAbsolutePath();
+        this.sender = sender;
+        this.logger = logger;
+        this.burst = burst;
+        this.writesPerSecond = writesPerSecond;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.lanes = new HashMap<>();
+        this.journalRecords = new ArrayList<>();
+
+        if (this.journalPath.getParent() != null)
+            Files.createDirectories(this.journalPath.getParent());
+
+        List<Ticket> restored = this.replayJournal();
+        this.rewriteJournal(restored);
+        this.journal = FileChannel.open(this.journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        this.journalWriter = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "nanasetter-write-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.executor = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread thread = new Thread(r, "nanasetter-write-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        if (!restored.isEmpty()) {
+            synchronized (this) {
+                restored.forEach(this::enqueue);
+            }
+
+            this.logger.info(String.format("送信されていない書き込み要求 %d 件を復元しました.", restored.size()));
+        }
+    }
+
+    /**
+     * TwitterList に格納されたアカウントを用いて書き込み要求を送信する Sender オブジェクトを作成します。
+     * 要求のアカウントが TwitterList に存在しない場合は恒久的な失敗として扱われ、要求はキューから取り除かれます。
+     *
+     * @param twitterList Twitter オブジェクトが格納された TwitterList オブジェクト。
+     * @return Sender オブジェクト。
+     */
+    public static Sender createSender(TwitterList twitterList) {
+        if (twitterList == null)
+            throw new IllegalArgumentException();
+
+        return request -> {
+            Twitter twitter = twitterList.getTwitter(request.getAccountId())
+                    .orElseThrow(() -> new TwitterException(
+                            String.format("アカウント %d が見つかりません.", request.getAccountId())));
+
+            if (request.getMediaIds().length > 0)
+                return updateStatusWithMedia(twitter, request);
+
+            switch (request.getType()) {
+                case TWEET:
+                    return twitter.updateStatus(request.getText()).getId();
+
+                case REPLY:
+                    return twitter.updateStatus(new StatusUpdate(request.getText())
+                            .inReplyToStatusId(request.getTargetId())).getId();
+
+                case RETWEET:
+                    return twitter.retweetStatus(request.getTargetId()).getId();
+
+                case FAVORITE:
+                    return twitter.createFavorite(request.getTargetId()).getId();
+
+                default:
+                    throw new IllegalArgumentException();
+            }
+        };
+    }
+
+    // twitter4j 4.0.1 の StatusUpdate は media_ids を指定できないため、直接 statuses/update を呼び出す
+    private static long updateStatusWithMedia(Twitter twitter, WriteRequest request) throws TwitterException {
+        List<HttpParameter> params = new ArrayList<>();
+        params.add(new HttpParameter("status", request.getText()));
+        params.add(new HttpParameter("media_ids", Arrays.stream(request.getMediaIds())
+                .mapToObj(Long::toString).collect(Collectors.joining(","))));
+
+        if (request.getType() == WriteRequest.Type.REPLY)
+            params.add(new HttpParameter("in_reply_to_status_id", request.getTargetId()));
+
+        HttpResponse response = HttpClientFactory.getInstance(twitter.getConfiguration().getHttpClientConfiguration())
+                .post(twitter.getConfiguration().getRestBaseURL() + "statuses/update.json",
+                        params.toArray(new HttpParameter[params.size()]), twitter.getAuthorization(), null);
+
+        try {
+            return ((Number) ((Map<?, ?>) JSONParser.parse(response.asString())).get("id")).longValue();
+        } catch (RuntimeException ex) {
+            throw new TwitterException("ツイートの送信結果を解析できませんでした.", ex);
+        }
+    }
+
+    /**
+     * 書き込み要求をキューに追加します。このメソッドは送信の完了を待たずに直ちに戻ります。
+     *
+     * @param request 書き込み要求。
+     * @return 受け付けられた要求を表す Ticket オブジェクト。
+     * @throws IllegalStateException キューは既に閉じられています。
+     */
+    public Ticket submit(WriteRequest request) {
+        if (request == null)
+            throw new IllegalArgumentException();
+
+        Ticket ticket;
+
+        synchronized (this) {
+            if (this.closed)
+                throw new IllegalStateException();
+
+            ticket = new Ticket(this.nextTicketId++, request);
+            this.appendJournal(toAddRecord(ticket));
+            this.enqueue(ticket);
+        }
+
+        return ticket;
+    }
+
+    /**
+     * 送信が完了していない要求の数を取得します。
+     *
+     * @return 要求の数。
+     */
+    public synchronized int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * キューを閉じます。送信中の要求は完了を待ち、それ以外の未完了の要求はジャーナルに残され、次回の起動時に復元されます。
+     * 予約されたジャーナルのレコードはすべて書き込まれます。キューが閉じられた後に完了した送信は記録されません。
+     *
+     * @throws IOException ジャーナルファイルを閉じることができませんでした。
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+        }
+
+        this.executor.shutdown();
+
+        try {
+            this.executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        // これ以降のレコードは予約せず、予約済みのレコードを書き込んでから閉じる
+        synchronized (this) {
+            this.journalClosed = true;
+        }
+
+        this.journalWriter.shutdown();
+
+        try {
+            this.journalWriter.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.journal.close();
+    }
+
+    private void enqueue(Ticket ticket) {
+        Lane lane = this.lanes.computeIfAbsent(ticket.request.getAccountId(), id -> new Lane(this.burst));
+        lane.tickets.add(ticket);
+        this.pendingCount++;
+
+        if (!lane.scheduled) {
+            lane.scheduled = true;
+            this.schedule(lane, 0L);
+        }
+    }
+
+    private void schedule(Lane lane, long delayNanos) {
+        if (this.closed)
+            return;
+
+        this.executor.schedule(() -> this.process(lane), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void process(Lane lane) {
+        Ticket ticket;
+
+        synchronized (this) {
+            ticket = lane.tickets.peek();
+
+            if (ticket == null || this.closed) {
+                lane.scheduled = false;
+                return;
+            }
+
+            long wait = lane.acquire(this.burst, this.writesPerSecond);
+
+            if (wait > 0L) {
+                this.schedule(lane, wait);
+                return;
+            }
+        }
+
+        try {
+            this.complete(lane, ticket, this.sender.send(ticket.request), null);
+        } catch (TwitterException ex) {
+            if (isTransient(ex))
+                this.retry(lane, ticket, ex);
+            else
+                this.complete(lane, ticket, null, ex);
+        } catch (RuntimeException ex) {
+            this.complete(lane, ticket, null, ex);
+        }
+    }
+
+    private void retry(Lane lane, Ticket ticket, TwitterException ex) {
+        long delayMillis;
+
+        synchronized (this) {
+            lane.failures++;
+            delayMillis = this.getBackoffMillis(lane.failures, ex);
+            this.schedule(lane, TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        }
+
+        this.logger.warning(String.format("書き込み要求 %s (チケット: %d) の送信に失敗しました. %d ミリ秒後に再試行します: %s",
+                ticket.request, ticket.id, delayMillis, ex.getMessage()));
+    }
+
+    private void complete(Lane lane, Ticket ticket, Long result, Throwable error) {
+        synchronized (this) {
+            lane.tickets.poll();
+            lane.failures = 0;
+            this.pendingCount--;
+
+            if (this.pendingCount == 0)
+                this.truncateJournal();
+            else
+                this.appendJournal(toDoneRecord(ticket));
+
+            this.schedule(lane, 0L);
+        }
+
+        if (error == null) {
+            ticket.completion.complete(result);
+        } else {
+            this.logger.log(Level.WARNING, String.format("書き込み要求 %s (チケット: %d) を送信できませんでした: %s",
+                    ticket.request, ticket.id, error.getMessage()), error);
+            ticket.completion.completeExceptionally(error);
+        }
+    }
+
+    private long getBackoffMillis(int failures, TwitterException ex) {
+        RateLimitStatus rateLimitStatus = ex.getRateLimitStatus();
+
+        if (ex.exceededRateLimitation() && rateLimitStatus != null && rateLimitStatus.getSecondsUntilReset() > 0)
+            return Math.min(this.maxBackoffMillis, rateLimitStatus.getSecondsUntilReset() * 1000L);
+
+        long delay = this.initialBackoffMillis << Math.min(failures - 1, 20);
+        delay = Math.min(this.maxBackoffMillis, delay);
+
+        // 複数のアカウントの再試行が同時に集中しないようにずらす
+        return delay + ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+    }
+
+    static boolean isTransient(TwitterException ex) {
+        int statusCode = ex.getStatusCode();
+
+        // ステータスコードが -1 の例外はネットワークの障害のほか、アカウントが見つからない場合などにも送出されるため、
+        // 原因が IOException である場合のみ再試行する
+        return statusCode >= 500 || ex.exceededRateLimitation() || ex.isCausedByNetworkIssue();
+    }
+
+    private List<Ticket> replayJournal() throws IOException {
+        Map<Long, Ticket> tickets = new LinkedHashMap<>();
+
+        if (!Files.exists(this.journalPath))
+            return new ArrayList<>();
+
+        for (String line : Files.readAllLines(this.journalPath, StandardCharsets.UTF_8)) {
+            if (line.isEmpty())
+                continue;
+
+            try {
+                Map<?, ?> record = (Map<?, ?>) JSONParser.parse(line);
+                long id = ((Number) record.get("ticket")).longValue();
+                this.nextTicketId = Math.max(this.nextTicketId, id + 1);
+
+                if ("add".equals(record.get("op")))
+                    tickets.put(id, new Ticket(id, fromAddRecord(record)));
+                else if ("done".equals(record.get("op")))
+                    tickets.remove(id);
+            } catch (RuntimeException ex) {
+                // 追記中に終了した場合、末尾の行が途切れていることがある
+                this.logger.warning(String.format("ジャーナル '%s' の不正な行を無視しました: %s", this.journalPath, line));
+            }
+        }
+
+        return new ArrayList<>(tickets.values());
+    }
+
+    private void rewriteJournal(List<Ticket> tickets) throws IOException {
+        Path temporary = this.journalPath.resolveSibling(this.journalPath.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (this.nextTicketId > 0L)
+                writeFully(channel, this.toSequenceRecord());
+
+            for (Ticket ticket : tickets)
+                writeFully(channel, toAddRecord(ticket));
+
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temporary, this.journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, this.journalPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void appendJournal(String record) {
+        if (this.journalClosed)
+            return;
+
+        this.journalRecords.add(record);
+        this.scheduleJournalFlush();
+    }
+
+    // 切り詰めより前に予約されたレコードは書き込む必要がない
+    private void truncateJournal() {
+        if (this.journalClosed)
+            return;
+
+        this.journalRecords.clear();
+        this.journalRecords.add(this.toSequenceRecord());
+        this.journalTruncate = true;
+        this.scheduleJournalFlush();
+    }
+
+    private void scheduleJournalFlush() {
+        if (this.journalFlushScheduled)
+            return;
+
+        this.journalFlushScheduled = true;
+        this.journalWriter.execute(this::flushJournal);
+    }
+
+    private void flushJournal() {
+        List<String> records;
+        boolean truncate;
+
+        synchronized (this) {
+            records = new ArrayList<>(this.journalRecords);
+            truncate = this.journalTruncate;
+            this.journalRecords.clear();
+            this.journalTruncate = false;
+            this.journalFlushScheduled = false;
+        }
+
+        try {
+            if (truncate)
+                this.journal.truncate(0L);
+
+            writeFully(this.journal, String.join("", records));
+            this.journal.force(false);
+        } catch (IOException ex) {
+            this.logger.log(Level.SEVERE, String.format("ジャーナル '%s' に書き込めませんでした.", this.journalPath), ex);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static String toAddRecord(Ticket ticket) {
+        WriteRequest request = ticket.request;
+        StringBuilder sb = new StringBuilder(128);
+
+        sb.append("{\"op\":\"add\",\"ticket\":").append(ticket.id)
+          .append(",\"type\":\"").append(request.getType().name())
+          .append("\",\"account\":").append(request.getAccountId())
+          .append(",\"target\":").append(request.getTargetId());
+
+        if (request.getText() != null) {
+            sb.append(",\"text\":");
+            StatusSerializer.writeString(sb, request.getText());
+        }
+
+        long[] mediaIds = request.getMediaIds();
+
+        if (mediaIds.length > 0) {
+            sb.append(",\"media\":[");
+
+            for (int i = 0; i < mediaIds.length; i++)
+                sb.append(i == 0 ? "" : ",").append(mediaIds[i]);
+
+            sb.append(']');
+        }
+
+        return sb.append("}\n").toString();
+    }
+
+    private static String toDoneRecord(Ticket ticket) {
+        return "{\"op\":\"done\",\"ticket\":" + ticket.id + "}\n";
+    }
+
+    // 発行済みのチケット ID の最大値を記録し、ジャーナルを切り詰めても再起動後に ID が重複しないようにする
+    private String toSequenceRecord() {
+        return "{\"op\":\"seq\",\"ticket\":" + (this.nextTicketId - 1L) + "}\n";
+    }
+
+    private static WriteRequest fromAddRecord(Map<?, ?> record) {
+        List<?> media = record.containsKey("media") ? (List<?>) record.get("media") : Collections.emptyList();
+        long[] mediaIds = new long[media.size()];
+
+        for (int i = 0; i < mediaIds.length; i++)
+            mediaIds[i] = ((Number) media.get(i)).longValue();
+
+        return new WriteRequest(
+                ((Number) record.get("account")).longValue(),
+                WriteRequest.Type.valueOf((String) record.get("type")),
+                (String) record.get("text"),
+                ((Number) record.get("target")).longValue(),
+                mediaIds);
+    }
+}
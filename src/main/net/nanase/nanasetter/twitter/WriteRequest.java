@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import java.util.Arrays;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/26.
+ */
+
+/**
+ * {@link WriteQueue} によって送信される書き込み要求を表します。
+ * <p>このクラスは不変です。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public final class WriteRequest {
+    /**
+     * 書き込み要求の種類を表します。
+     */
+    public enum Type {
+        /**
+         * ツイートの送信。
+         */
+        TWEET,
+
+        /**
+         * ツイートへの返信。
+         */
+        REPLY,
+
+        /**
+         * リツイート。
+         */
+        RETWEET,
+
+        /**
+         * お気に入りへの追加。
+         */
+        FAVORITE
+    }
+
+    private final long accountId;
+    private final Type type;
+    private final String text;
+    private final long targetId;
+    private final long[] mediaIds;
+
+    WriteRequest(long accountId, Type type, String text, long targetId, long[] mediaIds) {
+        if (type == null || mediaIds == null)
+            throw new IllegalArgumentException();
+
+        this.accountId = accountId;
+        this.type = type;
+        this.text = text;
+        this.targetId = targetId;
+        this.mediaIds = mediaIds.clone();
+    }
+
+    /**
+     * ツイートを送信する要求を作成します。
+     *
+     * @param accountId 送信するアカウントのユーザ ID。
+     * @param text      ツイートの本文。
+     * @param mediaIds  添付するメディアの ID。{@link MediaUploader} によってアップロードされたものを指定します。
+     * @return 作成された WriteRequest オブジェクト。
+     */
+    public static WriteRequest tweet(long accountId, String text, long... mediaIds) {
+        if (text == null)
+            throw new IllegalArgumentException();
+
+        return new WriteRequest(accountId, Type.TWEET, text, 0L, mediaIds);
+    }
+
+    /**
+     * ツイートに返信する要求を作成します。
+     *
+     * @param accountId         送信するアカウントのユーザ ID。
+     * @param text              ツイートの本文。
+     * @param inReplyToStatusId 返信先のツイート ID。
+     * @param mediaIds          添付するメディアの ID。{@link MediaUploader} によってアップロードされたものを指定します。
+     * @return 作成された WriteRequest オブジェクト。
+     */
+    public static WriteRequest reply(long accountId, String text, long inReplyToStatusId, long... mediaIds) {
+        if (text == null)
+            throw new IllegalArgumentException();
+
+        return new WriteRequest(accountId, Type.REPLY, text, inReplyToStatusId, mediaIds);
+    }
+
+    /**
+     * ツイートをリツイートする要求を作成します。
+     *
+     * @param accountId 送信するアカウントのユーザ ID。
+     * @param statusId  リツイートするツイート ID。
+     * @return 作成された WriteRequest オブジェクト。
+     */
+    public static WriteRequest retweet(long accountId, long statusId) {
+        return new WriteRequest(accountId, Type.RETWEET, null, statusId, new long[0]);
+    }
+
+    /**
+     * ツイートをお気に入りに追加する要求を作成します。
+     *
+     * @param accountId 送信するアカウントのユーザ ID。
+     * @param statusId  お気に入りに追加するツイート ID。
+     * @return 作成された WriteRequest オブジェクト。
+     */
+    public static WriteRequest favorite(long accountId, long statusId) {
+        return new WriteRequest(accountId, Type.FAVORITE, null, statusId, new long[0]);
+    }
+
+    /**
+     * 送信するアカウントのユーザ ID を取得します。
+     *
+     * @return ユーザ ID。
+     */
+    public long getAccountId() {
+        return this.accountId;
+    }
+
+    /**
+     * 書き込み要求の種類を取得します。
+     *
+     * @return 書き込み要求の種類。
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * ツイートの本文を取得します。
+     *
+     * @return ツイートの本文。本文を持たない要求の場合は null。
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * 返信先、リツイートまたはお気に入りの対象となるツイート ID を取得します。
+     *
+     * @return ツイート ID。対象を持たない要求の場合は 0。
+     */
+    public long getTargetId() {
+        return this.targetId;
+    }
+
+    /**
+     * 添付するメディアの ID を取得します。
+     *
+     * @return メディアの ID の配列。メディアを添付しない場合は空の配列。
+     */
+    public long[] getMediaIds() {
+        return this.mediaIds.clone();
+    }
+
+    @Override
+    public String toString() {
+        if (this.mediaIds.length == 0)
+            return String.format("%s(account: %d, target: %d)", this.type, this.accountId, this.targetId);
+
+        return String.format("%s(account: %d, target: %d, media: %s)",
+                this.type, this.accountId, this.targetId, Arrays.toString(this.mediaIds));
+    }
+}
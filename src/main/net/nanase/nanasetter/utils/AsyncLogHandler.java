@@ -0,0 +1,307 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/22.
+ */
+
+/**
+ * <p>ログレコードを固定長のリングバッファに格納し、バックグラウンドの書き込みスレッドから別のハンドラに出力するハンドラです。
+ * <p>{@link #publish} はバッファへの格納のみを行い、書き込みを待機しません。そのため JavaFX アプリケーションスレッドなどから
+ * ロギングしても I/O によって処理が止まることはありません。バッファが一杯の場合、新しいレコードは破棄され、
+ * 破棄された件数は次の書き込み時に警告として出力されます。
+ * <p>出力先のハンドラは書き込みのたびにはフラッシュされず、未フラッシュのレコードが一定数に達したとき、
+ * 最初の未フラッシュのレコードから一定時間が経過したとき、および {@link #flush} と {@link #close} の呼び出し時にフラッシュされます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class AsyncLogHandler extends Handler {
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int DEFAULT_FLUSH_RECORDS = 512;
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000L;
+
+    private final Handler target;
+
+    private final LogRecord[] buffer;
+
+    private final ReentrantLock lock;
+
+    private final Condition notEmpty;
+
+    private final Condition drained;
+
+    private final Thread writer;
+
+    private final int flushRecords;
+
+    private final long flushIntervalNanos;
+
+    private int head;
+
+    private int count;
+
+    private long droppedCount;
+
+    private boolean writing;
+
+    private volatile boolean closed;
+
+    /**
+     * 出力先のハンドラを指定して、既定の容量で新しい AsyncLogHandler クラスのインスタンスを初期化します。
+     *
+     * @param target 出力先となる Handler オブジェクト。
+     */
+    public AsyncLogHandler(Handler target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 出力先のハンドラとバッファの容量を指定して新しい AsyncLogHandler クラスのインスタンスを初期化します。
+     *
+     * @param target   出力先となる Handler オブジェクト。
+     * @param capacity バッファに格納できるレコードの最大数。
+     */
+    public AsyncLogHandler(Handler target, int capacity) {
+        this(target, capacity, DEFAULT_FLUSH_RECORDS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    AsyncLogHandler(Handler target, int capacity, int flushRecords, long flushIntervalMillis) {
+        if (target == null)
+            throw new IllegalArgumentException();
+
+        if (capacity < 1)
+            throw new IllegalArgumentException();
+
+        if (flushRecords < 1)
+            throw new IllegalArgumentException();
+
+        if (flushIntervalMillis < 1)
+            throw new IllegalArgumentException();
+
+        this.target = target;
+        this.flushRecords = flushRecords;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.buffer = new LogRecord[capacity];
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.drained = this.lock.newCondition();
+
+        this.writer = new Thread(this::runWriter, "nanasetter-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * ログレコードをバッファに格納します。このメソッドは書き込みの完了を待機しません。
+     *
+     * @param record ログレコード。
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (record == null || this.closed || !this.isLoggable(record))
+            return;
+
+        this.lock.lock();
+
+        try {
+            if (this.count == this.buffer.length) {
+                this.droppedCount++;
+                return;
+            }
+
+            this.buffer[(this.head + this.count) % this.buffer.length] = record;
+
+            if (this.count++ == 0)
+                this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * バッファに格納されているレコードがすべて出力されるまで待機し、出力先のハンドラをフラッシュします。
+     */
+    @Override
+    public void flush() {
+        this.lock.lock();
+
+        try {
+            while ((this.count > 0 || this.writing) && this.writer.isAlive())
+                this.drained.await(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.target.flush();
+    }
+
+    /**
+     * 残りのレコードを出力したのち書き込みスレッドを停止し、出力先のハンドラを閉じます。
+     */
+    @Override
+    public void close() throws SecurityException {
+        if (this.closed)
+            return;
+
+        this.closed = true;
+
+        this.lock.lock();
+
+        try {
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+
+        try {
+            this.writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.target.close();
+    }
+
+    /**
+     * これまでにバッファが一杯のため破棄されたレコードの数を取得します。
+     *
+     * @return 破棄されたレコードの数。
+     */
+    public long getDroppedCount() {
+        this.lock.lock();
+
+        try {
+            return this.droppedCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void runWriter() {
+        LogRecord[] batch = new LogRecord[this.buffer.length];
+        long reportedDropCount = 0;
+        int unflushed = 0;
+        long flushDeadline = 0;
+
+        while (true) {
+            int size;
+            long dropped;
+
+            this.lock.lock();
+
+            try {
+                this.writing = false;
+                this.drained.signalAll();
+
+                // 未フラッシュのレコードがある間は、フラッシュの期限までに限り待機する
+                while (this.count == 0 && !this.closed) {
+                    if (unflushed == 0)
+                        this.notEmpty.await();
+                    else if (this.notEmpty.awaitNanos(flushDeadline - System.nanoTime()) <= 0)
+                        break;
+                }
+
+                // バッファの内容をまとめて取り出し、ロックの外で出力する
+                size = this.count;
+
+                for (int i = 0; i < size; i++) {
+                    int index = (this.head + i) % this.buffer.length;
+                    batch[i] = this.buffer[index];
+                    this.buffer[index] = null;
+                }
+
+                this.head = (this.head + size) % this.buffer.length;
+                this.count = 0;
+                this.writing = size > 0;
+                dropped = this.droppedCount;
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                this.lock.unlock();
+            }
+
+            if (size == 0) {
+                if (unflushed > 0) {
+                    this.target.flush();
+                    unflushed = 0;
+                }
+
+                if (this.closed)
+                    return;
+
+                continue;
+            }
+
+            if (unflushed == 0)
+                flushDeadline = System.nanoTime() + this.flushIntervalNanos;
+
+            if (dropped > reportedDropCount) {
+                LogRecord record = new LogRecord(Level.WARNING,
+                        String.format("ログのバッファが一杯のため %d 件のレコードが破棄されました.", dropped - reportedDropCount));
+                record.setLoggerName("nanasetter");
+                this.write(record);
+                reportedDropCount = dropped;
+                unflushed++;
+            }
+
+            for (int i = 0; i < size; i++) {
+                this.write(batch[i]);
+                batch[i] = null;
+            }
+
+            unflushed += size;
+
+            if (unflushed >= this.flushRecords || System.nanoTime() - flushDeadline >= 0) {
+                this.target.flush();
+                unflushed = 0;
+            }
+        }
+    }
+
+    private void write(LogRecord record) {
+        try {
+            this.target.publish(record);
+        } catch (RuntimeException ex) {
+            this.reportError(null, ex, ErrorManager.WRITE_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/19.
+ */
+
+/**
+ * <p>JSON 文字列を先頭から一度だけ走査し、Java のオブジェクトに変換するパーサです。
+ * <p>オブジェクトは変更不可能な {@code Map<String, Object>} (キーの順序を保持)、配列は変更不可能な {@code List<Object>}、
+ * 文字列は String、真偽値は Boolean に変換されます。数値は WebKit の JSObject と同様に、整数で int の範囲に収まる場合は
+ * Integer、long の範囲に収まる場合は Long、それ以外は Double に変換されます。null は null に変換されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class JSONParser {
+    private final CharSequence text;
+
+    private int position;
+
+    private JSONParser(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * JSON 文字列を解析し、対応する Java のオブジェクトを取得します。
+     *
+     * @param text JSON 文字列。
+     * @return 解析されたオブジェクト。
+     * @throws IllegalArgumentException JSON 文字列が不正な形式である場合に発生します。
+     */
+    public static Object parse(CharSequence text) throws IllegalArgumentException {
+        if (text == null)
+            throw new IllegalArgumentException();
+
+        JSONParser parser = new JSONParser(text);
+        Object value = parser.readValue();
+
+        parser.skipWhitespace();
+
+        if (parser.position != text.length())
+            throw parser.error("余分な文字があります");
+
+        return value;
+    }
+
+    private Object readValue() {
+        this.skipWhitespace();
+
+        if (this.position >= this.text.length())
+            throw this.error("値がありません");
+
+        char c = this.text.charAt(this.position);
+
+        switch (c) {
+            case '{':
+                return this.readObject();
+
+            case '[':
+                return this.readArray();
+
+            case '"':
+                return this.readString();
+
+            case 't':
+                this.expect("true");
+                return Boolean.TRUE;
+
+            case 'f':
+                this.expect("false");
+                return Boolean.FALSE;
+
+            case 'n':
+                this.expect("null");
+                return null;
+
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return this.readNumber();
+
+                throw this.error("不正な文字 '" + c + "' があります");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        this.position++;
+        this.skipWhitespace();
+
+        if (this.consume('}'))
+            return Collections.unmodifiableMap(map);
+
+        do {
+            this.skipWhitespace();
+
+            if (this.position >= this.text.length() || this.text.charAt(this.position) != '"')
+                throw this.error("キーがありません");
+
+            String key = this.readString();
+
+            this.skipWhitespace();
+
+            if (!this.consume(':'))
+                throw this.error("':' がありません");
+
+            map.put(key, this.readValue());
+            this.skipWhitespace();
+        } while (this.consume(','));
+
+        if (!this.consume('}'))
+            throw this.error("'}' がありません");
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    private List<Object> readArray() {
+        List<Object> list = new ArrayList<>();
+
+        this.position++;
+        this.skipWhitespace();
+
+        if (this.consume(']'))
+            return Collections.unmodifiableList(list);
+
+        do {
+            list.add(this.readValue());
+            this.skipWhitespace();
+        } while (this.consume(','));
+
+        if (!this.consume(']'))
+            throw this.error("']' がありません");
+
+        return Collections.unmodifiableList(list);
+    }
+
+    private String readString() {
+        int start = ++this.position;
+
+        // エスケープを含まない文字列は部分文字列としてそのまま取り出す
+        while (this.position < this.text.length()) {
+            char c = this.text.charAt(this.position);
+
+            if (c == '"') {
+                String s = this.text.subSequence(start, this.position).toString();
+                this.position++;
+                return s;
+            }
+
+            if (c == '\\')
+                break;
+
+            this.position++;
+        }
+
+        StringBuilder sb = new StringBuilder(this.position - start + 16);
+        sb.append(this.text, start, this.position);
+
+        while (this.position < this.text.length()) {
+            char c = this.text.charAt(this.position++);
+
+            if (c == '"')
+                return sb.toString();
+
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            if (this.position >= this.text.length())
+                break;
+
+            char e = this.text.charAt(this.position++);
+
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(e);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (this.position + 4 > this.text.length())
+                        throw this.error("不正なエスケープシーケンスです");
+
+                    try {
+                        sb.append((char) Integer.parseInt(
+                                this.text.subSequence(this.position, this.position + 4).toString(), 16));
+                    } catch (NumberFormatException ex) {
+                        throw this.error("不正なエスケープシーケンスです");
+                    }
+
+                    this.position += 4;
+                    break;
+                default:
+                    throw this.error("不正なエスケープシーケンスです");
+            }
+        }
+
+        throw this.error("文字列が終端されていません");
+    }
+
+    private Number readNumber() {
+        int start = this.position;
+        boolean integral = true;
+
+        this.consume('-');
+
+        while (this.position < this.text.length()) {
+            char c = this.text.charAt(this.position);
+
+            if (c >= '0' && c <= '9') {
+                this.position++;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+                this.position++;
+            } else {
+                break;
+            }
+        }
+
+        String number = this.text.subSequence(start, this.position).toString();
+
+        try {
+            if (integral) {
+                long value = Long.parseLong(number);
+
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+                    return (int) value;
+
+                return value;
+            }
+        } catch (NumberFormatException ex) {
+            // long の範囲を超える整数は Double として扱う
+        }
+
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException ex) {
+            throw this.error("不正な数値 '" + number + "' があります");
+        }
+    }
+
+    private void expect(String literal) {
+        int end = this.position + literal.length();
+
+        if (end > this.text.length() || !literal.contentEquals(this.text.subSequence(this.position, end)))
+            throw this.error("'" + literal + "' ではありません");
+
+        this.position = end;
+    }
+
+    private boolean consume(char c) {
+        if (this.position < this.text.length() && this.text.charAt(this.position) == c) {
+            this.position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.text.length()) {
+            char c = this.text.charAt(this.position);
+
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                return;
+
+            this.position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("%s (位置: %d)", message, this.position));
+    }
+}
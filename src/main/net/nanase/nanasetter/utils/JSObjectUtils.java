@@ -33,7 +33,9 @@ import netscape.javascript.JSException;
 import netscape.javascript.JSObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -47,8 +49,14 @@ import java.util.stream.Stream;
  * @since Nanasetter 0.1
  */
 public class JSObjectUtils {
+    /**
+     * WebKit の JSObject が存在しないメンバに対して返す値です。
+     */
+    private static final String UNDEFINED = "undefined";
+
     /**
      * 指定された JSObject に指定した名前を持つメンバが存在するかの真偽値を取得します。
+     * 名前にピリオド '.' を含む場合はプロパティのパスとして評価されます。
      *
      * @param object 対象となる JSObject。
      * @param name   対象のメンバ名。
@@ -61,11 +69,15 @@ public class JSObjectUtils {
         if (name == null)
             return false;
 
-        try {
-            return (boolean) object.eval("typeof this." + name + " !== 'undefined'");
-        } catch (JSException e) {
-            return false;
+        if (isPath(name)) {
+            try {
+                return (boolean) object.eval("typeof this." + name + " !== 'undefined'");
+            } catch (JSException e) {
+                return false;
+            }
         }
+
+        return !isUndefined(fetchMember(object, name));
     }
 
     /**
@@ -77,19 +89,42 @@ public class JSObjectUtils {
      */
     public static String getTypeString(JSObject object, String name) {
         if (object == null)
-            return "undefined";
+            return UNDEFINED;
 
         if (name == null)
-            return "undefined";
+            return UNDEFINED;
 
         try {
-            if (hasMember(object, name))
-                return (String) object.eval("typeof this." + name);
+            Object type = object.eval("typeof this." + name);
+
+            if (type instanceof String)
+                return (String) type;
         } catch (JSException e) {
             //
         }
 
-        return "undefined";
+        return UNDEFINED;
+    }
+
+    /**
+     * 指定された JSObject のメンバの値を 1 回の呼び出しで取得します。
+     * メンバが存在しない場合、または値が null の場合は空の {@code Optional<Object>} を返します。
+     * <p>WebKit は存在しないメンバに対して文字列 "undefined" を返すため、この文字列は値が存在しないものとして扱われます。
+     *
+     * @param object 対象となる JSObject。
+     * @param name   対象のメンバ名。
+     * @return メンバの値を内包した {@code Optional<Object>}。
+     */
+    public static Optional<Object> getMemberValue(JSObject object, String name) {
+        if (object == null)
+            return Optional.empty();
+
+        if (name == null)
+            return Optional.empty();
+
+        Object obj = fetchMember(object, name);
+
+        return isUndefined(obj) ? Optional.empty() : Optional.ofNullable(obj);
     }
 
     /**
@@ -268,15 +303,9 @@ public class JSObjectUtils {
         if (tClass == null)
             return Optional.empty();
 
-        if (!hasMember(object, name))
-            return Optional.empty();
-
-        Object obj = object.getMember(name);
-
-        if (tClass.isInstance(obj))
-            return Optional.of(tClass.cast(obj));
-
-        return Optional.empty();
+        return getMemberValue(object, name)
+                .filter(tClass::isInstance)
+                .map(tClass::cast);
     }
 
     /**
@@ -294,10 +323,12 @@ public class JSObjectUtils {
         if (tClass == null)
             return Stream.empty();
 
-        if (!isArray(object))
+        Optional<Integer> arrayLength = getMember(object, "length", Integer.class);
+
+        if (!arrayLength.isPresent())
             return Stream.empty();
 
-        int length = getMember(object, "length", Integer.class).get();
+        int length = arrayLength.get();
         List<T> list = new ArrayList<>(length);
 
         for (int i = 0; i < length; i++) {
@@ -328,9 +359,6 @@ public class JSObjectUtils {
         if (tClass == null)
             return Stream.empty();
 
-        if (!isArray(object, name))
-            return Stream.empty();
-
         Optional<JSObject> array = JSObjectUtils.getMember(object, name, JSObject.class);
 
         if (!array.isPresent())
@@ -338,4 +366,58 @@ public class JSObjectUtils {
 
         return getArray(array.get(), tClass);
     }
+
+    /**
+     * 指定された JSObject を JavaScript 側で JSON に直列化し、1 回の呼び出しで Java のオブジェクトとして取得します。
+     * 変換の規則は {@link JSONParser} に従います。関数および undefined のメンバは含まれません。
+     *
+     * @param object 対象となる JSObject。
+     * @return 変換されたオブジェクトを内包した {@code Optional<Object>}。直列化できない場合は空の Optional。
+     */
+    public static Optional<Object> snapshot(JSObject object) {
+        if (object == null)
+            return Optional.empty();
+
+        try {
+            Object json = object.eval("JSON.stringify(this)");
+
+            if (!(json instanceof String) || isUndefined(json))
+                return Optional.empty();
+
+            return Optional.ofNullable(JSONParser.parse((String) json));
+        } catch (JSException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 指定された JSObject をオブジェクトとして 1 回の呼び出しで取得します。
+     *
+     * @param object 対象となる JSObject。
+     * @return メンバを格納した変更不可能な {@code Map<String, Object>}。オブジェクトでない場合は空の Map。
+     * @see #snapshot(JSObject)
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> snapshotObject(JSObject object) {
+        return snapshot(object)
+                .filter(o -> o instanceof Map)
+                .map(o -> (Map<String, Object>) o)
+                .orElse(Collections.emptyMap());
+    }
+
+    private static Object fetchMember(JSObject object, String name) {
+        try {
+            return object.getMember(name);
+        } catch (JSException e) {
+            return UNDEFINED;
+        }
+    }
+
+    private static boolean isUndefined(Object obj) {
+        return UNDEFINED.equals(obj);
+    }
+
+    private static boolean isPath(String name) {
+        return name.indexOf('.') >= 0;
+    }
 }
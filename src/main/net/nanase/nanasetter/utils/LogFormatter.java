@@ -24,7 +24,7 @@
 
 package net.nanase.nanasetter.utils;
 
-import java.util.Date;
+import java.util.Calendar;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
@@ -34,11 +34,19 @@ import java.util.logging.LogRecord;
  */
 
 /**
- * ななせったーで使用される既定のログフォーマッタです。
+ * <p>ななせったーで使用される既定のログフォーマッタです。
+ * <p>ログはスレッドごとに再利用されるバッファに直接書き込まれます。時刻部分は秒単位でキャッシュされるため、
+ * 同じ秒に出力されるレコードでは日時の計算と書式化が行われません。
  */
 public class LogFormatter extends Formatter {
     private static final LogFormatter instance = new LogFormatter();
 
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 16 * 1024;
+
+    private final ThreadLocal<FormatState> states = ThreadLocal.withInitial(FormatState::new);
+
     private LogFormatter() {
     }
 
@@ -64,10 +72,56 @@ public class LogFormatter extends Formatter {
      */
     @Override
     public String format(LogRecord record) {
-        return String.format("%tT [%s/%s]: %s%n",
-                new Date(record.getMillis()),
-                record.getLoggerName(),
-                record.getLevel().getName(),
-                record.getMessage());
+        FormatState state = this.states.get();
+        StringBuilder sb = state.buffer;
+
+        sb.setLength(0);
+        state.appendTime(sb, record.getMillis());
+        sb.append(" [")
+                .append(record.getLoggerName())
+                .append('/')
+                .append(record.getLevel().getName())
+                .append("]: ")
+                .append(record.getMessage())
+                .append(LINE_SEPARATOR);
+
+        String formatted = sb.toString();
+
+        if (sb.capacity() > MAX_RETAINED_BUFFER_SIZE)
+            state.buffer = new StringBuilder();
+
+        return formatted;
+    }
+
+    private static class FormatState {
+        private StringBuilder buffer = new StringBuilder(256);
+
+        private final char[] timePrefix = new char[8];
+
+        private final Calendar calendar = Calendar.getInstance();
+
+        private long cachedSecond = Long.MIN_VALUE;
+
+        // "HH:mm:ss" を秒が変わったときのみ計算する
+        private void appendTime(StringBuilder sb, long millis) {
+            long second = Math.floorDiv(millis, 1000L);
+
+            if (second != this.cachedSecond) {
+                this.calendar.setTimeInMillis(millis);
+                setDigits(this.timePrefix, 0, this.calendar.get(Calendar.HOUR_OF_DAY));
+                this.timePrefix[2] = ':';
+                setDigits(this.timePrefix, 3, this.calendar.get(Calendar.MINUTE));
+                this.timePrefix[5] = ':';
+                setDigits(this.timePrefix, 6, this.calendar.get(Calendar.SECOND));
+                this.cachedSecond = second;
+            }
+
+            sb.append(this.timePrefix);
+        }
+
+        private static void setDigits(char[] chars, int offset, int value) {
+            chars[offset] = (char) ('0' + value / 10);
+            chars[offset + 1] = (char) ('0' + value % 10);
+        }
     }
 }
@@ -24,6 +24,11 @@
 
 package net.nanase.nanasetter.utils;
 
+import netscape.javascript.JSException;
+import netscape.javascript.JSObject;
+
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -32,7 +37,14 @@ import java.util.logging.Logger;
  */
 
 /**
- * JavaScript からロガーを扱うために必要なメソッドを提供します。
+ * <p>JavaScript からロガーを扱うために必要なメソッドを提供します。
+ * <p>メッセージはレベルが有効な場合にのみ文字列に変換されます。メッセージとして関数 ({@code Supplier} または
+ * JavaScript の関数) を渡した場合、関数はレベルが有効な場合にのみ呼び出され、その戻り値がメッセージとなります。
+ * <pre>
+ * host.getLogger().fine(function () { return 'state: ' + JSON.stringify(state); });
+ * </pre>
+ * <p>書式文字列を使用するメソッドは {@code infof} のように末尾に {@code f} の付いた別名になっています。
+ * JavaScript からの呼び出しで {@code %} を含むメッセージが書式文字列として解釈されることはありません。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
@@ -52,87 +64,272 @@ public class LoggerWrapper {
         this.logger = logger;
     }
 
+    /**
+     * 指定されたレベルのメッセージが実際にロギングされるかの真偽値を取得します。
+     *
+     * @param level ログレベル。
+     * @return ロギングされるとき true、それ以外のとき false。
+     */
+    public boolean isLoggable(Level level) {
+        return level != null && this.logger.isLoggable(level);
+    }
+
+    /**
+     * 名前で指定されたレベルのメッセージが実際にロギングされるかの真偽値を取得します。
+     * JavaScript から {@code logger.isLoggable('fine')} のように使用します。
+     *
+     * @param levelName ログレベルの名前。大文字と小文字は区別されません。
+     * @return ロギングされるとき true、それ以外のとき false。
+     */
+    public boolean isLoggable(String levelName) {
+        if (levelName == null)
+            return false;
+
+        try {
+            return this.isLoggable(Level.parse(levelName.toUpperCase()));
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
     /**
      * レベル CONFIG としてロギングします。
      *
-     * @param msg メッセージとなる文字列またはその他のオブジェクト。
+     * @param msg メッセージとなる文字列、その他のオブジェクト、またはメッセージを返す関数。
      */
     public void config(Object msg) {
-        if (msg == null)
-            throw new IllegalArgumentException();
+        this.log(Level.CONFIG, msg);
+    }
 
-        this.logger.config(msg.toString());
+    /**
+     * レベル CONFIG が有効な場合のみ、関数の戻り値をメッセージとしてロギングします。
+     *
+     * @param msgSupplier メッセージを返す関数。
+     */
+    public void config(Supplier<?> msgSupplier) {
+        this.log(Level.CONFIG, msgSupplier);
+    }
+
+    /**
+     * レベル CONFIG が有効な場合のみ、書式文字列と引数からメッセージを生成してロギングします。
+     * 引数が指定されない場合、書式文字列はそのままメッセージとなります。
+     *
+     * @param format {@link String#format} 形式の書式文字列。
+     * @param args   書式文字列の引数。
+     */
+    public void configf(String format, Object... args) {
+        this.log(Level.CONFIG, format, args);
     }
 
     /**
      * レベル FINE としてロギングします。
      *
-     * @param msg メッセージとなる文字列またはその他のオブジェクト。
+     * @param msg メッセージとなる文字列、その他のオブジェクト、またはメッセージを返す関数。
      */
     public void fine(Object msg) {
-        if (msg == null)
-            throw new IllegalArgumentException();
+        this.log(Level.FINE, msg);
+    }
 
-        this.logger.fine(msg.toString());
+    /**
+     * レベル FINE が有効な場合のみ、関数の戻り値をメッセージとしてロギングします。
+     *
+     * @param msgSupplier メッセージを返す関数。
+     */
+    public void fine(Supplier<?> msgSupplier) {
+        this.log(Level.FINE, msgSupplier);
+    }
+
+    /**
+     * レベル FINE が有効な場合のみ、書式文字列と引数からメッセージを生成してロギングします。
+     * 引数が指定されない場合、書式文字列はそのままメッセージとなります。
+     *
+     * @param format {@link String#format} 形式の書式文字列。
+     * @param args   書式文字列の引数。
+     */
+    public void finef(String format, Object... args) {
+        this.log(Level.FINE, format, args);
     }
 
     /**
      * レベル FINER としてロギングします。
      *
-     * @param msg メッセージとなる文字列またはその他のオブジェクト。
+     * @param msg メッセージとなる文字列、その他のオブジェクト、またはメッセージを返す関数。
      */
     public void finer(Object msg) {
-        if (msg == null)
-            throw new IllegalArgumentException();
+        this.log(Level.FINER, msg);
+    }
 
-        this.logger.finer(msg.toString());
+    /**
+     * レベル FINER が有効な場合のみ、関数の戻り値をメッセージとしてロギングします。
+     *
+     * @param msgSupplier メッセージを返す関数。
+     */
+    public void finer(Supplier<?> msgSupplier) {
+        this.log(Level.FINER, msgSupplier);
+    }
+
+    /**
+     * レベル FINER が有効な場合のみ、書式文字列と引数からメッセージを生成してロギングします。
+     * 引数が指定されない場合、書式文字列はそのままメッセージとなります。
+     *
+     * @param format {@link String#format} 形式の書式文字列。
+     * @param args   書式文字列の引数。
+     */
+    public void finerf(String format, Object... args) {
+        this.log(Level.FINER, format, args);
     }
 
     /**
      * レベル FINEST としてロギングします。
      *
-     * @param msg メッセージとなる文字列またはその他のオブジェクト。
+     * @param msg メッセージとなる文字列、その他のオブジェクト、またはメッセージを返す関数。
      */
     public void finest(Object msg) {
-        if (msg == null)
-            throw new IllegalArgumentException();
+        this.log(Level.FINEST, msg);
+    }
 
-        this.logger.finest(msg.toString());
+    /**
+     * レベル FINEST が有効な場合のみ、関数の戻り値をメッセージとしてロギングします。
+     *
+     * @param msgSupplier メッセージを返す関数。
+     */
+    public void finest(Supplier<?> msgSupplier) {
+        this.log(Level.FINEST, msgSupplier);
+    }
+
+    /**
+     * レベル FINEST が有効な場合のみ、書式文字列と引数からメッセージを生成してロギングします。
+     * 引数が指定されない場合、書式文字列はそのままメッセージとなります。
+     *
+     * @param format {@link String#format} 形式の書式文字列。
+     * @param args   書式文字列の引数。
+     */
+    public void finestf(String format, Object... args) {
+        this.log(Level.FINEST, format, args);
     }
 
     /**
      * レベル INFO としてロギングします。
      *
-     * @param msg メッセージとなる文字列またはその他のオブジェクト。
+     * @param msg メッセージとなる文字列、その他のオブジェクト、またはメッセージを返す関数。
      */
     public void info(Object msg) {
-        if (msg == null)
-            throw new IllegalArgumentException();
+        this.log(Level.INFO, msg);
+    }
 
-        this.logger.info(msg.toString());
+    /**
+     * レベル INFO が有効な場合のみ、関数の戻り値をメッセージとしてロギングします。
+     *
+     * @param msgSupplier メッセージを返す関数。
+     */
+    public void info(Supplier<?> msgSupplier) {
+        this.log(Level.INFO, msgSupplier);
+    }
+
+    /**
+     * レベル INFO が有効な場合のみ、書式文字列と引数からメッセージを生成してロギングします。
+     * 引数が指定されない場合、書式文字列はそのままメッセージとなります。
+     *
+     * @param format {@link String#format} 形式の書式文字列。
+     * @param args   書式文字列の引数。
+     */
+    public void infof(String format, Object... args) {
+        this.log(Level.INFO, format, args);
     }
 
     /**
      * レベル SEVERE としてロギングします。
      *
-     * @param msg メッセージとなる文字列またはその他のオブジェクト。
+     * @param msg メッセージとなる文字列、その他のオブジェクト、またはメッセージを返す関数。
      */
     public void severe(Object msg) {
-        if (msg == null)
-            throw new IllegalArgumentException();
+        this.log(Level.SEVERE, msg);
+    }
 
-        this.logger.severe(msg.toString());
+    /**
+     * レベル SEVERE が有効な場合のみ、関数の戻り値をメッセージとしてロギングします。
+     *
+     * @param msgSupplier メッセージを返す関数。
+     */
+    public void severe(Supplier<?> msgSupplier) {
+        this.log(Level.SEVERE, msgSupplier);
+    }
+
+    /**
+     * レベル SEVERE が有効な場合のみ、書式文字列と引数からメッセージを生成してロギングします。
+     * 引数が指定されない場合、書式文字列はそのままメッセージとなります。
+     *
+     * @param format {@link String#format} 形式の書式文字列。
+     * @param args   書式文字列の引数。
+     */
+    public void severef(String format, Object... args) {
+        this.log(Level.SEVERE, format, args);
     }
 
     /**
      * レベル WARNING としてロギングします。
      *
-     * @param msg メッセージとなる文字列またはその他のオブジェクト。
+     * @param msg メッセージとなる文字列、その他のオブジェクト、またはメッセージを返す関数。
      */
     public void warning(Object msg) {
+        this.log(Level.WARNING, msg);
+    }
+
+    /**
+     * レベル WARNING が有効な場合のみ、関数の戻り値をメッセージとしてロギングします。
+     *
+     * @param msgSupplier メッセージを返す関数。
+     */
+    public void warning(Supplier<?> msgSupplier) {
+        this.log(Level.WARNING, msgSupplier);
+    }
+
+    /**
+     * レベル WARNING が有効な場合のみ、書式文字列と引数からメッセージを生成してロギングします。
+     * 引数が指定されない場合、書式文字列はそのままメッセージとなります。
+     *
+     * @param format {@link String#format} 形式の書式文字列。
+     * @param args   書式文字列の引数。
+     */
+    public void warningf(String format, Object... args) {
+        this.log(Level.WARNING, format, args);
+    }
+
+    private void log(Level level, Object msg) {
         if (msg == null)
             throw new IllegalArgumentException();
 
-        this.logger.warning(msg.toString());
+        if (!this.logger.isLoggable(level))
+            return;
+
+        this.logger.log(level, resolveMessage(msg));
+    }
+
+    private void log(Level level, String format, Object[] args) {
+        if (format == null)
+            throw new IllegalArgumentException();
+
+        if (!this.logger.isLoggable(level))
+            return;
+
+        this.logger.log(level, (args == null || args.length == 0) ? format : String.format(format, args));
+    }
+
+    private static String resolveMessage(Object msg) {
+        if (msg instanceof Supplier)
+            return String.valueOf(((Supplier<?>) msg).get());
+
+        if (msg instanceof JSObject) {
+            JSObject jsObject = (JSObject) msg;
+
+            try {
+                if ("function".equals(jsObject.eval("typeof this")))
+                    return String.valueOf(jsObject.call("call", new Object[]{null}));
+            } catch (JSException e) {
+                //
+            }
+        }
+
+        return msg.toString();
     }
 }
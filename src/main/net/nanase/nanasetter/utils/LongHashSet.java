@@ -0,0 +1,303 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/28.
+ */
+
+/**
+ * <p>long 値をボックス化せずに保持するハッシュセットです。
+ * <p>値はオープンアドレス法 (線形探査) によって 1 つの long 配列に格納されます。
+ * 空きを表すために 0 を使用するため、値 0 は配列とは別に保持されます。
+ * 削除は後続の要素を詰め直すことで行われ、墓標は残りません。
+ * <p>このクラスはスレッドセーフではありません。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class LongHashSet implements Cloneable {
+    private static final int MIN_CAPACITY = 16;
+    private static final long PHI = 0x9e3779b97f4a7c15L;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * 空の LongHashSet クラスのインスタンスを初期化します。
+     */
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * 予想される要素数を指定して、空の LongHashSet クラスのインスタンスを初期化します。
+     *
+     * @param expectedSize 再ハッシュせずに格納できる要素数。
+     */
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException();
+
+        this.allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * 指定された配列の値をすべて含む LongHashSet オブジェクトを作成します。
+     *
+     * @param values 値の配列。
+     * @return 作成された LongHashSet オブジェクト。
+     */
+    public static LongHashSet of(long... values) {
+        LongHashSet set = new LongHashSet(values.length);
+
+        for (long value : values)
+            set.add(value);
+
+        return set;
+    }
+
+    /**
+     * 値を追加します。
+     *
+     * @param value 追加する値。
+     * @return 値が新たに追加されたとき true、既に含まれていたとき false。
+     */
+    public boolean add(long value) {
+        if (value == 0L) {
+            if (this.containsZero)
+                return false;
+
+            this.containsZero = true;
+            this.size++;
+            return true;
+        }
+
+        int index = this.indexOf(value);
+
+        while (this.table[index] != 0L) {
+            if (this.table[index] == value)
+                return false;
+
+            index = (index + 1) & this.mask;
+        }
+
+        this.table[index] = value;
+        this.size++;
+
+        // 負荷率を 1/2 以下に保つ
+        if (this.size * 2 > this.table.length)
+            this.rehash(this.table.length * 2);
+
+        return true;
+    }
+
+    /**
+     * 値が含まれているかを判定します。
+     *
+     * @param value 判定する値。
+     * @return 値が含まれているとき true、それ以外のとき false。
+     */
+    public boolean contains(long value) {
+        if (value == 0L)
+            return this.containsZero;
+
+        int index = this.indexOf(value);
+        long current;
+
+        while ((current = this.table[index]) != 0L) {
+            if (current == value)
+                return true;
+
+            index = (index + 1) & this.mask;
+        }
+
+        return false;
+    }
+
+    /**
+     * 値を削除します。
+     *
+     * @param value 削除する値。
+     * @return 値が削除されたとき true、含まれていなかったとき false。
+     */
+    public boolean remove(long value) {
+        if (value == 0L) {
+            if (!this.containsZero)
+                return false;
+
+            this.containsZero = false;
+            this.size--;
+            return true;
+        }
+
+        int index = this.indexOf(value);
+
+        while (this.table[index] != value) {
+            if (this.table[index] == 0L)
+                return false;
+
+            index = (index + 1) & this.mask;
+        }
+
+        this.shiftBack(index);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * 要素数を取得します。
+     *
+     * @return 要素数。
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * 要素を含まないかを判定します。
+     *
+     * @return 要素を含まないとき true、それ以外のとき false。
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * すべての要素を削除します。
+     */
+    public void clear() {
+        Arrays.fill(this.table, 0L);
+        this.size = 0;
+        this.containsZero = false;
+    }
+
+    /**
+     * すべての要素に対して処理を実行します。順序は規定されません。
+     *
+     * @param action 実行する処理。
+     */
+    public void forEach(LongConsumer action) {
+        if (this.containsZero)
+            action.accept(0L);
+
+        for (long value : this.table)
+            if (value != 0L)
+                action.accept(value);
+    }
+
+    /**
+     * すべての要素を昇順に並べた配列を取得します。
+     *
+     * @return 要素の配列。
+     */
+    public long[] toSortedArray() {
+        long[] array = new long[this.size];
+        int index = 0;
+
+        if (this.containsZero)
+            array[index++] = 0L;
+
+        for (long value : this.table)
+            if (value != 0L)
+                array[index++] = value;
+
+        Arrays.sort(array);
+        return array;
+    }
+
+    @Override
+    public LongHashSet clone() {
+        try {
+            LongHashSet set = (LongHashSet) super.clone();
+            set.table = this.table.clone();
+            return set;
+        } catch (CloneNotSupportedException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    // 削除した位置以降で、本来の位置がより前にある要素を詰め直す
+    private void shiftBack(int index) {
+        int hole = index;
+        int next = (hole + 1) & this.mask;
+        long current;
+
+        while ((current = this.table[next]) != 0L) {
+            int home = this.indexOf(current);
+
+            if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                this.table[hole] = current;
+                hole = next;
+            }
+
+            next = (next + 1) & this.mask;
+        }
+
+        this.table[hole] = 0L;
+    }
+
+    private int indexOf(long value) {
+        long hash = value * PHI;
+        return (int) (hash ^ (hash >>> 32)) & this.mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = this.table;
+        this.allocate(capacity);
+
+        for (long value : old) {
+            if (value == 0L)
+                continue;
+
+            int index = this.indexOf(value);
+
+            while (this.table[index] != 0L)
+                index = (index + 1) & this.mask;
+
+            this.table[index] = value;
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.table = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+
+        while (capacity < expectedSize * 2L && capacity < (1 << 30))
+            capacity <<= 1;
+
+        return capacity;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/23.
+ */
+
+/**
+ * <p>ログレコードを JSON Lines 形式でメモリマップトファイルに書き込むハンドラです。
+ * <p>レコードはロガー名ごとのディレクトリに分けて格納されるため、プラグインごとのログを個別に参照できます。
+ * 各ディレクトリには固定長のセグメントファイルが連番で作成され、セグメントが一杯になると次のセグメントに切り替わります。
+ * セグメントの数が上限を超えた場合、古いものから削除されます。セグメントの未使用領域は 0 で埋められたままとなります。
+ * 起動時には最後のセグメントに空きがあればその続きから追記するため、起動のたびにセグメントが増えることはありません。
+ * 切り替えられたセグメントのマップは直ちに解放されるため、古いセグメントは削除可能な状態となります。
+ * <p>1 行は以下のキーを持つ JSON オブジェクトです。
+ * <pre>
+ * {"time":ミリ秒,"level":"INFO","logger":"nanasetter.plugin","thread":1,"message":"...","thrown":"..."}
+ * </pre>
+ * 書き込まれたログは {@link MappedLogReader} で読み取ることができます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class MappedLogFileHandler extends Handler {
+    static final String SEGMENT_EXTENSION = ".jsonl";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    private final Map<String, Stream> streams;
+
+    private final StringBuilder lineBuilder;
+
+    private boolean closed;
+
+    /**
+     * 出力先のディレクトリを指定して、既定のセグメントサイズと数で新しい MappedLogFileHandler クラスのインスタンスを初期化します。
+     *
+     * @param directory ログを格納するディレクトリ。
+     */
+    public MappedLogFileHandler(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * 出力先のディレクトリ、セグメントサイズ、ロガーごとのセグメントの最大数を指定して
+     * 新しい MappedLogFileHandler クラスのインスタンスを初期化します。
+     *
+     * @param directory   ログを格納するディレクトリ。
+     * @param segmentSize 1 セグメントのバイト数。
+     * @param maxSegments ロガーごとに保持されるセグメントの最大数。
+     */
+    public MappedLogFileHandler(Path directory, int segmentSize, int maxSegments) {
+        if (directory == null)
+            throw new IllegalArgumentException();
+
+        if (segmentSize < 1 || maxSegments < 1)
+            throw new IllegalArgumentException();
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.streams = new HashMap<>();
+        this.lineBuilder = new StringBuilder(256);
+    }
+
+    /**
+     * ログレコードをロガー名に対応するセグメントに書き込みます。
+     *
+     * @param record ログレコード。
+     */
+    @Override
+    public synchronized void publish(LogRecord record) {
+        if (record == null || this.closed || !this.isLoggable(record))
+            return;
+
+        this.lineBuilder.setLength(0);
+        writeRecord(this.lineBuilder, record);
+        byte[] line = this.lineBuilder.toString().getBytes(StandardCharsets.UTF_8);
+
+        try {
+            this.getStream(record.getLoggerName()).write(line);
+        } catch (IOException ex) {
+            this.reportError(null, ex, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    /**
+     * 書き込まれた内容をストレージに反映します。
+     */
+    @Override
+    public synchronized void flush() {
+        for (Stream stream : this.streams.values())
+            stream.force();
+    }
+
+    /**
+     * 書き込まれた内容をストレージに反映し、すべてのセグメントを閉じます。
+     */
+    @Override
+    public synchronized void close() throws SecurityException {
+        if (this.closed)
+            return;
+
+        this.closed = true;
+
+        for (Stream stream : this.streams.values()) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                this.reportError(null, ex, ErrorManager.CLOSE_FAILURE);
+            }
+        }
+
+        this.streams.clear();
+    }
+
+    /**
+     * ロガー名をディレクトリ名として使用できる文字列に変換します。
+     *
+     * @param loggerName ロガー名。
+     * @return ディレクトリ名。
+     */
+    static String toStreamName(String loggerName) {
+        if (loggerName == null || loggerName.isEmpty())
+            return "_";
+
+        StringBuilder sb = new StringBuilder(loggerName.length());
+
+        for (int i = 0; i < loggerName.length(); i++) {
+            char c = loggerName.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * 指定されたディレクトリ内のセグメントファイルを古い順に列挙します。
+     *
+     * @param streamDirectory ロガーごとのディレクトリ。
+     * @return セグメントファイルのリスト。ディレクトリが存在しない場合は空のリスト。
+     * @throws IOException ディレクトリの列挙に失敗した場合に発生します。
+     */
+    static List<Path> listSegments(Path streamDirectory) throws IOException {
+        if (!Files.isDirectory(streamDirectory))
+            return Collections.emptyList();
+
+        List<Path> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(streamDirectory, "*" + SEGMENT_EXTENSION)) {
+            for (Path path : ds)
+                segments.add(path);
+        }
+
+        // ファイル名は固定長の連番のため、名前順がそのまま作成順となる
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Stream getStream(String loggerName) throws IOException {
+        String name = toStreamName(loggerName);
+        Stream stream = this.streams.get(name);
+
+        if (stream == null) {
+            stream = new Stream(this.directory.resolve(name));
+            this.streams.put(name, stream);
+        }
+
+        return stream;
+    }
+
+    private static void writeRecord(StringBuilder sb, LogRecord record) {
+        sb.append("{\"time\":").append(record.getMillis())
+                .append(",\"level\":");
+        writeString(sb, record.getLevel().getName());
+        sb.append(",\"logger\":");
+        writeString(sb, record.getLoggerName());
+        sb.append(",\"thread\":").append(record.getThreadID())
+                .append(",\"message\":");
+        writeString(sb, record.getMessage());
+
+        if (record.getThrown() != null) {
+            StringWriter sw = new StringWriter();
+
+            try (PrintWriter pw = new PrintWriter(sw)) {
+                record.getThrown().printStackTrace(pw);
+            }
+
+            sb.append(",\"thrown\":");
+            writeString(sb, sw.toString());
+        }
+
+        sb.append("}\n");
+    }
+
+    private static void writeString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+
+        sb.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+
+                case '\n':
+                    sb.append("\\n");
+                    break;
+
+                case '\r':
+                    sb.append("\\r");
+                    break;
+
+                case '\t':
+                    sb.append("\\t");
+                    break;
+
+                default:
+                    // 制御文字はエスケープされるため、セグメント中に 0 のバイトが現れることはない
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+
+        sb.append('"');
+    }
+
+    private class Stream {
+        private final Path streamDirectory;
+
+        private long sequence;
+
+        private FileChannel channel;
+
+        private MappedByteBuffer buffer;
+
+        private Stream(Path streamDirectory) throws IOException {
+            this.streamDirectory = streamDirectory;
+            Files.createDirectories(streamDirectory);
+
+            List<Path> segments = listSegments(streamDirectory);
+
+            if (segments.isEmpty())
+                return;
+
+            Path last = segments.get(segments.size() - 1);
+            String fileName = last.getFileName().toString();
+
+            try {
+                this.sequence = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_EXTENSION.length())) + 1;
+            } catch (NumberFormatException ex) {
+                this.sequence = segments.size();
+            }
+
+            this.reopen(last);
+        }
+
+        // 最後のセグメントに空きがあれば、書き込まれた領域の続きから追記する
+        private void reopen(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                channel.close();
+                return;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int end = MappedLogReader.findDataEnd(buffer);
+
+            // 書き込み途中で終了した行は改行で閉じ、読み取り時に不正な行として読み飛ばされるようにする
+            if (end > 0 && buffer.get(end - 1) != '\n' && end < size)
+                buffer.put(end++, (byte) '\n');
+
+            if (end >= size) {
+                MappedBufferUtils.unmap(buffer);
+                channel.close();
+                return;
+            }
+
+            buffer.position(end);
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void write(byte[] line) throws IOException {
+            if (this.buffer == null || this.buffer.remaining() < line.length)
+                this.rotate(line.length);
+
+            this.buffer.put(line);
+        }
+
+        private void rotate(int required) throws IOException {
+            this.close();
+
+            Path path = this.streamDirectory.resolve(String.format("%016d%s", this.sequence++, SEGMENT_EXTENSION));
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            // セグメントより大きいレコードはそのレコードのみを含むセグメントとする
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(MappedLogFileHandler.this.segmentSize, required));
+
+            this.deleteOldSegments();
+        }
+
+        private void deleteOldSegments() throws IOException {
+            List<Path> segments = listSegments(this.streamDirectory);
+
+            for (int i = 0; i < segments.size() - MappedLogFileHandler.this.maxSegments; i++) {
+                try {
+                    Files.deleteIfExists(segments.get(i));
+                } catch (IOException ex) {
+                    // マップが解放されていないファイルは削除できない環境があるため、次の切り替え時に再試行する
+                }
+            }
+        }
+
+        private void force() {
+            if (this.buffer != null)
+                this.buffer.force();
+        }
+
+        private void close() throws IOException {
+            this.force();
+            MappedBufferUtils.unmap(this.buffer);
+            this.buffer = null;
+
+            if (this.channel != null) {
+                this.channel.close();
+                this.channel = null;
+            }
+        }
+    }
+}
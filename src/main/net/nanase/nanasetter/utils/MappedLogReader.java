@@ -0,0 +1,378 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/23.
+ */
+
+/**
+ * <p>{@link MappedLogFileHandler} によって書き込まれたログを読み取ります。
+ * <p>セグメントはメモリマップトファイルとして参照されるため、ファイル全体を読み込むことなく末尾の数行の取得や
+ * 条件による絞り込みを行うことができます。書き込み途中の行は読み取られません。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class MappedLogReader {
+    private final Path directory;
+
+    /**
+     * ログが格納されているディレクトリを指定して新しい MappedLogReader クラスのインスタンスを初期化します。
+     *
+     * @param directory ログが格納されているディレクトリ。
+     */
+    public MappedLogReader(Path directory) {
+        if (directory == null)
+            throw new IllegalArgumentException();
+
+        this.directory = directory;
+    }
+
+    /**
+     * ログが格納されているロガーごとのディレクトリ名を列挙します。
+     *
+     * @return ディレクトリ名のリスト。
+     * @throws IOException ディレクトリの列挙に失敗した場合に発生します。
+     */
+    public List<String> getStreamNames() throws IOException {
+        if (!Files.isDirectory(this.directory))
+            return Collections.emptyList();
+
+        List<String> names = new ArrayList<>();
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(this.directory, Files::isDirectory)) {
+            for (Path path : ds)
+                names.add(path.getFileName().toString());
+        }
+
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * 指定されたロガーのセグメントファイルを古い順に列挙します。
+     *
+     * @param loggerName ロガー名。
+     * @return セグメントファイルのリスト。
+     * @throws IOException ディレクトリの列挙に失敗した場合に発生します。
+     */
+    public List<Path> getSegments(String loggerName) throws IOException {
+        return MappedLogFileHandler.listSegments(this.directory.resolve(MappedLogFileHandler.toStreamName(loggerName)));
+    }
+
+    /**
+     * 指定されたロガーの最新のレコードを指定された数だけ取得します。
+     *
+     * @param loggerName ロガー名。
+     * @param count      取得するレコードの最大数。
+     * @return 古い順に並べられたレコードのリスト。
+     * @throws IOException セグメントの読み取りに失敗した場合に発生します。
+     */
+    public List<Entry> tail(String loggerName, int count) throws IOException {
+        if (count < 0)
+            throw new IllegalArgumentException();
+
+        List<Path> segments = this.getSegments(loggerName);
+        List<Entry> entries = new ArrayList<>(Math.min(count, 1024));
+
+        for (int i = segments.size() - 1; i >= 0 && entries.size() < count; i--) {
+            MappedByteBuffer buffer = map(segments.get(i));
+
+            if (buffer == null)
+                continue;
+
+            try {
+                int lineEnd = findLastLineEnd(buffer);
+
+                while (lineEnd > 0 && entries.size() < count) {
+                    int start = lineEnd - 2;
+
+                    while (start >= 0 && buffer.get(start) != '\n')
+                        start--;
+
+                    Entry entry = Entry.parse(decode(buffer, start + 1, lineEnd - 1));
+
+                    if (entry != null)
+                        entries.add(entry);
+
+                    lineEnd = start + 1;
+                }
+            } finally {
+                MappedBufferUtils.unmap(buffer);
+            }
+        }
+
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    /**
+     * 指定されたロガーのレコードのうち、条件を満たすものを古い順に処理します。
+     *
+     * @param loggerName ロガー名。
+     * @param since      この時刻 (ミリ秒) より前のレコードは処理されません。
+     * @param filter     レコードを処理するかを判定する関数。
+     * @param action     レコードを処理する関数。
+     * @throws IOException セグメントの読み取りに失敗した場合に発生します。
+     */
+    public void forEach(String loggerName, long since, Predicate<? super Entry> filter, Consumer<? super Entry> action)
+            throws IOException {
+        if (filter == null || action == null)
+            throw new IllegalArgumentException();
+
+        List<Path> segments = this.getSegments(loggerName);
+
+        for (int i = 0; i < segments.size(); i++) {
+            // 次のセグメントの先頭が基準時刻より前であれば、このセグメントはすべて基準時刻より前である
+            if (i + 1 < segments.size()) {
+                Entry next = readFirst(segments.get(i + 1));
+
+                if (next != null && next.getTime() < since)
+                    continue;
+            }
+
+            MappedByteBuffer buffer = map(segments.get(i));
+
+            if (buffer == null)
+                continue;
+
+            try {
+                int end = findLastLineEnd(buffer);
+
+                for (int start = 0, lineEnd; start < end; start = lineEnd + 1) {
+                    lineEnd = start;
+
+                    while (buffer.get(lineEnd) != '\n')
+                        lineEnd++;
+
+                    Entry entry = Entry.parse(decode(buffer, start, lineEnd));
+
+                    if (entry != null && entry.getTime() >= since && filter.test(entry))
+                        action.accept(entry);
+                }
+            } finally {
+                MappedBufferUtils.unmap(buffer);
+            }
+        }
+    }
+
+    /**
+     * 指定されたロガーのレコードのうち、条件を満たすものを古い順に取得します。
+     *
+     * @param loggerName ロガー名。
+     * @param since      この時刻 (ミリ秒) より前のレコードは取得されません。
+     * @param filter     レコードを取得するかを判定する関数。
+     * @return レコードのリスト。
+     * @throws IOException セグメントの読み取りに失敗した場合に発生します。
+     */
+    public List<Entry> filter(String loggerName, long since, Predicate<? super Entry> filter) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        this.forEach(loggerName, since, filter, entries::add);
+        return entries;
+    }
+
+    private static Entry readFirst(Path segment) throws IOException {
+        MappedByteBuffer buffer = map(segment);
+
+        if (buffer == null)
+            return null;
+
+        try {
+            int end = findLastLineEnd(buffer);
+
+            for (int i = 0; i < end; i++)
+                if (buffer.get(i) == '\n')
+                    return Entry.parse(decode(buffer, 0, i));
+
+            return null;
+        } finally {
+            MappedBufferUtils.unmap(buffer);
+        }
+    }
+
+    private static MappedByteBuffer map(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size == 0 || size > Integer.MAX_VALUE)
+                return null;
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * 最後の完全な行の終端 (改行の次の位置) を取得します。
+     */
+    private static int findLastLineEnd(MappedByteBuffer buffer) {
+        int end = findDataEnd(buffer);
+
+        while (end > 0 && buffer.get(end - 1) != '\n')
+            end--;
+
+        return end;
+    }
+
+    /**
+     * 書き込まれた領域の終端 (未使用領域の先頭) を取得します。
+     */
+    static int findDataEnd(MappedByteBuffer buffer) {
+        // 書き込まれた領域には 0 のバイトが現れないため、未使用領域の先頭を二分探索で求められる
+        int low = 0;
+        int high = buffer.limit();
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (buffer.get(mid) == 0)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+
+        return low;
+    }
+
+    private static String decode(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(start + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * ログファイルに格納された 1 件のレコードを表します。
+     */
+    public static class Entry {
+        private final long time;
+        private final Level level;
+        private final String loggerName;
+        private final long threadId;
+        private final String message;
+        private final String thrown;
+
+        private Entry(long time, Level level, String loggerName, long threadId, String message, String thrown) {
+            this.time = time;
+            this.level = level;
+            this.loggerName = loggerName;
+            this.threadId = threadId;
+            this.message = message;
+            this.thrown = thrown;
+        }
+
+        private static Entry parse(String line) {
+            try {
+                Object value = JSONParser.parse(line);
+
+                if (!(value instanceof Map))
+                    return null;
+
+                Map<?, ?> map = (Map<?, ?>) value;
+
+                return new Entry(((Number) map.get("time")).longValue(),
+                        Level.parse((String) map.get("level")),
+                        (String) map.get("logger"),
+                        ((Number) map.get("thread")).longValue(),
+                        (String) map.get("message"),
+                        (String) map.get("thrown"));
+            } catch (IllegalArgumentException | ClassCastException | NullPointerException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * レコードが作成された時刻 (ミリ秒) を取得します。
+         *
+         * @return 1970 年 1 月 1 日 00:00:00 GMT からのミリ秒。
+         */
+        public long getTime() {
+            return this.time;
+        }
+
+        /**
+         * レコードのログレベルを取得します。
+         *
+         * @return Level オブジェクト。
+         */
+        public Level getLevel() {
+            return this.level;
+        }
+
+        /**
+         * レコードを出力したロガーの名前を取得します。
+         *
+         * @return ロガー名。
+         */
+        public String getLoggerName() {
+            return this.loggerName;
+        }
+
+        /**
+         * レコードを出力したスレッドの ID を取得します。
+         *
+         * @return スレッド ID。
+         */
+        public long getThreadId() {
+            return this.threadId;
+        }
+
+        /**
+         * レコードのメッセージを取得します。
+         *
+         * @return メッセージ文字列。
+         */
+        public String getMessage() {
+            return this.message;
+        }
+
+        /**
+         * レコードに関連付けられた例外のスタックトレースを取得します。
+         *
+         * @return スタックトレースの文字列。例外が関連付けられていない場合は null。
+         */
+        public String getThrown() {
+            return this.thrown;
+        }
+    }
+}
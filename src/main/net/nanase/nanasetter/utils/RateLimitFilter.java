@@ -0,0 +1,276 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Filter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/24.
+ */
+
+/**
+ * <p>ロガーに設定し、出力されるレコードの数を制限するフィルタです。
+ * <p>レコードの出力はトークンバケットによって制限され、一時的に集中したレコードは許容されますが、
+ * 一定の割合を超えて出力され続けるレコードは破棄されます。破棄された件数は、再び出力できるようになった時点で警告として出力されます。
+ * <p>また、直前と同じレベルとメッセージのレコードが一定時間内に出力された場合、そのレコードは出力されません。
+ * 異なるレコードが出力されるか一定時間が経過したのちに、繰り返された回数が出力されます。
+ * <p>集計結果は次のレコードを待たずに出力されるよう、共有のタイマースレッドから 1 秒ごとに確認されます。
+ * フィルタが不要になった場合は {@link #close()} を呼び出してタイマーから登録を解除してください。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class RateLimitFilter implements Filter, AutoCloseable {
+    private static final int DEFAULT_BURST = 50;
+
+    private static final double DEFAULT_RECORDS_PER_SECOND = 10.0;
+
+    private static final long DEFAULT_REPEAT_WINDOW_MILLIS = 10000L;
+
+    private static final long SUMMARY_INTERVAL_MILLIS = 1000L;
+
+    private final Logger logger;
+
+    private final double burst;
+
+    private final double tokensPerNano;
+
+    private final long repeatWindowNanos;
+
+    private final LongSupplier clock;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    private Level lastLevel;
+
+    private String lastMessage;
+
+    private long lastMessageTime;
+
+    private int repeatCount;
+
+    private long droppedCount;
+
+    private ScheduledFuture<?> summaryTask;
+
+    /**
+     * 制限を適用するロガーを指定して、既定の制限値で新しい RateLimitFilter クラスのインスタンスを初期化します。
+     *
+     * @param logger 制限を適用し、集計されたレコードを出力する Logger オブジェクト。
+     */
+    public RateLimitFilter(Logger logger) {
+        this(logger, DEFAULT_BURST, DEFAULT_RECORDS_PER_SECOND, DEFAULT_REPEAT_WINDOW_MILLIS);
+    }
+
+    /**
+     * 制限を適用するロガーと制限値を指定して新しい RateLimitFilter クラスのインスタンスを初期化します。
+     *
+     * @param logger             制限を適用し、集計されたレコードを出力する Logger オブジェクト。
+     * @param burst              連続して出力できるレコードの最大数。
+     * @param recordsPerSecond   1 秒あたりに出力できるレコードの数。
+     * @param repeatWindowMillis 同じレコードをまとめる時間 (ミリ秒)。
+     */
+    public RateLimitFilter(Logger logger, int burst, double recordsPerSecond, long repeatWindowMillis) {
+        this(logger, burst, recordsPerSecond, repeatWindowMillis, System::nanoTime);
+
+        this.summaryTask = SummaryTimer.SCHEDULER.scheduleWithFixedDelay(this::flushSummaries,
+                SUMMARY_INTERVAL_MILLIS, SUMMARY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    RateLimitFilter(Logger logger, int burst, double recordsPerSecond, long repeatWindowMillis, LongSupplier clock) {
+        if (logger == null || clock == null)
+            throw new IllegalArgumentException();
+
+        if (burst < 1 || !(recordsPerSecond > 0.0) || repeatWindowMillis < 0)
+            throw new IllegalArgumentException();
+
+        this.logger = logger;
+        this.burst = burst;
+        this.tokensPerNano = recordsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.repeatWindowNanos = TimeUnit.MILLISECONDS.toNanos(repeatWindowMillis);
+        this.clock = clock;
+        this.tokens = burst;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * レコードを出力するかを判定します。
+     *
+     * @param record ログレコード。
+     * @return 出力するとき true、破棄するとき false。
+     */
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        if (record instanceof SummaryRecord)
+            return true;
+
+        LogRecord repeatSummary = null;
+        LogRecord dropSummary = null;
+        boolean loggable;
+
+        synchronized (this) {
+            long now = this.clock.getAsLong();
+
+            if (this.lastMessage != null &&
+                    record.getLevel().equals(this.lastLevel) &&
+                    Objects.equals(record.getMessage(), this.lastMessage) &&
+                    now - this.lastMessageTime < this.repeatWindowNanos) {
+                this.repeatCount++;
+                return false;
+            }
+
+            if (this.repeatCount > 0) {
+                repeatSummary = this.createSummary(this.lastLevel,
+                        String.format("前のメッセージが %d 回繰り返されました: %s", this.repeatCount, this.lastMessage));
+                this.repeatCount = 0;
+            }
+
+            this.refill(now);
+            loggable = this.tokens >= 1.0;
+
+            if (loggable) {
+                this.tokens -= 1.0;
+
+                if (this.droppedCount > 0) {
+                    dropSummary = this.createSummary(Level.WARNING,
+                            String.format("出力が多すぎるため %d 件のメッセージが破棄されました", this.droppedCount));
+                    this.droppedCount = 0;
+                }
+
+                this.lastLevel = record.getLevel();
+                this.lastMessage = record.getMessage();
+                this.lastMessageTime = now;
+            } else {
+                this.droppedCount++;
+            }
+        }
+
+        // 集計結果は判定中のレコードより先に出力する
+        if (repeatSummary != null)
+            this.logger.log(repeatSummary);
+
+        if (dropSummary != null)
+            this.logger.log(dropSummary);
+
+        return loggable;
+    }
+
+    /**
+     * 同じレコードをまとめる時間が経過した繰り返しの回数と、再び出力できるようになった破棄の件数を出力します。
+     */
+    void flushSummaries() {
+        LogRecord repeatSummary = null;
+        LogRecord dropSummary = null;
+
+        synchronized (this) {
+            long now = this.clock.getAsLong();
+
+            if (this.repeatCount > 0 && now - this.lastMessageTime >= this.repeatWindowNanos) {
+                repeatSummary = this.createSummary(this.lastLevel,
+                        String.format("前のメッセージが %d 回繰り返されました: %s", this.repeatCount, this.lastMessage));
+                this.repeatCount = 0;
+            }
+
+            this.refill(now);
+
+            if (this.droppedCount > 0 && this.tokens >= 1.0) {
+                dropSummary = this.createSummary(Level.WARNING,
+                        String.format("出力が多すぎるため %d 件のメッセージが破棄されました", this.droppedCount));
+                this.droppedCount = 0;
+            }
+        }
+
+        if (repeatSummary != null)
+            this.logger.log(repeatSummary);
+
+        if (dropSummary != null)
+            this.logger.log(dropSummary);
+    }
+
+    /**
+     * 集計結果を定期的に出力するタイマーから登録を解除します。解除後もフィルタとしての判定は継続されます。
+     */
+    @Override
+    public void close() {
+        ScheduledFuture<?> summaryTask;
+
+        synchronized (this) {
+            summaryTask = this.summaryTask;
+            this.summaryTask = null;
+        }
+
+        if (summaryTask != null)
+            summaryTask.cancel(false);
+    }
+
+    private void refill(long now) {
+        long elapsed = now - this.lastRefill;
+
+        if (elapsed <= 0)
+            return;
+
+        this.tokens = Math.min(this.burst, this.tokens + elapsed * this.tokensPerNano);
+        this.lastRefill = now;
+    }
+
+    private LogRecord createSummary(Level level, String message) {
+        LogRecord record = new SummaryRecord(level, message);
+        record.setLoggerName(this.logger.getName());
+        return record;
+    }
+
+    private static class SummaryTimer {
+        private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+        // 取り消されたタスクがフィルタとロガーを参照し続けないよう、キューから直ちに取り除く
+        private static ScheduledThreadPoolExecutor createScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "nanasetter-log-summary");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    private static class SummaryRecord extends LogRecord {
+        private static final long serialVersionUID = 1L;
+
+        private SummaryRecord(Level level, String msg) {
+            super(level, msg);
+        }
+    }
+}
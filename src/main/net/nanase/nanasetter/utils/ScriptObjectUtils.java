@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/31.
+ */
+
+/**
+ * <p>ヘッドレスランタイムの JavaScript エンジン (Nashorn) から渡されるオブジェクトを扱う機能を提供します。
+ * <p>Nashorn のオブジェクトは JDK 同梱版と単体配布版でパッケージが異なるため、どちらの {@code JSObject} インタフェースにも
+ * 対応するようにリフレクションで呼び出します。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class ScriptObjectUtils {
+    private static final String[] INTERFACE_NAMES = {
+            "jdk.nashorn.api.scripting.JSObject",
+            "org.openjdk.nashorn.api.scripting.JSObject"
+    };
+
+    private static final ClassValue<Optional<Accessor>> ACCESSORS = new ClassValue<Optional<Accessor>>() {
+        @Override
+        protected Optional<Accessor> computeValue(Class<?> type) {
+            return Optional.ofNullable(Accessor.find(type));
+        }
+    };
+
+    /**
+     * 指定されたオブジェクトが JavaScript エンジンのオブジェクトであるかの真偽値を取得します。
+     *
+     * @param object 対象のオブジェクト。
+     * @return JavaScript エンジンのオブジェクトであるとき true、それ以外のとき false。
+     */
+    public static boolean isScriptObject(Object object) {
+        return object != null && ACCESSORS.get(object.getClass()).isPresent();
+    }
+
+    /**
+     * 指定されたオブジェクトが JavaScript の関数であるかの真偽値を取得します。
+     *
+     * @param object 対象のオブジェクト。
+     * @return JavaScript の関数であるとき true、それ以外のとき false。
+     */
+    public static boolean isFunction(Object object) {
+        if (object == null)
+            return false;
+
+        Accessor accessor = ACCESSORS.get(object.getClass()).orElse(null);
+        return accessor != null && Boolean.TRUE.equals(invoke(accessor.isFunction, object));
+    }
+
+    /**
+     * JavaScript の関数を this を null として呼び出します。関数は呼び出し元のスレッドで実行されます。
+     *
+     * @param function JavaScript の関数。
+     * @param args     関数に渡される引数。
+     * @return 関数の戻り値。
+     * @throws IllegalArgumentException 関数でないオブジェクトが指定されました。
+     */
+    public static Object call(Object function, Object... args) {
+        if (!isFunction(function))
+            throw new IllegalArgumentException();
+
+        return invoke(ACCESSORS.get(function.getClass()).get().call, function, null, args);
+    }
+
+    /**
+     * 指定された JavaScript のオブジェクトの内容を、{@link JSONParser} と同じ形式の Java オブジェクトに変換します。
+     * オブジェクトは変更不可能な {@code Map<String, Object>}、配列は変更不可能な {@code List<Object>} に変換され、
+     * 関数は null になります。JavaScript のオブジェクトでない値はそのまま返されます。
+     *
+     * @param object 対象のオブジェクト。
+     * @return 変換されたオブジェクト。
+     */
+    public static Object snapshot(Object object) {
+        if (object instanceof Double)
+            return normalizeNumber((Double) object);
+
+        if (!isScriptObject(object))
+            return object;
+
+        Accessor accessor = ACCESSORS.get(object.getClass()).get();
+
+        if (Boolean.TRUE.equals(invoke(accessor.isFunction, object)))
+            return null;
+
+        if (Boolean.TRUE.equals(invoke(accessor.isArray, object))) {
+            Object length = invoke(accessor.getMember, object, "length");
+            int size = (length instanceof Number) ? ((Number) length).intValue() : 0;
+            List<Object> list = new ArrayList<>(size);
+
+            for (int i = 0; i < size; i++)
+                list.add(snapshot(invoke(accessor.getSlot, object, i)));
+
+            return Collections.unmodifiableList(list);
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        for (Object key : (Iterable<?>) invoke(accessor.keySet, object))
+            map.put(String.valueOf(key), snapshot(invoke(accessor.getMember, object, String.valueOf(key))));
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static Object normalizeNumber(Double value) {
+        double d = value;
+
+        if (d == Math.rint(d) && !Double.isInfinite(d)) {
+            if (d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE)
+                return (int) d;
+
+            if (d >= Long.MIN_VALUE && d <= Long.MAX_VALUE)
+                return (long) d;
+        }
+
+        return value;
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private static class Accessor {
+        private final Method isFunction;
+        private final Method isArray;
+        private final Method call;
+        private final Method getMember;
+        private final Method getSlot;
+        private final Method keySet;
+
+        private Accessor(Class<?> type) throws NoSuchMethodException {
+            this.isFunction = type.getMethod("isFunction");
+            this.isArray = type.getMethod("isArray");
+            this.call = type.getMethod("call", Object.class, Object[].class);
+            this.getMember = type.getMethod("getMember", String.class);
+            this.getSlot = type.getMethod("getSlot", int.class);
+            this.keySet = type.getMethod("keySet");
+        }
+
+        private static Accessor find(Class<?> type) {
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Class<?> i : c.getInterfaces()) {
+                    for (String name : INTERFACE_NAMES) {
+                        if (!name.equals(i.getName()))
+                            continue;
+
+                        try {
+                            // 実装クラスが公開されていない場合に備え、インタフェースのメソッドを使う
+                            return new Accessor(i);
+                        } catch (NoSuchMethodException ex) {
+                            return null;
+                        }
+                    }
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/19.
+ */
+
+/**
+ * {@link JSObjectUtils#snapshot} で取得したオブジェクトから、型を指定して値を取得する機能を提供します。
+ * メソッドは JSObjectUtils と同じ規則で値を返しますが、JavaScript とのやりとりは発生しません。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class SnapshotUtils {
+    /**
+     * 指定された Map に指定した名前を持つメンバが存在するかの真偽値を取得します。
+     *
+     * @param map  対象となる Map。
+     * @param name 対象のメンバ名。
+     * @return メンバが存在するとき true、それ以外のとき false。
+     */
+    public static boolean hasMember(Map<String, ?> map, String name) {
+        return map != null && name != null && map.containsKey(name);
+    }
+
+    /**
+     * 指定された Map のメンバの一覧を取得します。
+     *
+     * @param map 対象となる Map。
+     * @return メンバの一覧を内包した {@code Stream<String>}。
+     */
+    public static Stream<String> getMembersList(Map<String, ?> map) {
+        if (map == null)
+            return Stream.empty();
+
+        return map.keySet().stream();
+    }
+
+    /**
+     * 指定された Map に該当する型を持つメンバが存在するときに、指定された関数を実行します。
+     *
+     * @param map      対象となる Map。
+     * @param name     対象のメンバ名。
+     * @param tClass   メンバの {@code Class<T>} クラス。
+     * @param consumer メンバが存在するときに実行される関数インタフェース。
+     * @param <T>      メンバの型。
+     */
+    public static <T> void ifExists(Map<String, ?> map, String name, Class<T> tClass, Consumer<T> consumer) {
+        if (consumer == null)
+            return;
+
+        getMember(map, name, tClass).ifPresent(consumer);
+    }
+
+    /**
+     * 指定された Map のメンバの値を取得します。
+     * 数値は要求された型に応じて Integer、Long および Double の間で変換されます。
+     *
+     * @param map    対象となる Map。
+     * @param name   対象のメンバ名。
+     * @param tClass メンバの {@code Class<T>} クラス。
+     * @param <T>    メンバの型。
+     * @return メンバの値を内包した {@code Optional<T>}。
+     */
+    public static <T> Optional<T> getMember(Map<String, ?> map, String name, Class<T> tClass) {
+        if (map == null)
+            return Optional.empty();
+
+        if (name == null)
+            return Optional.empty();
+
+        return cast(map.get(name), tClass);
+    }
+
+    /**
+     * 指定された Map のメンバをオブジェクトとして取得します。
+     *
+     * @param map  対象となる Map。
+     * @param name 対象のメンバ名。
+     * @return メンバを格納した {@code Map<String, Object>} を内包した {@code Optional}。
+     */
+    @SuppressWarnings("unchecked")
+    public static Optional<Map<String, Object>> getObject(Map<String, ?> map, String name) {
+        return getMember(map, name, Map.class).map(m -> (Map<String, Object>) m);
+    }
+
+    /**
+     * 指定された Map のメンバを配列として複数の値を取得します。
+     * 配列の要素に一つでも該当しない型が含まれる場合は空の Stream を返します。
+     *
+     * @param map    対象となる Map。
+     * @param name   対象のメンバ名。
+     * @param tClass 配列の {@code Class<T>} クラス。
+     * @param <T>    配列の型。
+     * @return 配列を内包した {@code Stream<T>}。
+     */
+    public static <T> Stream<T> getArray(Map<String, ?> map, String name, Class<T> tClass) {
+        return getMember(map, name, List.class)
+                .map(l -> getArray((List<?>) l, tClass))
+                .orElse(Stream.empty());
+    }
+
+    /**
+     * 指定された List の要素を複数の値として取得します。
+     * 要素に一つでも該当しない型が含まれる場合は空の Stream を返します。
+     *
+     * @param list   対象となる List。
+     * @param tClass 配列の {@code Class<T>} クラス。
+     * @param <T>    配列の型。
+     * @return 配列を内包した {@code Stream<T>}。
+     */
+    public static <T> Stream<T> getArray(List<?> list, Class<T> tClass) {
+        if (list == null)
+            return Stream.empty();
+
+        if (tClass == null)
+            return Stream.empty();
+
+        List<T> result = new ArrayList<>(list.size());
+
+        for (Object obj : list) {
+            Optional<T> value = cast(obj, tClass);
+
+            if (!value.isPresent())
+                return Stream.empty();
+
+            result.add(value.get());
+        }
+
+        return result.stream();
+    }
+
+    private static <T> Optional<T> cast(Object obj, Class<T> tClass) {
+        if (tClass == null || obj == null)
+            return Optional.empty();
+
+        if (tClass.isInstance(obj))
+            return Optional.of(tClass.cast(obj));
+
+        if (obj instanceof Number) {
+            Number number = (Number) obj;
+
+            if (tClass == Long.class && !(obj instanceof Double))
+                return Optional.of(tClass.cast(number.longValue()));
+
+            if (tClass == Double.class)
+                return Optional.of(tClass.cast(number.doubleValue()));
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/24.
+ */
+
+/**
+ * <p>起動処理の各段階に要した時間を記録します。
+ * <p>時刻は JVM の起動時刻を基準として記録されるため、最初の段階の開始時刻は JVM の起動から main メソッドまでの時間を表します。
+ * 段階は入れ子になっていても、時間的に重なっていても構いません。すべての段階が終了したのち {@link #complete()} を呼び出すと、
+ * {@link #setOnComplete} で設定された処理が実行されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+public class StartupTimer {
+    private static final StartupTimer instance = new StartupTimer();
+
+    private final long baseNanos;
+
+    private final Map<String, long[]> phases;
+
+    private Consumer<StartupTimer> onComplete;
+
+    private long completedNanos = -1;
+
+    StartupTimer() {
+        long sinceJvmStartMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        this.baseNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(Math.max(0, sinceJvmStartMillis));
+        this.phases = new LinkedHashMap<>();
+    }
+
+    /**
+     * アプリケーションの起動時間を記録する StartupTimer オブジェクトを取得します。
+     *
+     * @return StartupTimer オブジェクト。
+     */
+    public static StartupTimer getInstance() {
+        return instance;
+    }
+
+    /**
+     * 段階の開始を記録します。
+     *
+     * @param phase 段階の名前。
+     */
+    public synchronized void begin(String phase) {
+        if (phase == null)
+            throw new IllegalArgumentException();
+
+        this.phases.put(phase, new long[]{this.now(), -1});
+    }
+
+    /**
+     * 段階の終了を記録します。開始が記録されていない段階は無視されます。
+     *
+     * @param phase 段階の名前。
+     */
+    public synchronized void end(String phase) {
+        long[] times = this.phases.get(phase);
+
+        if (times != null && times[1] < 0)
+            times[1] = this.now();
+    }
+
+    /**
+     * 起動処理の完了を記録し、完了時の処理を実行します。2 回目以降の呼び出しは無視されます。
+     */
+    public void complete() {
+        Consumer<StartupTimer> action;
+
+        synchronized (this) {
+            if (this.completedNanos >= 0)
+                return;
+
+            this.completedNanos = this.now();
+            action = this.onComplete;
+        }
+
+        if (action != null)
+            action.accept(this);
+    }
+
+    /**
+     * 起動処理の完了時に実行される処理を設定します。
+     *
+     * @param onComplete 完了時に実行される処理。
+     */
+    public synchronized void setOnComplete(Consumer<StartupTimer> onComplete) {
+        this.onComplete = onComplete;
+    }
+
+    /**
+     * JVM の起動から起動処理の完了までの時間を取得します。
+     *
+     * @return ミリ秒単位の時間。完了していない場合は現在までの時間。
+     */
+    public synchronized double getTotalMillis() {
+        return toMillis(this.completedNanos >= 0 ? this.completedNanos : this.now());
+    }
+
+    /**
+     * 記録された段階を開始された順に取得します。
+     *
+     * @return 段階の名前をキーとし、開始時刻と所要時間 (ミリ秒) の配列を値とするマップ。終了していない段階の所要時間は負の値となります。
+     */
+    public synchronized Map<String, double[]> getPhases() {
+        Map<String, double[]> result = new LinkedHashMap<>();
+
+        for (Map.Entry<String, long[]> entry : this.phases.entrySet()) {
+            long[] times = entry.getValue();
+            result.put(entry.getKey(), new double[]{
+                    toMillis(times[0]),
+                    times[1] < 0 ? -1.0 : toMillis(times[1] - times[0])});
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * 記録された段階を JSON 形式でファイルに書き込みます。
+     *
+     * @param file 出力先のファイル。
+     * @throws IOException 書き込みに失敗した場合に発生します。
+     */
+    public void writeTo(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(this.toJSON());
+        }
+    }
+
+    /**
+     * 記録された段階を JSON 形式の文字列に変換します。
+     *
+     * @return {@code {"total":ミリ秒,"phases":[{"name":"...","start":ミリ秒,"duration":ミリ秒}, ...]}} の形式の文字列。
+     */
+    public String toJSON() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"total\":").append(formatMillis(this.getTotalMillis())).append(",\"phases\":[");
+
+        List<String> items = new ArrayList<>();
+
+        for (Map.Entry<String, double[]> entry : this.getPhases().entrySet())
+            items.add(String.format("{\"name\":\"%s\",\"start\":%s,\"duration\":%s}",
+                    entry.getKey().replace("\\", "\\\\").replace("\"", "\\\""),
+                    formatMillis(entry.getValue()[0]),
+                    formatMillis(entry.getValue()[1])));
+
+        sb.append(String.join(",", items)).append("]}\n");
+        return sb.toString();
+    }
+
+    /**
+     * 記録された段階の概要を取得します。
+     *
+     * @return 概要を表す文字列。
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(String.format("%.1f ms", this.getTotalMillis()));
+
+        List<String> items = new ArrayList<>();
+
+        for (Map.Entry<String, double[]> entry : this.getPhases().entrySet())
+            items.add(String.format("%s: %.1f ms", entry.getKey(), entry.getValue()[1]));
+
+        if (!items.isEmpty())
+            sb.append(" (").append(String.join(", ", items)).append(')');
+
+        return sb.toString();
+    }
+
+    private long now() {
+        return System.nanoTime() - this.baseNanos;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String formatMillis(double millis) {
+        return String.format(Locale.ROOT, "%.3f", millis);
+    }
+}
@@ -26,6 +26,7 @@ package net.nanase.nanasetter.window.dialog;
 
 import impl.org.controlsfx.i18n.Localization;
 import javafx.event.ActionEvent;
+import net.nanase.nanasetter.utils.JSObjectUtils;
 import netscape.javascript.JSObject;
 import org.controlsfx.control.ButtonBar;
 import org.controlsfx.control.action.AbstractAction;
@@ -33,10 +34,11 @@ import org.controlsfx.dialog.Dialog;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static net.nanase.nanasetter.utils.JSObjectUtils.*;
+import static net.nanase.nanasetter.utils.SnapshotUtils.*;
 
 /**
  * Project: Nanasetter
@@ -70,18 +72,21 @@ class ClosingAction extends AbstractAction {
     }
 
     public static Stream<ClosingAction> parseFromJS(JSObject jsObject) {
-        Object obj = getMember(jsObject, "button", Object.class).orElse(null);
-
-        if (obj instanceof JSObject) {
-            JSObject buttonObject = (JSObject) obj;
-
-            if (isArray(buttonObject))
-                return getArray(buttonObject, String.class)
-                        .map(k -> new ClosingAction(getButtonDefaultText(k), k));
-            else
-                return getMembersList(buttonObject)
-                        .map(s -> new ClosingAction(getMember(buttonObject, s, String.class)
-                                .orElse(getButtonDefaultText(s)), s));
+        return parseFromMap(JSObjectUtils.snapshotObject(jsObject));
+    }
+
+    public static Stream<ClosingAction> parseFromMap(Map<String, ?> parameters) {
+        Object obj = getMember(parameters, "button", Object.class).orElse(null);
+
+        if (obj instanceof List) {
+            return getArray((List<?>) obj, String.class)
+                    .map(k -> new ClosingAction(getButtonDefaultText(k), k));
+        } else if (obj instanceof Map) {
+            Map<String, Object> buttonObject = getObject(parameters, "button").get();
+
+            return getMembersList(buttonObject)
+                    .map(s -> new ClosingAction(getMember(buttonObject, s, String.class)
+                            .orElse(getButtonDefaultText(s)), s));
         } else if (obj instanceof String) {
             return Stream.of(((String) obj).split(""))
                     .map(k -> new ClosingAction(getButtonDefaultText(k), k));
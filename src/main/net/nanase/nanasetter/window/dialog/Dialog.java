@@ -27,21 +27,38 @@ package net.nanase.nanasetter.window.dialog;
 import impl.org.controlsfx.i18n.Localization;
 import impl.org.controlsfx.i18n.Translations;
 import javafx.stage.Window;
+import net.nanase.nanasetter.utils.ScriptObjectUtils;
 import netscape.javascript.JSObject;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
 /**
  * Project: Nanasetter
  * Created by nanase on 14/06/08.
  */
 
 /**
- * 一つのオブジェクトをパラメータとして指定し、各種ダイアログ表示を行います。
+ * <p>一つのオブジェクトをパラメータとして指定し、各種ダイアログ表示を行います。
+ * <p>各メソッドにはダイアログが閉じられるまで待機するものと、直ちに制御を返し、結果をコールバック関数に渡す
+ * {@code Async} の付くものがあります。コールバック関数には JavaScript の関数 (WebView またはヘッドレスランタイム) または
+ * {@link Consumer} を指定できます。
+ * <pre>
+ * dialog.confirmAsync({ message: '削除しますか?' }, function (result) { ... });
+ * </pre>
+ * ダイアログは {@link DialogQueue} によって 1 つずつ表示され、複数のプラグインから同時に要求された場合は順番に表示されます。
  *
  * @author Tomona Nanase
  * @since Nanasetter 0.1
  */
 public class Dialog {
     private final Window window;
+    private final DialogQueue queue;
+    private final Executor callbackExecutor;
 
     /**
      * 親ウィンドウを指定して新しい Dialog クラスのインスタンスを初期化します。
@@ -50,11 +67,32 @@ public class Dialog {
      */
     public Dialog(Window window) {
         this.window = window;
+        this.queue = new DialogQueue();
+        this.callbackExecutor = Runnable::run;
 
         // ControlsFXに対する暫定処理
         Translations.getTranslation("en").ifPresent(t -> Localization.setLocale(t.getLocale()));
     }
 
+    private Dialog(Dialog dialog, Executor callbackExecutor) {
+        this.window = dialog.window;
+        this.queue = dialog.queue;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * 親ウィンドウと表示キューを共有し、ヘッドレスランタイムの関数を指定された Executor で呼び出す Dialog オブジェクトを取得します。
+     *
+     * @param callbackExecutor ヘッドレスランタイムの関数をコールバックとして呼び出す Executor オブジェクト。
+     * @return 新しい Dialog オブジェクト。
+     */
+    public Dialog withCallbackExecutor(Executor callbackExecutor) {
+        if (callbackExecutor == null)
+            throw new IllegalArgumentException();
+
+        return new Dialog(this, callbackExecutor);
+    }
+
     /**
      * パラメータを指定して情報ダイアログを表示します。
      *
@@ -64,12 +102,7 @@ public class Dialog {
         if (object == null)
             return;
 
-        if (object instanceof String)
-            DialogImpl.info(this.window, (String) object);
-        else if (object instanceof JSObject)
-            DialogImpl.info(this.window, (JSObject) object);
-        else
-            DialogImpl.info(this.window, object.toString());
+        this.showNow(this.createInfo(object));
     }
 
     /**
@@ -82,12 +115,7 @@ public class Dialog {
         if (object == null)
             return null;
 
-        if (object instanceof String)
-            return DialogImpl.confirm(this.window, (String) object);
-        else if (object instanceof JSObject)
-            return DialogImpl.confirm(this.window, (JSObject) object);
-        else
-            return DialogImpl.confirm(this.window, object.toString());
+        return this.showNow(this.createConfirm(object));
     }
 
     /**
@@ -100,12 +128,7 @@ public class Dialog {
         if (object == null)
             return null;
 
-        if (object instanceof String)
-            return DialogImpl.input(this.window, (String) object);
-        else if (object instanceof JSObject)
-            return DialogImpl.input(this.window, (JSObject) object);
-        else
-            return DialogImpl.input(this.window, object.toString());
+        return this.showNow(this.createInput(object));
     }
 
     /**
@@ -118,10 +141,7 @@ public class Dialog {
         if (object == null)
             return null;
 
-        if (object instanceof JSObject)
-            return DialogImpl.choice(this.window, (JSObject) object);
-        else
-            return null;
+        return this.showNow(this.createChoice(object));
     }
 
     /**
@@ -134,9 +154,172 @@ public class Dialog {
         if (object == null)
             return null;
 
-        if (object instanceof JSObject)
-            return DialogImpl.command(this.window, (JSObject) object);
-        else
+        return this.showNow(this.createCommand(object));
+    }
+
+    /**
+     * パラメータを指定して情報ダイアログの表示を要求し、直ちに制御を返します。
+     *
+     * @param object   ダイアログのパラメータ。
+     * @param callback ダイアログが閉じられたとき、null を引数として呼び出される関数。null を指定できます。
+     */
+    public void infoAsync(Object object, Object callback) {
+        this.showLater(this.createInfo(object), callback);
+    }
+
+    /**
+     * パラメータを指定して確認ダイアログの表示を要求し、直ちに制御を返します。
+     *
+     * @param object   ダイアログのパラメータ。
+     * @param callback 押されたボタンに対応した文字列を引数として呼び出される関数。null を指定できます。
+     */
+    public void confirmAsync(Object object, Object callback) {
+        this.showLater(this.createConfirm(object), callback);
+    }
+
+    /**
+     * パラメータを指定して入力ダイアログの表示を要求し、直ちに制御を返します。
+     *
+     * @param object   ダイアログのパラメータ。
+     * @param callback テキストボックスに入力された文字列を引数として呼び出される関数。null を指定できます。
+     */
+    public void inputAsync(Object object, Object callback) {
+        this.showLater(this.createInput(object), callback);
+    }
+
+    /**
+     * パラメータを指定して選択ダイアログの表示を要求し、直ちに制御を返します。
+     *
+     * @param object   ダイアログのパラメータ。
+     * @param callback コンボボックスで選択された文字列を引数として呼び出される関数。null を指定できます。
+     */
+    public void choiceAsync(Object object, Object callback) {
+        this.showLater(this.createChoice(object), callback);
+    }
+
+    /**
+     * パラメータを指定して命令選択ダイアログの表示を要求し、直ちに制御を返します。
+     *
+     * @param object   ダイアログのパラメータ。
+     * @param callback クリックされた命令の文字列を引数として呼び出される関数。null を指定できます。
+     */
+    public void commandAsync(Object object, Object callback) {
+        this.showLater(this.createCommand(object), callback);
+    }
+
+    private Supplier<String> createInfo(Object object) {
+        Object parameters = toSnapshot(object);
+
+        return () -> {
+            if (parameters == null)
+                return null;
+
+            if (parameters instanceof String)
+                DialogImpl.info(this.window, (String) parameters);
+            else if (parameters instanceof JSObject)
+                DialogImpl.info(this.window, (JSObject) parameters);
+            else if (parameters instanceof Map)
+                DialogImpl.info(this.window, castToMap(parameters));
+            else
+                DialogImpl.info(this.window, parameters.toString());
+
             return null;
+        };
+    }
+
+    private Supplier<String> createConfirm(Object object) {
+        Object parameters = toSnapshot(object);
+
+        return () -> {
+            if (parameters == null)
+                return null;
+
+            if (parameters instanceof String)
+                return DialogImpl.confirm(this.window, (String) parameters);
+            else if (parameters instanceof JSObject)
+                return DialogImpl.confirm(this.window, (JSObject) parameters);
+            else if (parameters instanceof Map)
+                return DialogImpl.confirm(this.window, castToMap(parameters));
+            else
+                return DialogImpl.confirm(this.window, parameters.toString());
+        };
+    }
+
+    private Supplier<String> createInput(Object object) {
+        Object parameters = toSnapshot(object);
+
+        return () -> {
+            if (parameters == null)
+                return null;
+
+            if (parameters instanceof String)
+                return DialogImpl.input(this.window, (String) parameters);
+            else if (parameters instanceof JSObject)
+                return DialogImpl.input(this.window, (JSObject) parameters);
+            else if (parameters instanceof Map)
+                return DialogImpl.input(this.window, castToMap(parameters));
+            else
+                return DialogImpl.input(this.window, parameters.toString());
+        };
+    }
+
+    private Supplier<String> createChoice(Object object) {
+        Object parameters = toSnapshot(object);
+
+        return () -> {
+            if (parameters instanceof JSObject)
+                return DialogImpl.choice(this.window, (JSObject) parameters);
+            else if (parameters instanceof Map || parameters instanceof List)
+                return DialogImpl.choice(this.window, parameters);
+            else
+                return null;
+        };
+    }
+
+    private Supplier<String> createCommand(Object object) {
+        Object parameters = toSnapshot(object);
+
+        return () -> {
+            if (parameters instanceof JSObject)
+                return DialogImpl.command(this.window, (JSObject) parameters);
+            else if (parameters instanceof Map)
+                return DialogImpl.command(this.window, castToMap(parameters));
+            else
+                return null;
+        };
+    }
+
+    private String showNow(Supplier<String> dialog) {
+        return this.queue.showNow(dialog);
+    }
+
+    private void showLater(Supplier<String> dialog, Object callback) {
+        this.queue.enqueue(() -> this.invokeCallback(callback, dialog.get()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void invokeCallback(Object callback, String result) {
+        if (callback == null)
+            return;
+
+        if (callback instanceof JSObject)
+            ((JSObject) callback).call("call", new Object[]{null, result});
+        else if (callback instanceof Consumer)
+            ((Consumer<String>) callback).accept(result);
+        else if (ScriptObjectUtils.isFunction(callback))
+            this.callbackExecutor.execute(() -> ScriptObjectUtils.call(callback, result));
+        else
+            Logger.getLogger("nanasetter").warning(String.format("サポートされていないコールバックの型です: %s",
+                    callback.getClass().getName()));
+    }
+
+    // ヘッドレスランタイムのオブジェクトは呼び出し元のスレッドでのみ安全に読み取れるため、ここで内容を取得しておく
+    private static Object toSnapshot(Object object) {
+        return ScriptObjectUtils.isScriptObject(object) ? ScriptObjectUtils.snapshot(object) : object;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castToMap(Object object) {
+        return (Map<String, Object>) object;
     }
 }
@@ -26,6 +26,7 @@ package net.nanase.nanasetter.window.dialog;
 
 import javafx.stage.Window;
 import net.nanase.nanasetter.utils.JSObjectUtils;
+import net.nanase.nanasetter.utils.SnapshotUtils;
 import netscape.javascript.JSObject;
 import org.controlsfx.control.action.Action;
 import org.controlsfx.dialog.Dialog;
@@ -33,6 +34,9 @@ import org.controlsfx.dialog.DialogStyle;
 import org.controlsfx.dialog.Dialogs;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -55,10 +59,17 @@ class DialogImpl {
         if (parameters == null)
             return;
 
+        info(window, JSObjectUtils.snapshotObject(parameters));
+    }
+
+    public static void info(Window window, Map<String, Object> params) {
+        if (params == null)
+            return;
+
         Dialogs dialogs = createDefaultDialogs(window);
-        applyParameter(dialogs, parameters);
+        applyParameter(dialogs, params);
 
-        String type = JSObjectUtils.getMember(parameters, "type", String.class).orElse("info");
+        String type = SnapshotUtils.getMember(params, "type", String.class).orElse("info");
 
         switch (type) {
             case "warning":
@@ -88,8 +99,15 @@ class DialogImpl {
         if (parameters == null)
             return null;
 
+        return confirm(window, JSObjectUtils.snapshotObject(parameters));
+    }
+
+    public static String confirm(Window window, Map<String, Object> params) {
+        if (params == null)
+            return null;
+
         Dialogs dialogs = createDefaultDialogs(window);
-        applyParameter(dialogs, parameters);
+        applyParameter(dialogs, params);
 
         return dialogs.showConfirm()
                 .toString()
@@ -107,10 +125,17 @@ class DialogImpl {
         if (parameters == null)
             return null;
 
+        return input(window, JSObjectUtils.snapshotObject(parameters));
+    }
+
+    public static String input(Window window, Map<String, Object> params) {
+        if (params == null)
+            return null;
+
         Dialogs dialogs = createDefaultDialogs(window);
-        applyParameter(dialogs, parameters);
+        applyParameter(dialogs, params);
 
-        String defaultText = JSObjectUtils.getMember(parameters, "text", String.class).orElse("");
+        String defaultText = SnapshotUtils.getMember(params, "text", String.class).orElse("");
 
         return dialogs.showTextInput(defaultText)
                 .orElse(null);
@@ -120,17 +145,25 @@ class DialogImpl {
         if (parameters == null)
             return null;
 
+        return choice(window, JSObjectUtils.snapshot(parameters).orElse(null));
+    }
+
+    public static String choice(Window window, Object snapshot) {
+        if (snapshot == null)
+            return null;
+
+        Map<String, Object> params = (snapshot instanceof Map) ? castToMap(snapshot) : Collections.emptyMap();
         Dialogs dialogs = createDefaultDialogs(window);
-        applyParameter(dialogs, parameters);
+        applyParameter(dialogs, params);
 
         Collection<String> choices;
         String defaultChoice = null;
 
-        if (JSObjectUtils.isArray(parameters))
-            choices = JSObjectUtils.getArray(parameters, String.class).collect(Collectors.toList());
-        else if (JSObjectUtils.isArray(parameters, "choices")) {
-            choices = JSObjectUtils.getArray(parameters, "choices", String.class).collect(Collectors.toList());
-            defaultChoice = JSObjectUtils.getMember(parameters, "defaultChoice", String.class).orElse(null);
+        if (snapshot instanceof List)
+            choices = SnapshotUtils.getArray((List<?>) snapshot, String.class).collect(Collectors.toList());
+        else if (SnapshotUtils.hasMember(params, "choices")) {
+            choices = SnapshotUtils.getArray(params, "choices", String.class).collect(Collectors.toList());
+            defaultChoice = SnapshotUtils.getMember(params, "defaultChoice", String.class).orElse(null);
         } else
             return null;
 
@@ -144,10 +177,17 @@ class DialogImpl {
         if (parameters == null)
             return null;
 
+        return command(window, JSObjectUtils.snapshotObject(parameters));
+    }
+
+    public static String command(Window window, Map<String, Object> params) {
+        if (params == null)
+            return null;
+
         Dialogs dialogs = createDefaultDialogs(window);
-        applyParameter(dialogs, parameters);
+        applyParameter(dialogs, params);
 
-        Action action = dialogs.showCommandLinks(convertToCommandLink(parameters).collect(Collectors.toList()));
+        Action action = dialogs.showCommandLinks(convertToCommandLink(params).collect(Collectors.toList()));
 
         if (Dialog.Actions.CANCEL.equals(action))
             return null;
@@ -155,32 +195,37 @@ class DialogImpl {
             return action.textProperty().get();
     }
 
-    private static Stream<Dialogs.CommandLink> convertToCommandLink(JSObject parameters) {
-        if (!JSObjectUtils.hasMember(parameters, "commands"))
-            return Stream.empty();
+    private static Stream<Dialogs.CommandLink> convertToCommandLink(Map<String, Object> parameters) {
+        Object commands = SnapshotUtils.getMember(parameters, "commands", Object.class).orElse(null);
 
-        JSObject commands = JSObjectUtils.getMember(parameters, "commands", JSObject.class).get();
-
-
-        if (JSObjectUtils.isArray(commands)) {
+        if (commands instanceof List) {
             // for String array
-            return JSObjectUtils.getArray(commands, String.class)
+            return SnapshotUtils.getArray((List<?>) commands, String.class)
                     .map(t -> new Dialogs.CommandLink(t, null));
-        } else {
+        } else if (commands instanceof Map) {
             // for JSObject array
-            return JSObjectUtils.getMembersList(commands)
-                    .map(m -> new Dialogs.CommandLink(m, JSObjectUtils.getMember(commands, m, String.class)
+            Map<String, Object> commandObject = SnapshotUtils.getObject(parameters, "commands").get();
+
+            return SnapshotUtils.getMembersList(commandObject)
+                    .map(m -> new Dialogs.CommandLink(m, SnapshotUtils.getMember(commandObject, m, String.class)
                             .orElse(null)));
         }
+
+        return Stream.empty();
     }
 
-    private static void applyParameter(Dialogs dialogs, JSObject parameters) {
-        JSObjectUtils.ifExists(parameters, "message", String.class, dialogs::message);
-        JSObjectUtils.ifExists(parameters, "masthead", String.class, dialogs::masthead);
-        JSObjectUtils.ifExists(parameters, "title", String.class, dialogs::title);
+    private static void applyParameter(Dialogs dialogs, Map<String, Object> parameters) {
+        SnapshotUtils.ifExists(parameters, "message", String.class, dialogs::message);
+        SnapshotUtils.ifExists(parameters, "masthead", String.class, dialogs::masthead);
+        SnapshotUtils.ifExists(parameters, "title", String.class, dialogs::title);
+
+        if (SnapshotUtils.hasMember(parameters, "button"))
+            dialogs.actions(ClosingAction.parseFromMap(parameters).collect(Collectors.toList()));
+    }
 
-        if (JSObjectUtils.hasMember(parameters, "button"))
-            dialogs.actions(ClosingAction.parseFromJS(parameters).collect(Collectors.toList()));
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castToMap(Object object) {
+        return (Map<String, Object>) object;
     }
 
     private static Dialogs createDefaultDialogs(Window window) {
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.window.dialog;
+
+import javafx.application.Platform;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/24.
+ */
+
+/**
+ * <p>ダイアログの表示要求を順番に 1 つずつ処理するキューです。
+ * <p>キューに追加された要求は、表示中のダイアログが閉じられたのち、JavaFX アプリケーションスレッドの新しい処理として実行されます。
+ * そのため、複数のプラグインから同時に要求されてもダイアログが入れ子に表示されることはありません。
+ * 結果を待機する表示要求も、JavaFX アプリケーションスレッド以外からのものはキューを通して順番に表示されます。
+ * 状態は JavaFX アプリケーションスレッドでのみ操作されます。
+ *
+ * @author Tomona Nanase
+ * @since Nanasetter 0.1
+ */
+class DialogQueue {
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+
+    private boolean showing;
+
+    /**
+     * 表示要求をキューに追加します。このメソッドは任意のスレッドから呼び出すことができ、表示を待機しません。
+     *
+     * @param request ダイアログを表示し、結果を処理する要求。
+     */
+    public void enqueue(Runnable request) {
+        if (request == null)
+            throw new IllegalArgumentException();
+
+        Platform.runLater(() -> {
+            this.pending.add(request);
+            this.scheduleNext();
+        });
+    }
+
+    /**
+     * ダイアログを表示し、閉じられるまで待機します。
+     * <p>JavaFX アプリケーションスレッド以外から呼び出された場合、要求はキューに追加され、表示され閉じられるまで呼び出し元のスレッドで待機します。
+     * <p>JavaFX アプリケーションスレッドから呼び出された場合は直ちに表示します。ただし、他のダイアログの表示中は
+     * ダイアログを入れ子に表示せず、警告をログに出力して null を返します。この場合は結果をコールバックで受け取るメソッドを使用してください。
+     *
+     * @param supplier ダイアログを表示し、結果を返す関数。
+     * @param <T>      結果の型。
+     * @return ダイアログの結果。表示できなかった場合は null。
+     */
+    public <T> T showNow(Supplier<T> supplier) {
+        if (supplier == null)
+            throw new IllegalArgumentException();
+
+        if (!Platform.isFxApplicationThread())
+            return this.showAndWait(supplier);
+
+        // 表示中のダイアログのイベントループ内から呼ばれた場合、ここで待機するとイベントループが入れ子になり閉じられなくなる
+        if (this.showing) {
+            Logger.getLogger("nanasetter").warning("他のダイアログを表示中のため、ダイアログを表示できません.");
+            return null;
+        }
+
+        this.showing = true;
+
+        try {
+            return supplier.get();
+        } finally {
+            this.showing = false;
+            this.scheduleNext();
+        }
+    }
+
+    /**
+     * キューに残っている要求の数を取得します。JavaFX アプリケーションスレッドから呼び出す必要があります。
+     *
+     * @return 要求の数。
+     */
+    public int getPendingCount() {
+        return this.pending.size();
+    }
+
+    private <T> T showAndWait(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        this.enqueue(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private void scheduleNext() {
+        if (this.showing || this.pending.isEmpty())
+            return;
+
+        Runnable request = this.pending.poll();
+        this.showing = true;
+
+        // 呼び出し元の処理が終わってから表示し、イベントループの入れ子を作らない
+        Platform.runLater(() -> {
+            try {
+                request.run();
+            } catch (RuntimeException ex) {
+                Logger.getLogger("nanasetter").log(Level.WARNING, "ダイアログの表示中にエラーが発生しました.", ex);
+            } finally {
+                this.showing = false;
+                this.scheduleNext();
+            }
+        });
+    }
+}
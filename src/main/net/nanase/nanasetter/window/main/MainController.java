@@ -1,5 +1,6 @@
 package net.nanase.nanasetter.window.main;
 
+import javafx.application.Platform;
 import javafx.concurrent.Worker.State;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -8,12 +9,38 @@ import javafx.scene.text.FontSmoothingType;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
 import net.nanase.nanasetter.plugin.PluginLoader;
+import net.nanase.nanasetter.plugin.PluginServices;
+import net.nanase.nanasetter.plugin.StreamPipelineFactory;
+import net.nanase.nanasetter.twitter.BlockMuteCache;
+import net.nanase.nanasetter.twitter.BulkOperationEngine;
+import net.nanase.nanasetter.twitter.ConversationIndex;
+import net.nanase.nanasetter.twitter.DirectMessageStore;
+import net.nanase.nanasetter.twitter.DirectMessageSync;
+import net.nanase.nanasetter.twitter.ImageCache;
+import net.nanase.nanasetter.twitter.MediaUploader;
+import net.nanase.nanasetter.twitter.RelativeTimeUpdater;
+import net.nanase.nanasetter.twitter.SocialGraphCache;
+import net.nanase.nanasetter.twitter.StatusRenderer;
+import net.nanase.nanasetter.twitter.StreamPipeline;
+import net.nanase.nanasetter.twitter.TrendTracker;
 import net.nanase.nanasetter.twitter.TwitterList;
+import net.nanase.nanasetter.twitter.URLExpander;
+import net.nanase.nanasetter.twitter.WriteQueue;
+import net.nanase.nanasetter.utils.AsyncLogHandler;
 import net.nanase.nanasetter.utils.LogFormatter;
+import net.nanase.nanasetter.utils.MappedLogFileHandler;
+import net.nanase.nanasetter.utils.StartupTimer;
 import net.nanase.nanasetter.window.dialog.Dialog;
+import netscape.javascript.JSObject;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Logger;
 
@@ -28,6 +55,9 @@ public class MainController implements Initializable {
     private Dialog dialog;
     private Logger logger;
     private PluginLoader pluginLoader;
+    private PluginServices services;
+    private StreamPipelineFactory streamPipelineFactory;
+    private final Map<Long, StreamPipeline> streamPipelines = new ConcurrentHashMap<>();
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
@@ -36,16 +66,74 @@ public class MainController implements Initializable {
 
         ConsoleHandler consoleHandler = new ConsoleHandler();
         consoleHandler.setFormatter(LogFormatter.getInstance());
-        this.logger.addHandler(consoleHandler);
+        this.logger.addHandler(new AsyncLogHandler(consoleHandler));
+        this.logger.addHandler(new AsyncLogHandler(new MappedLogFileHandler(Paths.get("./log/"))));
         this.logger.setUseParentHandlers(false);
+
+        this.services = new PluginServices();
+
+        try {
+            this.services.setWriteQueue(new WriteQueue(Paths.get("./data/write-queue.journal"),
+                    WriteQueue.createSender(this.twitterList), this.logger));
+        } catch (IOException ex) {
+            this.logger.severe(String.format("書き込みキューを開けませんでした: %s", ex.getMessage()));
+        }
+
+        this.services.setMediaUploader(new MediaUploader(this.logger));
+        this.services.setDirectMessageSync(new DirectMessageSync(
+                new DirectMessageStore(Paths.get("./data/dm/"), this.logger), this.logger));
+
+        BlockMuteCache blockMuteCache = new BlockMuteCache();
+        this.services.setBlockMuteCache(blockMuteCache);
+
+        try {
+            BulkOperationEngine bulkOperationEngine = new BulkOperationEngine(Paths.get("./data/bulk/"),
+                    BulkOperationEngine.createExecutor(this.twitterList), this.logger);
+            bulkOperationEngine.setBlockMuteCache(blockMuteCache);
+            this.services.setBulkOperationEngine(bulkOperationEngine);
+        } catch (IOException ex) {
+            this.logger.severe(String.format("一括操作のジョブを復元できませんでした: %s", ex.getMessage()));
+        }
+
+        this.services.setConversationIndex(new ConversationIndex(20000));
+        this.services.setTrendTracker(new TrendTracker());
+        this.services.setStatusRenderer(new StatusRenderer(this.logger));
+
+        try {
+            this.services.setURLExpander(new URLExpander(Paths.get("./data/url-cache.tsv"), this.logger));
+        } catch (IOException ex) {
+            this.logger.severe(String.format("URL のキャッシュを開けませんでした: %s", ex.getMessage()));
+        }
+
+        try {
+            ImageCache imageCache = new ImageCache(Paths.get("./data/image/"), this.logger);
+            this.services.setImageCache(imageCache);
+
+            if (!ImageCache.install(imageCache))
+                this.logger.warning("画像のキャッシュを URL のスキームに登録できませんでした.");
+        } catch (IOException ex) {
+            this.logger.severe(String.format("画像のキャッシュを開けませんでした: %s", ex.getMessage()));
+        }
+
+        this.streamPipelineFactory = new StreamPipelineFactory(this.services,
+                StreamPipelineFactory.DEFAULT_STATUS_TEMPLATE, this.logger);
+
+        this.twitterList.setGraphCache(new SocialGraphCache(Paths.get("./data/graph/"), this.logger));
     }
 
     public void setup() {
+        StartupTimer timer = StartupTimer.getInstance();
+
+        timer.begin("dialog");
         this.dialog = new Dialog(this.root.getScene().getWindow());
-        this.pluginLoader = new PluginLoader(this.dialog, this.logger);
+        timer.end("dialog");
+
+        this.pluginLoader = new PluginLoader(this.dialog, this.logger, this.services);
 
         WebEngine webEngine = this.htmlRoot.getEngine();
         webEngine.setOnAlert(event -> this.dialog.info(event.getData()));
+
+        timer.begin("page");
         webEngine.load(getClass().getResource("/page/index.html").toString());
 
         this.htmlRoot.setFontSmoothingType(FontSmoothingType.GRAY);
@@ -54,11 +142,68 @@ public class MainController implements Initializable {
         webEngine.getLoadWorker().stateProperty().addListener(
                 (ov, oldState, newState) -> {
                     if (newState == State.SUCCEEDED) this.onLoaded();
+                    else if (newState == State.FAILED) StartupTimer.getInstance().complete();
                 });
     }
 
     private void onLoaded() {
+        StartupTimer timer = StartupTimer.getInstance();
+        timer.end("page");
+
         WebEngine webEngine = this.htmlRoot.getEngine();
+
+        this.services.setRelativeTimeUpdater(new RelativeTimeUpdater(json -> Platform.runLater(() ->
+                webEngine.executeScript("nanasetter_updateRelativeTimes(" + json + ")")), this.logger));
+
+        for (Twitter twitter : this.twitterList) {
+            try {
+                this.getStreamPipeline(twitter.getId());
+            } catch (TwitterException ex) {
+                this.logger.warning(String.format("アカウントのストリームを準備できませんでした: %s", ex.getMessage()));
+            }
+        }
+
+        timer.begin("plugins");
         this.pluginLoader.loadPlugin("./plugin/", webEngine, this.dialog, this.twitterList);
+        timer.end("plugins");
+
+        timer.complete();
+    }
+
+    /**
+     * アプリケーションの終了時に、プラグインと共有される機能を停止します。
+     */
+    public void close() {
+        if (this.pluginLoader != null)
+            this.pluginLoader.shutdown();
+
+        try {
+            this.services.close();
+        } catch (IOException ex) {
+            this.logger.severe(String.format("書き込みキューを閉じられませんでした: %s", ex.getMessage()));
+        }
+    }
+
+    /**
+     * アカウントのストリームから受信したイベントを渡す StreamPipeline オブジェクトを取得します。
+     * StreamPipeline はアカウントごとに 1 度だけ作成され、共有される機能のフィルタとオブザーバが登録されます。
+     *
+     * @param accountId アカウントのユーザ ID。
+     * @return StreamPipeline オブジェクト。
+     */
+    public StreamPipeline getStreamPipeline(long accountId) {
+        return this.streamPipelines.computeIfAbsent(accountId, this::createStreamPipeline);
+    }
+
+    private StreamPipeline createStreamPipeline(long accountId) {
+        WebEngine webEngine = this.htmlRoot.getEngine();
+        String account = String.valueOf(accountId);
+
+        // HTML は文字列のままページの関数に渡し、スクリプトとして組み立てない
+        return this.streamPipelineFactory.create(accountId,
+                json -> Platform.runLater(() ->
+                        webEngine.executeScript("nanasetter_onStreamEvent('" + account + "', " + json + ")")),
+                html -> Platform.runLater(() -> ((JSObject) webEngine.executeScript("window"))
+                        .call("nanasetter_appendStatuses", new Object[]{account, html})));
     }
 }
\ No newline at end of file
@@ -31,6 +31,8 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 
 import static net.nanase.nanasetter.plugin.PluginPermission.*;
@@ -191,4 +193,36 @@ public class PluginPermissionTest {
             fail();
         }
     }
+
+    @Test
+    public void testParseFromMap() throws Exception {
+        assertEquals(FULL, parseFromMap(Collections.singletonMap("permission", "full")));
+        assertEquals(NONE, parseFromMap(Collections.singletonMap("permission", "none")));
+        assertEquals(EnumSet.noneOf(PluginPermission.class), parseFromMap(Collections.emptyMap()));
+        assertEquals(EnumSet.noneOf(PluginPermission.class),
+                parseFromMap(Collections.singletonMap("permission", Collections.emptyList())));
+        assertEquals(EnumSet.of(READ_REST, WRITE),
+                parseFromMap(Collections.singletonMap("permission", Arrays.asList("rest", "WRITE"))));
+
+        try {
+            parseFromMap(Collections.singletonMap("permission", "foo"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            //
+        }
+
+        try {
+            parseFromMap(Collections.singletonMap("permission", Arrays.asList("read", "rest")));
+            fail();
+        } catch (IllegalArgumentException e) {
+            //
+        }
+
+        try {
+            parseFromMap(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //
+        }
+    }
 }
\ No newline at end of file
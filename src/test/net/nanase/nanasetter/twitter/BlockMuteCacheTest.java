@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.Test;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class BlockMuteCacheTest {
+    private static final long ACCOUNT = 1L;
+
+    @Test
+    public void testSync() throws Exception {
+        BlockMuteCache cache = new BlockMuteCache();
+        FakeSource source = new FakeSource();
+        source.blocks = new long[]{10, 11, 12, 13, 14};
+        source.mutes = new long[]{20};
+
+        assertTrue(cache.sync(ACCOUNT, BlockMuteCache.Kind.BLOCK, source, 10));
+        assertTrue(cache.sync(ACCOUNT, BlockMuteCache.Kind.MUTE, source, 10));
+
+        assertEquals(5, cache.size(ACCOUNT, BlockMuteCache.Kind.BLOCK));
+        assertTrue(cache.contains(ACCOUNT, BlockMuteCache.Kind.BLOCK, 12));
+        assertFalse(cache.contains(ACCOUNT, BlockMuteCache.Kind.MUTE, 12));
+        assertTrue(cache.isFiltered(ACCOUNT, 20));
+        assertFalse(cache.isFiltered(ACCOUNT, 30));
+        assertFalse(cache.isFiltered(2L, 12));
+        assertEquals(Arrays.asList(-1L, 2L, 4L, -1L), source.requested);
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        BlockMuteCache cache = new BlockMuteCache();
+        FakeSource source = new FakeSource();
+        source.blocks = new long[]{10, 11, 12, 13, 14};
+
+        assertTrue(cache.sync(ACCOUNT, BlockMuteCache.Kind.BLOCK, source, 10));
+
+        // 途中で止まった同期の間は以前の集合が参照される
+        source.blocks = new long[]{11, 12, 13, 14, 15};
+        source.requested.clear();
+        assertFalse(cache.sync(ACCOUNT, BlockMuteCache.Kind.BLOCK, source, 1));
+        assertTrue(cache.contains(ACCOUNT, BlockMuteCache.Kind.BLOCK, 10));
+        assertFalse(cache.contains(ACCOUNT, BlockMuteCache.Kind.BLOCK, 15));
+
+        source.failAt = 2L;
+        try {
+            cache.sync(ACCOUNT, BlockMuteCache.Kind.BLOCK, source, 10);
+            fail();
+        } catch (TwitterException ex) {
+            // 失敗したページは次の同期で再び取得される
+        }
+
+        source.failAt = Long.MIN_VALUE;
+        assertTrue(cache.sync(ACCOUNT, BlockMuteCache.Kind.BLOCK, source, 10));
+        assertFalse(cache.contains(ACCOUNT, BlockMuteCache.Kind.BLOCK, 10));
+        assertTrue(cache.contains(ACCOUNT, BlockMuteCache.Kind.BLOCK, 15));
+        assertEquals(5, cache.size(ACCOUNT, BlockMuteCache.Kind.BLOCK));
+        assertEquals(Arrays.asList(-1L, 2L, 2L, 4L), source.requested);
+    }
+
+    @Test
+    public void testLocalUpdate() throws Exception {
+        BlockMuteCache cache = new BlockMuteCache();
+        FakeSource source = new FakeSource();
+        source.mutes = new long[]{20, 21, 22};
+
+        cache.add(ACCOUNT, BlockMuteCache.Kind.MUTE, 30);
+        assertTrue(cache.contains(ACCOUNT, BlockMuteCache.Kind.MUTE, 30));
+        assertFalse(cache.isSynced(ACCOUNT, BlockMuteCache.Kind.MUTE));
+
+        // 同期中に行われた変更は置き換え後の集合にも反映される
+        assertFalse(cache.sync(ACCOUNT, BlockMuteCache.Kind.MUTE, source, 1));
+        cache.add(ACCOUNT, BlockMuteCache.Kind.MUTE, 31);
+        cache.remove(ACCOUNT, BlockMuteCache.Kind.MUTE, 20);
+        assertTrue(cache.sync(ACCOUNT, BlockMuteCache.Kind.MUTE, source, 10));
+
+        assertTrue(cache.isSynced(ACCOUNT, BlockMuteCache.Kind.MUTE));
+        assertFalse(cache.contains(ACCOUNT, BlockMuteCache.Kind.MUTE, 20));
+        assertTrue(cache.contains(ACCOUNT, BlockMuteCache.Kind.MUTE, 31));
+        assertFalse(cache.contains(ACCOUNT, BlockMuteCache.Kind.MUTE, 30));
+        assertEquals(3, cache.size(ACCOUNT, BlockMuteCache.Kind.MUTE));
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        BlockMuteCache cache = new BlockMuteCache();
+        cache.add(ACCOUNT, BlockMuteCache.Kind.BLOCK, 10);
+        cache.add(ACCOUNT, BlockMuteCache.Kind.MUTE, 20);
+
+        Predicate<Status> filter = cache.createFilter(ACCOUNT);
+
+        assertTrue(filter.test(StatusFixture.status(100).user(30).build()));
+        assertFalse(filter.test(StatusFixture.status(101).user(10).build()));
+        assertFalse(filter.test(StatusFixture.status(102).user(20).build()));
+        assertFalse(filter.test(StatusFixture.status(103).user(30).inReplyToUser(10).build()));
+
+        List<String> delivered = new ArrayList<>();
+        StreamPipeline pipeline = new StreamPipeline(new StatusSerializer(), delivered::add,
+                Logger.getAnonymousLogger());
+        pipeline.addFilter(filter);
+        pipeline.onStatus(StatusFixture.status(104).user(30).build());
+        pipeline.onStatus(StatusFixture.status(105).user(20).build());
+
+        assertEquals(1, pipeline.getDeliveredCount());
+        assertEquals(1, pipeline.getFilteredCount());
+    }
+
+    /**
+     * 2 件ずつのページを返す Source。カーソルは次に返す要素の位置を表します。
+     */
+    private static class FakeSource implements BlockMuteCache.Source {
+        private final List<Long> requested = new ArrayList<>();
+        private long[] blocks = new long[0];
+        private long[] mutes = new long[0];
+        private long failAt = Long.MIN_VALUE;
+
+        @Override
+        public BlockMuteCache.Page fetch(BlockMuteCache.Kind kind, long cursor) throws TwitterException {
+            this.requested.add(cursor);
+
+            if (cursor == this.failAt)
+                throw new TwitterException("failure");
+
+            long[] ids = kind == BlockMuteCache.Kind.BLOCK ? this.blocks : this.mutes;
+            int from = cursor == -1L ? 0 : (int) cursor;
+            int to = Math.min(from + 2, ids.length);
+
+            return new BlockMuteCache.Page(Arrays.copyOfRange(ids, from, to), to >= ids.length ? 0L : to);
+        }
+    }
+}
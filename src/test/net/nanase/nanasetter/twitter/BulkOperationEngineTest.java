@@ -0,0 +1,296 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.HttpResponse;
+import twitter4j.TwitterException;
+import twitter4j.conf.ConfigurationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BulkOperationEngineTest {
+    private Path directory;
+    private Logger logger;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-bulk");
+        this.logger = Logger.getAnonymousLogger();
+        this.logger.setUseParentHandlers(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testConcurrentExecution() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Set<Long> executed = ConcurrentHashMap.newKeySet();
+
+        BulkOperationEngine engine = new BulkOperationEngine(this.directory, (account, operation, userId, listId) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            inFlight.decrementAndGet();
+            executed.add(userId);
+
+            if (userId % 10 == 0)
+                throw new TwitterException("not found", null, 404);
+        }, this.logger, 3);
+        engine.setBudget(BulkOperationEngine.Operation.BLOCK, 100, 1000.0);
+
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        BulkOperationEngine.Job job = engine.submit(1, BulkOperationEngine.Operation.BLOCK, ids(1, 50), 0,
+                new BulkOperationEngine.Listener() {
+                    @Override
+                    public void onResult(BulkOperationEngine.Job job, long userId, String error) {
+                        if (error != null)
+                            errors.add(userId + ":" + error);
+                    }
+
+                    @Override
+                    public void onComplete(BulkOperationEngine.Job job) {
+                    }
+                });
+
+        job.getCompletion().get(10, TimeUnit.SECONDS);
+        engine.close();
+
+        assertEquals(50, executed.size());
+        assertTrue(maxInFlight.get() <= 3);
+        assertEquals(45, job.getSucceeded());
+        assertEquals(5, job.getFailed());
+        assertEquals(5, errors.size());
+        assertTrue(engine.getJobs().isEmpty());
+        assertEquals(0, Files.list(this.directory).count());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        BulkOperationEngine engine = new BulkOperationEngine(this.directory, (a, o, u, l) -> {
+        }, this.logger);
+        engine.setBudget(BulkOperationEngine.Operation.UNFOLLOW, 2, 20.0);
+
+        long start = System.nanoTime();
+        engine.submit(1, BulkOperationEngine.Operation.UNFOLLOW, ids(1, 6), 0, null)
+              .getCompletion().get(10, TimeUnit.SECONDS);
+        engine.close();
+
+        // 最初の 2 件以降は 50 ミリ秒ごとに 1 件
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+    }
+
+    @Test
+    public void testRateLimitPause() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        BulkOperationEngine engine = new BulkOperationEngine(this.directory, (a, o, userId, l) -> {
+            if (calls.incrementAndGet() == 2)
+                throw createRateLimitException(1);
+        }, this.logger, 1);
+        engine.setBudget(BulkOperationEngine.Operation.BLOCK, 10, 100.0);
+
+        long start = System.nanoTime();
+        BulkOperationEngine.Job job = engine.submit(1, BulkOperationEngine.Operation.BLOCK, ids(1, 3), 0, null);
+        job.getCompletion().get(10, TimeUnit.SECONDS);
+        engine.close();
+
+        assertEquals(3, job.getSucceeded());
+        assertEquals(4, calls.get());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500);
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        Set<Long> executed = ConcurrentHashMap.newKeySet();
+
+        BulkOperationEngine first = new BulkOperationEngine(this.directory, (a, o, userId, l) -> executed.add(userId),
+                this.logger, 1);
+        first.setBudget(BulkOperationEngine.Operation.ADD_TO_LIST, 3, 0.001);
+        long jobId = first.submit(1, BulkOperationEngine.Operation.ADD_TO_LIST, ids(1, 10), 77, null).getId();
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (executed.size() < 3 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        first.close();
+        assertEquals(3, executed.size());
+
+        Map<Long, Long> resumed = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        BulkOperationEngine second = new BulkOperationEngine(this.directory, (a, o, userId, listId) -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            resumed.put(userId, listId);
+        }, this.logger);
+
+        BulkOperationEngine.Job job = second.getJob(jobId);
+        assertNotNull(job);
+        assertEquals(BulkOperationEngine.Operation.ADD_TO_LIST, job.getOperation());
+        assertEquals(3, job.getSucceeded());
+
+        latch.countDown();
+        job.getCompletion().get(10, TimeUnit.SECONDS);
+        second.close();
+
+        assertEquals(7, resumed.size());
+        assertTrue(Collections.disjoint(executed, resumed.keySet()));
+        assertTrue(resumed.values().stream().allMatch(listId -> listId == 77));
+        assertEquals(10, job.getSucceeded());
+    }
+
+    @Test
+    public void testBlockMuteCache() throws Exception {
+        BlockMuteCache cache = new BlockMuteCache();
+        cache.add(1, BlockMuteCache.Kind.BLOCK, 9);
+
+        BulkOperationEngine engine = new BulkOperationEngine(this.directory, (a, o, userId, l) -> {
+            if (userId == 3)
+                throw new TwitterException("not found", null, 404);
+        }, this.logger, 1);
+        engine.setBlockMuteCache(cache);
+        engine.setBudget(BulkOperationEngine.Operation.BLOCK, 10, 100.0);
+        engine.setBudget(BulkOperationEngine.Operation.REPORT_SPAM, 10, 100.0);
+        engine.setBudget(BulkOperationEngine.Operation.UNBLOCK, 10, 100.0);
+
+        // 失敗したユーザは反映されない
+        engine.submit(1, BulkOperationEngine.Operation.BLOCK, ids(1, 3), 0, null)
+              .getCompletion().get(10, TimeUnit.SECONDS);
+        engine.submit(1, BulkOperationEngine.Operation.REPORT_SPAM, ids(4, 4), 0, null)
+              .getCompletion().get(10, TimeUnit.SECONDS);
+        engine.submit(1, BulkOperationEngine.Operation.UNBLOCK, Arrays.asList(2L, 9L), 0, null)
+              .getCompletion().get(10, TimeUnit.SECONDS);
+        engine.close();
+
+        assertTrue(cache.contains(1, BlockMuteCache.Kind.BLOCK, 1));
+        assertFalse(cache.contains(1, BlockMuteCache.Kind.BLOCK, 2));
+        assertFalse(cache.contains(1, BlockMuteCache.Kind.BLOCK, 3));
+        assertTrue(cache.contains(1, BlockMuteCache.Kind.BLOCK, 4));
+        assertFalse(cache.contains(1, BlockMuteCache.Kind.BLOCK, 9));
+        assertFalse(cache.contains(2, BlockMuteCache.Kind.BLOCK, 1));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        BulkOperationEngine engine = new BulkOperationEngine(this.directory, (a, o, u, l) -> {
+        }, this.logger);
+        engine.setBudget(BulkOperationEngine.Operation.FOLLOW, 1, 0.001);
+
+        BulkOperationEngine.Job job = engine.submit(1, BulkOperationEngine.Operation.FOLLOW, ids(1, 5), 0, null);
+        assertTrue(engine.cancel(job.getId()));
+
+        job.getCompletion().get(5, TimeUnit.SECONDS);
+        engine.close();
+
+        assertTrue(job.isCancelled());
+        assertTrue(job.getSucceeded() <= 1);
+        assertFalse(engine.cancel(job.getId()));
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private static TwitterException createRateLimitException(long secondsUntilReset) {
+        long reset = System.currentTimeMillis() / 1000L + secondsUntilReset;
+
+        HttpResponse response = new HttpResponse(ConfigurationContext.getInstance().getHttpClientConfiguration()) {
+            {
+                this.statusCode = 429;
+            }
+
+            @Override
+            public String getResponseHeader(String name) {
+                switch (name) {
+                    case "X-Rate-Limit-Limit":
+                        return "15";
+
+                    case "X-Rate-Limit-Remaining":
+                        return "0";
+
+                    case "X-Rate-Limit-Reset":
+                        return Long.toString(reset);
+
+                    default:
+                        return null;
+                }
+            }
+
+            @Override
+            public Map<String, List<String>> getResponseHeaderFields() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public void disconnect() {
+            }
+        };
+
+        return new TwitterException("{\"errors\":[{\"message\":\"Rate limit exceeded\",\"code\":88}]}", response);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.Test;
+import twitter4j.Status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ConversationIndexTest {
+    @Test
+    public void testConversation() throws Exception {
+        ConversationIndex index = new ConversationIndex(100);
+
+        // 受信の順序に関わらず会話が組み立てられる
+        index.add(StatusFixture.status(3).inReplyToStatus(2).build());
+        index.add(StatusFixture.status(5).inReplyToStatus(3).build());
+        index.add(StatusFixture.status(1).build());
+        index.add(StatusFixture.status(4).inReplyToStatus(3).build());
+        index.add(StatusFixture.status(2).inReplyToStatus(1).build());
+        index.add(StatusFixture.status(6).inReplyToStatus(4).build());
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 6L, 5L), ids(index.getConversation(3)));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 5L), ids(index.getConversation(5)));
+        assertTrue(index.getConversation(99).isEmpty());
+        assertEquals(-1L, index.getMissingAncestor(6));
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        ConversationIndex index = new ConversationIndex(100);
+        Map<Long, Status> remote = new HashMap<>();
+        List<long[]> lookups = new ArrayList<>();
+
+        for (long id = 1; id <= 3; id++)
+            remote.put(id, StatusFixture.status(id).inReplyToStatus(id - 1 > 0 ? id - 1 : -1).build());
+
+        remote.put(11L, StatusFixture.status(11).inReplyToStatus(10).build());
+
+        // 10 は削除されたツイート
+        index.add(StatusFixture.status(4).inReplyToStatus(3).build());
+        index.add(StatusFixture.status(12).inReplyToStatus(11).build());
+        assertEquals(3L, index.getMissingAncestor(4));
+
+        ConversationIndex.Fetcher fetcher = ids -> {
+            lookups.add(ids);
+            return Arrays.stream(ids).filter(remote::containsKey).mapToObj(remote::get).collect(Collectors.toList());
+        };
+
+        assertEquals(4, index.resolve(new long[]{4, 12}, fetcher, 10));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), ids(index.getConversation(4)));
+        assertEquals(Arrays.asList(11L, 12L), ids(index.getConversation(12)));
+
+        // 欠けている祖先は会話ごとにまとめて取得される
+        assertArrayEquals(new long[]{3, 11}, lookups.get(0));
+        assertArrayEquals(new long[]{2, 10}, lookups.get(1));
+        assertArrayEquals(new long[]{1}, lookups.get(2));
+        assertEquals(3, lookups.size());
+
+        // 取得できなかったツイートは再び取得しない
+        assertEquals(0, index.resolve(12, fetcher, 10));
+        assertEquals(3, lookups.size());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        ConversationIndex index = new ConversationIndex(3);
+
+        index.add(StatusFixture.status(1).build());
+        index.add(StatusFixture.status(2).build());
+        index.add(StatusFixture.status(3).inReplyToStatus(1).build());
+        index.add(StatusFixture.status(4).build());
+
+        // リプライを受信したツイートは参照されたものとして扱われ、破棄されにくくなる
+        assertNull(index.getStatus(2));
+        assertNotNull(index.getStatus(1));
+        assertEquals(Arrays.asList(1L, 3L), ids(index.getConversation(3)));
+
+        index.add(StatusFixture.status(5).build());
+        index.add(StatusFixture.status(6).build());
+        index.add(StatusFixture.status(7).build());
+
+        assertNull(index.getStatus(1));
+        assertEquals(Arrays.asList(5L), ids(index.getConversation(5)));
+    }
+
+    private static List<Long> ids(List<Status> statuses) {
+        return statuses.stream().map(Status::getId).collect(Collectors.toList());
+    }
+}
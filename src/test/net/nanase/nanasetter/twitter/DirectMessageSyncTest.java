@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.DirectMessage;
+import twitter4j.Paging;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DirectMessageSyncTest {
+    private static final long ACCOUNT = 1L;
+
+    private static final String MESSAGE_JSON = "{\"id\":%d,\"id_str\":\"%d\",\"text\":\"message %d\"," +
+            "\"sender_id\":%d,\"recipient_id\":%d,\"sender_screen_name\":\"sender\",\"recipient_screen_name\":\"recipient\"," +
+            "\"created_at\":\"Wed Aug 27 12:00:00 +0000 2014\"," +
+            "\"sender\":{\"id\":%d,\"screen_name\":\"sender\",\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"}," +
+            "\"recipient\":{\"id\":%d,\"screen_name\":\"recipient\",\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"}," +
+            "\"entities\":{\"hashtags\":[],\"symbols\":[],\"urls\":[],\"user_mentions\":[]}}";
+
+    private Path directory;
+    private Logger logger;
+    private FakeSource source;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-dm");
+        this.logger = Logger.getAnonymousLogger();
+        this.logger.setUseParentHandlers(false);
+        this.source = new FakeSource();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testInitialSync() throws Exception {
+        for (long id = 1; id <= 450; id++)
+            this.source.receive(id, 100 + id % 3);
+
+        this.source.send(451, 100);
+
+        DirectMessageSync sync = this.createSync();
+        assertEquals(451, sync.sync(ACCOUNT, this.source));
+
+        DirectMessageStore store = sync.getStore();
+        assertEquals(451, store.getMessageCount(ACCOUNT));
+        assertEquals(450, store.getReceivedCursor(ACCOUNT).getSinceId());
+        assertEquals(451, store.getSentCursor(ACCOUNT).getSinceId());
+        assertEquals(Arrays.asList(100L, 102L, 101L), store.getPartners(ACCOUNT));
+
+        List<DirectMessageStore.Message> page = store.getConversation(ACCOUNT, 100, 0, 3);
+        assertEquals(Arrays.asList(451L, 450L, 447L), ids(page));
+        assertEquals(Arrays.asList(444L, 441L), ids(store.getConversation(ACCOUNT, 100, 446, 2)));
+        assertEquals(ACCOUNT, page.get(0).getSenderId());
+        assertEquals("message 451", page.get(0).getText());
+    }
+
+    @Test
+    public void testIncrementalSync() throws Exception {
+        for (long id = 1; id <= 10; id++)
+            this.source.receive(id, 100);
+
+        DirectMessageSync sync = this.createSync();
+        sync.sync(ACCOUNT, this.source);
+
+        this.source.receive(11, 200);
+        this.source.pagings.clear();
+
+        assertEquals(1, sync.sync(ACCOUNT, this.source));
+        assertEquals(10, this.source.pagings.get(0).getSinceId());
+        assertEquals(0, sync.sync(ACCOUNT, this.source));
+        assertEquals(11, sync.getStore().getMessageCount(ACCOUNT));
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        for (long id = 1; id <= 5; id++)
+            this.source.receive(id, 100);
+
+        this.createSync().sync(ACCOUNT, this.source);
+
+        DirectMessageSync restored = this.createSync();
+        this.source.pagings.clear();
+
+        assertEquals(0, restored.sync(ACCOUNT, this.source));
+        assertEquals(5, this.source.pagings.get(0).getSinceId());
+        assertEquals(5, restored.getStore().getConversation(ACCOUNT, 100, 0, 10).size());
+    }
+
+    @Test
+    public void testPartialFailure() throws Exception {
+        for (long id = 1; id <= 300; id++)
+            this.source.receive(id, 100);
+
+        DirectMessageSync sync = this.createSync();
+        this.source.failOnMaxId = true;
+
+        try {
+            sync.sync(ACCOUNT, this.source);
+            fail();
+        } catch (TwitterException ex) {
+            // 取得済みのページは保存されるが、同期位置は進まない
+            assertEquals(200, sync.getStore().getMessageCount(ACCOUNT));
+            assertEquals(0, sync.getStore().getReceivedCursor(ACCOUNT).getSinceId());
+        }
+
+        this.source.failOnMaxId = false;
+        assertEquals(100, sync.sync(ACCOUNT, this.source));
+        assertEquals(300, sync.getStore().getReceivedCursor(ACCOUNT).getSinceId());
+    }
+
+    @Test
+    public void testResumeAfterPageLimit() throws Exception {
+        for (long id = 1; id <= 10; id++)
+            this.source.receive(id, 100);
+
+        this.createSync().sync(ACCOUNT, this.source);
+
+        for (long id = 11; id <= 1010; id++)
+            this.source.receive(id, 100);
+
+        // 1 回の同期では 800 件までしか取得できないため、同期位置は進めずに続きの位置を記録する
+        assertEquals(800, this.createSync().sync(ACCOUNT, this.source));
+
+        DirectMessageSync sync = this.createSync();
+        DirectMessageStore.Cursor cursor = sync.getStore().getReceivedCursor(ACCOUNT);
+        assertEquals(10, cursor.getSinceId());
+        assertEquals(210, cursor.getMaxId());
+        assertEquals(1010, cursor.getNewestId());
+
+        this.source.receive(1011, 100);
+        this.source.pagings.clear();
+
+        assertEquals(200, sync.sync(ACCOUNT, this.source));
+        assertEquals(210, this.source.pagings.get(0).getMaxId());
+        assertEquals(1010, sync.getStore().getReceivedCursor(ACCOUNT).getSinceId());
+        assertFalse(sync.getStore().getReceivedCursor(ACCOUNT).isPending());
+
+        assertEquals(1, sync.sync(ACCOUNT, this.source));
+        assertEquals(1011, sync.getStore().getMessageCount(ACCOUNT));
+    }
+
+    private DirectMessageSync createSync() {
+        return new DirectMessageSync(new DirectMessageStore(this.directory, this.logger), this.logger);
+    }
+
+    private static List<Long> ids(List<DirectMessageStore.Message> messages) {
+        return messages.stream().map(DirectMessageStore.Message::getId).collect(Collectors.toList());
+    }
+
+    private static class FakeSource implements DirectMessageSync.Source {
+        private final List<DirectMessage> received = new ArrayList<>();
+        private final List<DirectMessage> sent = new ArrayList<>();
+        private final List<Paging> pagings = new ArrayList<>();
+        private boolean failOnMaxId;
+
+        private void receive(long id, long senderId) throws TwitterException {
+            this.received.add(create(id, senderId, ACCOUNT));
+        }
+
+        private void send(long id, long recipientId) throws TwitterException {
+            this.sent.add(create(id, ACCOUNT, recipientId));
+        }
+
+        @Override
+        public List<DirectMessage> getReceived(Paging paging) throws TwitterException {
+            return this.page(this.received, paging);
+        }
+
+        @Override
+        public List<DirectMessage> getSent(Paging paging) throws TwitterException {
+            return this.page(this.sent, paging);
+        }
+
+        private List<DirectMessage> page(List<DirectMessage> messages, Paging paging) throws TwitterException {
+            this.pagings.add(paging);
+
+            if (this.failOnMaxId && paging.getMaxId() > 0)
+                throw new TwitterException("rate limit", null, 429);
+
+            return messages.stream()
+                    .filter(m -> paging.getSinceId() <= 0 || m.getId() > paging.getSinceId())
+                    .filter(m -> paging.getMaxId() <= 0 || m.getId() <= paging.getMaxId())
+                    .sorted(Comparator.comparingLong(DirectMessage::getId).reversed())
+                    .limit(paging.getCount())
+                    .collect(Collectors.toList());
+        }
+
+        private static DirectMessage create(long id, long senderId, long recipientId) throws TwitterException {
+            return TwitterObjectFactory.createDirectMessage(String.format(MESSAGE_JSON,
+                    id, id, id, senderId, recipientId, senderId, recipientId));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.Test;
+import twitter4j.Status;
+import twitter4j.TwitterObjectFactory;
+import twitter4j.User;
+
+import java.time.ZoneId;
+
+import static org.junit.Assert.*;
+
+public class HTMLTemplateTest {
+    private static final String USER_JSON = "{\"id\":%d,\"id_str\":\"%d\",\"name\":\"%s\",\"screen_name\":\"%s\"," +
+            "\"protected\":%s,\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"}";
+
+    // 絵文字はコードポイント 1 つ、&lt;b&gt; は API の本文では 9 文字として数えられる
+    private static final String STATUS_JSON = "{\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"," +
+            "\"id\":100,\"id_str\":\"100\"," +
+            "\"text\":\"\\ud83d\\ude00 &lt;b&gt; @alice #tag http://t.co/x\\nend\"," +
+            "\"source\":\"<a href=\\\"http://example.com/\\\">client</a>\",\"truncated\":false," +
+            "\"favorited\":false,\"retweeted\":false,\"favorite_count\":3,\"retweet_count\":0," +
+            "\"user\":" + String.format(USER_JSON, 1, 1, "A & B", "ab", "true") + "," +
+            "\"entities\":{\"hashtags\":[{\"text\":\"tag\",\"indices\":[19,23]}],\"symbols\":[]," +
+            "\"urls\":[{\"url\":\"http://t.co/x\",\"expanded_url\":\"http://example.com/?a=1&b=2\"," +
+            "\"display_url\":\"example.com/?a=1…\",\"indices\":[24,37]}]," +
+            "\"user_mentions\":[{\"id\":42,\"id_str\":\"42\",\"screen_name\":\"alice\",\"name\":\"Alice\"," +
+            "\"indices\":[12,18]}]}}";
+
+    private static final String RETWEET_JSON = "{\"created_at\":\"Wed Aug 20 13:00:00 +0000 2014\"," +
+            "\"id\":200,\"id_str\":\"200\",\"text\":\"RT @ab: x\",\"source\":\"web\",\"truncated\":false," +
+            "\"favorited\":false,\"retweeted\":false,\"favorite_count\":0,\"retweet_count\":0," +
+            "\"user\":" + String.format(USER_JSON, 2, 2, "Carol", "carol", "false") + "," +
+            "\"retweeted_status\":" + STATUS_JSON + "," +
+            "\"entities\":{\"hashtags\":[],\"symbols\":[],\"urls\":[],\"user_mentions\":[]}}";
+
+    @Test
+    public void testLinkedText() throws Exception {
+        Status status = TwitterObjectFactory.createStatus(STATUS_JSON);
+        StringBuilder sb = new StringBuilder();
+        HTMLTemplate.writeLinkedText(sb, status);
+
+        assertEquals("😀 &lt;b&gt; " +
+                "<a href=\"https://twitter.com/alice\" class=\"mention\" data-user-id=\"42\">@alice</a> " +
+                "<a href=\"https://twitter.com/hashtag/tag\" class=\"hashtag\">#tag</a> " +
+                "<a href=\"http://example.com/?a=1&amp;b=2\" class=\"url\">example.com/?a=1…</a><br>end",
+                sb.toString());
+    }
+
+    @Test
+    public void testCachedImageURL() throws Exception {
+        HTMLTemplate<User> template = HTMLTemplate.compileUser(
+                "<img src=\"{{cached_profile_image_url}}\"><img src=\"{{profile_image_url}}\">");
+
+        User user = TwitterObjectFactory.createUser("{\"id\":1,\"id_str\":\"1\",\"screen_name\":\"ab\"," +
+                "\"profile_image_url_https\":\"https://pbs.twimg.com/a_normal.png\"," +
+                "\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"}");
+
+        assertEquals("<img src=\"nanasetter-image:https%3A%2F%2Fpbs.twimg.com%2Fa_normal.png\">" +
+                     "<img src=\"https://pbs.twimg.com/a_normal.png\">", template.render(user));
+    }
+
+    @Test
+    public void testStatusTemplate() throws Exception {
+        HTMLTemplate<Status> template = HTMLTemplate.compileStatus(
+                "<div data-id=\"{{id}}\">{{#retweet}}<i>{{retweeter.name}}</i>{{/retweet}}" +
+                "<b>{{ user.name }}</b>{{#user.protected}}[P]{{/user.protected}}" +
+                "{{^reply}}<span>{{favorite_count}} {{source}}</span>{{/reply}}</div>");
+
+        Status status = TwitterObjectFactory.createStatus(STATUS_JSON);
+        assertEquals("<div data-id=\"100\"><b>A &amp; B</b>[P]<span>3 client</span></div>", template.render(status));
+
+        // リツイートはリツイート元のツイートとして変換される
+        Status retweet = TwitterObjectFactory.createStatus(RETWEET_JSON);
+        assertEquals("<div data-id=\"100\"><i>Carol</i><b>A &amp; B</b>[P]<span>3 client</span></div>",
+                template.render(retweet));
+    }
+
+    @Test
+    public void testRelativeTime() throws Exception {
+        HTMLTemplate<Status> template = HTMLTemplate.compileStatus(
+                "<span data-relative-time=\"status-{{id}}\">{{relative_time}}</span>");
+
+        // 24 時間以上前のツイートは日付で表示される
+        Status status = TwitterObjectFactory.createStatus(STATUS_JSON);
+        String label = RelativeTimeUpdater.getLabel(status.getCreatedAt().getTime(), System.currentTimeMillis(),
+                ZoneId.systemDefault());
+        assertEquals("<span data-relative-time=\"status-100\">" + label + "</span>", template.render(status));
+    }
+
+    @Test
+    public void testUserTemplate() throws Exception {
+        HTMLTemplate<User> template = HTMLTemplate.compileUser(
+                "@{{screen_name}}{{^protected}} (public){{/protected}}");
+
+        assertEquals("@ab", template.render(TwitterObjectFactory.createStatus(STATUS_JSON).getUser()));
+        assertEquals("@carol (public)", template.render(TwitterObjectFactory.createStatus(RETWEET_JSON).getUser()));
+    }
+
+    @Test
+    public void testCompileError() throws Exception {
+        String[] invalid = {"{{unknown}}", "{{#retweet}}", "{{#retweet}}{{/reply}}", "{{/retweet}}", "{{id", "{{#id}}{{/id}}"};
+
+        for (String source : invalid) {
+            try {
+                HTMLTemplate.compileStatus(source);
+                fail(source);
+            } catch (IllegalArgumentException ex) {
+                // 期待される例外
+            }
+        }
+    }
+}
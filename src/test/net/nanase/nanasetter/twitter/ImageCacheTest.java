@@ -0,0 +1,224 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ImageCacheTest {
+    private Path directory;
+    private Logger logger;
+    private Map<String, byte[]> images;
+    private AtomicInteger fetchCount;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-image");
+        this.logger = Logger.getAnonymousLogger();
+        this.logger.setUseParentHandlers(false);
+        this.images = new HashMap<>();
+        this.fetchCount = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testDownscale() throws Exception {
+        this.images.put("https://example.com/large.png", createImage(1000, 500));
+        this.images.put("https://example.com/small.png", createImage(40, 30));
+
+        try (ImageCache cache = this.createCache(1L << 20)) {
+            BufferedImage large = ImageIO.read(cache.load("https://example.com/large.png")
+                    .get(5, TimeUnit.SECONDS).toFile());
+            assertEquals(100, large.getWidth());
+            assertEquals(50, large.getHeight());
+
+            assertArrayEquals(this.images.get("https://example.com/small.png"),
+                    Files.readAllBytes(cache.load("https://example.com/small.png").get(5, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    public void testContentAddressing() throws Exception {
+        byte[] image = createImage(20, 20);
+        this.images.put("https://example.com/a.png", image);
+        this.images.put("https://example.com/b.png", image);
+
+        try (ImageCache cache = this.createCache(1L << 20)) {
+            Path a = cache.load("https://example.com/a.png").get(5, TimeUnit.SECONDS);
+            Path b = cache.load("https://example.com/b.png").get(5, TimeUnit.SECONDS);
+
+            assertEquals(a, b);
+            assertEquals(2, cache.size());
+            assertEquals(image.length, cache.getTotalBytes());
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        for (int i = 0; i < 4; i++)
+            this.images.put("https://example.com/" + i + ".png", createImage(10 + i, 10));
+
+        long budget = this.images.get("https://example.com/0.png").length +
+                      this.images.get("https://example.com/2.png").length +
+                      this.images.get("https://example.com/3.png").length;
+
+        try (ImageCache cache = this.createCache(budget)) {
+            for (int i = 0; i < 3; i++)
+                cache.load("https://example.com/" + i + ".png").get(5, TimeUnit.SECONDS);
+
+            // 0 を参照し直すことで 1 が最も長く参照されていないものになる
+            assertNotNull(cache.getCached("https://example.com/0.png"));
+            cache.load("https://example.com/3.png").get(5, TimeUnit.SECONDS);
+
+            assertNull(cache.getCached("https://example.com/1.png"));
+            assertNotNull(cache.getCached("https://example.com/0.png"));
+            assertTrue(cache.getTotalBytes() <= budget);
+        }
+
+        try (Stream<Path> files = Files.list(this.directory)) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        this.images.put("https://example.com/a.png", createImage(20, 20));
+
+        try (ImageCache cache = this.createCache(1L << 20)) {
+            cache.load("https://example.com/a.png").get(5, TimeUnit.SECONDS);
+        }
+
+        try (ImageCache cache = this.createCache(1L << 20)) {
+            assertArrayEquals(this.images.get("https://example.com/a.png"), cache.read("https://example.com/a.png"));
+            assertEquals(1, this.fetchCount.get());
+        }
+    }
+
+    @Test
+    public void testURLHandler() throws Exception {
+        this.images.put("https://example.com/a.png?size=normal", createImage(20, 20));
+
+        try (ImageCache cache = this.createCache(1L << 20)) {
+            URL url = new URL(null, ImageCache.toCacheURL("https://example.com/a.png?size=normal"),
+                    cache.createURLStreamHandler());
+
+            assertEquals(ImageCache.SCHEME, url.getProtocol());
+            assertEquals("image/png", url.openConnection().getContentType());
+
+            try (InputStream input = url.openStream()) {
+                assertEquals(20, ImageIO.read(input).getWidth());
+            }
+        }
+    }
+
+    @Test
+    public void testInstall() throws Exception {
+        this.images.put("https://example.com/a.png", createImage(20, 20));
+
+        try (ImageCache first = this.createCache(1L << 20)) {
+            assertTrue(ImageCache.install(first));
+        }
+
+        // 2 回目の登録ではファクトリを設定し直さずに読み込み先のみを置き換える
+        try (ImageCache second = this.createCache(1L << 20)) {
+            assertTrue(ImageCache.install(second));
+
+            try (InputStream input = new URL(ImageCache.toCacheURL("https://example.com/a.png")).openStream()) {
+                assertEquals(20, ImageIO.read(input).getWidth());
+            }
+        }
+
+        // 閉じられたキャッシュの登録は解除される
+        try {
+            new URL(ImageCache.toCacheURL("https://example.com/a.png")).openStream().close();
+            fail();
+        } catch (IOException ex) {
+            //
+        }
+    }
+
+    @Test
+    public void testRejectLocalFile() throws Exception {
+        try (ImageCache cache = this.createCache(1L << 20)) {
+            cache.load("file:///etc/passwd").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+            assertEquals(0, this.fetchCount.get());
+        }
+    }
+
+    private ImageCache createCache(long maxBytes) throws IOException {
+        return new ImageCache(this.directory, url -> {
+            this.fetchCount.incrementAndGet();
+            byte[] image = this.images.get(url);
+
+            if (image == null)
+                throw new IOException(url);
+
+            return image;
+        }, this.logger, maxBytes, 100, 2);
+    }
+
+    private static byte[] createImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0xff0000);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.nanase.nanasetter.utils.JSONParser;
+import twitter4j.conf.ConfigurationBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/26.
+ */
+
+/**
+ * <p>Twitter の REST API とストリーミング API の代わりに応答するローカルの HTTP サーバです。
+ * <p>応答はシナリオファイル (JSON) で定義され、遅延の付加、レート制限ヘッダの付与、レート制限超過による 429 応答、
+ * 一定数のイベント送信後の切断を再現できます。{@link #createConfiguration()} で得られる設定を用いると、
+ * twitter4j の通信はすべてこのサーバに向けられます。ネットワークや認証情報は必要ありません。
+ * <pre>
+ * {
+ *   "routes": [
+ *     { "method": "GET", "path": "/1.1/statuses/home_timeline.json", "body": [ ... ],
+ *       "latency": 50, "jitter": 10, "rateLimit": { "limit": 15, "window": 900 } },
+ *     { "path": "/1.1/statuses/update.json", "status": 403, "bodyFile": "error.json" }
+ *   ],
+ *   "streams": [
+ *     { "path": "/1.1/user.json", "events": [ ... ], "interval": 10, "repeat": true, "disconnectAfter": 100 }
+ *   ]
+ * }
+ * </pre>
+ * method を省略した経路はすべてのメソッドに応答します。クエリ文字列は照合に使用されません。
+ * 定義されていない経路には 404 を返します。
+ */
+public class LocalTwitterServer implements AutoCloseable {
+    private static final String RATE_LIMIT_ERROR = "{\"errors\":[{\"code\":88,\"message\":\"Rate limit exceeded\"}]}";
+
+    private static final String NOT_FOUND_ERROR =
+            "{\"errors\":[{\"code\":34,\"message\":\"Sorry, that page does not exist\"}]}";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<Route> routes;
+    private final List<Stream> streams;
+
+    private LocalTwitterServer(List<Route> routes, List<Stream> streams) throws IOException {
+        this.routes = routes;
+        this.streams = streams;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "local-twitter-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * シナリオファイルを読み込み、サーバを起動します。bodyFile はシナリオファイルからの相対パスで解決されます。
+     *
+     * @param scenarioFile シナリオファイル。
+     * @return 起動された LocalTwitterServer オブジェクト。
+     * @throws IOException ファイルの読み込みまたはサーバの起動に失敗した場合に発生します。
+     */
+    public static LocalTwitterServer start(Path scenarioFile) throws IOException {
+        String scenario = new String(Files.readAllBytes(scenarioFile), StandardCharsets.UTF_8);
+        return start(scenario, scenarioFile.toAbsolutePath().getParent());
+    }
+
+    /**
+     * シナリオを表す JSON 文字列を指定してサーバを起動します。
+     *
+     * @param scenario シナリオを表す JSON 文字列。
+     * @param baseDir  bodyFile を解決する基準のディレクトリ。
+     * @return 起動された LocalTwitterServer オブジェクト。
+     * @throws IOException ファイルの読み込みまたはサーバの起動に失敗した場合に発生します。
+     */
+    public static LocalTwitterServer start(String scenario, Path baseDir) throws IOException {
+        Map<?, ?> root = (Map<?, ?>) JSONParser.parse(scenario);
+        List<Route> routes = new ArrayList<>();
+        List<Stream> streams = new ArrayList<>();
+
+        for (Object route : getList(root, "routes"))
+            routes.add(new Route((Map<?, ?>) route, baseDir));
+
+        for (Object stream : getList(root, "streams"))
+            streams.add(new Stream((Map<?, ?>) stream));
+
+        return new LocalTwitterServer(routes, streams);
+    }
+
+    /**
+     * サーバの基準 URL を取得します。
+     *
+     * @return {@code http://127.0.0.1:ポート番号/} の形式の URL。
+     */
+    public String getBaseURL() {
+        InetSocketAddress address = this.server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + "/";
+    }
+
+    /**
+     * REST API とストリーミング API の基準 URL をこのサーバに向けた twitter4j の設定を生成します。
+     * OAuth の署名は検証されないため、任意の値が設定されます。
+     *
+     * @return ConfigurationBuilder オブジェクト。
+     */
+    public ConfigurationBuilder createConfiguration() {
+        String base = this.getBaseURL();
+
+        return new ConfigurationBuilder()
+                .setOAuthConsumerKey("consumer")
+                .setOAuthConsumerSecret("consumer-secret")
+                .setOAuthAccessToken("1-access")
+                .setOAuthAccessTokenSecret("access-secret")
+                .setRestBaseURL(base + "1.1/")
+                .setStreamBaseURL(base + "1.1/")
+                .setUserStreamBaseURL(base + "1.1/")
+                .setSiteStreamBaseURL(base + "1.1/");
+    }
+
+    /**
+     * 指定されたパスに対して受け付けた要求の数を取得します。
+     *
+     * @param path 経路のパス。
+     * @return 要求の数。経路が定義されていない場合は 0。
+     */
+    public long getRequestCount(String path) {
+        long count = 0;
+
+        for (Route route : this.routes)
+            if (route.path.equals(path))
+                count += route.requestCount.get();
+
+        for (Stream stream : this.streams)
+            if (stream.path.equals(path))
+                count += stream.requestCount.get();
+
+        return count;
+    }
+
+    /**
+     * サーバを停止します。
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+
+        try {
+            // 要求本文は使用しないが、接続を再利用できるように読み捨てる
+            while (exchange.getRequestBody().read() >= 0) {
+                // 読み捨てる
+            }
+
+            for (Stream stream : this.streams) {
+                if (stream.path.equals(path)) {
+                    stream.serve(exchange);
+                    return;
+                }
+            }
+
+            for (Route route : this.routes) {
+                if (route.matches(method, path)) {
+                    route.serve(exchange);
+                    return;
+                }
+            }
+
+            send(exchange, 404, NOT_FOUND_ERROR);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+
+        if (bytes.length > 0) {
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    private static void sleep(long latency, long jitter) throws InterruptedException {
+        long millis = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+
+        if (millis > 0)
+            Thread.sleep(millis);
+    }
+
+    private static List<?> getList(Map<?, ?> map, String name) {
+        Object value = map.get(name);
+        return value instanceof List ? (List<?>) value : Collections.emptyList();
+    }
+
+    private static long getLong(Map<?, ?> map, String name, long defaultValue) {
+        Object value = map.get(name);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
+    private static String toJSON(Object value) {
+        StringBuilder sb = new StringBuilder();
+        writeJSON(sb, value);
+        return sb.toString();
+    }
+
+    private static void writeJSON(StringBuilder sb, Object value) {
+        if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first)
+                    sb.append(',');
+
+                StatusSerializer.writeString(sb, entry.getKey().toString());
+                sb.append(':');
+                writeJSON(sb, entry.getValue());
+                first = false;
+            }
+
+            sb.append('}');
+        } else if (value instanceof List) {
+            sb.append('[');
+            boolean first = true;
+
+            for (Object item : (List<?>) value) {
+                if (!first)
+                    sb.append(',');
+
+                writeJSON(sb, item);
+                first = false;
+            }
+
+            sb.append(']');
+        } else if (value instanceof String) {
+            StatusSerializer.writeString(sb, (String) value);
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static class Route {
+        private final String method;
+        private final String path;
+        private final int status;
+        private final String body;
+        private final long latency;
+        private final long jitter;
+        private final int rateLimit;
+        private final long rateLimitWindowMillis;
+        private final AtomicLong requestCount = new AtomicLong();
+
+        private long windowStart;
+        private int windowCount;
+
+        private Route(Map<?, ?> map, Path baseDir) throws IOException {
+            this.method = (String) map.get("method");
+            this.path = (String) map.get("path");
+            this.status = (int) getLong(map, "status", 200);
+            this.latency = getLong(map, "latency", 0);
+            this.jitter = getLong(map, "jitter", 0);
+
+            if (this.path == null)
+                throw new IllegalArgumentException("path");
+
+            if (map.get("bodyFile") instanceof String)
+                this.body = new String(Files.readAllBytes(baseDir.resolve((String) map.get("bodyFile"))),
+                        StandardCharsets.UTF_8);
+            else
+                this.body = map.containsKey("body") ? toJSON(map.get("body")) : "";
+
+            Object rateLimit = map.get("rateLimit");
+
+            if (rateLimit instanceof Map) {
+                this.rateLimit = (int) getLong((Map<?, ?>) rateLimit, "limit", 15);
+                this.rateLimitWindowMillis = TimeUnit.SECONDS.toMillis(getLong((Map<?, ?>) rateLimit, "window", 900));
+            } else {
+                this.rateLimit = -1;
+                this.rateLimitWindowMillis = 0;
+            }
+        }
+
+        private boolean matches(String method, String path) {
+            return this.path.equals(path) && (this.method == null || this.method.equalsIgnoreCase(method));
+        }
+
+        private void serve(HttpExchange exchange) throws IOException, InterruptedException {
+            this.requestCount.incrementAndGet();
+            sleep(this.latency, this.jitter);
+
+            if (this.rateLimit < 0) {
+                send(exchange, this.status, this.body);
+                return;
+            }
+
+            int remaining;
+            long reset;
+
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+
+                if (now - this.windowStart >= this.rateLimitWindowMillis) {
+                    this.windowStart = now;
+                    this.windowCount = 0;
+                }
+
+                remaining = this.rateLimit - ++this.windowCount;
+                reset = TimeUnit.MILLISECONDS.toSeconds(this.windowStart + this.rateLimitWindowMillis);
+            }
+
+            exchange.getResponseHeaders().set("x-rate-limit-limit", Integer.toString(this.rateLimit));
+            exchange.getResponseHeaders().set("x-rate-limit-remaining", Integer.toString(Math.max(0, remaining)));
+            exchange.getResponseHeaders().set("x-rate-limit-reset", Long.toString(reset));
+
+            if (remaining < 0)
+                send(exchange, 429, RATE_LIMIT_ERROR);
+            else
+                send(exchange, this.status, this.body);
+        }
+    }
+
+    private static class Stream {
+        private final String path;
+        private final List<String> events;
+        private final long interval;
+        private final boolean repeat;
+        private final long disconnectAfter;
+        private final AtomicLong requestCount = new AtomicLong();
+
+        private Stream(Map<?, ?> map) {
+            this.path = (String) map.get("path");
+            this.interval = getLong(map, "interval", 0);
+            this.repeat = Boolean.TRUE.equals(map.get("repeat"));
+            this.disconnectAfter = getLong(map, "disconnectAfter", -1);
+            this.events = new ArrayList<>();
+
+            if (this.path == null)
+                throw new IllegalArgumentException("path");
+
+            for (Object event : getList(map, "events"))
+                this.events.add(toJSON(event));
+        }
+
+        private void serve(HttpExchange exchange) throws IOException, InterruptedException {
+            this.requestCount.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+
+            try (OutputStream os = exchange.getResponseBody()) {
+                long sent = 0;
+
+                // ストリーミング API と同様に、イベントを改行で区切って送信する
+                do {
+                    for (String event : this.events) {
+                        if (this.disconnectAfter >= 0 && sent >= this.disconnectAfter)
+                            return;
+
+                        os.write((event + "\r\n").getBytes(StandardCharsets.UTF_8));
+                        os.flush();
+                        sent++;
+                        sleep(this.interval, 0);
+                    }
+                } while (this.repeat && !this.events.isEmpty());
+
+                // 切断されるまで keep-alive の改行を送り続ける
+                while (this.disconnectAfter < 0) {
+                    os.write("\r\n".getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                    Thread.sleep(1000);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.ResponseList;
+import twitter4j.Status;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterFactory;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocalTwitterServerTest {
+    private LocalTwitterServer server;
+    private Twitter twitter;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = LocalTwitterServer.start(Paths.get(this.getClass().getResource("/scenario/basic.json").toURI()));
+        this.twitter = new TwitterFactory(this.server.createConfiguration().build()).getInstance();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.close();
+    }
+
+    @Test
+    public void testRest() throws Exception {
+        assertEquals(12345L, this.twitter.getId());
+
+        long start = System.nanoTime();
+        ResponseList<Status> timeline = this.twitter.getHomeTimeline();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue(elapsedMillis >= 100);
+        assertEquals(1, timeline.size());
+        assertEquals("ローカルサーバからのツイート", timeline.get(0).getText());
+        assertEquals(1, timeline.getRateLimitStatus().getRemaining());
+        assertEquals(2, timeline.getRateLimitStatus().getLimit());
+    }
+
+    @Test
+    public void testRateLimitExceeded() throws Exception {
+        this.twitter.getHomeTimeline();
+        this.twitter.getHomeTimeline();
+
+        try {
+            this.twitter.getHomeTimeline();
+            fail();
+        } catch (TwitterException ex) {
+            assertEquals(429, ex.getStatusCode());
+            assertEquals(88, ex.getErrorCode());
+            assertEquals(0, ex.getRateLimitStatus().getRemaining());
+        }
+
+        assertEquals(3, this.server.getRequestCount("/1.1/statuses/home_timeline.json"));
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(this.server.getBaseURL() + "1.1/user.json")
+                .openConnection();
+        List<String> lines = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+
+        // 3 件のイベントを送信したのち切断される
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"friends\""));
+        assertTrue(lines.get(1).startsWith("{\"delete\""));
+        assertTrue(lines.get(2).startsWith("{\"friends\""));
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        try {
+            this.twitter.getMentionsTimeline();
+            fail();
+        } catch (TwitterException ex) {
+            assertEquals(404, ex.getStatusCode());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.HttpParameter;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class MediaUploaderTest {
+    private Path directory;
+    private MediaUploader uploader;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-media");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        this.uploader = new MediaUploader(logger, 1024, 3, 100, 10L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.uploader.close();
+
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testChunkedUpload() throws Exception {
+        byte[] data = new byte[2500];
+        new Random(1).nextBytes(data);
+        Path file = Files.write(this.directory.resolve("movie.mp4"), data);
+
+        FakeEndpoint endpoint = new FakeEndpoint();
+        AtomicLong progress = new AtomicLong();
+
+        long mediaId = this.uploader.upload(endpoint, file, (uploaded, total) -> {
+            assertEquals(data.length, total);
+            progress.accumulateAndGet(uploaded, Math::max);
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(710511363345354753L, mediaId);
+        assertEquals("video/mp4", endpoint.mediaType);
+        assertEquals(3, endpoint.segments.size());
+        assertArrayEquals(data, endpoint.getUploadedBytes());
+        assertEquals(data.length, progress.get());
+        assertEquals(1, endpoint.finalizeCount.get());
+    }
+
+    @Test
+    public void testChunkRetry() throws Exception {
+        Path file = Files.write(this.directory.resolve("anime.gif"), new byte[3000]);
+        FakeEndpoint endpoint = new FakeEndpoint();
+        endpoint.failures.put(1, new AtomicInteger(2));
+
+        this.uploader.upload(endpoint, file, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, endpoint.segments.size());
+        assertEquals(5, endpoint.appendCount.get());
+    }
+
+    @Test
+    public void testPermanentFailure() throws Exception {
+        Path file = Files.write(this.directory.resolve("anime.gif"), new byte[3000]);
+        FakeEndpoint endpoint = new FakeEndpoint();
+        endpoint.forbidden = true;
+
+        try {
+            this.uploader.upload(endpoint, file, null).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TwitterException);
+        }
+
+        assertEquals(0, endpoint.finalizeCount.get());
+    }
+
+    @Test
+    public void testDownscale() throws Exception {
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(2);
+
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                image.setRGB(x, y, random.nextInt());
+
+        Path file = this.directory.resolve("photo.jpg");
+        ImageIO.write(image, "jpeg", file.toFile());
+
+        FakeEndpoint endpoint = new FakeEndpoint();
+        this.uploader.upload(endpoint, file, null).get(5, TimeUnit.SECONDS);
+
+        BufferedImage uploaded = ImageIO.read(new ByteArrayInputStream(endpoint.getUploadedBytes()));
+        assertEquals("image/jpeg", endpoint.mediaType);
+        assertEquals(100, uploaded.getWidth());
+        assertEquals(67, uploaded.getHeight());
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    public void testLocalServer() throws Exception {
+        String scenario = "{\"routes\":[{\"method\":\"POST\",\"path\":\"/1.1/media/upload.json\"," +
+                "\"body\":{\"media_id\":5,\"media_id_string\":\"5\"}}]}";
+        Path file = Files.write(this.directory.resolve("anime.gif"), new byte[2048 + 10]);
+
+        try (LocalTwitterServer server = LocalTwitterServer.start(scenario, this.directory)) {
+            Twitter twitter = new TwitterFactory(server.createConfiguration().build()).getInstance();
+            MediaUploader.Endpoint endpoint = MediaUploader.createEndpoint(twitter,
+                    server.getBaseURL() + "1.1/media/upload.json");
+
+            assertEquals(5L, (long) this.uploader.upload(endpoint, file, null).get(5, TimeUnit.SECONDS));
+            assertEquals(5, server.getRequestCount("/1.1/media/upload.json"));
+        }
+    }
+
+    @Test
+    public void testMediaType() throws Exception {
+        assertEquals("image/jpeg", MediaUploader.getMediaType(this.directory.resolve("a.JPEG")));
+        assertEquals("image/png", MediaUploader.getMediaType(this.directory.resolve("a.png")));
+        assertEquals("video/mp4", MediaUploader.getMediaType(this.directory.resolve("a.mp4")));
+    }
+
+    private static class FakeEndpoint implements MediaUploader.Endpoint {
+        private final Map<Integer, byte[]> segments = new ConcurrentHashMap<>();
+        private final Map<Integer, AtomicInteger> failures = new ConcurrentHashMap<>();
+        private final AtomicInteger appendCount = new AtomicInteger();
+        private final AtomicInteger finalizeCount = new AtomicInteger();
+        private volatile String mediaType;
+        private volatile boolean forbidden;
+
+        @Override
+        public String post(HttpParameter... params) throws TwitterException {
+            String command = getValue(params, "command");
+
+            switch (command) {
+                case "INIT":
+                    this.mediaType = getValue(params, "media_type");
+                    return "{\"media_id\":710511363345354753,\"media_id_string\":\"710511363345354753\"}";
+
+                case "APPEND":
+                    this.appendCount.incrementAndGet();
+
+                    if (this.forbidden)
+                        throw new TwitterException("forbidden", null, 403);
+
+                    int index = Integer.parseInt(getValue(params, "segment_index"));
+                    AtomicInteger failure = this.failures.get(index);
+
+                    if (failure != null && failure.getAndDecrement() > 0)
+                        throw new TwitterException("unavailable", null, 503);
+
+                    this.segments.put(index, readFileBody(params));
+                    return "";
+
+                case "FINALIZE":
+                    this.finalizeCount.incrementAndGet();
+                    return "{\"media_id_string\":\"710511363345354753\"}";
+
+                default:
+                    throw new TwitterException("unknown command", null, 400);
+            }
+        }
+
+        @Override
+        public String get(HttpParameter... params) throws TwitterException {
+            throw new TwitterException("unexpected", null, 400);
+        }
+
+        private byte[] getUploadedBytes() throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            for (int i = 0; i < this.segments.size(); i++)
+                output.write(this.segments.get(i));
+
+            return output.toByteArray();
+        }
+
+        private static String getValue(HttpParameter[] params, String name) {
+            for (HttpParameter param : params)
+                if (param.getName().equals(name))
+                    return param.getValue();
+
+            return null;
+        }
+
+        private static byte[] readFileBody(HttpParameter[] params) {
+            for (HttpParameter param : params) {
+                if (param.hasFileBody()) {
+                    try (InputStream input = param.getFileBody()) {
+                        ByteArrayOutputStream output = new ByteArrayOutputStream();
+                        byte[] buffer = new byte[256];
+                        int read;
+
+                        while ((read = input.read(buffer)) != -1)
+                            output.write(buffer, 0, read);
+
+                        return output.toByteArray();
+                    } catch (IOException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            }
+
+            return null;
+        }
+    }
+}
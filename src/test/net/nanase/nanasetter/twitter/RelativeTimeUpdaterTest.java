@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class RelativeTimeUpdaterTest {
+    private static final ZoneId ZONE = ZoneId.of("Asia/Tokyo");
+    private static final long BASE = ZonedDateTime.of(2014, 8, 30, 12, 0, 0, 0, ZONE).toInstant().toEpochMilli();
+
+    @Test
+    public void testLabel() throws Exception {
+        assertEquals("0秒前", RelativeTimeUpdater.getLabel(BASE, BASE - 500, ZONE));
+        assertEquals("59秒前", RelativeTimeUpdater.getLabel(BASE, BASE + 59999, ZONE));
+        assertEquals("1分前", RelativeTimeUpdater.getLabel(BASE, BASE + 60000, ZONE));
+        assertEquals("23時間前", RelativeTimeUpdater.getLabel(BASE, BASE + 24 * 3600000L - 1, ZONE));
+        assertEquals("8月30日", RelativeTimeUpdater.getLabel(BASE, BASE + 24 * 3600000L, ZONE));
+
+        assertEquals(BASE + 3000, RelativeTimeUpdater.getNextChange(BASE, BASE + 2500));
+        assertEquals(BASE + 180000, RelativeTimeUpdater.getNextChange(BASE, BASE + 120000));
+        assertEquals(BASE + 2 * 3600000L, RelativeTimeUpdater.getNextChange(BASE, BASE + 3600000L));
+        assertEquals(Long.MAX_VALUE, RelativeTimeUpdater.getNextChange(BASE, BASE + 24 * 3600000L));
+    }
+
+    @Test
+    public void testOnlyChangedRows() throws Exception {
+        AtomicLong clock = new AtomicLong(BASE);
+        List<String> delivered = new ArrayList<>();
+
+        try (RelativeTimeUpdater updater = create(clock, delivered)) {
+            assertEquals("0秒前", updater.watch("fresh", BASE));
+            assertEquals("5分前", updater.watch("minutes", BASE - 5 * 60000L - 30000L));
+            assertEquals("3時間前", updater.watch("hours", BASE - 3 * 3600000L));
+
+            clock.addAndGet(1000);
+            updater.tick();
+            assertEquals("[{\"id\":\"fresh\",\"label\":\"1秒前\"}]", delivered.get(0));
+
+            // 分の表示は 30 秒後に変わる
+            clock.addAndGet(29000);
+            updater.tick();
+            assertEquals("[{\"id\":\"fresh\",\"label\":\"30秒前\"},{\"id\":\"minutes\",\"label\":\"6分前\"}]",
+                    delivered.get(delivered.size() - 1));
+
+            int count = delivered.size();
+            updater.tick();
+            assertEquals(count, delivered.size());
+        }
+    }
+
+    @Test
+    public void testLongJump() throws Exception {
+        AtomicLong clock = new AtomicLong(BASE);
+        List<String> delivered = new ArrayList<>();
+
+        try (RelativeTimeUpdater updater = create(clock, delivered)) {
+            updater.watch("a", BASE);
+            updater.watch("b", BASE - 30 * 60000L);
+
+            // ホイールの周期を超えて時刻が進んでも、各行は 1 回だけ配信される
+            clock.addAndGet(2 * 3600000L);
+            updater.tick();
+            assertEquals(1, delivered.size());
+            assertEquals("[{\"id\":\"a\",\"label\":\"2時間前\"},{\"id\":\"b\",\"label\":\"2時間前\"}]", delivered.get(0));
+
+            // 日付の表示になった行は登録から外れる
+            clock.addAndGet(22 * 3600000L);
+            updater.tick();
+            assertEquals(2, delivered.size());
+            assertTrue(delivered.get(1).contains("{\"id\":\"a\",\"label\":\"8月30日\"}"));
+            assertTrue(delivered.get(1).contains("{\"id\":\"b\",\"label\":\"8月30日\"}"));
+            assertEquals(0, updater.size());
+        }
+    }
+
+    @Test
+    public void testUnwatch() throws Exception {
+        AtomicLong clock = new AtomicLong(BASE);
+        List<String> delivered = new ArrayList<>();
+
+        try (RelativeTimeUpdater updater = create(clock, delivered)) {
+            updater.watch("a", BASE);
+            updater.watch("b", BASE);
+            updater.unwatch("a");
+            updater.watch("b", BASE - 60000L);
+
+            clock.addAndGet(1000);
+            updater.tick();
+            assertTrue(delivered.isEmpty());
+
+            clock.addAndGet(59000);
+            updater.tick();
+            assertEquals("[{\"id\":\"b\",\"label\":\"2分前\"}]", delivered.get(0));
+            assertEquals(1, updater.size());
+        }
+
+        try {
+            create(clock, delivered).watch("bad\"key", BASE);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // 期待される例外
+        }
+    }
+
+    private static RelativeTimeUpdater create(AtomicLong clock, List<String> delivered) {
+        return new RelativeTimeUpdater(delivered::add, Logger.getAnonymousLogger(), clock::get, ZONE, 1000, 16, false);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.TwitterException;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SocialGraphCacheTest {
+    private static final long ACCOUNT = 1L;
+
+    private Path directory;
+    private Logger logger;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-graph");
+        this.logger = Logger.getAnonymousLogger();
+        this.logger.setUseParentHandlers(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testSyncAndDiff() throws Exception {
+        SocialGraphCache cache = new SocialGraphCache(this.directory, this.logger);
+        List<SocialGraphCache.Diff> diffs = new ArrayList<>();
+        cache.addListener((accountId, relation, diff) -> diffs.add(diff));
+
+        FakeSource source = new FakeSource();
+        source.friends = new long[]{50, 10, 30, 20, 40, 10};
+
+        // 最初の同期では差分は通知されない
+        assertTrue(cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 10));
+        assertTrue(diffs.isEmpty());
+        assertArrayEquals(new long[]{10, 20, 30, 40, 50}, cache.getIds(ACCOUNT, SocialGraphCache.Relation.FRIENDS));
+        assertTrue(cache.contains(ACCOUNT, SocialGraphCache.Relation.FRIENDS, 30));
+        assertFalse(cache.contains(ACCOUNT, SocialGraphCache.Relation.FRIENDS, 35));
+        assertFalse(cache.contains(ACCOUNT, SocialGraphCache.Relation.FOLLOWERS, 30));
+
+        source.friends = new long[]{60, 20, 40, 50, 5};
+        assertTrue(cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 10));
+        assertEquals(1, diffs.size());
+        assertArrayEquals(new long[]{5, 60}, diffs.get(0).getAdded());
+        assertArrayEquals(new long[]{10, 30}, diffs.get(0).getRemoved());
+
+        // 変化がなければ通知されない
+        assertTrue(cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 10));
+        assertEquals(1, diffs.size());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        FakeSource source = new FakeSource();
+        source.followers = new long[]{3, 1, 2};
+
+        SocialGraphCache cache = new SocialGraphCache(this.directory, this.logger);
+        assertTrue(cache.sync(ACCOUNT, SocialGraphCache.Relation.FOLLOWERS, source, 10));
+
+        // 新しいインスタンスは保存されたファイルを参照し、最初の同期から差分を通知する
+        SocialGraphCache reopened = new SocialGraphCache(this.directory, this.logger);
+        List<SocialGraphCache.Diff> diffs = new ArrayList<>();
+        reopened.addListener((accountId, relation, diff) -> diffs.add(diff));
+
+        assertEquals(3, reopened.size(ACCOUNT, SocialGraphCache.Relation.FOLLOWERS));
+        assertTrue(reopened.contains(ACCOUNT, SocialGraphCache.Relation.FOLLOWERS, 2));
+
+        source.followers = new long[]{1, 2, 3, 4};
+        assertTrue(reopened.sync(ACCOUNT, SocialGraphCache.Relation.FOLLOWERS, source, 10));
+        assertEquals(1, diffs.size());
+        assertArrayEquals(new long[]{4}, diffs.get(0).getAdded());
+        assertArrayEquals(new long[0], diffs.get(0).getRemoved());
+    }
+
+    @Test
+    public void testGenerations() throws Exception {
+        SocialGraphCache cache = new SocialGraphCache(this.directory, this.logger);
+        FakeSource source = new FakeSource();
+        source.friends = new long[]{1, 2};
+        assertTrue(cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 10));
+
+        // 参照中のファイルは置き換えず、新しい世代のファイルを書き込んで古い世代を削除する
+        source.friends = new long[]{1, 2, 3};
+        assertTrue(cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 10));
+        assertTrue(cache.contains(ACCOUNT, SocialGraphCache.Relation.FRIENDS, 3));
+
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            assertEquals(Collections.singletonList(ACCOUNT + ".friends.2.ids"),
+                    paths.map(path -> path.getFileName().toString()).collect(Collectors.toList()));
+        }
+
+        SocialGraphCache reopened = new SocialGraphCache(this.directory, this.logger);
+        assertArrayEquals(new long[]{1, 2, 3}, reopened.getIds(ACCOUNT, SocialGraphCache.Relation.FRIENDS));
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        SocialGraphCache cache = new SocialGraphCache(this.directory, this.logger);
+        FakeSource source = new FakeSource();
+        source.friends = new long[]{1, 2, 3, 4, 5};
+
+        assertFalse(cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 2));
+        assertEquals(0, cache.size(ACCOUNT, SocialGraphCache.Relation.FRIENDS));
+
+        source.failAt = 4L;
+        try {
+            cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 2);
+            fail();
+        } catch (TwitterException ex) {
+            // 失敗したページは次の同期で再び取得される
+        }
+
+        source.failAt = Long.MIN_VALUE;
+        assertTrue(cache.sync(ACCOUNT, SocialGraphCache.Relation.FRIENDS, source, 2));
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5}, cache.getIds(ACCOUNT, SocialGraphCache.Relation.FRIENDS));
+        assertEquals(Arrays.asList(-1L, 2L, 4L, 4L), source.requested);
+    }
+
+    @Test
+    public void testDiffRandom() throws Exception {
+        Random random = new Random(45);
+        TreeSet<Long> previous = new TreeSet<>();
+        TreeSet<Long> current = new TreeSet<>();
+
+        for (int i = 0; i < 10000; i++) {
+            previous.add((long) random.nextInt(20000));
+            current.add((long) random.nextInt(20000));
+        }
+
+        SocialGraphCache.Diff diff = SocialGraphCache.diff(
+                LongBuffer.wrap(previous.stream().mapToLong(Long::longValue).toArray()),
+                current.stream().mapToLong(Long::longValue).toArray());
+
+        TreeSet<Long> added = new TreeSet<>(current);
+        added.removeAll(previous);
+        TreeSet<Long> removed = new TreeSet<>(previous);
+        removed.removeAll(current);
+
+        assertArrayEquals(added.stream().mapToLong(Long::longValue).toArray(), diff.getAdded());
+        assertArrayEquals(removed.stream().mapToLong(Long::longValue).toArray(), diff.getRemoved());
+    }
+
+    /**
+     * 2 件ずつのページを返す Source。カーソルは次に返す要素の位置を表します。
+     */
+    private static class FakeSource implements SocialGraphCache.Source {
+        private final List<Long> requested = new ArrayList<>();
+        private long[] friends = new long[0];
+        private long[] followers = new long[0];
+        private long failAt = Long.MIN_VALUE;
+
+        @Override
+        public SocialGraphCache.Page fetch(SocialGraphCache.Relation relation, long cursor) throws TwitterException {
+            this.requested.add(cursor);
+
+            if (cursor == this.failAt)
+                throw new TwitterException("failure");
+
+            long[] ids = relation == SocialGraphCache.Relation.FRIENDS ? this.friends : this.followers;
+            int from = cursor == -1L ? 0 : (int) cursor;
+            int to = Math.min(from + 2, ids.length);
+
+            return new SocialGraphCache.Page(Arrays.copyOfRange(ids, from, to), to >= ids.length ? 0L : to);
+        }
+    }
+}
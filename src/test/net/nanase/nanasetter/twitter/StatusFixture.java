@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+/**
+ * Project: Nanasetter
+ * Created by nanase on 14/08/31.
+ */
+
+/**
+ * <p>テストで使用する最小限のツイートを作成します。
+ * <p>ツイートは twitter4j が受け取る JSON から {@link TwitterObjectFactory} によって作成されます。
+ * 指定されていない投稿者の ID は 1 となり、リプライ先は設定されません。
+ * <pre>
+ * Status status = StatusFixture.status(100).user(2).inReplyToUser(3).build();
+ * </pre>
+ */
+public class StatusFixture {
+    private static final String CREATED_AT = "Wed Aug 20 12:00:00 +0000 2014";
+
+    private final long id;
+    private long userId = 1L;
+    private long inReplyToStatusId = -1L;
+    private long inReplyToUserId = -1L;
+
+    private StatusFixture(long id) {
+        this.id = id;
+    }
+
+    /**
+     * ツイート ID を指定して、ツイートの作成を開始します。
+     *
+     * @param id ツイート ID。
+     * @return StatusFixture オブジェクト。
+     */
+    public static StatusFixture status(long id) {
+        return new StatusFixture(id);
+    }
+
+    /**
+     * 投稿者のユーザ ID を設定します。
+     *
+     * @param userId 投稿者のユーザ ID。
+     * @return この StatusFixture オブジェクト。
+     */
+    public StatusFixture user(long userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    /**
+     * リプライ先のツイート ID を設定します。
+     *
+     * @param statusId リプライ先のツイート ID。負の値の場合は設定されません。
+     * @return この StatusFixture オブジェクト。
+     */
+    public StatusFixture inReplyToStatus(long statusId) {
+        this.inReplyToStatusId = statusId;
+        return this;
+    }
+
+    /**
+     * リプライ先のユーザ ID を設定します。
+     *
+     * @param userId リプライ先のユーザ ID。負の値の場合は設定されません。
+     * @return この StatusFixture オブジェクト。
+     */
+    public StatusFixture inReplyToUser(long userId) {
+        this.inReplyToUserId = userId;
+        return this;
+    }
+
+    /**
+     * 設定された値から Status オブジェクトを作成します。
+     *
+     * @return Status オブジェクト。
+     * @throws TwitterException JSON を変換できませんでした。
+     */
+    public Status build() throws TwitterException {
+        return TwitterObjectFactory.createStatus(this.toJSON());
+    }
+
+    /**
+     * 設定された値から twitter4j が受け取る JSON 文字列を作成します。
+     *
+     * @return JSON 文字列。
+     */
+    public String toJSON() {
+        StringBuilder sb = new StringBuilder(512)
+                .append("{\"created_at\":\"").append(CREATED_AT).append("\",")
+                .append("\"id\":").append(this.id).append(",\"id_str\":\"").append(this.id).append("\",")
+                .append("\"text\":\"test\",\"source\":\"web\",\"truncated\":false,");
+
+        if (this.inReplyToStatusId >= 0)
+            sb.append("\"in_reply_to_status_id\":").append(this.inReplyToStatusId).append(',');
+
+        if (this.inReplyToUserId >= 0)
+            sb.append("\"in_reply_to_user_id\":").append(this.inReplyToUserId).append(',');
+
+        return sb.append("\"favorited\":false,\"retweeted\":false,\"favorite_count\":0,\"retweet_count\":0,")
+                .append("\"user\":{\"id\":").append(this.userId).append(",\"id_str\":\"").append(this.userId)
+                .append("\",\"name\":\"user\",\"screen_name\":\"user\",\"created_at\":\"").append(CREATED_AT).append("\"},")
+                .append("\"entities\":{\"hashtags\":[],\"symbols\":[],\"urls\":[],\"user_mentions\":[]}}")
+                .toString();
+    }
+}
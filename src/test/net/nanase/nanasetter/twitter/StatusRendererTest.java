@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.Test;
+import twitter4j.Status;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class StatusRendererTest {
+    @Test
+    public void testRender() throws Exception {
+        try (StatusRenderer renderer = new StatusRenderer(Logger.getAnonymousLogger(), 3)) {
+            HTMLTemplate<Status> template = renderer.getStatusTemplate("[{{id}}]");
+            assertSame(template, renderer.getStatusTemplate("[{{id}}]"));
+
+            List<Status> statuses = new ArrayList<>();
+            StringBuilder expected = new StringBuilder();
+
+            for (int i = 0; i < 100; i++) {
+                statuses.add(StatusFixture.status(i).build());
+                expected.append('[').append(i).append(']');
+            }
+
+            assertEquals(expected.toString(), renderer.render(template, statuses).get(5, TimeUnit.SECONDS));
+            assertEquals("", renderer.render(template, Collections.<Status>emptyList()).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testObserverOrder() throws Exception {
+        try (StatusRenderer renderer = new StatusRenderer(Logger.getAnonymousLogger(), 4)) {
+            List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(500);
+            Consumer<Status> observer = renderer.createObserver(renderer.getStatusTemplate("{{id}}"), html -> {
+                delivered.add(html);
+                latch.countDown();
+            });
+
+            for (int i = 0; i < 500; i++)
+                observer.accept(StatusFixture.status(i).build());
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 500; i++)
+                assertEquals(String.valueOf(i), delivered.get(i));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.JSONParser;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.Status;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StatusSerializerTest {
+    private static final String STATUS_JSON = "{\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"," +
+            "\"id\":501999999999999999,\"id_str\":\"501999999999999999\"," +
+            "\"text\":\"\\\"Hello\\\"\\n#nanasetter @nanase http://t.co/abc \\u2028\"," +
+            "\"source\":\"web\",\"truncated\":false,\"in_reply_to_status_id\":null," +
+            "\"favorited\":false,\"retweeted\":false,\"favorite_count\":3,\"retweet_count\":1,\"lang\":\"ja\"," +
+            "\"user\":{\"id\":12345,\"id_str\":\"12345\",\"name\":\"ななせ\",\"screen_name\":\"nanase\"," +
+            "\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\",\"followers_count\":10,\"friends_count\":20," +
+            "\"statuses_count\":30,\"favourites_count\":40,\"protected\":false,\"verified\":false}," +
+            "\"entities\":{\"hashtags\":[{\"text\":\"nanasetter\",\"indices\":[8,19]}]," +
+            "\"symbols\":[],\"urls\":[{\"url\":\"http://t.co/abc\",\"expanded_url\":\"http://example.com/\"," +
+            "\"display_url\":\"example.com\",\"indices\":[28,43]}]," +
+            "\"user_mentions\":[{\"id\":12345,\"id_str\":\"12345\",\"screen_name\":\"nanase\",\"name\":\"ななせ\"," +
+            "\"indices\":[20,27]}]}}";
+
+    private Status status;
+
+    @Before
+    public void setUp() throws Exception {
+        this.status = TwitterObjectFactory.createStatus(STATUS_JSON);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSerialize() throws Exception {
+        StatusSerializer serializer = new StatusSerializer(0);
+        Map<String, Object> json = (Map<String, Object>) JSONParser.parse(serializer.serialize(this.status));
+
+        assertEquals("501999999999999999", json.get("id_str"));
+        assertEquals(this.status.getText(), json.get("text"));
+        assertEquals(this.status.getCreatedAt().getTime(), json.get("created_at"));
+        assertEquals(3, json.get("favorite_count"));
+        assertEquals(false, json.get("retweeted"));
+
+        Map<String, Object> user = (Map<String, Object>) json.get("user");
+        assertEquals("12345", user.get("id_str"));
+        assertEquals("ななせ", user.get("name"));
+        assertEquals(10, user.get("followers_count"));
+
+        Map<String, Object> entities = (Map<String, Object>) json.get("entities");
+        List<Object> hashtags = (List<Object>) entities.get("hashtags");
+        assertEquals(1, hashtags.size());
+        assertEquals("nanasetter", ((Map<String, Object>) hashtags.get(0)).get("text"));
+        assertEquals(0, ((List<Object>) entities.get("symbols")).size());
+        assertEquals("http://example.com/",
+                ((Map<String, Object>) ((List<Object>) entities.get("urls")).get(0)).get("expanded_url"));
+        assertEquals(0, ((List<Object>) entities.get("media")).size());
+    }
+
+    @Test
+    public void testWriteString() throws Exception {
+        StringBuilder sb = new StringBuilder();
+
+        StatusSerializer.writeString(sb, "a\"b\\c\n\u0001\u2028");
+        assertEquals("\"a\\\"b\\\\c\\n\\u0001\\u2028\"", sb.toString());
+
+        sb.setLength(0);
+        StatusSerializer.writeString(sb, null);
+        assertEquals("null", sb.toString());
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        StatusSerializer serializer = new StatusSerializer(1);
+        String json = serializer.serialize(this.status);
+
+        assertSame(json, serializer.serialize(this.status));
+
+        serializer.invalidate(this.status.getId());
+        assertNotSame(json, serializer.serialize(this.status));
+        assertEquals(json, serializer.serialize(this.status));
+    }
+}
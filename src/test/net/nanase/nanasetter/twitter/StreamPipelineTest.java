@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import net.nanase.nanasetter.utils.JSONParser;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.Status;
+import twitter4j.StatusDeletionNotice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class StreamPipelineTest {
+    private List<String> delivered;
+    private StreamPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        this.delivered = new ArrayList<>();
+        this.pipeline = new StreamPipeline(new StatusSerializer(), this.delivered::add, Logger.getAnonymousLogger());
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        List<Status> observed = new ArrayList<>();
+        this.pipeline.addFilter(s -> s.getUser().getId() != 2);
+        this.pipeline.addObserver(observed::add);
+
+        this.pipeline.onStatus(StatusFixture.status(100).user(1).build());
+        this.pipeline.onStatus(StatusFixture.status(101).user(2).build());
+        this.pipeline.onStatus(StatusFixture.status(102).user(3).build());
+
+        assertEquals(2, this.delivered.size());
+        assertEquals(2, observed.size());
+        assertEquals(2, this.pipeline.getDeliveredCount());
+        assertEquals(1, this.pipeline.getFilteredCount());
+        assertEquals("102", ((Map<?, ?>) JSONParser.parse(this.delivered.get(1))).get("id_str"));
+    }
+
+    @Test
+    public void testDeletionNotice() throws Exception {
+        this.pipeline.onDeletionNotice(new StatusDeletionNotice() {
+            @Override
+            public long getStatusId() {
+                return 100;
+            }
+
+            @Override
+            public long getUserId() {
+                return 1;
+            }
+
+            @Override
+            public int compareTo(StatusDeletionNotice o) {
+                return Long.compare(this.getStatusId(), o.getStatusId());
+            }
+        });
+
+        assertEquals(1, this.pipeline.getDeletedCount());
+
+        Map<?, ?> delete = (Map<?, ?>) ((Map<?, ?>) JSONParser.parse(this.delivered.get(0))).get("delete");
+        assertEquals("100", delete.get("id_str"));
+        assertEquals("1", delete.get("user_id_str"));
+    }
+}
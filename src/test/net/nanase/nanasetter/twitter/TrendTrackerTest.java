@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.Test;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TrendTrackerTest {
+    private static final long ACCOUNT = 1L;
+
+    private static final String STATUS_JSON = "{\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"," +
+            "\"id\":100,\"id_str\":\"100\",\"text\":\"test\",\"source\":\"web\",\"truncated\":false," +
+            "\"favorited\":false,\"retweeted\":false,\"favorite_count\":0,\"retweet_count\":0," +
+            "\"user\":{\"id\":1,\"id_str\":\"1\",\"name\":\"user\",\"screen_name\":\"user\"," +
+            "\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"}," +
+            "\"entities\":{\"hashtags\":[{\"text\":\"Java\",\"indices\":[0,5]},{\"text\":\"java\",\"indices\":[6,11]}]," +
+            "\"symbols\":[],\"urls\":[{\"url\":\"http://t.co/a\",\"expanded_url\":\"http://example.com/\"," +
+            "\"display_url\":\"example.com\",\"indices\":[12,25]}]," +
+            "\"user_mentions\":[{\"id\":42,\"id_str\":\"42\",\"screen_name\":\"other\",\"name\":\"other\"," +
+            "\"indices\":[26,32]}]}}";
+
+    @Test
+    public void testStatus() throws Exception {
+        TrendTracker tracker = new TrendTracker(60000, 6, 4, 256, 16, () -> 0L);
+
+        tracker.createObserver(ACCOUNT).accept(TwitterObjectFactory.createStatus(STATUS_JSON));
+        tracker.add(ACCOUNT, TwitterObjectFactory.createStatus(STATUS_JSON));
+
+        // 同じツイート内の重複は 1 回として数えられる
+        assertEquals(2, tracker.estimate(ACCOUNT, TrendTracker.Category.HASHTAG, "java"));
+        assertEquals(2, tracker.estimate(ACCOUNT, TrendTracker.Category.URL, "http://example.com/"));
+        assertEquals(2, tracker.estimate(ACCOUNT, TrendTracker.Category.MENTION, "42"));
+        assertEquals(0, tracker.estimate(2L, TrendTracker.Category.HASHTAG, "java"));
+        assertTrue(tracker.getTop(2L, TrendTracker.Category.HASHTAG, 10).isEmpty());
+    }
+
+    @Test
+    public void testTop() throws Exception {
+        TrendTracker tracker = new TrendTracker(60000, 6, 4, 256, 16, () -> 0L);
+        Random random = new Random(47);
+
+        // 多数の稀な項目に混ざった頻出の項目が上位に残る
+        for (int i = 0; i < 20000; i++) {
+            tracker.add(ACCOUNT, TrendTracker.Category.HASHTAG, "rare" + random.nextInt(5000));
+
+            if (i % 10 == 0)
+                tracker.add(ACCOUNT, TrendTracker.Category.HASHTAG, "first");
+
+            if (i % 20 == 0)
+                tracker.add(ACCOUNT, TrendTracker.Category.HASHTAG, "second");
+
+            if (i % 40 == 0)
+                tracker.add(ACCOUNT, TrendTracker.Category.HASHTAG, "third");
+        }
+
+        List<TrendTracker.Trend> top = tracker.getTop(ACCOUNT, TrendTracker.Category.HASHTAG, 3);
+        assertEquals("first,second,third", top.stream().map(TrendTracker.Trend::getKey).collect(Collectors.joining(",")));
+        assertTrue(top.get(0).getCount() >= 2000);
+        assertTrue(top.get(2).getCount() >= 500);
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        TrendTracker tracker = new TrendTracker(60000, 6, 4, 256, 16, clock::get);
+
+        for (int i = 0; i < 5; i++)
+            tracker.add(ACCOUNT, TrendTracker.Category.HASHTAG, "old");
+
+        clock.set(30000);
+
+        for (int i = 0; i < 3; i++)
+            tracker.add(ACCOUNT, TrendTracker.Category.HASHTAG, "new");
+
+        assertEquals("old", tracker.getTop(ACCOUNT, TrendTracker.Category.HASHTAG, 1).get(0).getKey());
+
+        // 集計期間を過ぎた区間は取り除かれる
+        clock.set(60000);
+        assertEquals(0, tracker.estimate(ACCOUNT, TrendTracker.Category.HASHTAG, "old"));
+
+        List<TrendTracker.Trend> top = tracker.getTop(ACCOUNT, TrendTracker.Category.HASHTAG, 10);
+        assertEquals(1, top.size());
+        assertEquals("new", top.get(0).getKey());
+        assertEquals(3, top.get(0).getCount());
+
+        clock.set(1000000);
+        assertTrue(tracker.getTop(ACCOUNT, TrendTracker.Category.HASHTAG, 10).isEmpty());
+    }
+}
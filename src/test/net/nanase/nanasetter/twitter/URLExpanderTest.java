@@ -0,0 +1,198 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.TwitterObjectFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class URLExpanderTest {
+    private static final String STATUS_JSON = "{\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"," +
+            "\"id\":100,\"id_str\":\"100\",\"text\":\"test\",\"source\":\"web\",\"truncated\":false," +
+            "\"favorited\":false,\"retweeted\":false,\"favorite_count\":0,\"retweet_count\":0," +
+            "\"user\":{\"id\":1,\"id_str\":\"1\",\"name\":\"user\",\"screen_name\":\"user\"," +
+            "\"created_at\":\"Wed Aug 20 12:00:00 +0000 2014\"}," +
+            "\"entities\":{\"hashtags\":[],\"symbols\":[],\"urls\":[" +
+            "{\"url\":\"http://t.co/a\",\"expanded_url\":\"http://example.com/a\",\"display_url\":\"example.com/a\",\"indices\":[0,13]}," +
+            "{\"url\":\"http://t.co/b\",\"expanded_url\":\"http://bit.ly/b\",\"display_url\":\"bit.ly/b\",\"indices\":[14,27]}]," +
+            "\"user_mentions\":[]}}";
+
+    private Path directory;
+    private Path cachePath;
+    private Logger logger;
+    private AtomicInteger resolveCount;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-url");
+        this.cachePath = this.directory.resolve("url-cache.tsv");
+        this.logger = Logger.getAnonymousLogger();
+        this.logger.setUseParentHandlers(false);
+        this.resolveCount = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testExpandAndPersist() throws Exception {
+        try (URLExpander expander = this.create(url -> {
+            this.resolveCount.incrementAndGet();
+            return url.replace("http://t.co/", "http://example.com/");
+        }, 100)) {
+            assertNull(expander.getCached("http://t.co/x"));
+            assertEquals("http://example.com/x", expander.expand("http://t.co/x").get(5, TimeUnit.SECONDS));
+            assertEquals("http://example.com/x", expander.expand("http://t.co/x").get(5, TimeUnit.SECONDS));
+            assertEquals(1, this.resolveCount.get());
+        }
+
+        // 再起動後はファイルから読み込まれ、接続せずに展開される
+        try (URLExpander expander = this.create(url -> {
+            throw new IOException("unreachable");
+        }, 100)) {
+            assertEquals("http://example.com/x", expander.getCached("http://t.co/x"));
+            assertEquals("http://example.com/x", expander.expand("http://t.co/x").get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try (URLExpander expander = this.create(url -> {
+            this.resolveCount.incrementAndGet();
+
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+
+            return "http://example.com/";
+        }, 100)) {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 10; i++)
+                futures.add(expander.expand("http://t.co/same"));
+
+            latch.countDown();
+
+            for (CompletableFuture<String> future : futures)
+                assertEquals("http://example.com/", future.get(5, TimeUnit.SECONDS));
+
+            assertEquals(1, this.resolveCount.get());
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        try (URLExpander expander = this.create(url -> {
+            if (this.resolveCount.incrementAndGet() == 1)
+                throw new IOException("timeout");
+
+            return "http://example.com/";
+        }, 100)) {
+            try {
+                expander.expand("http://t.co/x").get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof IOException);
+            }
+
+            // 失敗した結果はキャッシュされない
+            assertNull(expander.getCached("http://t.co/x"));
+            assertEquals("http://example.com/", expander.expand("http://t.co/x").get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testLearn() throws Exception {
+        try (URLExpander expander = this.create(url -> {
+            this.resolveCount.incrementAndGet();
+            return "http://example.com/b";
+        }, 100)) {
+            expander.createObserver().accept(TwitterObjectFactory.createStatus(STATUS_JSON));
+
+            assertEquals("http://example.com/a", expander.getCached("http://t.co/a"));
+            assertNull(expander.getCached("http://t.co/b"));
+            assertEquals(0, this.resolveCount.get());
+        }
+
+        assertTrue(URLExpander.isShortened("http://bit.ly/b"));
+        assertTrue(URLExpander.isShortened("https://T.CO/b"));
+        assertFalse(URLExpander.isShortened("http://example.com/"));
+        assertFalse(URLExpander.isShortened("not a url"));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        try (URLExpander expander = this.create(url -> url + "/expanded", 3)) {
+            for (int i = 0; i < 10; i++)
+                expander.expand("http://t.co/" + i).get(5, TimeUnit.SECONDS);
+
+            assertEquals(3, expander.size());
+            assertNull(expander.getCached("http://t.co/0"));
+            assertEquals("http://t.co/9/expanded", expander.getCached("http://t.co/9"));
+        }
+
+        // 上限を大きく超えたファイルは読み込み時に書き直される
+        try (URLExpander expander = this.create(url -> url, 3)) {
+            assertEquals(3, expander.size());
+        }
+
+        assertEquals(3, Files.readAllLines(this.cachePath, StandardCharsets.UTF_8).size());
+    }
+
+    private URLExpander create(URLExpander.Resolver resolver, int capacity) throws IOException {
+        return new URLExpander(this.cachePath, resolver, this.logger, capacity, 2);
+    }
+}
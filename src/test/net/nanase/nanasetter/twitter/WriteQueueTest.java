@@ -0,0 +1,211 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.twitter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.TwitterException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class WriteQueueTest {
+    private Path directory;
+    private Path journal;
+    private Logger logger;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-queue");
+        this.journal = this.directory.resolve("write-queue.journal");
+        this.logger = Logger.getAnonymousLogger();
+        this.logger.setUseParentHandlers(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger nextId = new AtomicInteger(1000);
+
+        try (WriteQueue queue = this.createQueue(request -> {
+            sent.add(request.getAccountId() + ":" + request.getText());
+            return nextId.incrementAndGet();
+        })) {
+            List<WriteQueue.Ticket> tickets = new ArrayList<>();
+
+            for (int i = 0; i < 5; i++) {
+                tickets.add(queue.submit(WriteRequest.tweet(1, "a" + i)));
+                tickets.add(queue.submit(WriteRequest.tweet(2, "b" + i)));
+            }
+
+            for (WriteQueue.Ticket ticket : tickets)
+                assertTrue(ticket.getCompletion().get(5, TimeUnit.SECONDS) > 1000);
+
+            assertEquals(0, queue.getPendingCount());
+        }
+
+        List<String> account1 = new ArrayList<>();
+        List<String> account2 = new ArrayList<>();
+        sent.forEach(s -> (s.startsWith("1:") ? account1 : account2).add(s));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("1:a" + i, account1.get(i));
+            assertEquals("2:b" + i, account2.get(i));
+        }
+
+        assertEquals(1, Files.readAllLines(this.journal, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        try (WriteQueue queue = this.createQueue(request -> {
+            if (attempts.incrementAndGet() < 3)
+                throw new TwitterException("network", null, 503);
+
+            return 42L;
+        })) {
+            assertEquals(42L, (long) queue.submit(WriteRequest.favorite(1, 42)).getCompletion().get(5, TimeUnit.SECONDS));
+            assertEquals(3, attempts.get());
+        }
+    }
+
+    @Test
+    public void testPermanentFailure() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        try (WriteQueue queue = this.createQueue(request -> {
+            attempts.incrementAndGet();
+
+            if (request.getTargetId() == 1)
+                throw new TwitterException("duplicate", null, 403);
+
+            return request.getTargetId();
+        })) {
+            CompletableFuture<Long> failed = queue.submit(WriteRequest.retweet(1, 1)).getCompletion();
+            CompletableFuture<Long> succeeded = queue.submit(WriteRequest.retweet(1, 2)).getCompletion();
+
+            try {
+                failed.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof TwitterException);
+            }
+
+            assertEquals(2L, (long) succeeded.get(5, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get());
+        }
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        long firstTicket;
+
+        try (WriteQueue queue = this.createQueue(request -> {
+            throw new TwitterException("offline", new IOException("offline"));
+        })) {
+            firstTicket = queue.submit(WriteRequest.reply(1, "改行を\n含む \"返信\"", 123456789012345678L)).getId();
+            queue.submit(WriteRequest.tweet(1, "second", 10L, 9007199254740993L));
+            assertEquals(2, queue.getPendingCount());
+        }
+
+        List<WriteRequest> sent = Collections.synchronizedList(new ArrayList<>());
+
+        try (WriteQueue queue = this.createQueue(request -> {
+            sent.add(request);
+            return 1L;
+        })) {
+            WriteQueue.Ticket ticket = queue.submit(WriteRequest.tweet(1, "third"));
+            assertEquals(firstTicket + 2, ticket.getId());
+            ticket.getCompletion().get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(3, sent.size());
+        assertEquals(WriteRequest.Type.REPLY, sent.get(0).getType());
+        assertEquals("改行を\n含む \"返信\"", sent.get(0).getText());
+        assertEquals(123456789012345678L, sent.get(0).getTargetId());
+        assertEquals("second", sent.get(1).getText());
+        assertArrayEquals(new long[]{10L, 9007199254740993L}, sent.get(1).getMediaIds());
+        assertEquals("third", sent.get(2).getText());
+    }
+
+    @Test
+    public void testTicketIdAfterTruncate() throws Exception {
+        long lastTicket;
+
+        try (WriteQueue queue = this.createQueue(request -> 1L)) {
+            WriteQueue.Ticket ticket = queue.submit(WriteRequest.tweet(1, "first"));
+            ticket.getCompletion().get(5, TimeUnit.SECONDS);
+            lastTicket = ticket.getId();
+        }
+
+        try (WriteQueue queue = this.createQueue(request -> 1L)) {
+            assertTrue(queue.submit(WriteRequest.tweet(1, "second")).getId() > lastTicket);
+        }
+    }
+
+    @Test
+    public void testIsTransient() throws Exception {
+        assertTrue(WriteQueue.isTransient(new TwitterException("network", new IOException("timeout"))));
+        assertFalse(WriteQueue.isTransient(new TwitterException("アカウント 1 が見つかりません.")));
+        assertTrue(WriteQueue.isTransient(new TwitterException("rate limit", null, 429)));
+        assertTrue(WriteQueue.isTransient(new TwitterException("server", null, 502)));
+        assertFalse(WriteQueue.isTransient(new TwitterException("forbidden", null, 403)));
+        assertFalse(WriteQueue.isTransient(new TwitterException("not found", null, 404)));
+    }
+
+    private WriteQueue createQueue(WriteQueue.Sender sender) throws IOException {
+        return new WriteQueue(this.journal, sender, this.logger, 100, 1000.0, 10L, 50L);
+    }
+}
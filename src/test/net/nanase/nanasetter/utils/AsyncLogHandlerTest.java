@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.*;
+
+public class AsyncLogHandlerTest {
+
+    @Test
+    public void testPublish() throws Exception {
+        RecordingHandler target = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(target, 1024);
+
+        for (int i = 0; i < 100; i++)
+            handler.publish(new LogRecord(Level.INFO, "message " + i));
+
+        handler.flush();
+
+        assertEquals(100, target.records.size());
+
+        for (int i = 0; i < 100; i++)
+            assertEquals("message " + i, target.records.get(i).getMessage());
+
+        handler.close();
+        assertTrue(target.closed);
+
+        // closed handler ignores records
+        handler.publish(new LogRecord(Level.INFO, "ignored"));
+        assertEquals(100, target.records.size());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        RecordingHandler target = new RecordingHandler() {
+            @Override
+            public synchronized void publish(LogRecord record) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    //
+                }
+
+                super.publish(record);
+            }
+        };
+        AsyncLogHandler handler = new AsyncLogHandler(target, 4);
+
+        // the writer takes the first record and blocks on it
+        handler.publish(new LogRecord(Level.INFO, "first"));
+
+        while (handler.getDroppedCount() == 0)
+            handler.publish(new LogRecord(Level.INFO, "overflow"));
+
+        blocker.countDown();
+        handler.flush();
+        handler.close();
+
+        assertTrue(handler.getDroppedCount() > 0);
+        assertTrue(target.records.stream().anyMatch(r -> r.getLevel() == Level.WARNING));
+    }
+
+    @Test
+    public void testFlushAfterClose() throws Exception {
+        RecordingHandler target = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(target);
+
+        handler.publish(new LogRecord(Level.INFO, "message"));
+        handler.close();
+        handler.flush();
+
+        assertEquals(1, target.records.size());
+    }
+
+    @Test
+    public void testFlushThreshold() throws Exception {
+        RecordingHandler target = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(target, 1024, 1000, 60 * 60 * 1000L);
+
+        for (int i = 0; i < 100; i++)
+            handler.publish(new LogRecord(Level.INFO, "message " + i));
+
+        while (target.size() < 100)
+            Thread.sleep(1);
+
+        // neither the record count nor the interval has been reached
+        assertEquals(0, target.flushCount.get());
+
+        handler.close();
+        assertTrue(target.flushCount.get() > 0);
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        RecordingHandler target = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(target, 1024, 1000, 50L);
+
+        handler.publish(new LogRecord(Level.INFO, "message"));
+
+        long deadline = System.currentTimeMillis() + 5000L;
+
+        while (target.flushCount.get() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(1, target.flushCount.get());
+        handler.close();
+    }
+
+    private static class RecordingHandler extends Handler {
+        final List<LogRecord> records = new ArrayList<>();
+
+        final AtomicInteger flushCount = new AtomicInteger();
+
+        volatile boolean closed;
+
+        @Override
+        public synchronized void publish(LogRecord record) {
+            this.records.add(record);
+        }
+
+        synchronized int size() {
+            return this.records.size();
+        }
+
+        @Override
+        public void flush() {
+            this.flushCount.incrementAndGet();
+        }
+
+        @Override
+        public void close() throws SecurityException {
+            this.closed = true;
+        }
+    }
+}
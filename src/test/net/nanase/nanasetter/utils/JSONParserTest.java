@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JSONParserTest {
+
+    @Test
+    public void testParsePrimitive() throws Exception {
+        assertEquals("message", JSONParser.parse("\"message\""));
+        assertEquals(42, JSONParser.parse("42"));
+        assertEquals(-42, JSONParser.parse("-42"));
+        assertEquals(4294967296L, JSONParser.parse("4294967296"));
+        assertEquals(1.5, JSONParser.parse("1.5"));
+        assertEquals(1.0e10, JSONParser.parse("1e10"));
+        assertEquals(true, JSONParser.parse("true"));
+        assertEquals(false, JSONParser.parse("false"));
+        assertNull(JSONParser.parse("null"));
+    }
+
+    @Test
+    public void testParseString() throws Exception {
+        assertEquals("", JSONParser.parse("\"\""));
+        assertEquals("a\"b\\c/d", JSONParser.parse("\"a\\\"b\\\\c\\/d\""));
+        assertEquals("\b\f\n\r\t", JSONParser.parse("\"\\b\\f\\n\\r\\t\""));
+        assertEquals("ななせったー", JSONParser.parse("\"\\u306a\\u306a\\u305b\\u3063\\u305f\\u30fc\""));
+        assertEquals("ななせったー", JSONParser.parse("\"ななせったー\""));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParseObject() throws Exception {
+        Object obj = JSONParser.parse(" { \"text\" : \"message\", \"number\": 42, \"object\": { \"foo\": \"bar\" }," +
+                " \"array\": [1, 3, 5], \"empty\": {}, \"none\": [] } ");
+
+        assertTrue(obj instanceof Map);
+        Map<String, Object> map = (Map<String, Object>) obj;
+
+        assertArrayEquals(new String[]{"text", "number", "object", "array", "empty", "none"},
+                map.keySet().toArray(new String[map.size()]));
+        assertEquals("message", map.get("text"));
+        assertEquals(42, map.get("number"));
+        assertEquals(Collections.singletonMap("foo", "bar"), map.get("object"));
+        assertEquals(Arrays.asList(1, 3, 5), map.get("array"));
+        assertEquals(Collections.emptyMap(), map.get("empty"));
+        assertEquals(Collections.emptyList(), map.get("none"));
+
+        try {
+            map.put("foo", "bar");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            //
+        }
+
+        try {
+            ((List<Object>) map.get("array")).add(7);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            //
+        }
+    }
+
+    @Test
+    public void testParseFailure() throws Exception {
+        String[] illegals = {"", " ", "{", "[1, 2", "{\"a\" 1}", "{a: 1}", "\"abc", "tru", "nul", "01x",
+                "-", "\"\\x\"", "\"\\u12\"", "[1] 2", "{\"a\": 1,}"};
+
+        for (String illegal : illegals) {
+            try {
+                JSONParser.parse(illegal);
+                fail(illegal);
+            } catch (IllegalArgumentException e) {
+                //
+            }
+        }
+
+        try {
+            JSONParser.parse(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //
+        }
+    }
+}
@@ -278,6 +278,21 @@ public class JSObjectUtilsTest {
         assertFalse(JSObjectUtils.getMember(this.jsObject, "text", null).isPresent());
     }
 
+    @Test
+    public void testGetMemberValue() throws Exception {
+        assertEquals("message", JSObjectUtils.getMemberValue(this.jsObject, "text").get());
+        assertEquals(42, JSObjectUtils.getMemberValue(this.jsObject, "number").get());
+        assertEquals(true, JSObjectUtils.getMemberValue(this.jsObject, "boolean").get());
+        assertTrue(JSObjectUtils.getMemberValue(this.jsObject, "object").get() instanceof JSObject);
+
+        assertFalse(JSObjectUtils.getMemberValue(this.jsObject, "foo").isPresent());
+        assertFalse(JSObjectUtils.getMemberValue(this.jsObject, " ").isPresent());
+        assertFalse(JSObjectUtils.getMemberValue(this.jsObject, "").isPresent());
+
+        assertFalse(JSObjectUtils.getMemberValue(null, "text").isPresent());
+        assertFalse(JSObjectUtils.getMemberValue(this.jsObject, null).isPresent());
+    }
+
     @Test
     public void testGetArray() throws Exception {
         // prepare
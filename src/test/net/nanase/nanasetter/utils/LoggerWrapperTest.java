@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class LoggerWrapperTest {
+
+    @Test
+    public void testSupplier() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        LoggerWrapper wrapper = new LoggerWrapper(createLogger(Level.INFO, handler));
+        AtomicInteger calls = new AtomicInteger();
+
+        wrapper.fine(() -> "fine " + calls.incrementAndGet());
+        assertEquals(0, calls.get());
+        assertEquals(0, handler.records.size());
+
+        wrapper.info(() -> "info " + calls.incrementAndGet());
+        assertEquals(1, calls.get());
+        assertEquals(1, handler.records.size());
+        assertEquals("info 1", handler.records.get(0).getMessage());
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        LoggerWrapper wrapper = new LoggerWrapper(createLogger(Level.INFO, handler));
+
+        wrapper.finestf("%s %d", "ignored", 1);
+        wrapper.warningf("%s %d", "message", 2);
+
+        assertEquals(1, handler.records.size());
+        assertEquals("message 2", handler.records.get(0).getMessage());
+        assertEquals(Level.WARNING, handler.records.get(0).getLevel());
+
+        // 書式文字列を含まない引数 1 つの呼び出しはそのままロギングされる
+        wrapper.info("100%");
+        assertEquals("100%", handler.records.get(1).getMessage());
+
+        // 引数のない書式文字列も書式化されない
+        wrapper.infof("100%");
+        assertEquals("100%", handler.records.get(2).getMessage());
+    }
+
+    @Test
+    public void testIsLoggable() throws Exception {
+        LoggerWrapper wrapper = new LoggerWrapper(createLogger(Level.CONFIG, new RecordingHandler()));
+
+        assertTrue(wrapper.isLoggable(Level.CONFIG));
+        assertTrue(wrapper.isLoggable("info"));
+        assertFalse(wrapper.isLoggable("fine"));
+        assertFalse(wrapper.isLoggable("unknown"));
+        assertFalse(wrapper.isLoggable((String) null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullMessage() throws Exception {
+        new LoggerWrapper(createLogger(Level.OFF, new RecordingHandler())).info((Object) null);
+    }
+
+    private static Logger createLogger(Level level, Handler handler) {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(level);
+        logger.addHandler(handler);
+        return logger;
+    }
+
+    private static class RecordingHandler extends Handler {
+        private final List<LogRecord> records = new ArrayList<>();
+
+        @Override
+        public void publish(LogRecord record) {
+            this.records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
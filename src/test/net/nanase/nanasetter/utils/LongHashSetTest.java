@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testAddContainsRemove() throws Exception {
+        LongHashSet set = new LongHashSet();
+
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(0L));
+        assertTrue(set.add(-1L));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertFalse(set.add(0L));
+        assertEquals(3, set.size());
+
+        assertTrue(set.contains(0L));
+        assertTrue(set.contains(-1L));
+        assertTrue(set.contains(Long.MAX_VALUE));
+        assertFalse(set.contains(1L));
+
+        assertTrue(set.remove(0L));
+        assertFalse(set.remove(0L));
+        assertFalse(set.contains(0L));
+        assertEquals(2, set.size());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(-1L));
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Random random = new Random(44);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+
+        // 値の範囲を狭くして衝突と削除後の再配置を多く発生させる
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(5000) * 4096L;
+
+            if (random.nextInt(3) == 0)
+                assertEquals(expected.remove(value), set.remove(value));
+            else
+                assertEquals(expected.add(value), set.add(value));
+        }
+
+        assertEquals(expected.size(), set.size());
+
+        for (long value = 0; value < 5000 * 4096L; value += 4096L)
+            assertEquals(expected.contains(value), set.contains(value));
+
+        List<Long> visited = new ArrayList<>();
+        set.forEach(visited::add);
+        assertEquals(expected, new HashSet<>(visited));
+        assertEquals(expected.size(), visited.size());
+    }
+
+    @Test
+    public void testToSortedArray() throws Exception {
+        assertArrayEquals(new long[]{-5L, 0L, 3L, 10L}, LongHashSet.of(10L, 0L, -5L, 3L, 10L).toSortedArray());
+        assertArrayEquals(new long[0], new LongHashSet().toSortedArray());
+    }
+
+    @Test
+    public void testClone() throws Exception {
+        LongHashSet set = LongHashSet.of(1L, 2L, 3L);
+        LongHashSet clone = set.clone();
+
+        clone.add(4L);
+        clone.remove(1L);
+
+        assertTrue(set.contains(1L));
+        assertFalse(set.contains(4L));
+        assertFalse(clone.contains(1L));
+        assertTrue(clone.contains(4L));
+    }
+}
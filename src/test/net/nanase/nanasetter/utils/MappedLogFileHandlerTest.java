@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class MappedLogFileHandlerTest {
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("nanasetter-log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException ex) {
+                    //
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testTail() throws Exception {
+        MappedLogFileHandler handler = new MappedLogFileHandler(this.directory, 1024, 100);
+
+        for (int i = 0; i < 100; i++)
+            handler.publish(createRecord("nanasetter.plugin", Level.INFO, "message \"" + i + "\"\n", i));
+
+        handler.publish(createRecord("nanasetter.other", Level.INFO, "other", 0));
+        handler.flush();
+
+        MappedLogReader reader = new MappedLogReader(this.directory);
+        assertTrue(reader.getSegments("nanasetter.plugin").size() > 1);
+        assertEquals(1, reader.getSegments("nanasetter.other").size());
+
+        List<MappedLogReader.Entry> entries = reader.tail("nanasetter.plugin", 10);
+        assertEquals(10, entries.size());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("message \"" + (90 + i) + "\"\n", entries.get(i).getMessage());
+            assertEquals(90 + i, entries.get(i).getTime());
+            assertEquals("nanasetter.plugin", entries.get(i).getLoggerName());
+        }
+
+        assertEquals(100, reader.tail("nanasetter.plugin", 1000).size());
+        assertEquals(0, reader.tail("nanasetter.unknown", 10).size());
+
+        handler.close();
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        MappedLogFileHandler handler = new MappedLogFileHandler(this.directory, 512, 100);
+
+        for (int i = 0; i < 100; i++)
+            handler.publish(createRecord("nanasetter.plugin", i % 10 == 0 ? Level.WARNING : Level.FINE, "message " + i, i));
+
+        handler.close();
+
+        MappedLogReader reader = new MappedLogReader(this.directory);
+        List<MappedLogReader.Entry> warnings = reader.filter("nanasetter.plugin", 0, e -> e.getLevel() == Level.WARNING);
+        assertEquals(10, warnings.size());
+        assertEquals("message 0", warnings.get(0).getMessage());
+
+        List<MappedLogReader.Entry> recent = reader.filter("nanasetter.plugin", 50, e -> true);
+        assertEquals(50, recent.size());
+        assertEquals(50, recent.get(0).getTime());
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        MappedLogFileHandler handler = new MappedLogFileHandler(this.directory, 256, 3);
+
+        for (int i = 0; i < 100; i++)
+            handler.publish(createRecord("nanasetter.plugin", Level.INFO, "message " + i, i));
+
+        handler.close();
+
+        MappedLogReader reader = new MappedLogReader(this.directory);
+        assertEquals(3, reader.getSegments("nanasetter.plugin").size());
+
+        List<MappedLogReader.Entry> entries = reader.tail("nanasetter.plugin", 1000);
+        assertEquals(99, entries.get(entries.size() - 1).getTime());
+        assertTrue(entries.size() < 100);
+
+        // 再度開いたハンドラは最後のセグメントの続き、または新しいセグメントに書き込む
+        handler = new MappedLogFileHandler(this.directory, 256, 3);
+        handler.publish(createRecord("nanasetter.plugin", Level.INFO, "reopened", 100));
+        handler.close();
+
+        assertEquals("reopened", reader.tail("nanasetter.plugin", 1).get(0).getMessage());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        MappedLogFileHandler handler = new MappedLogFileHandler(this.directory, 4096, 3);
+
+        for (int i = 0; i < 3; i++)
+            handler.publish(createRecord("nanasetter.plugin", Level.INFO, "message " + i, i));
+
+        handler.close();
+
+        MappedLogReader reader = new MappedLogReader(this.directory);
+        List<Path> segments = reader.getSegments("nanasetter.plugin");
+        assertEquals(1, segments.size());
+        assertEquals(3, reader.tail("nanasetter.plugin", 10).size());
+
+        // 書き込み途中で終了した行を再現する
+        try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("{\"time\":".getBytes(StandardCharsets.UTF_8)), findDataEnd(channel));
+        }
+
+        handler = new MappedLogFileHandler(this.directory, 4096, 3);
+        handler.publish(createRecord("nanasetter.plugin", Level.INFO, "reopened", 3));
+        handler.close();
+
+        assertEquals(segments, reader.getSegments("nanasetter.plugin"));
+
+        List<MappedLogReader.Entry> entries = reader.tail("nanasetter.plugin", 10);
+        assertEquals(4, entries.size());
+        assertEquals("message 0", entries.get(0).getMessage());
+        assertEquals("reopened", entries.get(3).getMessage());
+
+        // 解放されたセグメントは削除できる
+        Files.delete(segments.get(0));
+    }
+
+    private static long findDataEnd(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.read(buffer, 0);
+
+        for (int i = 0; i < buffer.capacity(); i++)
+            if (buffer.get(i) == 0)
+                return i;
+
+        return buffer.capacity();
+    }
+
+    private static LogRecord createRecord(String loggerName, Level level, String message, long millis) {
+        LogRecord record = new LogRecord(level, message);
+        record.setLoggerName(loggerName);
+        record.setMillis(millis);
+        return record;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class RateLimitFilterTest {
+
+    @Test
+    public void testRepeat() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        RecordingHandler handler = new RecordingHandler();
+        Logger logger = createLogger(handler);
+        logger.setFilter(new RateLimitFilter(logger, 100, 100.0, 1000, clock::get));
+
+        for (int i = 0; i < 10; i++)
+            logger.warning("same");
+
+        logger.info("different");
+
+        assertEquals(3, handler.messages.size());
+        assertEquals("same", handler.messages.get(0));
+        assertEquals("前のメッセージが 9 回繰り返されました: same", handler.messages.get(1));
+        assertEquals("different", handler.messages.get(2));
+        assertEquals(Level.WARNING, handler.records.get(1).getLevel());
+
+        // 一定時間が経過すると同じメッセージも再び出力される
+        logger.info("different");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        logger.info("different");
+
+        assertEquals(5, handler.messages.size());
+        assertEquals("前のメッセージが 1 回繰り返されました: different", handler.messages.get(3));
+        assertEquals("different", handler.messages.get(4));
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        RecordingHandler handler = new RecordingHandler();
+        Logger logger = createLogger(handler);
+        logger.setFilter(new RateLimitFilter(logger, 5, 1.0, 0, clock::get));
+
+        for (int i = 0; i < 20; i++)
+            logger.info("message " + i);
+
+        assertEquals(5, handler.messages.size());
+        assertEquals("message 4", handler.messages.get(4));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        logger.info("message 20");
+
+        assertEquals(7, handler.messages.size());
+        assertEquals("出力が多すぎるため 15 件のメッセージが破棄されました", handler.messages.get(5));
+        assertEquals("message 20", handler.messages.get(6));
+    }
+
+    @Test
+    public void testFlushSummaries() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        RecordingHandler handler = new RecordingHandler();
+        Logger logger = createLogger(handler);
+        RateLimitFilter filter = new RateLimitFilter(logger, 2, 1.0, 1000, clock::get);
+        logger.setFilter(filter);
+
+        for (int i = 0; i < 3; i++)
+            logger.info("same");
+
+        // 次のレコードを待たずに、時間が経過した時点で集計結果が出力される
+        filter.flushSummaries();
+        assertEquals(1, handler.messages.size());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        filter.flushSummaries();
+
+        assertEquals(2, handler.messages.size());
+        assertEquals("前のメッセージが 2 回繰り返されました: same", handler.messages.get(1));
+
+        logger.info("a");
+        logger.info("b");
+        logger.info("c");
+
+        filter.flushSummaries();
+        assertEquals(4, handler.messages.size());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        filter.flushSummaries();
+
+        assertEquals(5, handler.messages.size());
+        assertEquals("出力が多すぎるため 1 件のメッセージが破棄されました", handler.messages.get(4));
+
+        filter.flushSummaries();
+        assertEquals(5, handler.messages.size());
+    }
+
+    private static Logger createLogger(Handler handler) {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        return logger;
+    }
+
+    private static class RecordingHandler extends Handler {
+        private final List<LogRecord> records = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void publish(LogRecord record) {
+            this.records.add(record);
+            this.messages.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
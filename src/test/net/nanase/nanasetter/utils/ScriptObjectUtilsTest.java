@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.nanase.nanasetter.utils;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ScriptObjectUtilsTest {
+    private ScriptEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        this.engine = new ScriptEngineManager().getEngineByName("nashorn");
+        Assume.assumeNotNull(this.engine);
+    }
+
+    @Test
+    public void testIsFunction() throws Exception {
+        assertTrue(ScriptObjectUtils.isFunction(this.engine.eval("(function () {})")));
+        assertFalse(ScriptObjectUtils.isFunction(this.engine.eval("({ a: 1 })")));
+        assertFalse(ScriptObjectUtils.isFunction("function"));
+        assertFalse(ScriptObjectUtils.isFunction(null));
+
+        assertTrue(ScriptObjectUtils.isScriptObject(this.engine.eval("({ a: 1 })")));
+        assertFalse(ScriptObjectUtils.isScriptObject(new Object()));
+    }
+
+    @Test
+    public void testCall() throws Exception {
+        Object function = this.engine.eval("(function (a, b) { return a + ':' + b; })");
+
+        assertEquals("foo:42", ScriptObjectUtils.call(function, "foo", 42));
+        assertEquals("undefined:undefined", ScriptObjectUtils.call(function));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCallNotFunction() throws Exception {
+        ScriptObjectUtils.call(this.engine.eval("({ a: 1 })"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSnapshot() throws Exception {
+        Object snapshot = ScriptObjectUtils.snapshot(this.engine.eval(
+                "({ message: 'hello', number: 42, real: 1.5, array: [1, 'two', { three: 3 }], f: function () {} })"));
+
+        assertTrue(snapshot instanceof Map);
+        Map<String, Object> map = (Map<String, Object>) snapshot;
+
+        assertArrayEquals(new String[]{"message", "number", "real", "array", "f"}, map.keySet().toArray());
+        assertEquals("hello", map.get("message"));
+        assertEquals(42, map.get("number"));
+        assertEquals(1.5, map.get("real"));
+        assertNull(map.get("f"));
+
+        List<Object> array = (List<Object>) map.get("array");
+        assertEquals(Arrays.asList(1, "two"), array.subList(0, 2));
+        assertEquals(3, ((Map<String, Object>) array.get(2)).get("three"));
+
+        assertEquals("string", ScriptObjectUtils.snapshot("string"));
+        assertNull(ScriptObjectUtils.snapshot(null));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Tomona Nanase
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.nanase.nanasetter.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StartupTimerTest {
+
+    @Test
+    public void testPhases() throws Exception {
+        StartupTimer timer = new StartupTimer();
+
+        timer.begin("first");
+        timer.begin("second");
+        Thread.sleep(5);
+        timer.end("second");
+        timer.end("first");
+        timer.begin("unfinished");
+        timer.end("unknown");
+
+        Map<String, double[]> phases = timer.getPhases();
+        assertArrayEquals(new String[]{"first", "second", "unfinished"}, phases.keySet().toArray());
+        assertTrue(phases.get("second")[1] >= 5.0);
+        assertTrue(phases.get("first")[1] >= phases.get("second")[1]);
+        assertTrue(phases.get("first")[0] <= phases.get("second")[0]);
+        assertTrue(phases.get("unfinished")[1] < 0);
+
+        Object json = JSONParser.parse(timer.toJSON());
+        assertTrue(json instanceof Map);
+        assertEquals(3, ((List<?>) ((Map<?, ?>) json).get("phases")).size());
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+        StartupTimer timer = new StartupTimer();
+        AtomicInteger count = new AtomicInteger();
+        timer.setOnComplete(t -> count.incrementAndGet());
+
+        timer.complete();
+        double total = timer.getTotalMillis();
+        timer.complete();
+
+        assertEquals(1, count.get());
+        assertEquals(total, timer.getTotalMillis(), 0.0);
+    }
+}